@@ -38,6 +38,7 @@ class ControlPanel extends JPanel implements ActionListener {
 	private JButton nextStateButton2 = null;
 	private JButton pauseButton      = null;
 	private JButton testButton       = null;
+	private JButton reloadGestureEngineButton = null;
 	
 	private JButton executeP1ActionButton 			= null;
 	private JButton executeP2ActionButton 			= null;
@@ -88,6 +89,10 @@ class ControlPanel extends JPanel implements ActionListener {
 		this.testButton.addActionListener(this);
 		generalButtonPanel.add(this.testButton);
 		
+		this.reloadGestureEngineButton = new JButton("Reload Gesture Engine");
+		this.reloadGestureEngineButton.addActionListener(this);
+		generalButtonPanel.add(this.reloadGestureEngineButton);
+		
 		this.add(generalButtonPanel);
 		
 		Collection<String> playerActionStrs = new ArrayList<String>(GestureType.values().length);
@@ -161,6 +166,9 @@ class ControlPanel extends JPanel implements ActionListener {
 			else if (event.getSource() == this.testButton) {
 				client.testSystem();
 			}
+			else if (event.getSource() == this.reloadGestureEngineButton) {
+				client.reloadGestureEngine();
+			}
 		}
 		catch (IOException ex) {
 			log.warn("Exception communicating with IOServer",ex);
@@ -116,6 +116,7 @@ public final class GuiCommand {
       EXECUTE_RINGMASTER_ACTION(7, 7),
       QUERY_SYSTEM_INFO(8, 8),
       UPDATE_PLAYER_STATUS(9, 9),
+      RELOAD_GESTURE_ENGINE(10, 10),
       ;
       
       public static final int EXECUTE_GENERIC_ACTION_VALUE = 0;
@@ -128,6 +129,7 @@ public final class GuiCommand {
       public static final int EXECUTE_RINGMASTER_ACTION_VALUE = 7;
       public static final int QUERY_SYSTEM_INFO_VALUE = 8;
       public static final int UPDATE_PLAYER_STATUS_VALUE = 9;
+      public static final int RELOAD_GESTURE_ENGINE_VALUE = 10;
       
       
       public final int getNumber() { return value; }
@@ -144,6 +146,7 @@ public final class GuiCommand {
           case 7: return EXECUTE_RINGMASTER_ACTION;
           case 8: return QUERY_SYSTEM_INFO;
           case 9: return UPDATE_PLAYER_STATUS;
+          case 10: return RELOAD_GESTURE_ENGINE;
           default: return null;
         }
       }
@@ -174,7 +177,7 @@ public final class GuiCommand {
       }
       
       private static final CommandType[] VALUES = {
-        EXECUTE_GENERIC_ACTION, EXECUTE_PLAYER_ACTION, TOGGLE_PAUSE, KILL_GAME, NEXT_STATE, TOUCH_EMITTER, QUERY_GAME_INFO_REFRESH, EXECUTE_RINGMASTER_ACTION, QUERY_SYSTEM_INFO, UPDATE_PLAYER_STATUS, 
+        EXECUTE_GENERIC_ACTION, EXECUTE_PLAYER_ACTION, TOGGLE_PAUSE, KILL_GAME, NEXT_STATE, TOUCH_EMITTER, QUERY_GAME_INFO_REFRESH, EXECUTE_RINGMASTER_ACTION, QUERY_SYSTEM_INFO, UPDATE_PLAYER_STATUS, RELOAD_GESTURE_ENGINE, 
       };
       
       public static CommandType valueOf(
@@ -1711,7 +1714,7 @@ public final class GuiCommand {
   static {
     java.lang.String[] descriptorData = {
       "\n\021gui_command.proto\022\013guiprotocol\032\014common" +
-      ".proto\"\244\013\n\007Command\022.\n\004type\030\001 \002(\0162 .guipr" +
+      ".proto\"\277\013\n\007Command\022.\n\004type\030\001 \002(\0162 .guipr" +
       "otocol.Command.CommandType\0227\n\014playerActi" +
       "on\030\002 \001(\0162!.guiprotocol.Command.PlayerAct" +
       "ion\022#\n\006player\030\003 \001(\0162\023.guiprotocol.Player" +
@@ -1725,30 +1728,30 @@ public final class GuiCommand {
       "tState\030\016 \001(\0162\026.guiprotocol.GameState\022?\n\020" +
       "ringmasterAction\030\017 \001(\0162%.guiprotocol.Com" +
       "mand.RingmasterAction\022\030\n\020unlimitedMovesO" +
-      "n\030\020 \001(\010\"\365\001\n\013CommandType\022\032\n\026EXECUTE_GENER" +
+      "n\030\020 \001(\010\"\220\002\n\013CommandType\022\032\n\026EXECUTE_GENER" +
       "IC_ACTION\020\000\022\031\n\025EXECUTE_PLAYER_ACTION\020\001\022\020" +
       "\n\014TOGGLE_PAUSE\020\002\022\r\n\tKILL_GAME\020\003\022\016\n\nNEXT_" +
       "STATE\020\004\022\021\n\rTOUCH_EMITTER\020\005\022\033\n\027QUERY_GAME" +
       "_INFO_REFRESH\020\006\022\035\n\031EXECUTE_RINGMASTER_AC",
       "TION\020\007\022\025\n\021QUERY_SYSTEM_INFO\020\010\022\030\n\024UPDATE_" +
-      "PLAYER_STATUS\020\t\"\260\003\n\014PlayerAction\022\t\n\005BLOC" +
-      "K\020\000\022\016\n\nJAB_ATTACK\020\001\022\017\n\013HOOK_ATTACK\020\002\022\023\n\017" +
-      "UPPERCUT_ATTACK\020\003\022\017\n\013CHOP_ATTACK\020\004\022\023\n\017HA" +
-      "DOUKEN_ATTACK\020\005\022\025\n\021SONIC_BOOM_ATTACK\020\006\022\024" +
-      "\n\020SHORYUKEN_ATTACK\020\007\022\030\n\024DOUBLE_LARIAT_AT" +
-      "TACK\020\010\022\033\n\027QUADRUPLE_LARIAT_ATTACK\020\t\022\030\n\024S" +
-      "UMO_HEADBUTT_ATTACK\020\n\022 \n\034ONE_HUNDRED_HAN" +
-      "D_SLAP_ATTACK\020\013\022\031\n\025PSYCHO_CRUSHER_ATTACK" +
-      "\020\014\022\017\n\013YMCA_ATTACK\020\r\022\023\n\017NYAN_CAT_ATTACK\020\016",
-      "\022\024\n\020DISCO_STU_ATTACK\020\017\022\027\n\023ARM_WINDMILL_A" +
-      "TTACK\020\020\022\022\n\016SUCK_IT_ATTACK\020\021\022\025\n\021VAFANAPOL" +
-      "I_ATTACK\020\022\"\206\001\n\020RingmasterAction\022\024\n\020HALF_" +
-      "RING_ACTION\020\000\022\016\n\nJAB_ACTION\020\001\022\023\n\017ERUPTIO" +
-      "N_ACTION\020\002\022\021\n\rCIRCLE_ACTION\020\003\022\023\n\017HADOUKE" +
-      "N_ACTION\020\004\022\017\n\013DRUM_ACTION\020\005\"@\n\017FireEmitt" +
-      "erType\022\r\n\tLEFT_RAIL\020\000\022\016\n\nRIGHT_RAIL\020\001\022\016\n" +
-      "\nOUTER_RING\020\002B\032\n\030ca.site3.ssf.guiprotoco" +
-      "l"
+      "PLAYER_STATUS\020\t\022\031\n\025RELOAD_GESTURE_ENGINE" +
+      "\020\n\"\260\003\n\014PlayerAction\022\t\n\005BLOCK\020\000\022\016\n\nJAB_AT" +
+      "TACK\020\001\022\017\n\013HOOK_ATTACK\020\002\022\023\n\017UPPERCUT_ATTA" +
+      "CK\020\003\022\017\n\013CHOP_ATTACK\020\004\022\023\n\017HADOUKEN_ATTACK" +
+      "\020\005\022\025\n\021SONIC_BOOM_ATTACK\020\006\022\024\n\020SHORYUKEN_A" +
+      "TTACK\020\007\022\030\n\024DOUBLE_LARIAT_ATTACK\020\010\022\033\n\027QUA" +
+      "DRUPLE_LARIAT_ATTACK\020\t\022\030\n\024SUMO_HEADBUTT_" +
+      "ATTACK\020\n\022 \n\034ONE_HUNDRED_HAND_SLAP_ATTACK" +
+      "\020\013\022\031\n\025PSYCHO_CRUSHER_ATTACK\020\014\022\017\n\013YMCA_AT",
+      "TACK\020\r\022\023\n\017NYAN_CAT_ATTACK\020\016\022\024\n\020DISCO_STU" +
+      "_ATTACK\020\017\022\027\n\023ARM_WINDMILL_ATTACK\020\020\022\022\n\016SU" +
+      "CK_IT_ATTACK\020\021\022\025\n\021VAFANAPOLI_ATTACK\020\022\"\206\001" +
+      "\n\020RingmasterAction\022\024\n\020HALF_RING_ACTION\020\000" +
+      "\022\016\n\nJAB_ACTION\020\001\022\023\n\017ERUPTION_ACTION\020\002\022\021\n" +
+      "\rCIRCLE_ACTION\020\003\022\023\n\017HADOUKEN_ACTION\020\004\022\017\n" +
+      "\013DRUM_ACTION\020\005\"@\n\017FireEmitterType\022\r\n\tLEF" +
+      "T_RAIL\020\000\022\016\n\nRIGHT_RAIL\020\001\022\016\n\nOUTER_RING\020\002" +
+      "B\032\n\030ca.site3.ssf.guiprotocol"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -257,6 +257,17 @@ public class StreetFireGuiClient {
 		submitCommand(b.build());
 	}
 	
+	/**
+	 * Asks the server to reload its gesture recognition engine file (e.g., after it has been retrained)
+	 * while the game keeps running.
+	 * 
+	 * @throws IOException
+	 */
+	public void reloadGestureEngine() throws IOException {
+		Builder b = Command.newBuilder().setType(CommandType.RELOAD_GESTURE_ENGINE);
+		submitCommand(b.build());
+	}
+	
 	/**
 	 * Sends the given command to the server.
 	 * 
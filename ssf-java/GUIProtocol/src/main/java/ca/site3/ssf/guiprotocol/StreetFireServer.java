@@ -425,6 +425,9 @@ public class StreetFireServer implements Runnable {
 						if (cmd.getType() == CommandType.QUERY_SYSTEM_INFO) {
 							systemCommandQueue.add(new SystemCommand(SystemCommandType.QUERY_SYSTEM_INFO));
 						}
+						else if (cmd.getType() == CommandType.RELOAD_GESTURE_ENGINE) {
+							systemCommandQueue.add(new SystemCommand(SystemCommandType.RELOAD_GESTURE_ENGINE));
+						}
 						else {
 						
 							AbstractGameModelCommand gameCmd = parseCommand(cmd); 
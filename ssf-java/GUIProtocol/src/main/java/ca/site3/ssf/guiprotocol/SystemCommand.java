@@ -10,7 +10,13 @@ public class SystemCommand {
 		/**
 		 * Queries attached hardware for status
 		 */
-		QUERY_SYSTEM_INFO
+		QUERY_SYSTEM_INFO,
+		
+		/**
+		 * Reloads the gesture recognition engine from its file (e.g., after it has been retrained)
+		 * without restarting the system
+		 */
+		RELOAD_GESTURE_ENGINE
 	}
 	
 	private final SystemCommandType type;
@@ -0,0 +1,81 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.util.Arrays;
+
+/**
+ * The results of recognizing a batch of gesture instances (see GestureRecognizer.recognizeBatch): for each
+ * instance, the gesture that was recognized (as the game would), the ln probability of each gesture type
+ * that was scored and how long the recognition took. Everything is kept in flat arrays so that results for
+ * thousands of instances stay small.
+ */
+public final class BatchRecognitionResult {
+	
+	private static final int NUM_GESTURE_TYPES = GestureType.values().length;
+	
+	private final GestureType[] recognizedGestures;  // [instance], null where no gesture was recognized
+	private final double[] lnProbabilities;          // [instance * NUM_GESTURE_TYPES + gesture type ordinal]
+	private final long[] recognitionNanos;           // [instance]
+	private long elapsedNanos = 0;
+	
+	BatchRecognitionResult(int numInstances) {
+		this.recognizedGestures = new GestureType[numInstances];
+		this.lnProbabilities    = new double[numInstances * NUM_GESTURE_TYPES];
+		this.recognitionNanos   = new long[numInstances];
+		Arrays.fill(this.lnProbabilities, Double.NaN);
+	}
+	
+	public int size() {
+		return this.recognizedGestures.length;
+	}
+	
+	/**
+	 * @return The gesture recognized for the instance at the given index, null if none was.
+	 */
+	public GestureType getRecognizedGesture(int index) {
+		return this.recognizedGestures[index];
+	}
+	
+	/**
+	 * Gets the ln probability of the instance at the given index for the given gesture type.
+	 * @return The ln probability, NaN if the gesture type wasn't scored (e.g., it uses the wrong hands, or
+	 * the instance was rejected before any gesture was scored).
+	 */
+	public double getLnProbability(int index, GestureType gestureType) {
+		return this.lnProbabilities[index * NUM_GESTURE_TYPES + gestureType.ordinal()];
+	}
+	
+	/**
+	 * @return How long recognizing the instance at the given index took, in nanoseconds.
+	 */
+	public long getRecognitionNanos(int index) {
+		return this.recognitionNanos[index];
+	}
+	
+	/**
+	 * @return How long recognizing the whole batch took, in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+	
+	/**
+	 * @return The ln probabilities of every instance, each instance's start at its getLnProbabilityOffset
+	 * and are in gesture type ordinal order.
+	 */
+	double[] getLnProbabilities() {
+		return this.lnProbabilities;
+	}
+	
+	int getLnProbabilityOffset(int index) {
+		return index * NUM_GESTURE_TYPES;
+	}
+	
+	void setRecognized(int index, GestureType recognizedGesture, long recognitionNanos) {
+		this.recognizedGestures[index] = recognizedGesture;
+		this.recognitionNanos[index]   = recognitionNanos;
+	}
+	
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+}
@@ -0,0 +1,218 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import be.ac.ulg.montefiore.run.jahmm.io.FileFormatException;
+
+/**
+ * Reads and writes the binary gesture recognition engine (.engb) file format. Unlike the text (.eng) format,
+ * which has to be parsed a character at a time and then compiled (see CompiledHmm), a binary engine holds each
+ * recognizer's compiled HMM as is: its thresholds, state count, initial and transition probabilities, means
+ * and inverse Cholesky factors. Loading one maps the file into memory and copies those arrays straight out of it.
+ * 
+ * The file is a header followed by a payload. The header is the magic number "SSFE", the format version, the
+ * length of the payload and a CRC-32 of the payload. The payload is the number of recognizers followed by each
+ * recognizer (see Recognizer.saveBinary) prefixed with its length, so that recognizers for gestures that are no
+ * longer supported can be skipped. Everything is big-endian.
+ */
+final class BinaryEngineFormat {
+	
+	static final String FILE_EXTENSION = ".engb";
+	
+	static final int MAGIC_NUMBER = 0x53534645; // "SSFE"
+	static final int VERSION      = 1;
+	
+	private static final int HEADER_SIZE = 16;
+	private static final int CHECKSUM_CHUNK_SIZE = 8192;
+	
+	private BinaryEngineFormat() {
+	}
+	
+	/**
+	 * Checks whether the given file starts with the binary engine format's magic number.
+	 * @param file The engine file.
+	 * @return true if it's a binary engine file, false if it isn't (i.e., it should be a text engine file).
+	 * @throws IOException If the file can't be read.
+	 */
+	static boolean isBinaryEngineFile(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] magic = new byte[4];
+			int numRead = 0;
+			while (numRead < magic.length) {
+				int result = in.read(magic, numRead, magic.length - numRead);
+				if (result == -1) {
+					return false;
+				}
+				numRead += result;
+			}
+			return ByteBuffer.wrap(magic).getInt() == MAGIC_NUMBER;
+		}
+		finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Writes the given recognizers to the given file.
+	 * @param recognizers The recognizers to write.
+	 * @param file The file to write to, it's replaced if it exists.
+	 * @throws IOException If writing fails or one of the recognizers can't be compiled.
+	 */
+	static void write(Collection<Recognizer> recognizers, File file) throws IOException {
+		ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+		DataOutputStream payload = new DataOutputStream(payloadBytes);
+		payload.writeInt(recognizers.size());
+		
+		ByteArrayOutputStream recognizerBytes = new ByteArrayOutputStream();
+		for (Recognizer recognizer : recognizers) {
+			recognizerBytes.reset();
+			recognizer.saveBinary(new DataOutputStream(recognizerBytes));
+			payload.writeInt(recognizerBytes.size());
+			recognizerBytes.writeTo(payload);
+		}
+		payload.flush();
+		
+		CRC32 checksum = new CRC32();
+		checksum.update(payloadBytes.toByteArray());
+		
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(MAGIC_NUMBER);
+			out.writeInt(VERSION);
+			out.writeInt(payloadBytes.size());
+			out.writeInt((int)checksum.getValue());
+			payloadBytes.writeTo(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Reads the recognizers from the given binary engine file. Recognizers for gestures that aren't supported
+	 * anymore are skipped.
+	 * @param file The file to read from.
+	 * @return The recognizers read.
+	 * @throws IOException If the file can't be read.
+	 * @throws FileFormatException If the file isn't a binary engine file, is a newer version or is corrupt.
+	 */
+	static List<Recognizer> read(File file) throws IOException, FileFormatException {
+		RandomAccessFile engineFile = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			if (engineFile.length() < HEADER_SIZE) {
+				throw new FileFormatException("File is too short to be a binary engine file: " + file.getAbsolutePath());
+			}
+			buffer = engineFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, engineFile.length());
+		}
+		finally {
+			// The mapping stays valid after the file is closed
+			engineFile.close();
+		}
+		
+		if (buffer.getInt() != MAGIC_NUMBER) {
+			throw new FileFormatException("Not a binary engine file: " + file.getAbsolutePath());
+		}
+		int version = buffer.getInt();
+		if (version > VERSION) {
+			throw new FileFormatException("Unsupported binary engine file version " + version + ": " + file.getAbsolutePath());
+		}
+		int payloadLength = buffer.getInt();
+		int expectedChecksum = buffer.getInt();
+		if (payloadLength != buffer.remaining()) {
+			throw new FileFormatException("Binary engine file is truncated: " + file.getAbsolutePath());
+		}
+		
+		ByteBuffer payload = buffer.slice();
+		if (BinaryEngineFormat.checksum(payload.duplicate()) != expectedChecksum) {
+			throw new FileFormatException("Binary engine file failed its checksum: " + file.getAbsolutePath());
+		}
+		
+		try {
+			int numRecognizers = payload.getInt();
+			List<Recognizer> result = new ArrayList<Recognizer>(Math.max(0, numRecognizers));
+			for (int i = 0; i < numRecognizers; i++) {
+				int recognizerLength = payload.getInt();
+				if (recognizerLength < 0 || recognizerLength > payload.remaining()) {
+					throw new FileFormatException("Invalid recognizer length in binary engine file: " + file.getAbsolutePath());
+				}
+				ByteBuffer recognizerBuffer = payload.slice();
+				recognizerBuffer.limit(recognizerLength);
+				payload.position(payload.position() + recognizerLength);
+				
+				Recognizer recognizer = new Recognizer();
+				try {
+					recognizer.loadBinary(recognizerBuffer);
+					result.add(recognizer);
+				}
+				catch (SSFEngFileFormatException ex) {
+					// Just keep going, the file might have gestures that are no longer supported in it
+					continue;
+				}
+			}
+			return result;
+		}
+		catch (BufferUnderflowException ex) {
+			throw new FileFormatException("Binary engine file ended in the middle of a recognizer: " + file.getAbsolutePath());
+		}
+	}
+	
+	private static int checksum(ByteBuffer buffer) {
+		CRC32 checksum = new CRC32();
+		byte[] chunk = new byte[CHECKSUM_CHUNK_SIZE];
+		while (buffer.hasRemaining()) {
+			int length = Math.min(chunk.length, buffer.remaining());
+			buffer.get(chunk, 0, length);
+			checksum.update(chunk, 0, length);
+		}
+		return (int)checksum.getValue();
+	}
+	
+	static void writeDoubles(DataOutput out, double[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			out.writeDouble(values[i]);
+		}
+	}
+	
+	/**
+	 * Fills the given array from the buffer's current position and moves the buffer past them.
+	 */
+	static void readDoubles(ByteBuffer buffer, double[] values) {
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + values.length * 8);
+	}
+	
+	static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+	
+	static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		try {
+			return new String(bytes, "UTF-8");
+		}
+		catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+}
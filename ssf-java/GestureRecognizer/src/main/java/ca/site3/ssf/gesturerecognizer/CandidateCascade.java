@@ -0,0 +1,239 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A cascade of cheap checks that drops gesture types a gesture instance can't be before any of their HMMs
+ * are scored. Each stage compares one of the instance's scalar statistics (see GestureInstance.getStatistics,
+ * which are accumulated while the gesture is being coalesced) against what's acceptable for the gesture type:
+ * - DURATION: the range of durations the gesture type was fitted to (see fit).
+ * - SAMPLE_COUNT: the gesture type's minimum number of data points and its number of HMM nodes.
+ * - FIERCENESS: the gesture type's minimum fierceness.
+ * - DOMINANT_AXIS: the axes with the most acceleration energy among the instances the gesture type was fitted to.
+ * - ENERGY: the range of acceleration energies (per data point) the gesture type was fitted to.
+ * Stages are run in that order and a gesture type that hasn't been fitted passes the fitted stages.
+ * 
+ * The sample count and fierceness stages are the checks the RecognizerManager makes on the best gesture after
+ * scoring, so a gesture type they reject could never be recognized. Dropping it before scoring does change one
+ * thing though: if it would have been the most probable gesture, the next best one can now be recognized instead
+ * of nothing at all. The fitted stages can also reject gestures that full scoring would have recognized,
+ * so the cascade is off unless one is given to the GestureRecognizer (see GestureRecognizer.setCandidateCascade).
+ * 
+ * Every stage counts the gesture types it rejects so that it's easy to see how much scoring the cascade saves.
+ * A cascade may be shared by threads that are recognizing, and refitted while they are.
+ */
+public final class CandidateCascade {
+	
+	public enum Stage { DURATION, SAMPLE_COUNT, FIERCENESS, DOMINANT_AXIS, ENERGY }
+	
+	// How far outside of the fitted ranges (as a fraction of their bounds) a gesture may be and still pass
+	public static final double DEFAULT_FIT_MARGIN = 0.25;
+	
+	/**
+	 * The ranges of the statistics of the instances a gesture type was fitted to.
+	 */
+	private static final class Bounds {
+		final double minDuration;
+		final double maxDuration;
+		final double minEnergy;
+		final double maxEnergy;
+		final boolean[] dominantAxes;  // [axis]
+		
+		Bounds(double minDuration, double maxDuration, double minEnergy, double maxEnergy, boolean[] dominantAxes) {
+			this.minDuration  = minDuration;
+			this.maxDuration  = maxDuration;
+			this.minEnergy    = minEnergy;
+			this.maxEnergy    = maxEnergy;
+			this.dominantAxes = dominantAxes;
+		}
+	}
+	
+	private final Map<GestureType, Bounds> boundsMap = new ConcurrentHashMap<GestureType, Bounds>();
+	private volatile EnumSet<Stage> enabledStages = EnumSet.allOf(Stage.class);
+	
+	private final AtomicLong numCandidates = new AtomicLong(0);
+	private final AtomicLongArray numRejected = new AtomicLongArray(Stage.values().length);
+	
+	public CandidateCascade() {
+	}
+	
+	/**
+	 * Turns the given stage of the cascade on or off, every stage is on to begin with.
+	 */
+	public synchronized void setStageEnabled(Stage stage, boolean enabled) {
+		EnumSet<Stage> stages = EnumSet.copyOf(this.enabledStages);
+		if (enabled) {
+			stages.add(stage);
+		}
+		else {
+			stages.remove(stage);
+		}
+		this.enabledStages = stages;
+	}
+	
+	public boolean isStageEnabled(Stage stage) {
+		return this.enabledStages.contains(stage);
+	}
+	
+	/**
+	 * Fits the duration, dominant axis and energy stages for the given gesture type to the given training
+	 * instances, with the default margin.
+	 * @return true if the gesture type was fitted, false if the data set had no instances for it.
+	 */
+	public boolean fit(GestureType gestureType, GestureDataSet dataSet) {
+		return this.fit(gestureType, dataSet, DEFAULT_FIT_MARGIN);
+	}
+	
+	/**
+	 * Fits the duration, dominant axis and energy stages for the given gesture type to the given training
+	 * instances. Instances with the wrong hands for the gesture type are ignored.
+	 * @param gestureType The gesture type.
+	 * @param dataSet The instances of the gesture type.
+	 * @param margin How far outside of the ranges found in the data set (as a fraction of their bounds) a gesture may be.
+	 * @return true if the gesture type was fitted, false if the data set had no instances for it.
+	 */
+	public boolean fit(GestureType gestureType, GestureDataSet dataSet, double margin) {
+		assert(margin >= 0.0);
+		
+		double minDuration = Double.MAX_VALUE;
+		double maxDuration = 0.0;
+		double minEnergy = Double.MAX_VALUE;
+		double maxEnergy = 0.0;
+		boolean[] dominantAxes = new boolean[GestureStatistics.NUM_AXES];
+		int numFitted = 0;
+		
+		for (int i = 0; i < dataSet.getNumGestureInstances(); i++) {
+			GestureInstance inst = dataSet.getGestureInstanceAt(i);
+			if (inst == null || !RecognizerManager.isAcceptableHandednessForGivenType(inst, gestureType)) {
+				continue;
+			}
+			
+			GestureStatistics statistics = inst.getStatistics();
+			if (statistics.getNumDataPts() == 0) {
+				continue;
+			}
+			minDuration = Math.min(minDuration, statistics.getDuration());
+			maxDuration = Math.max(maxDuration, statistics.getDuration());
+			minEnergy = Math.min(minEnergy, CandidateCascade.energyPerDataPt(statistics));
+			maxEnergy = Math.max(maxEnergy, CandidateCascade.energyPerDataPt(statistics));
+			dominantAxes[statistics.getDominantAxis()] = true;
+			numFitted++;
+		}
+		
+		if (numFitted == 0) {
+			return false;
+		}
+		
+		this.boundsMap.put(gestureType, new Bounds(minDuration / (1.0 + margin), maxDuration * (1.0 + margin),
+				minEnergy / (1.0 + margin), maxEnergy * (1.0 + margin), dominantAxes));
+		return true;
+	}
+	
+	/**
+	 * Forgets the fitted bounds of the given gesture type, so that it passes the fitted stages again.
+	 */
+	public void clearFit(GestureType gestureType) {
+		this.boundsMap.remove(gestureType);
+	}
+	
+	public boolean isFitted(GestureType gestureType) {
+		return this.boundsMap.containsKey(gestureType);
+	}
+	
+	/**
+	 * Runs a gesture instance's statistics through the cascade for the given gesture type.
+	 * @return true if the gesture type is still a candidate, false if one of the stages rejected it.
+	 */
+	boolean accepts(GestureStatistics statistics, GestureType gestureType) {
+		this.numCandidates.incrementAndGet();
+		Stage rejectingStage = this.rejectingStage(statistics, gestureType);
+		if (rejectingStage == null) {
+			return true;
+		}
+		this.numRejected.incrementAndGet(rejectingStage.ordinal());
+		return false;
+	}
+	
+	private Stage rejectingStage(GestureStatistics statistics, GestureType gestureType) {
+		EnumSet<Stage> stages = this.enabledStages;
+		Bounds bounds = this.boundsMap.get(gestureType);
+		
+		if (bounds != null && stages.contains(Stage.DURATION) &&
+			(statistics.getDuration() < bounds.minDuration || statistics.getDuration() > bounds.maxDuration)) {
+			return Stage.DURATION;
+		}
+		if (stages.contains(Stage.SAMPLE_COUNT) &&
+			(statistics.getNumDataPts() < gestureType.getMinNumDataPts() ||
+			 statistics.getNumDataPts() < gestureType.getNumHmmNodes())) {
+			return Stage.SAMPLE_COUNT;
+		}
+		if (stages.contains(Stage.FIERCENESS) &&
+			statistics.getTotalFierceness() < gestureType.getMinFierceDiffThreshold()) {
+			return Stage.FIERCENESS;
+		}
+		if (bounds != null && stages.contains(Stage.DOMINANT_AXIS) &&
+			!bounds.dominantAxes[statistics.getDominantAxis()]) {
+			return Stage.DOMINANT_AXIS;
+		}
+		if (bounds != null && stages.contains(Stage.ENERGY) && statistics.getNumDataPts() > 0) {
+			double energy = CandidateCascade.energyPerDataPt(statistics);
+			if (energy < bounds.minEnergy || energy > bounds.maxEnergy) {
+				return Stage.ENERGY;
+			}
+		}
+		return null;
+	}
+	
+	private static double energyPerDataPt(GestureStatistics statistics) {
+		return statistics.getTotalAccelEnergy() / statistics.getNumDataPts();
+	}
+	
+	/**
+	 * @return The number of gesture types that have been run through the cascade since the statistics were last reset.
+	 */
+	public long getNumCandidates() {
+		return this.numCandidates.get();
+	}
+	
+	/**
+	 * @return The number of gesture types the given stage has rejected since the statistics were last reset.
+	 */
+	public long getNumRejected(Stage stage) {
+		return this.numRejected.get(stage.ordinal());
+	}
+	
+	/**
+	 * @return The number of gesture types any stage has rejected since the statistics were last reset.
+	 */
+	public long getNumRejected() {
+		long total = 0;
+		for (Stage stage : Stage.values()) {
+			total += this.getNumRejected(stage);
+		}
+		return total;
+	}
+	
+	public void resetStatistics() {
+		this.numCandidates.set(0);
+		for (Stage stage : Stage.values()) {
+			this.numRejected.set(stage.ordinal(), 0);
+		}
+	}
+	
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append("CandidateCascade { Candidates: ").append(this.getNumCandidates());
+		result.append(", Rejected: ").append(this.getNumRejected());
+		for (Stage stage : Stage.values()) {
+			result.append(", ").append(stage).append(": ").append(this.getNumRejected(stage));
+			if (!this.isStageEnabled(stage)) {
+				result.append(" (off)");
+			}
+		}
+		return result.append(" }").toString();
+	}
+}
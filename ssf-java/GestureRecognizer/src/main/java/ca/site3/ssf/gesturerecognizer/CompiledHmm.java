@@ -0,0 +1,952 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.ObservationVector;
+import be.ac.ulg.montefiore.run.jahmm.Opdf;
+import be.ac.ulg.montefiore.run.jahmm.OpdfMultiGaussian;
+import be.ac.ulg.montefiore.run.jahmm.ViterbiCalculator;
+
+/**
+ * A flattened copy of a trained gesture HMM (with multivariate Gaussian emissions) that can be
+ * scored without going through Jahmm. Jahmm's generic implementation builds new matrices for every
+ * emission it evaluates and needs every gesture converted into a list of ObservationVectors first -
+ * this does the same forward (and Viterbi) computations straight off of the gesture's packed training sequence
+ * (see GestureInstance.getObservations), and allocates nothing once a thread has scored its first gesture.
+ * 
+ * Emissions are evaluated in log space, the forward pass normalizes them by the largest emission at each
+ * step (so they can't underflow) and scales its forward variables as it goes, accumulating the ln probability.
+ * The Viterbi pass is done entirely in log space. The results are the same as Jahmm's, give or take rounding.
+ * 
+ * Everything an emission needs that doesn't depend on the observation is worked out when the HMM is compiled:
+ * each state's covariance matrix is Cholesky factored (covariance = L * L^T) and the inverse of L is kept, so that
+ * the exponent of the Gaussian is just the squared length of inverse(L) * (x - mean), along with the ln of the
+ * Gaussian's normalizing constant. The 3 and 6 dimensional emissions (one and two handed gestures) are unrolled.
+ * When every covariance matrix is diagonal (see CovarianceType) the emissions only need the inverse standard deviations.
+ * 
+ * When a whole sequence is scored, the emissions can also be evaluated up front for every state and observation with
+ * a batch kernel (see lnEmissionTable, turned on with setBatchEmissions). It goes over the observations one state at
+ * a time, with the state's parameters held in locals and the observations transposed into one column per dimension,
+ * so the JIT compiler can vectorize its loops. It gives exactly the same results as evaluating them one at a time.
+ * 
+ * A compiled HMM can be written out and read back as is (see BinaryEngineFormat), so none of this has to be
+ * worked out again when an engine is loaded.
+ * 
+ * A CompiledHmm is immutable, it can be used by any number of threads at once.
+ */
+final class CompiledHmm {
+	
+	private static final double LN_2PI = Math.log(2.0 * Math.PI);
+	
+	private final int numStates;
+	private final int dimension;
+	
+	private final double[] pi;              // [state]
+	private final double[] logPi;           // [state]
+	private final double[] transitions;     // [fromState * numStates + toState]
+	private final double[] logTransitions;  // [fromState * numStates + toState]
+	
+	private final boolean diagonal;         // Whether every state's covariance matrix is diagonal
+	private final double[] invStdDevs;      // [state * dimension + i], only used when diagonal
+	private final int triangleSize;         // Number of entries in a packed lower triangular (dimension x dimension) matrix
+	private final double[] means;           // [state * dimension + i]
+	private final double[] invCholesky;     // [state * triangleSize + i * (i + 1) / 2 + j], j <= i: inverse of each state's L
+	private final double[] logNormalizers;  // [state], ln of the Gaussian's normalizing constant
+	private double maxLnEmission = Double.NEGATIVE_INFINITY; // No emission is ever denser than the highest Gaussian peak
+	
+	private static volatile boolean batchEmissions = false;
+	
+	/**
+	 * Scratch space for scoring a sequence, one per thread.
+	 */
+	private static final class Workspace {
+		double[] alpha     = new double[0];
+		double[] nextAlpha = new double[0];
+		
+		// Used by the batch kernel
+		double[] columns       = new double[0];  // [i * sequenceLength + t]
+		double[] emissionTable = new double[0];  // [state * sequenceLength + t]
+		
+		void ensureCapacity(int numStates) {
+			if (this.alpha.length < numStates) {
+				this.alpha     = new double[numStates];
+				this.nextAlpha = new double[numStates];
+			}
+		}
+		
+		void ensureTableCapacity(int numStates, int dimension, int sequenceLength) {
+			if (this.columns.length < dimension * sequenceLength) {
+				this.columns = new double[dimension * sequenceLength];
+			}
+			if (this.emissionTable.length < numStates * sequenceLength) {
+				this.emissionTable = new double[numStates * sequenceLength];
+			}
+		}
+	}
+	
+	private static final ThreadLocal<Workspace> workspace = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
+	
+	private CompiledHmm(int numStates, int dimension, boolean diagonal) {
+		this.numStates = numStates;
+		this.dimension = dimension;
+		this.diagonal  = diagonal;
+		
+		this.pi             = new double[numStates];
+		this.logPi          = new double[numStates];
+		this.transitions    = new double[numStates * numStates];
+		this.logTransitions = new double[numStates * numStates];
+		
+		this.triangleSize   = dimension * (dimension + 1) / 2;
+		this.means          = new double[numStates * dimension];
+		this.invCholesky    = new double[numStates * this.triangleSize];
+		this.invStdDevs     = new double[diagonal ? numStates * dimension : 0];
+		this.logNormalizers = new double[numStates];
+	}
+	
+	/**
+	 * Sets whether every compiled HMM evaluates the emissions of a whole sequence up front with the batch kernel
+	 * (see lnEmissionTable) when it works out the sequence's ln probability. Either way the results are exactly the
+	 * same, this only changes how fast they're found. Scoring a gesture an observation at a time (see forwardStep) always
+	 * evaluates one emission at a time.
+	 */
+	static void setBatchEmissions(boolean batch) {
+		batchEmissions = batch;
+	}
+	
+	static boolean getBatchEmissions() {
+		return batchEmissions;
+	}
+	
+	/**
+	 * Flattens the given Jahmm HMM.
+	 * @param hmm The HMM to compile, every state must have an OpdfMultiGaussian emission distribution.
+	 * @return The compiled HMM.
+	 * @throws IllegalArgumentException If the HMM can't be compiled (e.g., a covariance matrix isn't positive definite).
+	 */
+	static CompiledHmm compile(Hmm<ObservationVector> hmm) {
+		int numStates = hmm.nbStates();
+		int dimension = ((OpdfMultiGaussian)hmm.getOpdf(0)).dimension();
+		boolean diagonal = true;
+		for (int i = 0; i < numStates && diagonal; i++) {
+			diagonal = CompiledHmm.isDiagonal(((OpdfMultiGaussian)hmm.getOpdf(i)).covariance());
+		}
+		CompiledHmm result = new CompiledHmm(numStates, dimension, diagonal);
+		
+		for (int i = 0; i < numStates; i++) {
+			result.pi[i]    = hmm.getPi(i);
+			result.logPi[i] = Math.log(hmm.getPi(i));
+			for (int j = 0; j < numStates; j++) {
+				result.transitions[i * numStates + j]    = hmm.getAij(i, j);
+				result.logTransitions[i * numStates + j] = Math.log(hmm.getAij(i, j));
+			}
+			
+			OpdfMultiGaussian opdf = (OpdfMultiGaussian)hmm.getOpdf(i);
+			if (opdf.dimension() != dimension) {
+				throw new IllegalArgumentException("HMM states have emissions of different dimensions.");
+			}
+			
+			double[] mean = opdf.mean();
+			System.arraycopy(mean, 0, result.means, i * dimension, dimension);
+			
+			double[][] invL = CompiledHmm.invertLowerTriangular(CompiledHmm.choleskyFactor(opdf.covariance(), i));
+			double lnDeterminant = 0.0;
+			for (int r = 0; r < dimension; r++) {
+				// The diagonal of inverse(L) is 1 / the diagonal of L, and det(covariance) = product of L's diagonal squared
+				lnDeterminant -= 2.0 * Math.log(invL[r][r]);
+				System.arraycopy(invL[r], 0, result.invCholesky, i * result.triangleSize + r * (r + 1) / 2, r + 1);
+			}
+			result.logNormalizers[i] = -0.5 * (dimension * LN_2PI + lnDeterminant);
+			if (diagonal) {
+				for (int r = 0; r < dimension; r++) {
+					result.invStdDevs[i * dimension + r] = invL[r][r];
+				}
+			}
+			result.maxLnEmission = Math.max(result.maxLnEmission, result.logNormalizers[i]);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Writes everything this HMM needs for scoring to the given output, see read.
+	 * @param out The output to write to.
+	 * @throws IOException If writing fails.
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(this.numStates);
+		out.writeInt(this.dimension);
+		out.writeBoolean(this.diagonal);
+		BinaryEngineFormat.writeDoubles(out, this.pi);
+		BinaryEngineFormat.writeDoubles(out, this.transitions);
+		BinaryEngineFormat.writeDoubles(out, this.means);
+		BinaryEngineFormat.writeDoubles(out, this.invCholesky);
+		BinaryEngineFormat.writeDoubles(out, this.logNormalizers);
+	}
+	
+	/**
+	 * Reads a compiled HMM written by write, the arrays are copied straight out of the buffer.
+	 * @param buffer The buffer to read from, it's left positioned just after the HMM.
+	 * @return The compiled HMM.
+	 * @throws SSFEngFileFormatException If the HMM's sizes don't make sense.
+	 */
+	static CompiledHmm read(ByteBuffer buffer) throws SSFEngFileFormatException {
+		int numStates = buffer.getInt();
+		int dimension = buffer.getInt();
+		boolean diagonal = buffer.get() != 0;
+		long numDoubles = (long)numStates * (numStates + dimension + (long)dimension * (dimension + 1) / 2 + 2);
+		if (numStates <= 0 || dimension <= 0 || numDoubles * 8 > buffer.remaining()) {
+			throw new SSFEngFileFormatException("Invalid compiled HMM size: " + numStates + " states of dimension " + dimension);
+		}
+		
+		CompiledHmm result = new CompiledHmm(numStates, dimension, diagonal);
+		BinaryEngineFormat.readDoubles(buffer, result.pi);
+		BinaryEngineFormat.readDoubles(buffer, result.transitions);
+		BinaryEngineFormat.readDoubles(buffer, result.means);
+		BinaryEngineFormat.readDoubles(buffer, result.invCholesky);
+		BinaryEngineFormat.readDoubles(buffer, result.logNormalizers);
+		
+		// The rest is cheap to work out again
+		for (int i = 0; i < numStates; i++) {
+			result.logPi[i] = Math.log(result.pi[i]);
+			for (int j = 0; j < numStates; j++) {
+				result.logTransitions[i * numStates + j] = Math.log(result.transitions[i * numStates + j]);
+			}
+			if (diagonal) {
+				for (int r = 0; r < dimension; r++) {
+					result.invStdDevs[i * dimension + r] = result.invCholesky[i * result.triangleSize + r * (r + 1) / 2 + r];
+				}
+			}
+			result.maxLnEmission = Math.max(result.maxLnEmission, result.logNormalizers[i]);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Rebuilds the Jahmm HMM this was compiled from (for further training and saving as text).
+	 * @param covariances Each state's covariance matrix [state * dimension * dimension + row * dimension + column],
+	 * which isn't kept once the HMM is compiled.
+	 * @return The Jahmm HMM.
+	 */
+	Hmm<ObservationVector> toHmm(double[] covariances) {
+		assert(covariances.length == this.numStates * this.dimension * this.dimension);
+		
+		final int n = this.numStates;
+		final int dim = this.dimension;
+		
+		double[][] a = new double[n][n];
+		List<OpdfMultiGaussian> opdfs = new ArrayList<OpdfMultiGaussian>(n);
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(this.transitions, i * n, a[i], 0, n);
+			
+			double[] mean = new double[dim];
+			System.arraycopy(this.means, i * dim, mean, 0, dim);
+			double[][] covariance = new double[dim][dim];
+			for (int r = 0; r < dim; r++) {
+				System.arraycopy(covariances, (i * dim + r) * dim, covariance[r], 0, dim);
+			}
+			opdfs.add(new OpdfMultiGaussian(mean, covariance));
+		}
+		
+		return new Hmm<ObservationVector>(this.pi.clone(), a, opdfs);
+	}
+	
+	int getNumStates() {
+		return this.numStates;
+	}
+	
+	int getDimension() {
+		return this.dimension;
+	}
+	
+	/**
+	 * Gets an upper bound on the ln emission density of any state for any observation, which is also
+	 * an upper bound on how much any single observation can add to a sequence's ln probability.
+	 */
+	double getMaxLnEmission() {
+		return this.maxLnEmission;
+	}
+	
+	/**
+	 * Evaluates the ln of the given state's emission density for the given observation.
+	 * @param observations Holds the observation, this HMM's dimension values starting at the given offset.
+	 */
+	double lnEmission(int state, double[] observations, int offset) {
+		if (this.diagonal) {
+			return this.lnEmissionDiagonal(state, observations, offset);
+		}
+		switch (this.dimension) {
+			case 3:
+				return this.lnEmission3(state, observations, offset);
+			case 6:
+				return this.lnEmission6(state, observations, offset);
+			default:
+				return this.lnEmissionN(state, observations, offset);
+		}
+	}
+	
+	private double lnEmission3(int state, double[] observations, int offset) {
+		final double[] m = this.means;
+		final double[] l = this.invCholesky;
+		final int mi = state * 3;
+		final int li = state * 6;
+		
+		final double d0 = observations[offset + 0] - m[mi];
+		final double d1 = observations[offset + 1] - m[mi + 1];
+		final double d2 = observations[offset + 2] - m[mi + 2];
+		
+		final double z0 = l[li]     * d0;
+		final double z1 = l[li + 1] * d0 + l[li + 2] * d1;
+		final double z2 = l[li + 3] * d0 + l[li + 4] * d1 + l[li + 5] * d2;
+		
+		return this.logNormalizers[state] - 0.5 * (z0 * z0 + z1 * z1 + z2 * z2);
+	}
+	
+	private double lnEmission6(int state, double[] observations, int offset) {
+		final double[] m = this.means;
+		final double[] l = this.invCholesky;
+		final int mi = state * 6;
+		final int li = state * 21;
+		
+		final double d0 = observations[offset + 0] - m[mi];
+		final double d1 = observations[offset + 1] - m[mi + 1];
+		final double d2 = observations[offset + 2] - m[mi + 2];
+		final double d3 = observations[offset + 3] - m[mi + 3];
+		final double d4 = observations[offset + 4] - m[mi + 4];
+		final double d5 = observations[offset + 5] - m[mi + 5];
+		
+		final double z0 = l[li]      * d0;
+		final double z1 = l[li + 1]  * d0 + l[li + 2]  * d1;
+		final double z2 = l[li + 3]  * d0 + l[li + 4]  * d1 + l[li + 5]  * d2;
+		final double z3 = l[li + 6]  * d0 + l[li + 7]  * d1 + l[li + 8]  * d2 + l[li + 9]  * d3;
+		final double z4 = l[li + 10] * d0 + l[li + 11] * d1 + l[li + 12] * d2 + l[li + 13] * d3 + l[li + 14] * d4;
+		final double z5 = l[li + 15] * d0 + l[li + 16] * d1 + l[li + 17] * d2 + l[li + 18] * d3 + l[li + 19] * d4 + l[li + 20] * d5;
+		
+		return this.logNormalizers[state] - 0.5 * (z0 * z0 + z1 * z1 + z2 * z2 + z3 * z3 + z4 * z4 + z5 * z5);
+	}
+	
+	private double lnEmissionDiagonal(int state, double[] observations, int offset) {
+		final int meanOffset = state * this.dimension;
+		
+		double quadForm = 0.0;
+		for (int i = 0; i < this.dimension; i++) {
+			double z = (observations[offset + i] - this.means[meanOffset + i]) * this.invStdDevs[meanOffset + i];
+			quadForm += z * z;
+		}
+		
+		return this.logNormalizers[state] - 0.5 * quadForm;
+	}
+	
+	private double lnEmissionN(int state, double[] observations, int offset) {
+		final int dim = this.dimension;
+		final int meanOffset = state * dim;
+		
+		double quadForm = 0.0;
+		int li = state * this.triangleSize;
+		for (int r = 0; r < dim; r++) {
+			double z = 0.0;
+			for (int c = 0; c <= r; c++) {
+				z += this.invCholesky[li++] * (observations[offset + c] - this.means[meanOffset + c]);
+			}
+			quadForm += z * z;
+		}
+		
+		return this.logNormalizers[state] - 0.5 * quadForm;
+	}
+	
+	/**
+	 * Evaluates the ln emission density of every state for every observation of a sequence. The results are
+	 * the same as lnEmission's.
+	 * @param observations The observations packed one after the other, each of this HMM's dimension.
+	 * @param sequenceLength The number of observations.
+	 * @param table Filled with the ln emission densities [state * sequenceLength + t].
+	 * @param columns Scratch space for the transposed observations, at least dimension * sequenceLength long.
+	 */
+	void lnEmissionTable(double[] observations, int sequenceLength, double[] table, double[] columns) {
+		final int dim = this.dimension;
+		final int len = sequenceLength;
+		for (int t = 0; t < len; t++) {
+			for (int i = 0; i < dim; i++) {
+				columns[i * len + t] = observations[t * dim + i];
+			}
+		}
+		
+		for (int state = 0; state < this.numStates; state++) {
+			if (this.diagonal) {
+				this.lnEmissionRowDiagonal(state, columns, len, table);
+			}
+			else if (dim == 3) {
+				this.lnEmissionRow3(state, columns, len, table);
+			}
+			else if (dim == 6) {
+				this.lnEmissionRow6(state, columns, len, table);
+			}
+			else {
+				for (int t = 0; t < len; t++) {
+					table[state * len + t] = this.lnEmissionN(state, observations, t * dim);
+				}
+			}
+		}
+	}
+	
+	private void lnEmissionRow3(int state, double[] columns, int len, double[] table) {
+		final double[] m = this.means;
+		final double[] l = this.invCholesky;
+		final int mi = state * 3;
+		final int li = state * 6;
+		final double m0 = m[mi], m1 = m[mi + 1], m2 = m[mi + 2];
+		final double l0 = l[li], l1 = l[li + 1], l2 = l[li + 2], l3 = l[li + 3], l4 = l[li + 4], l5 = l[li + 5];
+		final double logNormalizer = this.logNormalizers[state];
+		final int row = state * len;
+		
+		for (int t = 0; t < len; t++) {
+			final double d0 = columns[t]           - m0;
+			final double d1 = columns[len + t]     - m1;
+			final double d2 = columns[2 * len + t] - m2;
+			
+			final double z0 = l0 * d0;
+			final double z1 = l1 * d0 + l2 * d1;
+			final double z2 = l3 * d0 + l4 * d1 + l5 * d2;
+			
+			table[row + t] = logNormalizer - 0.5 * (z0 * z0 + z1 * z1 + z2 * z2);
+		}
+	}
+	
+	private void lnEmissionRow6(int state, double[] columns, int len, double[] table) {
+		final double[] m = this.means;
+		final double[] l = this.invCholesky;
+		final int mi = state * 6;
+		final int li = state * 21;
+		final double m0 = m[mi], m1 = m[mi + 1], m2 = m[mi + 2], m3 = m[mi + 3], m4 = m[mi + 4], m5 = m[mi + 5];
+		final double l0  = l[li],      l1  = l[li + 1],  l2  = l[li + 2],  l3  = l[li + 3],  l4  = l[li + 4];
+		final double l5  = l[li + 5],  l6  = l[li + 6],  l7  = l[li + 7],  l8  = l[li + 8],  l9  = l[li + 9];
+		final double l10 = l[li + 10], l11 = l[li + 11], l12 = l[li + 12], l13 = l[li + 13], l14 = l[li + 14];
+		final double l15 = l[li + 15], l16 = l[li + 16], l17 = l[li + 17], l18 = l[li + 18], l19 = l[li + 19];
+		final double l20 = l[li + 20];
+		final double logNormalizer = this.logNormalizers[state];
+		final int row = state * len;
+		
+		for (int t = 0; t < len; t++) {
+			final double d0 = columns[t]           - m0;
+			final double d1 = columns[len + t]     - m1;
+			final double d2 = columns[2 * len + t] - m2;
+			final double d3 = columns[3 * len + t] - m3;
+			final double d4 = columns[4 * len + t] - m4;
+			final double d5 = columns[5 * len + t] - m5;
+			
+			final double z0 = l0  * d0;
+			final double z1 = l1  * d0 + l2  * d1;
+			final double z2 = l3  * d0 + l4  * d1 + l5  * d2;
+			final double z3 = l6  * d0 + l7  * d1 + l8  * d2 + l9  * d3;
+			final double z4 = l10 * d0 + l11 * d1 + l12 * d2 + l13 * d3 + l14 * d4;
+			final double z5 = l15 * d0 + l16 * d1 + l17 * d2 + l18 * d3 + l19 * d4 + l20 * d5;
+			
+			table[row + t] = logNormalizer - 0.5 * (z0 * z0 + z1 * z1 + z2 * z2 + z3 * z3 + z4 * z4 + z5 * z5);
+		}
+	}
+	
+	private void lnEmissionRowDiagonal(int state, double[] columns, int len, double[] table) {
+		final int meanOffset = state * this.dimension;
+		final int row = state * len;
+		
+		// The quadratic forms are accumulated in the table
+		for (int t = 0; t < len; t++) {
+			table[row + t] = 0.0;
+		}
+		for (int i = 0; i < this.dimension; i++) {
+			final double mean = this.means[meanOffset + i];
+			final double invStdDev = this.invStdDevs[meanOffset + i];
+			final int column = i * len;
+			for (int t = 0; t < len; t++) {
+				final double z = (columns[column + t] - mean) * invStdDev;
+				table[row + t] += z * z;
+			}
+		}
+		
+		final double logNormalizer = this.logNormalizers[state];
+		for (int t = 0; t < len; t++) {
+			table[row + t] = logNormalizer - 0.5 * table[row + t];
+		}
+	}
+	
+	private static boolean isDiagonal(double[][] matrix) {
+		for (int r = 0; r < matrix.length; r++) {
+			for (int c = 0; c < matrix[r].length; c++) {
+				if (r != c && matrix[r][c] != 0.0) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Cholesky factors the given covariance matrix.
+	 * @return The lower triangular L, where covariance = L * L^T.
+	 * @throws IllegalArgumentException If the matrix isn't (numerically) positive definite.
+	 */
+	private static double[][] choleskyFactor(double[][] covariance, int state) {
+		int n = covariance.length;
+		double[][] l = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j <= i; j++) {
+				double sum = covariance[i][j];
+				for (int k = 0; k < j; k++) {
+					sum -= l[i][k] * l[j][k];
+				}
+				if (i == j) {
+					if (!(sum > 0.0)) {
+						throw new IllegalArgumentException("Covariance matrix of state " + state + " is not positive definite.");
+					}
+					l[i][i] = Math.sqrt(sum);
+				}
+				else {
+					l[i][j] = sum / l[j][j];
+				}
+			}
+		}
+		return l;
+	}
+	
+	/**
+	 * Inverts the given lower triangular matrix (by forward substitution), the result is lower triangular too.
+	 */
+	private static double[][] invertLowerTriangular(double[][] l) {
+		int n = l.length;
+		double[][] inv = new double[n][n];
+		for (int j = 0; j < n; j++) {
+			inv[j][j] = 1.0 / l[j][j];
+			for (int i = j + 1; i < n; i++) {
+				double sum = 0.0;
+				for (int k = j; k < i; k++) {
+					sum -= l[i][k] * inv[k][j];
+				}
+				inv[i][j] = sum / l[i][i];
+			}
+		}
+		return inv;
+	}
+	
+	/**
+	 * Advances the forward variables by one observation.
+	 * @param alpha The current (scaled) forward variables, ignored if this is the first observation.
+	 * @param nextAlpha Filled with the next (scaled) forward variables.
+	 * @param observations Holds the observation, starting at the given offset.
+	 * @param offset Where the observation starts.
+	 * @param isFirst Whether this is the first observation of the sequence.
+	 * @return The ln of the scaling factor of this step: the sum of these over a sequence is its ln probability.
+	 */
+	double forwardStep(double[] alpha, double[] nextAlpha, double[] observations, int offset, boolean isFirst) {
+		// Evaluate the emissions in log space first, so that we can normalize them by the largest one
+		for (int j = 0; j < this.numStates; j++) {
+			nextAlpha[j] = this.lnEmission(j, observations, offset);
+		}
+		return this.forwardStep(alpha, nextAlpha, isFirst);
+	}
+	
+	/**
+	 * Advances the forward variables by one observation whose ln emission densities have already been evaluated.
+	 * @param alpha The current (scaled) forward variables, ignored if this is the first observation.
+	 * @param nextAlpha Holds the ln emission density of each state, filled with the next (scaled) forward variables.
+	 * @param isFirst Whether this is the first observation of the sequence.
+	 * @return The ln of the scaling factor of this step.
+	 */
+	private double forwardStep(double[] alpha, double[] nextAlpha, boolean isFirst) {
+		final int n = this.numStates;
+		
+		double maxLnEmission = Double.NEGATIVE_INFINITY;
+		for (int j = 0; j < n; j++) {
+			if (nextAlpha[j] > maxLnEmission) {
+				maxLnEmission = nextAlpha[j];
+			}
+		}
+		
+		double scale = 0.0;
+		for (int j = 0; j < n; j++) {
+			double emission = Math.exp(nextAlpha[j] - maxLnEmission);
+			double sum;
+			if (isFirst) {
+				sum = this.pi[j];
+			}
+			else {
+				sum = 0.0;
+				for (int i = 0; i < n; i++) {
+					sum += alpha[i] * this.transitions[i * n + j];
+				}
+			}
+			nextAlpha[j] = sum * emission;
+			scale += nextAlpha[j];
+		}
+		
+		if (!(scale > 0.0)) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		for (int j = 0; j < n; j++) {
+			nextAlpha[j] /= scale;
+		}
+		return Math.log(scale) + maxLnEmission;
+	}
+	
+	/**
+	 * Advances the forward variables by one observation like forwardStep does, but only keeps the states
+	 * whose share of the (predicted) probability mass is within the given beam of the most likely state's. The
+	 * other states are dropped to zero without evaluating their emissions, so the resulting ln probability
+	 * is a (very slight, for a narrow beam) underestimate.
+	 * @param alpha The current (scaled) forward variables, ignored if this is the first observation.
+	 * @param nextAlpha Filled with the next (scaled) forward variables.
+	 * @param lnEmissions Scratch space for the emissions, at least as long as the number of states.
+	 * @param observations Holds the observation, starting at the given offset.
+	 * @param offset Where the observation starts.
+	 * @param isFirst Whether this is the first observation of the sequence.
+	 * @param beam States with less than this fraction of the most likely state's mass are pruned, in [0, 1).
+	 * @return The ln of the scaling factor of this step.
+	 */
+	double prunedForwardStep(double[] alpha, double[] nextAlpha, double[] lnEmissions, double[] observations, int offset,
+			boolean isFirst, double beam) {
+		
+		final int n = this.numStates;
+		
+		// Figure out how much mass flows into each state before looking at the observation
+		double maxPredicted = 0.0;
+		for (int j = 0; j < n; j++) {
+			double sum;
+			if (isFirst) {
+				sum = this.pi[j];
+			}
+			else {
+				sum = 0.0;
+				for (int i = 0; i < n; i++) {
+					if (alpha[i] != 0.0) {
+						sum += alpha[i] * this.transitions[i * n + j];
+					}
+				}
+			}
+			nextAlpha[j] = sum;
+			if (sum > maxPredicted) {
+				maxPredicted = sum;
+			}
+		}
+		
+		// Only evaluate the emissions of the states within the beam
+		double cutoff = maxPredicted * beam;
+		double maxLnEmission = Double.NEGATIVE_INFINITY;
+		for (int j = 0; j < n; j++) {
+			if (nextAlpha[j] == 0.0 || nextAlpha[j] < cutoff) {
+				nextAlpha[j] = 0.0;
+				continue;
+			}
+			lnEmissions[j] = this.lnEmission(j, observations, offset);
+			if (lnEmissions[j] > maxLnEmission) {
+				maxLnEmission = lnEmissions[j];
+			}
+		}
+		if (maxLnEmission == Double.NEGATIVE_INFINITY) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		
+		double scale = 0.0;
+		for (int j = 0; j < n; j++) {
+			if (nextAlpha[j] != 0.0) {
+				nextAlpha[j] *= Math.exp(lnEmissions[j] - maxLnEmission);
+				scale += nextAlpha[j];
+			}
+		}
+		
+		if (!(scale > 0.0)) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		for (int j = 0; j < n; j++) {
+			nextAlpha[j] /= scale;
+		}
+		return Math.log(scale) + maxLnEmission;
+	}
+	
+	/**
+	 * Calculates the ln probability of the given sequence of observations (i.e., the forward algorithm).
+	 * @param observations The observations packed one after the other, each of this HMM's dimension.
+	 * @return The ln probability, negative infinity if the sequence is impossible.
+	 */
+	double lnProbability(double[] observations) {
+		final int sequenceLength = observations.length / this.dimension;
+		if (sequenceLength == 0) {
+			return 0.0;
+		}
+		
+		Workspace ws = workspace.get();
+		ws.ensureCapacity(this.numStates);
+		double[] alpha = ws.alpha;
+		double[] nextAlpha = ws.nextAlpha;
+		
+		final boolean batch = batchEmissions;
+		if (batch) {
+			ws.ensureTableCapacity(this.numStates, this.dimension, sequenceLength);
+			this.lnEmissionTable(observations, sequenceLength, ws.emissionTable, ws.columns);
+		}
+		final double[] table = ws.emissionTable;
+		
+		double lnProbability = 0.0;
+		for (int t = 0; t < sequenceLength; t++) {
+			if (batch) {
+				for (int j = 0; j < this.numStates; j++) {
+					nextAlpha[j] = table[j * sequenceLength + t];
+				}
+				lnProbability += this.forwardStep(alpha, nextAlpha, t == 0);
+			}
+			else {
+				lnProbability += this.forwardStep(alpha, nextAlpha, observations, t * this.dimension, t == 0);
+			}
+			if (lnProbability == Double.NEGATIVE_INFINITY) {
+				break;
+			}
+			
+			double[] temp = alpha;
+			alpha = nextAlpha;
+			nextAlpha = temp;
+		}
+		
+		return lnProbability;
+	}
+	
+	/**
+	 * Calculates the ln probability of the given sequence of observations along with its most likely
+	 * sequence of states (i.e., the Viterbi algorithm).
+	 * @param observations The observations packed one after the other, each of this HMM's dimension.
+	 * @return The ln probability of the observations and the most likely state sequence, negative infinity
+	 * if the sequence is impossible.
+	 */
+	double viterbiLnProbability(double[] observations) {
+		final int sequenceLength = observations.length / this.dimension;
+		if (sequenceLength == 0) {
+			return 0.0;
+		}
+		
+		final int n = this.numStates;
+		Workspace ws = workspace.get();
+		ws.ensureCapacity(n);
+		double[] delta = ws.alpha;
+		double[] nextDelta = ws.nextAlpha;
+		
+		final boolean batch = batchEmissions;
+		if (batch) {
+			ws.ensureTableCapacity(n, this.dimension, sequenceLength);
+			this.lnEmissionTable(observations, sequenceLength, ws.emissionTable, ws.columns);
+		}
+		final double[] table = ws.emissionTable;
+		
+		for (int j = 0; j < n; j++) {
+			delta[j] = this.logPi[j] + (batch ? table[j * sequenceLength] : this.lnEmission(j, observations, 0));
+		}
+		
+		for (int t = 1; t < sequenceLength; t++) {
+			for (int j = 0; j < n; j++) {
+				double best = Double.NEGATIVE_INFINITY;
+				for (int i = 0; i < n; i++) {
+					double candidate = delta[i] + this.logTransitions[i * n + j];
+					if (candidate > best) {
+						best = candidate;
+					}
+				}
+				nextDelta[j] = best + (batch ? table[j * sequenceLength + t] : this.lnEmission(j, observations, t * this.dimension));
+			}
+			
+			double[] temp = delta;
+			delta = nextDelta;
+			nextDelta = temp;
+		}
+		
+		double best = Double.NEGATIVE_INFINITY;
+		for (int j = 0; j < n; j++) {
+			if (delta[j] > best) {
+				best = delta[j];
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Builds a random HMM with multivariate Gaussian emissions, along with (in factors) a matrix A for each
+	 * state such that its covariance matrix is A * A^T plus a bit of the identity, for generating observations.
+	 */
+	private static Hmm<ObservationVector> randomHmm(Random random, int numStates, int dimension, boolean diagonal, double[][][] factors) {
+		double[] pi = new double[numStates];
+		double[][] a = new double[numStates][numStates];
+		List<Opdf<ObservationVector>> opdfs = new ArrayList<Opdf<ObservationVector>>(numStates);
+		for (int i = 0; i < numStates; i++) {
+			pi[i] = random.nextDouble();
+			
+			// Left to right, like the gesture HMMs, so that some of the transitions are impossible
+			for (int j = i; j < numStates && j <= i + 2; j++) {
+				a[i][j] = random.nextDouble() + 0.1;
+			}
+			
+			double[] mean = new double[dimension];
+			double[][] covariance = new double[dimension][dimension];
+			factors[i] = new double[dimension][dimension];
+			for (int r = 0; r < dimension; r++) {
+				mean[r] = 4.0 * random.nextGaussian();
+				for (int c = 0; c < dimension; c++) {
+					if (!diagonal || r == c) {
+						factors[i][r][c] = random.nextGaussian();
+					}
+				}
+			}
+			for (int r = 0; r < dimension; r++) {
+				for (int c = 0; c < dimension; c++) {
+					for (int k = 0; k < dimension; k++) {
+						covariance[r][c] += factors[i][r][k] * factors[i][c][k];
+					}
+				}
+				covariance[r][r] += 0.1;
+			}
+			opdfs.add(new OpdfMultiGaussian(mean, covariance));
+		}
+		
+		double piSum = 0.0;
+		for (int i = 0; i < numStates; i++) {
+			piSum += pi[i];
+		}
+		for (int i = 0; i < numStates; i++) {
+			pi[i] /= piSum;
+			double rowSum = 0.0;
+			for (int j = 0; j < numStates; j++) {
+				rowSum += a[i][j];
+			}
+			for (int j = 0; j < numStates; j++) {
+				a[i][j] /= rowSum;
+			}
+		}
+		
+		return new Hmm<ObservationVector>(pi, a, opdfs);
+	}
+	
+	/**
+	 * Generates a sequence of observations by walking the given random HMM (see randomHmm).
+	 */
+	private static List<ObservationVector> randomSequence(Random random, Hmm<ObservationVector> hmm, double[][][] factors, int length) {
+		int dimension = ((OpdfMultiGaussian)hmm.getOpdf(0)).dimension();
+		List<ObservationVector> sequence = new ArrayList<ObservationVector>(length);
+		
+		int state = 0;
+		double p = random.nextDouble();
+		while (state < hmm.nbStates() - 1 && p > hmm.getPi(state)) {
+			p -= hmm.getPi(state++);
+		}
+		for (int t = 0; t < length; t++) {
+			double[] mean = ((OpdfMultiGaussian)hmm.getOpdf(state)).mean();
+			double[] z = new double[dimension];
+			for (int k = 0; k < dimension; k++) {
+				z[k] = random.nextGaussian();
+			}
+			double[] values = new double[dimension];
+			for (int r = 0; r < dimension; r++) {
+				values[r] = mean[r];
+				for (int k = 0; k < dimension; k++) {
+					values[r] += factors[state][r][k] * z[k];
+				}
+			}
+			sequence.add(new ObservationVector(values));
+			
+			p = random.nextDouble();
+			int next = 0;
+			while (next < hmm.nbStates() - 1 && p > hmm.getAij(state, next)) {
+				p -= hmm.getAij(state, next++);
+			}
+			state = next;
+		}
+		return sequence;
+	}
+	
+	private static double relativeDifference(double x, double y) {
+		if (x == y) {
+			return 0.0;
+		}
+		return Math.abs(x - y) / Math.max(1.0, Math.abs(x));
+	}
+	
+	/**
+	 * Checks compiled HMMs against Jahmm: the ln probabilities and Viterbi ln probabilities of random full and
+	 * diagonal HMMs with 3 and 6 dimensional observations must be the same as Jahmm's (give or take rounding), with
+	 * and without the batch kernel, and the unrolled and batch emissions must be exactly the same as the generic ones.
+	 */
+	public static void main(String[] args) {
+		Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 1);
+		final double tolerance = 1e-9;
+		boolean batch = CompiledHmm.getBatchEmissions();
+		boolean passed = true;
+		
+		for (int dimension = 3; dimension <= 6; dimension += 3) {
+			for (int d = 0; d < 2; d++) {
+				boolean diagonal = (d == 1);
+				double maxLnDiff = 0.0;
+				double maxViterbiDiff = 0.0;
+				int numKernelMismatches = 0;
+				
+				for (int h = 0; h < 20; h++) {
+					int numStates = 3 + random.nextInt(8);
+					double[][][] factors = new double[numStates][][];
+					Hmm<ObservationVector> hmm = CompiledHmm.randomHmm(random, numStates, dimension, diagonal, factors);
+					CompiledHmm compiled = CompiledHmm.compile(hmm);
+					if (compiled.diagonal != diagonal) {
+						System.out.println("HMM compiled as " + (compiled.diagonal ? "diagonal" : "full") + " covariance.");
+						passed = false;
+					}
+					
+					for (int n = 0; n < 10; n++) {
+						List<ObservationVector> sequence = CompiledHmm.randomSequence(random, hmm, factors, 5 + random.nextInt(40));
+						double[] observations = new double[sequence.size() * dimension];
+						for (int t = 0; t < sequence.size(); t++) {
+							System.arraycopy(sequence.get(t).values(), 0, observations, t * dimension, dimension);
+						}
+						
+						double lnProbability = hmm.lnProbability(sequence);
+						double viterbiLnProbability = new ViterbiCalculator(sequence, hmm).lnProbability();
+						for (int b = 0; b < 2; b++) {
+							CompiledHmm.setBatchEmissions(b == 1);
+							maxLnDiff = Math.max(maxLnDiff,
+									CompiledHmm.relativeDifference(lnProbability, compiled.lnProbability(observations)));
+							maxViterbiDiff = Math.max(maxViterbiDiff,
+									CompiledHmm.relativeDifference(viterbiLnProbability, compiled.viterbiLnProbability(observations)));
+						}
+						
+						// Every emission kernel has to agree exactly with the generic triangular loop
+						double[] table = new double[numStates * sequence.size()];
+						compiled.lnEmissionTable(observations, sequence.size(), table, new double[observations.length]);
+						for (int state = 0; state < numStates; state++) {
+							for (int t = 0; t < sequence.size(); t++) {
+								double generic = compiled.lnEmissionN(state, observations, t * dimension);
+								if (compiled.lnEmission(state, observations, t * dimension) != generic ||
+									table[state * sequence.size() + t] != generic) {
+									numKernelMismatches++;
+								}
+							}
+						}
+					}
+				}
+				
+				String name = dimension + "-D " + (diagonal ? "diagonal" : "full");
+				System.out.println(name + ": max ln probability difference " + maxLnDiff + ", max Viterbi difference " +
+						maxViterbiDiff + ", kernel mismatches " + numKernelMismatches);
+				if (!(maxLnDiff <= tolerance && maxViterbiDiff <= tolerance) || numKernelMismatches != 0) {
+					passed = false;
+				}
+			}
+		}
+		
+		CompiledHmm.setBatchEmissions(batch);
+		System.out.println(passed);
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+}
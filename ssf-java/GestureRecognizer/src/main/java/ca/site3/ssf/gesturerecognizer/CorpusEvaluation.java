@@ -0,0 +1,296 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates a gesture recognition engine against a corpus of recorded gestures, without the GestureRecorderGUI.
+ * Every instance is recognized the way the game would recognize it (in parallel batches, see
+ * GestureRecognizer.recognizeBatch) and the report has the confusion matrix, the precision and recall of each
+ * gesture type and the recognition latencies (p50, p99, max and a histogram), as CSV or JSON.
+ * 
+ * Usage: CorpusEvaluation engine_file corpus_dir [csv|json] [output_file] [max_instances_per_dir]
+ * (e.g., data/gesture/gesture_recognizer_engine.eng data/gesture json report.json). The corpus directory is
+ * searched recursively (data/gesture holds both recorded corpora), the report goes to standard output when no
+ * output file is given. The recognizer logs every gesture at INFO level, so run this with the logging level
+ * turned down for meaningful latencies.
+ */
+class CorpusEvaluation {
+	
+	// The upper bounds of the latency histogram's buckets, in microseconds (the last bucket has no upper bound)
+	private static final long[] LATENCY_BUCKETS_US = { 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+	private static final int NUM_WARM_UP_INSTANCES = 1000;
+	
+	private static final int NUM_GESTURE_TYPES = GestureType.values().length;
+	// The confusion matrix's column for instances that weren't recognized as any gesture
+	private static final int NOT_RECOGNIZED = NUM_GESTURE_TYPES;
+	
+	private final int[][] confusion = new int[NUM_GESTURE_TYPES][NUM_GESTURE_TYPES + 1]; // [expected][recognized]
+	private final long[] latencies;
+	private final long[] latencyHistogram = new long[LATENCY_BUCKETS_US.length + 1];
+	private long elapsedNanos = 0;
+	private int numCorrect = 0;
+	
+	private CorpusEvaluation(int numInstances) {
+		this.latencies = new long[numInstances];
+	}
+	
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: CorpusEvaluation engine_file corpus_dir [csv|json] [output_file] [max_instances_per_dir]");
+			return;
+		}
+		
+		String format = args.length > 2 ? args[2] : "csv";
+		if (!format.equals("csv") && !format.equals("json")) {
+			System.out.println("Unknown report format: " + format + ", expected csv or json");
+			return;
+		}
+		File outputFile = args.length > 3 ? new File(args[3]) : null;
+		int maxInstancesPerDir = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+		
+		GestureRecognizer recognizer = new GestureRecognizer();
+		if (!recognizer.loadRecognizerEngine(new File(args[0]))) {
+			System.err.println("Failed to load gesture recognizer engine: " + args[0]);
+			return;
+		}
+		
+		GestureCorpus corpus = GestureCorpus.load(new File(args[1]), maxInstancesPerDir);
+		System.err.println("Loaded " + corpus.size() + " gesture instances.");
+		
+		CorpusEvaluation evaluation = CorpusEvaluation.evaluate(recognizer, corpus);
+		try {
+			Writer writer = outputFile == null ? new OutputStreamWriter(System.out) : new FileWriter(outputFile);
+			PrintWriter out = new PrintWriter(writer);
+			if (format.equals("json")) {
+				evaluation.writeJson(out);
+			}
+			else {
+				evaluation.writeCsv(out);
+			}
+			out.flush();
+			if (outputFile != null) {
+				out.close();
+			}
+		}
+		catch (IOException ex) {
+			System.err.println("Failed to write the report: " + ex.getMessage());
+			return;
+		}
+		
+		System.err.println(String.format("Accuracy %5.1f%%, latency p50 %7.1f us, p99 %7.1f us, max %7.1f us",
+				100.0 * evaluation.numCorrect / Math.max(1, corpus.size()),
+				CovarianceEvaluation.percentile(evaluation.latencies, 0.5) / 1e3,
+				CovarianceEvaluation.percentile(evaluation.latencies, 0.99) / 1e3,
+				CovarianceEvaluation.percentile(evaluation.latencies, 1.0) / 1e3));
+	}
+	
+	/**
+	 * Recognizes every instance in the corpus, the player gestures in one batch and the ringmaster gestures in another.
+	 */
+	static CorpusEvaluation evaluate(GestureRecognizer recognizer, GestureCorpus corpus) {
+		List<Integer> playerIndices = new ArrayList<Integer>();
+		List<Integer> ringmasterIndices = new ArrayList<Integer>();
+		for (int i = 0; i < corpus.size(); i++) {
+			if (corpus.getGestureType(i).getIsRingmasterGesture()) {
+				ringmasterIndices.add(i);
+			}
+			else {
+				playerIndices.add(i);
+			}
+		}
+		
+		// Warm up first so the latencies aren't dominated by the JIT
+		List<GestureInstance> warmUpInstances = new ArrayList<GestureInstance>();
+		for (int i = 0; i < Math.min(NUM_WARM_UP_INSTANCES, playerIndices.size()); i++) {
+			warmUpInstances.add(corpus.getInstance(playerIndices.get(i)));
+		}
+		recognizer.recognizeBatch(warmUpInstances, false);
+		
+		CorpusEvaluation evaluation = new CorpusEvaluation(corpus.size());
+		evaluation.recognize(recognizer, corpus, playerIndices, false);
+		evaluation.recognize(recognizer, corpus, ringmasterIndices, true);
+		return evaluation;
+	}
+	
+	private void recognize(GestureRecognizer recognizer, GestureCorpus corpus, List<Integer> indices, boolean isRingmasterGesture) {
+		List<GestureInstance> instances = new ArrayList<GestureInstance>(indices.size());
+		for (int index : indices) {
+			instances.add(corpus.getInstance(index));
+		}
+		
+		BatchRecognitionResult result = recognizer.recognizeBatch(instances, isRingmasterGesture);
+		this.elapsedNanos += result.getElapsedNanos();
+		for (int i = 0; i < result.size(); i++) {
+			int index = indices.get(i);
+			GestureType expected = corpus.getGestureType(index);
+			GestureType actual = result.getRecognizedGesture(i);
+			
+			this.confusion[expected.ordinal()][actual == null ? NOT_RECOGNIZED : actual.ordinal()]++;
+			if (actual == expected) {
+				this.numCorrect++;
+			}
+			
+			long latency = result.getRecognitionNanos(i);
+			this.latencies[index] = latency;
+			int bucket = 0;
+			while (bucket < LATENCY_BUCKETS_US.length && latency > LATENCY_BUCKETS_US[bucket] * 1000) {
+				bucket++;
+			}
+			this.latencyHistogram[bucket]++;
+		}
+	}
+	
+	/**
+	 * @return The number of instances of the given gesture type in the corpus.
+	 */
+	private int getNumExpected(int gestureType) {
+		int count = 0;
+		for (int j = 0; j <= NUM_GESTURE_TYPES; j++) {
+			count += this.confusion[gestureType][j];
+		}
+		return count;
+	}
+	
+	/**
+	 * @return The number of instances that were recognized as the given gesture type.
+	 */
+	private int getNumRecognized(int gestureType) {
+		int count = 0;
+		for (int i = 0; i < NUM_GESTURE_TYPES; i++) {
+			count += this.confusion[i][gestureType];
+		}
+		return count;
+	}
+	
+	/**
+	 * @return Whether the given gesture type was either in the corpus or recognized, only those are reported.
+	 */
+	private boolean isReported(int gestureType) {
+		return this.getNumExpected(gestureType) > 0 || this.getNumRecognized(gestureType) > 0;
+	}
+	
+	private static double ratio(int numerator, int denominator) {
+		return denominator == 0 ? 0.0 : numerator / (double)denominator;
+	}
+	
+	private static String columnName(int column) {
+		return column == NOT_RECOGNIZED ? "NONE" : GestureType.values()[column].name();
+	}
+	
+	void writeCsv(PrintWriter out) {
+		out.println("instances,correct,accuracy,elapsed_ms");
+		out.println(this.latencies.length + "," + this.numCorrect + "," + ratio(this.numCorrect, this.latencies.length) +
+				"," + this.elapsedNanos / 1000000);
+		out.println();
+		
+		// Rows are the recorded gestures, columns are what they were recognized as
+		StringBuilder header = new StringBuilder("expected");
+		for (int j = 0; j <= NUM_GESTURE_TYPES; j++) {
+			if (j == NOT_RECOGNIZED || this.isReported(j)) {
+				header.append(',').append(columnName(j));
+			}
+		}
+		out.println(header);
+		for (int i = 0; i < NUM_GESTURE_TYPES; i++) {
+			if (this.getNumExpected(i) == 0) {
+				continue;
+			}
+			StringBuilder row = new StringBuilder(columnName(i));
+			for (int j = 0; j <= NUM_GESTURE_TYPES; j++) {
+				if (j == NOT_RECOGNIZED || this.isReported(j)) {
+					row.append(',').append(this.confusion[i][j]);
+				}
+			}
+			out.println(row);
+		}
+		out.println();
+		
+		out.println("gesture,instances,recognized,true_positives,precision,recall");
+		for (int i = 0; i < NUM_GESTURE_TYPES; i++) {
+			if (!this.isReported(i)) {
+				continue;
+			}
+			int truePositives = this.confusion[i][i];
+			out.println(columnName(i) + "," + this.getNumExpected(i) + "," + this.getNumRecognized(i) + "," + truePositives + "," +
+					ratio(truePositives, this.getNumRecognized(i)) + "," + ratio(truePositives, this.getNumExpected(i)));
+		}
+		out.println();
+		
+		out.println("p50_us,p99_us,max_us");
+		out.println(CovarianceEvaluation.percentile(this.latencies, 0.5) / 1e3 + "," +
+				CovarianceEvaluation.percentile(this.latencies, 0.99) / 1e3 + "," +
+				CovarianceEvaluation.percentile(this.latencies, 1.0) / 1e3);
+		out.println();
+		
+		out.println("latency_up_to_us,instances");
+		for (int i = 0; i < this.latencyHistogram.length; i++) {
+			out.println((i < LATENCY_BUCKETS_US.length ? Long.toString(LATENCY_BUCKETS_US[i]) : "") + "," + this.latencyHistogram[i]);
+		}
+	}
+	
+	void writeJson(PrintWriter out) {
+		out.println("{");
+		out.println("  \"instances\": " + this.latencies.length + ",");
+		out.println("  \"correct\": " + this.numCorrect + ",");
+		out.println("  \"accuracy\": " + ratio(this.numCorrect, this.latencies.length) + ",");
+		out.println("  \"elapsedMs\": " + this.elapsedNanos / 1000000 + ",");
+		
+		// Each recorded gesture maps to what its instances were recognized as
+		out.println("  \"confusion\": {");
+		boolean first = true;
+		for (int i = 0; i < NUM_GESTURE_TYPES; i++) {
+			if (this.getNumExpected(i) == 0) {
+				continue;
+			}
+			StringBuilder row = new StringBuilder(first ? "    " : ",\n    ");
+			row.append('"').append(columnName(i)).append("\": {");
+			boolean firstColumn = true;
+			for (int j = 0; j <= NUM_GESTURE_TYPES; j++) {
+				if (this.confusion[i][j] == 0) {
+					continue;
+				}
+				row.append(firstColumn ? "" : ", ").append('"').append(columnName(j)).append("\": ").append(this.confusion[i][j]);
+				firstColumn = false;
+			}
+			out.print(row.append('}'));
+			first = false;
+		}
+		out.println();
+		out.println("  },");
+		
+		out.println("  \"gestures\": [");
+		first = true;
+		for (int i = 0; i < NUM_GESTURE_TYPES; i++) {
+			if (!this.isReported(i)) {
+				continue;
+			}
+			int truePositives = this.confusion[i][i];
+			out.print((first ? "" : ",\n") + "    { \"gesture\": \"" + columnName(i) + "\", \"instances\": " + this.getNumExpected(i) +
+					", \"recognized\": " + this.getNumRecognized(i) + ", \"truePositives\": " + truePositives +
+					", \"precision\": " + ratio(truePositives, this.getNumRecognized(i)) +
+					", \"recall\": " + ratio(truePositives, this.getNumExpected(i)) + " }");
+			first = false;
+		}
+		out.println();
+		out.println("  ],");
+		
+		out.println("  \"latencyUs\": { \"p50\": " + CovarianceEvaluation.percentile(this.latencies, 0.5) / 1e3 +
+				", \"p99\": " + CovarianceEvaluation.percentile(this.latencies, 0.99) / 1e3 +
+				", \"max\": " + CovarianceEvaluation.percentile(this.latencies, 1.0) / 1e3 + " },");
+		
+		out.print("  \"latencyHistogram\": [");
+		for (int i = 0; i < this.latencyHistogram.length; i++) {
+			out.print((i == 0 ? "" : ", ") + "{ \"upToUs\": " + (i < LATENCY_BUCKETS_US.length ? Long.toString(LATENCY_BUCKETS_US[i]) : "null") +
+					", \"instances\": " + this.latencyHistogram[i] + " }");
+		}
+		out.println("]");
+		out.println("}");
+	}
+}
@@ -0,0 +1,150 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports the accuracy and latency trade-off between full and diagonal covariance emissions on a corpus of
+ * recorded gestures. For each covariance type, every gesture type is trained from scratch on the first
+ * recordings of that gesture and then every gesture type's next recordings are recognized (as the game would).
+ * The per-gesture accuracies can be used to decide which gestures are worth switching to diagonal covariance
+ * (see GestureRecognizer.setCovarianceType).
+ * 
+ * Usage: CovarianceEvaluation corpus_dir [num_training_instances_per_gesture] [num_test_instances_per_gesture]
+ * (e.g., data/gesture/ssf_gestures_2013 40 20). The recognizer logs every gesture at INFO level, so run this with
+ * the logging level turned down for meaningful latencies.
+ */
+class CovarianceEvaluation {
+	
+	private static class Result {
+		final Map<GestureType, int[]> numCorrect = new EnumMap<GestureType, int[]>(GestureType.class); // {correct, total}
+		long[] latencies;
+		int totalCorrect = 0;
+	}
+	
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: CovarianceEvaluation corpus_dir [num_training_instances_per_gesture] [num_test_instances_per_gesture]");
+			return;
+		}
+		
+		int numTraining = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+		int numTest     = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		
+		// Split each gesture type's recordings into training and test instances
+		GestureCorpus corpus = GestureCorpus.load(new File(args[0]), numTraining + numTest);
+		Map<GestureType, GestureDataSet> trainingSets = new EnumMap<GestureType, GestureDataSet>(GestureType.class);
+		List<Integer> testIndices = new ArrayList<Integer>();
+		Map<GestureType, Integer> numSeen = new EnumMap<GestureType, Integer>(GestureType.class);
+		for (int i = 0; i < corpus.size(); i++) {
+			GestureType gestureType = corpus.getGestureType(i);
+			int count = numSeen.containsKey(gestureType) ? numSeen.get(gestureType) : 0;
+			numSeen.put(gestureType, count + 1);
+			
+			if (count < numTraining) {
+				if (!trainingSets.containsKey(gestureType)) {
+					trainingSets.put(gestureType, new GestureDataSet());
+				}
+				trainingSets.get(gestureType).addGestureInstance(corpus.getInstance(i));
+			}
+			else if (count < numTraining + numTest) {
+				testIndices.add(i);
+			}
+		}
+		System.out.println("Training " + trainingSets.size() + " gestures, testing on " + testIndices.size() + " instances.");
+		
+		Map<CovarianceType, Result> results = new EnumMap<CovarianceType, Result>(CovarianceType.class);
+		for (CovarianceType covarianceType : CovarianceType.values()) {
+			GestureRecognizer recognizer = new GestureRecognizer();
+			recognizer.setParallelScoring(false);
+			for (Map.Entry<GestureType, GestureDataSet> entry : trainingSets.entrySet()) {
+				recognizer.setCovarianceType(entry.getKey(), covarianceType);
+				// Training removes unusable instances from the data set, so give each covariance type its own copy
+				GestureDataSet dataSet = new GestureDataSet();
+				for (int i = 0; i < entry.getValue().getNumGestureInstances(); i++) {
+					dataSet.addGestureInstance(entry.getValue().getGestureInstanceAt(i));
+				}
+				if (!recognizer.trainGesture(entry.getKey(), dataSet)) {
+					System.out.println("Failed to train " + entry.getKey() + " with " + covarianceType + " covariance.");
+				}
+			}
+			results.put(covarianceType, CovarianceEvaluation.test(recognizer, corpus, testIndices));
+		}
+		
+		System.out.println(String.format("%-34s %12s %12s", "Gesture", "Full", "Diagonal"));
+		for (GestureType gestureType : GestureType.values()) {
+			if (!results.get(CovarianceType.FULL).numCorrect.containsKey(gestureType)) {
+				continue;
+			}
+			StringBuilder line = new StringBuilder(String.format("%-34s", gestureType));
+			for (CovarianceType covarianceType : CovarianceType.values()) {
+				int[] counts = results.get(covarianceType).numCorrect.get(gestureType);
+				line.append(String.format(" %6d/%-5d", counts[0], counts[1]));
+			}
+			System.out.println(line);
+		}
+		
+		for (CovarianceType covarianceType : CovarianceType.values()) {
+			Result result = results.get(covarianceType);
+			System.out.println(String.format("%-8s accuracy %5.1f%%, latency p50 %7.1f us, p99 %7.1f us, max %7.1f us",
+					covarianceType, 100.0 * result.totalCorrect / Math.max(1, testIndices.size()),
+					CovarianceEvaluation.percentile(result.latencies, 0.5) / 1e3,
+					CovarianceEvaluation.percentile(result.latencies, 0.99) / 1e3,
+					CovarianceEvaluation.percentile(result.latencies, 1.0) / 1e3));
+		}
+	}
+	
+	private static Result test(GestureRecognizer recognizer, GestureCorpus corpus, List<Integer> testIndices) {
+		// Warm up first so the latencies aren't dominated by the JIT
+		for (int index : testIndices) {
+			CovarianceEvaluation.recognize(recognizer, corpus, index);
+		}
+		
+		Result result = new Result();
+		result.latencies = new long[testIndices.size()];
+		for (int i = 0; i < testIndices.size(); i++) {
+			int index = testIndices.get(i);
+			GestureType expected = corpus.getGestureType(index);
+			
+			long startTime = System.nanoTime();
+			GestureType actual = CovarianceEvaluation.recognize(recognizer, corpus, index);
+			result.latencies[i] = System.nanoTime() - startTime;
+			
+			int[] counts = result.numCorrect.get(expected);
+			if (counts == null) {
+				counts = new int[2];
+				result.numCorrect.put(expected, counts);
+			}
+			counts[1]++;
+			if (actual == expected) {
+				counts[0]++;
+				result.totalCorrect++;
+			}
+		}
+		return result;
+	}
+	
+	private static GestureType recognize(GestureRecognizer recognizer, GestureCorpus corpus, int index) {
+		if (corpus.getGestureType(index).getIsRingmasterGesture()) {
+			return recognizer.recognizeRingmasterGestureAsGameWould(corpus.getInstance(index));
+		}
+		return recognizer.recognizePlayerGestureAsGameWould(corpus.getInstance(index));
+	}
+	
+	/**
+	 * @return The smallest of the given values that at least the given fraction of them are less than or equal to.
+	 */
+	static double percentile(long[] values, double fraction) {
+		if (values.length == 0) {
+			return 0.0;
+		}
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int index = (int)Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+}
@@ -0,0 +1,9 @@
+package ca.site3.ssf.gesturerecognizer;
+
+/**
+ * The kind of covariance matrices that the Gaussian emissions of a gesture's recognizer (HMM) have.
+ */
+public enum CovarianceType {
+	FULL,     // Full covariance matrices: correlations between the axes (and hands) are modelled
+	DIAGONAL  // Diagonal covariance matrices: every axis is independent, cheaper to evaluate and needs less training data
+}
@@ -0,0 +1,68 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.io.File;
+import java.io.StringWriter;
+
+/**
+ * Converts a text gesture recognition engine file (.eng) into the binary engine format (see BinaryEngineFormat),
+ * then loads the binary engine back and checks that it holds exactly the same recognizers.
+ * 
+ * Usage: EngineFileConverter engine_file [binary_engine_file]
+ * (e.g., data/gesture/gesture_recognizer_engine.eng, which is written to data/gesture/gesture_recognizer_engine.engb).
+ */
+class EngineFileConverter {
+	
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: EngineFileConverter engine_file [binary_engine_file]");
+			return;
+		}
+		
+		File textFile = new File(args[0]);
+		File binaryFile;
+		if (args.length > 1) {
+			binaryFile = new File(args[1]);
+		}
+		else {
+			String path = textFile.getPath();
+			if (path.endsWith(".eng")) {
+				path = path.substring(0, path.length() - ".eng".length());
+			}
+			binaryFile = new File(path + BinaryEngineFormat.FILE_EXTENSION);
+		}
+		
+		GestureRecognizer textEngine = new GestureRecognizer();
+		long startTime = System.nanoTime();
+		if (!textEngine.loadRecognizerEngine(textFile)) {
+			System.out.println("Failed to load gesture recognizer engine: " + textFile.getPath());
+			return;
+		}
+		double textLoadTime = (System.nanoTime() - startTime) / 1e6;
+		
+		if (!textEngine.saveBinaryRecognizerEngine(binaryFile)) {
+			System.out.println("Failed to write binary gesture recognizer engine: " + binaryFile.getPath());
+			return;
+		}
+		
+		GestureRecognizer binaryEngine = new GestureRecognizer();
+		startTime = System.nanoTime();
+		if (!binaryEngine.loadRecognizerEngine(binaryFile)) {
+			System.out.println("Failed to load the binary gesture recognizer engine back: " + binaryFile.getPath());
+			return;
+		}
+		double binaryLoadTime = (System.nanoTime() - startTime) / 1e6;
+		
+		// Both engines should save to exactly the same text
+		StringWriter textEngineStr = new StringWriter();
+		StringWriter binaryEngineStr = new StringWriter();
+		textEngine.saveRecognizerEngine(textEngineStr);
+		binaryEngine.saveRecognizerEngine(binaryEngineStr);
+		if (textEngineStr.toString().equals(binaryEngineStr.toString()) == false) {
+			System.out.println("The binary gesture recognizer engine doesn't match the original: " + binaryFile.getPath());
+			return;
+		}
+		
+		System.out.println(String.format("Wrote %s (%d bytes, loaded in %.1f ms) from %s (%d bytes, loaded in %.1f ms).",
+				binaryFile.getPath(), binaryFile.length(), binaryLoadTime, textFile.getPath(), textFile.length(), textLoadTime));
+	}
+}
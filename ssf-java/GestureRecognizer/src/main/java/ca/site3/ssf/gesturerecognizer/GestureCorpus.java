@@ -0,0 +1,217 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A set of recorded gesture instances (.ins files, as saved by the GestureRecorderGUI) along with the
+ * gesture type each one was recorded as. The gesture type of a file is taken from its name (the recorder
+ * names files after the gesture type, e.g., "LEFT_JAB3 (12).ins") or, failing that, from the name of the
+ * folder it's in (see GestureType.getParentDirNameList).
+ * 
+ * The files are parsed in parallel, on as many threads as there are processors.
+ */
+class GestureCorpus {
+	
+	private static Logger logger = LoggerFactory.getLogger(GestureCorpus.class);
+	
+	static final String GESTURE_INSTANCE_FILE_EXTENSION = ".ins";
+	
+	private final List<GestureInstance> instances = new ArrayList<GestureInstance>();
+	private final List<GestureType> gestureTypes  = new ArrayList<GestureType>();
+	private final List<File> files                = new ArrayList<File>();
+	
+	/**
+	 * Loads every gesture instance file under the given directory (recursively).
+	 * @param directory The corpus directory.
+	 * @param maxInstancesPerDir The most files to load from each directory (in file name order), 0 for no limit.
+	 * @return The loaded corpus.
+	 */
+	static GestureCorpus load(File directory, int maxInstancesPerDir) {
+		List<File> dirFiles = new ArrayList<File>();
+		List<GestureType> dirGestureTypes = new ArrayList<GestureType>();
+		GestureCorpus.findFiles(directory, maxInstancesPerDir, dirFiles, dirGestureTypes);
+		
+		GestureInstance[] dirInstances = GestureCorpus.readInstances(dirFiles);
+		GestureCorpus corpus = new GestureCorpus();
+		for (int i = 0; i < dirInstances.length; i++) {
+			if (dirInstances[i] != null) {
+				corpus.instances.add(dirInstances[i]);
+				corpus.gestureTypes.add(dirGestureTypes.get(i));
+				corpus.files.add(dirFiles.get(i));
+			}
+		}
+		return corpus;
+	}
+	
+	int size() {
+		return this.instances.size();
+	}
+	
+	GestureInstance getInstance(int index) {
+		return this.instances.get(index);
+	}
+	
+	/**
+	 * @return The gesture type the instance at the given index was recorded as, never null.
+	 */
+	GestureType getGestureType(int index) {
+		return this.gestureTypes.get(index);
+	}
+	
+	File getFile(int index) {
+		return this.files.get(index);
+	}
+	
+	List<GestureInstance> getInstances() {
+		return Collections.unmodifiableList(this.instances);
+	}
+	
+	/**
+	 * Finds every gesture instance file under the given directory (recursively) that the gesture type
+	 * can be told for, in file name order.
+	 */
+	private static void findFiles(File directory, int maxInstancesPerDir, List<File> result, List<GestureType> resultGestureTypes) {
+		File[] dirFiles = directory.listFiles();
+		if (dirFiles == null) {
+			logger.warn("Could not list the files in " + directory.getAbsolutePath());
+			return;
+		}
+		Arrays.sort(dirFiles);
+		
+		int numFound = 0;
+		for (File file : dirFiles) {
+			if (file.isDirectory()) {
+				GestureCorpus.findFiles(file, maxInstancesPerDir, result, resultGestureTypes);
+				continue;
+			}
+			if (file.getName().endsWith(GESTURE_INSTANCE_FILE_EXTENSION) == false) {
+				continue;
+			}
+			if (maxInstancesPerDir > 0 && numFound >= maxInstancesPerDir) {
+				continue;
+			}
+			
+			GestureType gestureType = GestureCorpus.gestureTypeForFile(file);
+			if (gestureType == null) {
+				logger.warn("Could not tell which gesture was recorded in " + file.getAbsolutePath());
+				continue;
+			}
+			
+			result.add(file);
+			resultGestureTypes.add(gestureType);
+			numFound++;
+		}
+	}
+	
+	/**
+	 * Reads the given gesture instance files, in parallel.
+	 * @return The instance read from each file, null where a file couldn't be read.
+	 */
+	static GestureInstance[] readInstances(final List<File> files) {
+		final GestureInstance[] result = new GestureInstance[files.size()];
+		final AtomicInteger nextIndex = new AtomicInteger(0);
+		Runnable reader = new Runnable() {
+			public void run() {
+				for (int i = nextIndex.getAndIncrement(); i < files.size(); i = nextIndex.getAndIncrement()) {
+					result[i] = GestureCorpus.readInstance(files.get(i));
+				}
+			}
+		};
+		
+		// This thread reads its share too
+		int numThreads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+		List<Thread> readerThreads = new ArrayList<Thread>();
+		for (int i = 1; i < numThreads; i++) {
+			Thread readerThread = new Thread(reader, "Gesture corpus reader thread " + i);
+			readerThread.setDaemon(true);
+			readerThread.start();
+			readerThreads.add(readerThread);
+		}
+		reader.run();
+		
+		// Thread.join guarantees the instances read by the other threads are visible here
+		boolean interrupted = false;
+		for (Thread readerThread : readerThreads) {
+			for (;;) {
+				try {
+					readerThread.join();
+					break;
+				}
+				catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return result;
+	}
+	
+	static GestureInstance readInstance(File file) {
+		StringBuilder gestureInstanceString = new StringBuilder();
+		try {
+			Scanner fileTextScanner = new Scanner(new FileInputStream(file));
+			while (fileTextScanner.hasNextLine()) {
+				gestureInstanceString.append(fileTextScanner.nextLine() + "\n");
+			}
+			fileTextScanner.close();
+		}
+		catch (FileNotFoundException e) {
+			logger.warn("Failed to find file: " + file.getAbsolutePath());
+			return null;
+		}
+		
+		GestureInstance instance = new GestureInstance();
+		if (!instance.fromDataString(gestureInstanceString.toString())) {
+			logger.warn("Failed to load gesture instance from file, bad file format: " + file.getAbsolutePath());
+			return null;
+		}
+		return instance;
+	}
+	
+	static GestureType gestureTypeForFile(File file) {
+		// Files are named after their gesture type followed by a number
+		String name = file.getName();
+		int end = 0;
+		while (end < name.length() && (Character.isUpperCase(name.charAt(end)) || name.charAt(end) == '_')) {
+			end++;
+		}
+		if (end > 0) {
+			try {
+				return GestureType.valueOf(name.substring(0, end));
+			}
+			catch (IllegalArgumentException ex) {
+				// Fall back to the folder name
+			}
+		}
+		
+		// Prefer the gesture type that the folder is primarily for (its first name) over ones that borrow its data
+		File parent = file.getParentFile();
+		if (parent == null) {
+			return null;
+		}
+		GestureType result = null;
+		for (GestureType gestureType : GestureType.values()) {
+			int index = gestureType.getParentDirNameList().indexOf(parent.getName());
+			if (index == 0) {
+				return gestureType;
+			}
+			if (index > 0 && result == null) {
+				result = gestureType;
+			}
+		}
+		return result;
+	}
+}
@@ -1,22 +1,33 @@
 package ca.site3.ssf.gesturerecognizer;
 
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.InputMismatchException;
 import java.util.List;
 import java.util.Scanner;
 
-import org.apache.commons.math.geometry.Vector3D;
+import ca.site3.ssf.common.Algebra;
 
 /**
  * The GestureInstance is a fully recorded 'instance' of a single gesture for
  * the Super Street Fire game. A gesture can be a one or two handed action/movement
- * of a player or ringmaster. The record is kept as two arrays (one for each hand)
- * of GloveData objects, which act as the discrete data points that define the gesture
- * over some time period (which is also recorded as an array of double values held by
- * the instance). 
+ * of a player or ringmaster. The record is kept for each hand as a series of GloveData,
+ * which act as the discrete data points that define the gesture over some time period
+ * (which is also recorded as an array of double values held by the instance).
  * 
- * If a given glove data array is null within this object then the gesture is considered
- * one-handed (NOTE: The gesture is not valid if both arrays are null).
+ * If a given glove data list is null or empty when the instance is built then the gesture
+ * is considered one-handed (NOTE: The gesture is not valid if both lists are empty).
+ * 
+ * The glove data isn't kept as GloveData objects though - each sensor's data is packed into a single
+ * array that holds the x, y, z values of the left glove (if there is one) followed by those of the right
+ * glove (if there is one) for each data point in turn. The packed accelerometer data is exactly the gesture's
+ * training sequence, so recognizing a gesture reads it in place instead of copying it out of the
+ * GloveData first. The packed data can be read (but not changed) through the get...DataView methods,
+ * the GloveData accessors build their GloveData on demand.
+ * 
+ * The gesture's scalar statistics (fierceness, duration, etc.) are summarized once, either by whoever built
+ * the instance (see GestureStatistics.Accumulator) or on first use, and never worked out from the data again.
  * 
  * Similar to the GloveData, the GestureInstance can be written to and read from string using
  * its toDataString and fromDataString methods.
@@ -31,52 +42,124 @@ public class GestureInstance {
 	static final private String RIGHT_GLOVE_DATA_STR = "RIGHT_GLOVE_DATA";
 	static final private String TIME_PTS_DATA_STR    = "TIME_PTS";
 	
-	private List<GloveData> leftGloveData  = null;
-	private List<GloveData> rightGloveData = null;
-	private List<Double>    timePts        = null;
+	private boolean hasLeftGloveData  = false;
+	private boolean hasRightGloveData = false;
+	
+	// [dataPt * (NUM_COORDS_PER_GLOVE * number of gloves) + glove offset + coord], left glove first
+	private double[] accelData   = null;
+	private double[] gyroData    = null;
+	private double[] magnetoData = null;
+	private double[] timePts     = null;
+	
+	private GestureStatistics statistics = null;
 
 	public GestureInstance() {
 		super();
-		this.leftGloveData  = new ArrayList<GloveData>();
-		this.leftGloveData.add(new GloveData());
-		this.rightGloveData = new ArrayList<GloveData>();
-		this.timePts = new ArrayList<Double>();
-		this.timePts.add(new Double(0.0));
+		this.hasLeftGloveData = true;
+		this.allocate(1);
 	}
 
 	public GestureInstance(List<GloveData> leftGloveData, List<GloveData> rightGloveData, List<Double> timePts) {
+		this(leftGloveData, rightGloveData, timePts, null);
+	}
+	
+	/**
+	 * Builds a gesture instance whose statistics were already accumulated as its data was gathered.
+	 * @param statistics The statistics of the given data, null to have them worked out from the data when needed.
+	 */
+	protected GestureInstance(List<GloveData> leftGloveData, List<GloveData> rightGloveData, List<Double> timePts,
+			GestureStatistics statistics) {
 		super();
-		this.leftGloveData  = leftGloveData;
-		this.rightGloveData = rightGloveData;
-		this.timePts = timePts;
+		this.statistics = statistics;
+		this.hasLeftGloveData  = (leftGloveData != null && !leftGloveData.isEmpty());
+		this.hasRightGloveData = (rightGloveData != null && !rightGloveData.isEmpty());
+		this.allocate(timePts.size());
+		
+		if ((this.hasLeftGloveData && leftGloveData.size() != timePts.size()) ||
+			(this.hasRightGloveData && rightGloveData.size() != timePts.size())) {
+			throw new IllegalArgumentException("Every glove must have one data point for each time point.");
+		}
+		
+		for (int i = 0; i < timePts.size(); i++) {
+			if (this.hasLeftGloveData) {
+				this.setGloveDataAt(i, true, leftGloveData.get(i));
+			}
+			if (this.hasRightGloveData) {
+				this.setGloveDataAt(i, false, rightGloveData.get(i));
+			}
+			this.timePts[i] = timePts.get(i);
+		}
 		assert(this.isValid());
 	}
 	
 	public int getNumDataPts() {
 		assert(this.timePts != null);
-		return this.timePts.size();
+		return this.timePts.length;
 	}
 	
 	public GloveData getLeftGloveDataAt(int index) {
-		assert(index >= 0 && index < this.leftGloveData.size());
-		return this.leftGloveData.get(index);
+		assert(this.hasLeftGloveData() && index >= 0 && index < this.getNumDataPts());
+		return this.getGloveDataAt(index, true);
 	}
 	
 	public GloveData getRightGloveDataAt(int index) {
-		assert(index >= 0 && index < this.rightGloveData.size());
-		return this.rightGloveData.get(index);
+		assert(this.hasRightGloveData() && index >= 0 && index < this.getNumDataPts());
+		return this.getGloveDataAt(index, false);
 	}
 	
 	public double getTimeAt(int index) {
-		assert(index >= 0 && index < this.timePts.size());
-		return this.timePts.get(index);
+		assert(index >= 0 && index < this.timePts.length);
+		return this.timePts[index];
 	}
 	
 	public double getMaxTimeDiff() {
-		if (this.timePts.isEmpty()) {
-			return 0.0;
+		return this.getStatistics().getDuration();
+	}
+	
+	/**
+	 * Gets the summary of this gesture's scalar statistics, working it out (in a single pass over the data)
+	 * if it wasn't provided when the instance was built.
+	 * @return The gesture's statistics.
+	 */
+	public GestureStatistics getStatistics() {
+		// GestureStatistics is immutable, at worst a couple of threads work this out at the same time
+		GestureStatistics result = this.statistics;
+		if (result == null) {
+			result = GestureStatistics.compute(this.accelData, this.timePts);
+			this.statistics = result;
 		}
-		return this.timePts.get(this.timePts.size()-1) - this.timePts.get(0);
+		return result;
+	}
+	
+	/**
+	 * Gets a read-only view of the accelerometer data of both gloves (nothing is copied). Each data point
+	 * takes up NUM_COORDS_PER_GLOVE values per glove: the left glove's x, y, z (if the gesture has left glove data)
+	 * followed by the right glove's x, y, z (if the gesture has right glove data).
+	 * @return The accelerometer data, positioned at the first data point.
+	 */
+	public DoubleBuffer getAccelDataView() {
+		return DoubleBuffer.wrap(this.accelData).asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Gets a read-only view of the gyroscope data of both gloves, laid out like getAccelDataView.
+	 */
+	public DoubleBuffer getGyroDataView() {
+		return DoubleBuffer.wrap(this.gyroData).asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Gets a read-only view of the magnetometer data of both gloves, laid out like getAccelDataView.
+	 */
+	public DoubleBuffer getMagnetoDataView() {
+		return DoubleBuffer.wrap(this.magnetoData).asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Gets a read-only view of the time of each data point.
+	 */
+	public DoubleBuffer getTimePtsView() {
+		return DoubleBuffer.wrap(this.timePts).asReadOnlyBuffer();
 	}
 	
 	/**
@@ -86,21 +169,7 @@ public class GestureInstance {
 	 * @return The maximum absolute acceleration.
 	 */
 	public double getMaxAbsAccel() {
-		double maxAbsAccel = 0.0;
-
-		for (GloveData data : this.leftGloveData) {
-			Vector3D accelData = data.getAccelData();
-			maxAbsAccel = Math.max(maxAbsAccel, Math.max(Math.abs(accelData.getX()),
-					Math.max(Math.abs(accelData.getY()), Math.abs(accelData.getZ()))));
-		}
-
-		for (GloveData data : this.rightGloveData) {
-			Vector3D accelData = data.getAccelData();
-			maxAbsAccel = Math.max(maxAbsAccel, Math.max(Math.abs(accelData.getX()),
-					Math.max(Math.abs(accelData.getY()), Math.abs(accelData.getZ()))));
-		}
-
-		return maxAbsAccel;
+		return this.getStatistics().getMaxAbsAccel();
 	}
 	
 	/**
@@ -109,21 +178,7 @@ public class GestureInstance {
 	 * @return The maximum acceleration.
 	 */
 	public double getMaxAccel() {
-		double maxAbsAccel = 0.0;
-
-		for (GloveData data : this.leftGloveData) {
-			Vector3D accelData = data.getAccelData();
-			maxAbsAccel = Math.max(maxAbsAccel, Math.max(accelData.getX(),
-					Math.max(accelData.getY(), accelData.getZ())));
-		}
-
-		for (GloveData data : this.rightGloveData) {
-			Vector3D accelData = data.getAccelData();
-			maxAbsAccel = Math.max(maxAbsAccel, Math.max(accelData.getX(),
-					Math.max(accelData.getY(), accelData.getZ())));
-		}
-
-		return maxAbsAccel;
+		return this.getStatistics().getMaxAccel();
 	}
 	
 	/**
@@ -132,21 +187,7 @@ public class GestureInstance {
 	 * @return The minimum absolute acceleration.
 	 */
 	public double getMinAbsAccel() {
-		double minAbsAccel = 0.0;
-
-		for (GloveData data : this.leftGloveData) {
-			Vector3D accelData = data.getAccelData();
-			minAbsAccel = Math.min(minAbsAccel, Math.min(Math.abs(accelData.getX()),
-					Math.min(Math.abs(accelData.getY()), Math.abs(accelData.getZ()))));
-		}
-
-		for (GloveData data : this.rightGloveData) {
-			Vector3D accelData = data.getAccelData();
-			minAbsAccel = Math.min(minAbsAccel, Math.min(Math.abs(accelData.getX()),
-					Math.min(Math.abs(accelData.getY()), Math.abs(accelData.getZ()))));
-		}
-
-		return minAbsAccel;
+		return this.getStatistics().getMinAbsAccel();
 	}
 	
 	/**
@@ -156,21 +197,7 @@ public class GestureInstance {
 	 * @return The minimum acceleration.
 	 */
 	public double getMinAccel() {
-		double minAbsAccel = 0.0;
-
-		for (GloveData data : this.leftGloveData) {
-			Vector3D accelData = data.getAccelData();
-			minAbsAccel = Math.min(minAbsAccel, Math.min(accelData.getX(),
-					Math.min(accelData.getY(), accelData.getZ())));
-		}
-
-		for (GloveData data : this.rightGloveData) {
-			Vector3D accelData = data.getAccelData();
-			minAbsAccel = Math.min(minAbsAccel, Math.min(accelData.getX(),
-					Math.min(accelData.getY(), accelData.getZ())));
-		}
-
-		return minAbsAccel;
+		return this.getStatistics().getMinAccel();
 	}
 	
 	/**
@@ -187,29 +214,16 @@ public class GestureInstance {
 	}
 	
 	public boolean hasLeftGloveData() {
-		return !this.leftGloveData.isEmpty();
+		return this.hasLeftGloveData;
 	}
 	
 	public boolean hasRightGloveData() {
-		return !this.rightGloveData.isEmpty();
+		return this.hasRightGloveData;
 	}
 	
 	public boolean isValid() {
-		boolean isValid = (this.hasLeftGloveData() || this.hasRightGloveData()) && !this.timePts.isEmpty();
-		if (this.hasLeftGloveData() && this.hasRightGloveData()) {
-			isValid &= (this.leftGloveData.size() == this.rightGloveData.size());
-			isValid &= (this.leftGloveData.size() == this.timePts.size());
-			return isValid;
-		}
-		
-		if (this.hasLeftGloveData()) {
-			isValid &= (this.leftGloveData.size() == this.timePts.size());
-		}
-		else if (this.hasRightGloveData()) {
-			isValid &= (this.rightGloveData.size() == this.timePts.size());
-		}
-		
-		return isValid;
+		// Every glove always has one data point for each time point
+		return (this.hasLeftGloveData() || this.hasRightGloveData()) && this.timePts.length != 0;
 	}
 	
 	int getTrainingDataObservationWidth() {
@@ -224,106 +238,28 @@ public class GestureInstance {
 	 * Obtains the training sequence for this gesture instance. This will provide
 	 * and in-order sequence of tuples that can be fed to a classification/machine learning
 	 * algorithm for identifying gestures.
+	 * 
+	 * This copies the sequence out of the instance, use getObservations to read it in place.
 	 * @return A sequential array of tuples, each tuple will be the same size.
 	 */
 	double[][] getTrainingSequence() {
-		
-		if (this.hasLeftGloveData()) {
-			if (this.hasRightGloveData()) {
-				double[][] result = new double[this.getNumDataPts()][2*NUM_COORDS_PER_GLOVE];
-				
-				// Two handed gesture, each tuple is size 2*NUM_COORDS_PER_GLOVE
-				// (for two glove's worth of accelerometer data)
-				for (int i = 0; i < this.getNumDataPts(); i++) {
-					
-					// Right now we only consider accelerometer data...
-					GloveData leftGloveData  = this.getLeftGloveDataAt(i);
-					GloveData rightGloveData = this.getRightGloveDataAt(i);
-					assert(leftGloveData != null && rightGloveData != null);
-					
-					Vector3D leftGloveAccelData  = leftGloveData.getAccelData();
-					Vector3D rightGloveAccelData = rightGloveData.getAccelData();
-					assert(leftGloveAccelData != null && rightGloveAccelData != null);
-					
-					result[i][0] = leftGloveAccelData.getX();
-					result[i][1] = leftGloveAccelData.getY();
-					result[i][2] = leftGloveAccelData.getZ();
-					result[i][3] = rightGloveAccelData.getX();
-					result[i][4] = rightGloveAccelData.getY();
-					result[i][5] = rightGloveAccelData.getZ();
-					/*
-					Vector3D leftGloveGyroData  = leftGloveData.getGyroData();
-					Vector3D rightGloveGyroData = rightGloveData.getGyroData();
-					assert(leftGloveGyroData != null && rightGloveGyroData != null);
-					
-					result[i][6] = leftGloveGyroData.getX();
-					result[i][7] = leftGloveGyroData.getY();
-					result[i][8] = leftGloveGyroData.getZ();
-					result[i][9] = rightGloveGyroData.getX();
-					result[i][10] = rightGloveGyroData.getY();
-					result[i][11] = rightGloveGyroData.getZ();
-					*/
-				}
-				return result;
-			}
-			else {
-				// Left handed gesture, each tuple is size 3 (for one glove's worth of accelerometer data)
-				double[][] result = new double[this.getNumDataPts()][NUM_COORDS_PER_GLOVE];
-				
-				// Two handed gesture, each tuple is size 6 (for two glove's worth of accelerometer data)
-				for (int i = 0; i < this.getNumDataPts(); i++) {
-					
-					// Right now we only consider accelerometer data...
-					GloveData leftGloveData  = this.getLeftGloveDataAt(i);
-					assert(leftGloveData != null);
-					
-					Vector3D leftGloveAccelData  = leftGloveData.getAccelData();
-					assert(leftGloveAccelData != null);
-					
-					result[i][0] = leftGloveAccelData.getX();
-					result[i][1] = leftGloveAccelData.getY();
-					result[i][2] = leftGloveAccelData.getZ();
-					/*
-					Vector3D leftGloveGyroData  = leftGloveData.getGyroData();
-					assert(leftGloveGyroData != null);
-					
-					result[i][3] = leftGloveGyroData.getX();
-					result[i][4] = leftGloveGyroData.getY();
-					result[i][5] = leftGloveGyroData.getZ();
-					*/
-				}
-				return result;
-			}
-		}
-		else {
-			// Right handed gesture, each tuple is size 3 (for one glove's worth of accelerometer data)
-			double[][] result = new double[this.getNumDataPts()][NUM_COORDS_PER_GLOVE];
-			
-			// Two handed gesture, each tuple is size 6 (for two glove's worth of accelerometer data)
-			for (int i = 0; i < this.getNumDataPts(); i++) {
-				
-				// Right now we only consider accelerometer data...
-				GloveData rightGloveData = this.getRightGloveDataAt(i);
-				assert(rightGloveData != null);
-				
-				Vector3D rightGloveAccelData = rightGloveData.getAccelData();
-				assert(rightGloveAccelData != null);
-				
-				result[i][0] = rightGloveAccelData.getX();
-				result[i][1] = rightGloveAccelData.getY();
-				result[i][2] = rightGloveAccelData.getZ();
-				
-				/*
-				Vector3D rightGloveGyroData = rightGloveData.getGyroData();
-				assert(rightGloveGyroData != null);
-				
-				result[i][3] = rightGloveGyroData.getX();
-				result[i][4] = rightGloveGyroData.getY();
-				result[i][5] = rightGloveGyroData.getZ();
-				*/
-			}
-			return result;
+		// Right now we only consider accelerometer data...
+		int width = this.getTrainingDataObservationWidth();
+		double[][] result = new double[this.getNumDataPts()][];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = Arrays.copyOfRange(this.accelData, i * width, (i + 1) * width);
 		}
+		return result;
+	}
+		
+	/**
+	 * Gets the training sequence for this gesture instance (see getTrainingSequence) packed into a single
+	 * array, observation after observation, each getTrainingDataObservationWidth() values long. This is the
+	 * instance's own data, not a copy: it must not be modified.
+	 * @return The packed training sequence.
+	 */
+	double[] getObservations() {
+		return this.accelData;
 	}
 	
 	public boolean equals(Object other) {
@@ -338,16 +274,18 @@ public class GestureInstance {
 		}
 		
 		GestureInstance otherGestureInstance = (GestureInstance)other;
-		if (!this.leftGloveData.equals(otherGestureInstance.leftGloveData)) {
-			return false;
-		}
-		if (!this.rightGloveData.equals(otherGestureInstance.rightGloveData)) {
+		if (this.hasLeftGloveData != otherGestureInstance.hasLeftGloveData ||
+			this.hasRightGloveData != otherGestureInstance.hasRightGloveData) {
 			return false;
 		}
-		if (!this.timePts.equals(otherGestureInstance.timePts)) {
+		if (!Arrays.equals(this.timePts, otherGestureInstance.timePts)) {
 			return false;
 		}
-		return true;
+		
+		// Glove data is compared the same way GloveData compares itself
+		return GestureInstance.approxEquals(this.accelData, otherGestureInstance.accelData) &&
+			   GestureInstance.approxEquals(this.gyroData, otherGestureInstance.gyroData) &&
+			   GestureInstance.approxEquals(this.magnetoData, otherGestureInstance.magnetoData);
 	}
 	
 	
@@ -371,29 +309,18 @@ public class GestureInstance {
 		}
 		
 		// Initialize the glove data...
-		this.leftGloveData  = null;
-		this.rightGloveData = null;
-		int count = 0;
-		if (header.contains("L")) {
-			this.leftGloveData = new ArrayList<GloveData>(amtOfData);
-			for (int i = 0; i < amtOfData; i++) { this.leftGloveData.add(null); }
+		this.statistics = null;
+		this.hasLeftGloveData  = header.contains("L");
+		this.hasRightGloveData = header.contains("R");
+		this.allocate(amtOfData);
+		
+		int count = 1;
+		if (this.hasLeftGloveData) {
 			count++;
 		}
-		else {
-			this.leftGloveData = new ArrayList<GloveData>(0);
-		}
-		if (header.contains("R")) {
-			this.rightGloveData = new ArrayList<GloveData>(amtOfData);
-			for (int i = 0; i < amtOfData; i++) { this.rightGloveData.add(null); }
+		if (this.hasRightGloveData) {
 			count++;
 		}
-		else {
-			this.rightGloveData = new ArrayList<GloveData>(0);
-		}
-		
-		this.timePts = new ArrayList<Double>(amtOfData);
-		for (int i = 0; i < amtOfData; i++) { this.timePts.add(null); }
-		count++;
 		
 		for (int i = 0; i < count; i++) {
 			if (!this.gloveAndTimeHeaderAndDataFromScanner(scanner)) {
@@ -407,27 +334,24 @@ public class GestureInstance {
 	
 	public String toDataString() {
 		// Start with a brief header indicating what data is contained within this gesture
-		String result = new String();
-		int amtOfData = 0;
+		StringBuilder result = new StringBuilder();
 		if (this.hasLeftGloveData()) {
-			result += "L";
-			amtOfData = this.leftGloveData.size();
+			result.append("L");
 			
 			if (this.hasRightGloveData()) {
-				result += "R";
+				result.append("R");
 			}
 		}
 		else {
-			result += "R";
-			amtOfData = this.rightGloveData.size();
+			result.append("R");
 		}
 		
-		result += " " + amtOfData + "\n";
-		result += this.gloveDataToString(LEFT_GLOVE_DATA_STR,  this.leftGloveData);
-		result += this.gloveDataToString(RIGHT_GLOVE_DATA_STR, this.rightGloveData);
-		result += this.timeDataToString(TIME_PTS_DATA_STR);
+		result.append(" ").append(this.getNumDataPts()).append("\n");
+		this.gloveDataToString(result, LEFT_GLOVE_DATA_STR,  true);
+		this.gloveDataToString(result, RIGHT_GLOVE_DATA_STR, false);
+		this.timeDataToString(result, TIME_PTS_DATA_STR);
 		
-		return result;
+		return result.toString();
 	}
 	
 	public String toString() {
@@ -435,27 +359,74 @@ public class GestureInstance {
 	}
 	
 	
-	private String gloveDataToString(String gloveTitle, List<GloveData> data) {
-		if (data == null || data.isEmpty()) {
-			return "";
+	private void allocate(int numDataPts) {
+		int width = NUM_COORDS_PER_GLOVE * ((this.hasLeftGloveData ? 1 : 0) + (this.hasRightGloveData ? 1 : 0));
+		this.accelData   = new double[numDataPts * width];
+		this.gyroData    = new double[numDataPts * width];
+		this.magnetoData = new double[numDataPts * width];
+		this.timePts     = new double[numDataPts];
+	}
+	
+	/**
+	 * Gets where the given glove's x value is for the given data point in the packed glove data.
+	 */
+	private int gloveDataOffset(int index, boolean isLeft) {
+		int width = NUM_COORDS_PER_GLOVE * ((this.hasLeftGloveData ? 1 : 0) + (this.hasRightGloveData ? 1 : 0));
+		return index * width + ((isLeft || !this.hasLeftGloveData) ? 0 : NUM_COORDS_PER_GLOVE);
+	}
+	
+	private GloveData getGloveDataAt(int index, boolean isLeft) {
+		if (isLeft ? !this.hasLeftGloveData : !this.hasRightGloveData) {
+			throw new IndexOutOfBoundsException("The gesture has no " + (isLeft ? "left" : "right") + " glove data.");
+		}
+		int offset = this.gloveDataOffset(index, isLeft);
+		return new GloveData(
+				this.gyroData[offset],    this.gyroData[offset + 1],    this.gyroData[offset + 2],
+				this.accelData[offset],   this.accelData[offset + 1],   this.accelData[offset + 2],
+				this.magnetoData[offset], this.magnetoData[offset + 1], this.magnetoData[offset + 2]);
+	}
+	
+	private void setGloveDataAt(int index, boolean isLeft, GloveData data) {
+		int offset = this.gloveDataOffset(index, isLeft);
+		GestureInstance.setCoords(this.gyroData,    offset, data.getGyroData().getX(),    data.getGyroData().getY(),    data.getGyroData().getZ());
+		GestureInstance.setCoords(this.accelData,   offset, data.getAccelData().getX(),   data.getAccelData().getY(),   data.getAccelData().getZ());
+		GestureInstance.setCoords(this.magnetoData, offset, data.getMagnetoData().getX(), data.getMagnetoData().getY(), data.getMagnetoData().getZ());
+	}
+	
+	private static void setCoords(double[] data, int offset, double x, double y, double z) {
+		data[offset]     = x;
+		data[offset + 1] = y;
+		data[offset + 2] = z;
+	}
+	
+	private static boolean approxEquals(double[] data, double[] otherData) {
+		if (data.length != otherData.length) {
+			return false;
 		}
-		
-		String result = gloveTitle + "\n";
-		for (int i = 0; i < data.size(); i++) {
-			result += data.get(i).toDataString() + "\n";
+		for (int i = 0; i < data.length; i++) {
+			if (!(Math.abs(data[i] - otherData[i]) < Algebra.FLT_EPSILON)) {
+				return false;
+			}
 		}
-		return result;
+		return true;
 	}
 	
-	private String timeDataToString(String timeTitle) {
-		if (this.timePts == null) {
-			return "";
+	private void gloveDataToString(StringBuilder result, String gloveTitle, boolean isLeft) {
+		if (isLeft ? !this.hasLeftGloveData() : !this.hasRightGloveData()) {
+			return;
 		}
-		String result = timeTitle + "\n";
-		for (int i = 0; i < this.timePts.size(); i++) {
-			result += this.timePts.get(i) + "\n";
+		
+		result.append(gloveTitle).append("\n");
+		for (int i = 0; i < this.getNumDataPts(); i++) {
+			result.append(this.getGloveDataAt(i, isLeft).toDataString()).append("\n");
+		}
+	}
+	
+	private void timeDataToString(StringBuilder result, String timeTitle) {
+		result.append(timeTitle).append("\n");
+		for (int i = 0; i < this.timePts.length; i++) {
+			result.append(this.timePts[i]).append("\n");
 		}
-		return result;
 	}
 	
 	
@@ -469,19 +440,16 @@ public class GestureInstance {
 				if (!this.hasLeftGloveData()) {
 					return false;
 				}
-				return this.gloveDataFromString(scanner, this.leftGloveData);
+				return this.gloveDataFromString(scanner, true);
 			}
 			else if (headerStr.equals(RIGHT_GLOVE_DATA_STR)) {
 				if (!this.hasRightGloveData()) {
 					return false;
 				}
-				return this.gloveDataFromString(scanner, this.rightGloveData);
+				return this.gloveDataFromString(scanner, false);
 			}
 			else if (headerStr.equals(TIME_PTS_DATA_STR)) {
-				if (this.timePts == null) {
-					return false;
-				}
-				return this.timeDataFromString(scanner, this.timePts);
+				return this.timeDataFromString(scanner);
 			}
 			
 		}
@@ -492,22 +460,22 @@ public class GestureInstance {
 		return false;
 	}
 	
-	private boolean gloveDataFromString(Scanner scanner, List<GloveData> data) {
-		for (int i = 0; i < data.size(); i++) {
+	private boolean gloveDataFromString(Scanner scanner, boolean isLeft) {
+		GloveData gloveData = new GloveData();
+		for (int i = 0; i < this.getNumDataPts(); i++) {
 			String nextLine = scanner.nextLine();
-			GloveData gloveData = new GloveData();
-			data.set(i, gloveData);
 			if (!gloveData.fromDataString(nextLine)) {
 				return false;
 			}
+			this.setGloveDataAt(i, isLeft, gloveData);
 		}
 		return true;
 	}
-	private boolean timeDataFromString(Scanner scanner, List<Double> data) {
+	private boolean timeDataFromString(Scanner scanner) {
 		try {
-			for (int i = 0; i < data.size(); i++) {
+			for (int i = 0; i < this.timePts.length; i++) {
 				String nextLine = scanner.nextLine();
-				data.set(i, Double.parseDouble(nextLine));
+				this.timePts[i] = Double.parseDouble(nextLine);
 			}
 		}
 		catch (NumberFormatException ex) {
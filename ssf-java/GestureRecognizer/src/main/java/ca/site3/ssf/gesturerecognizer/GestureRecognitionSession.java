@@ -0,0 +1,318 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math.geometry.Vector3D;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A streaming recognition session for a single gesture that is still being performed.
+ * Glove data is handed to the session as it arrives (i.e., while the button is held down)
+ * and each candidate gesture's HMM forward variables are advanced one sample at a time. By the
+ * time the gesture is over, the ln probabilities of all the candidates are already known, so
+ * recognizing the finished gesture no longer has to run the full forward pass of every recognizer.
+ * 
+ * Since we don't know how many hands a gesture will end up using until it's over, the session keeps
+ * three sets of candidates going: left-handed gestures (fed the left glove's data), right-handed
+ * gestures (fed the right glove's data) and two-handed gestures (fed pairs of left and right data,
+ * matched up in the order they arrived - exactly as two-handed GestureInstances are built).
+ * 
+ * A session is not thread safe, it should only ever be used by the thread that is collecting the gesture's data.
+ */
+public class GestureRecognitionSession {
+	
+	private static Logger logger = LoggerFactory.getLogger(GestureRecognitionSession.class);
+	
+	/**
+	 * The scaled forward variables of a single candidate gesture's HMM for the data seen so far
+	 * (computed with the same CompiledHmm forward step that scores whole gestures, so the results are identical).
+	 */
+	private static class ForwardTrack {
+		final Recognizer recognizer;
+		final CompiledHmm hmm;
+		
+		private double[] alpha;
+		private double[] nextAlpha;
+		private double lnProbability = 0.0;
+		private int numDataPts = 0;
+		
+		ForwardTrack(Recognizer recognizer) {
+			this.recognizer = recognizer;
+			this.hmm = recognizer.getCompiledHmm();
+			if (this.hmm != null) {
+				this.alpha     = new double[this.hmm.getNumStates()];
+				this.nextAlpha = new double[this.hmm.getNumStates()];
+			}
+		}
+		
+		void reset() {
+			this.lnProbability = 0.0;
+			this.numDataPts = 0;
+		}
+		
+		void add(double[] observation) {
+			if (this.hmm == null) {
+				return;
+			}
+			
+			this.lnProbability += this.hmm.forwardStep(this.alpha, this.nextAlpha, observation, 0, this.numDataPts == 0);
+			
+			double[] temp  = this.alpha;
+			this.alpha     = this.nextAlpha;
+			this.nextAlpha = temp;
+			this.numDataPts++;
+		}
+		
+		double getLnProbability() {
+			return this.lnProbability;
+		}
+	}
+	
+	/**
+	 * All of the candidate gestures that are fed the same sequence of observations.
+	 */
+	private static class TrackGroup {
+		final List<ForwardTrack> tracks = new ArrayList<ForwardTrack>();
+		int numDataPts = 0;
+		
+		void add(double[] observation) {
+			for (ForwardTrack track : this.tracks) {
+				track.add(observation);
+			}
+			this.numDataPts++;
+		}
+		
+		void reset() {
+			for (ForwardTrack track : this.tracks) {
+				track.reset();
+			}
+			this.numDataPts = 0;
+		}
+	}
+	
+	private final GestureRecognizer gestureRecognizer;
+	private final boolean isRingmasterGesture;
+	
+	// The engine the gesture in progress is being scored with, picked up from the gesture recognizer
+	// every time the session is reset so that a swapped in engine is used from the next gesture on
+	private RecognizerManager recognizerMgr;
+	
+	private final TrackGroup leftHandedTracks  = new TrackGroup();
+	private final TrackGroup rightHandedTracks = new TrackGroup();
+	private final TrackGroup twoHandedTracks   = new TrackGroup();
+	private final Map<GestureType, ForwardTrack> trackMap = new EnumMap<GestureType, ForwardTrack>(GestureType.class);
+	
+	// Glove data that hasn't been paired up with data from the other glove yet (only one of these is ever non-empty)
+	private final LinkedList<Vector3D> unpairedLeftData  = new LinkedList<Vector3D>();
+	private final LinkedList<Vector3D> unpairedRightData = new LinkedList<Vector3D>();
+	
+	GestureRecognitionSession(GestureRecognizer gestureRecognizer, boolean isRingmasterGesture) {
+		this.gestureRecognizer = gestureRecognizer;
+		this.isRingmasterGesture = isRingmasterGesture;
+		this.reset();
+	}
+	
+	public boolean getIsRingmasterGesture() {
+		return this.isRingmasterGesture;
+	}
+	
+	/**
+	 * Clears all of the data seen so far so that the session can be used for the next gesture. This also picks up
+	 * any recognizers that have changed in the engine, or a whole new engine that was swapped into the gesture
+	 * recognizer (see GestureRecognizer.swapEngine), since the session was last reset.
+	 */
+	public void reset() {
+		this.recognizerMgr = this.gestureRecognizer.getRecognizerManager();
+		
+		this.leftHandedTracks.tracks.clear();
+		this.rightHandedTracks.tracks.clear();
+		this.twoHandedTracks.tracks.clear();
+		
+		for (Recognizer recognizer : this.recognizerMgr.getRecognizers()) {
+			GestureType gestureType = recognizer.getGestureType();
+			if (gestureType.getIsRingmasterGesture() != this.isRingmasterGesture) {
+				continue;
+			}
+			
+			ForwardTrack track = this.trackMap.get(gestureType);
+			if (track == null || track.recognizer != recognizer) {
+				track = new ForwardTrack(recognizer);
+				this.trackMap.put(gestureType, track);
+			}
+			this.groupForGestureType(gestureType).tracks.add(track);
+		}
+		
+		this.leftHandedTracks.reset();
+		this.rightHandedTracks.reset();
+		this.twoHandedTracks.reset();
+		this.unpairedLeftData.clear();
+		this.unpairedRightData.clear();
+	}
+	
+	/**
+	 * Feeds the next data point of the left glove to the session.
+	 * @param data The glove data.
+	 */
+	public void addLeftGloveData(GloveData data) {
+		Vector3D accelData = data.getAccelData();
+		this.leftHandedTracks.add(new double[] { accelData.getX(), accelData.getY(), accelData.getZ() });
+		
+		if (this.unpairedRightData.isEmpty()) {
+			this.unpairedLeftData.add(accelData);
+		}
+		else {
+			this.addTwoHandedData(accelData, this.unpairedRightData.removeFirst());
+		}
+	}
+	
+	/**
+	 * Feeds the next data point of the right glove to the session.
+	 * @param data The glove data.
+	 */
+	public void addRightGloveData(GloveData data) {
+		Vector3D accelData = data.getAccelData();
+		this.rightHandedTracks.add(new double[] { accelData.getX(), accelData.getY(), accelData.getZ() });
+		
+		if (this.unpairedLeftData.isEmpty()) {
+			this.unpairedRightData.add(accelData);
+		}
+		else {
+			this.addTwoHandedData(this.unpairedLeftData.removeFirst(), accelData);
+		}
+	}
+	
+	private void addTwoHandedData(Vector3D leftAccelData, Vector3D rightAccelData) {
+		this.twoHandedTracks.add(new double[] {
+				leftAccelData.getX(), leftAccelData.getY(), leftAccelData.getZ(),
+				rightAccelData.getX(), rightAccelData.getY(), rightAccelData.getZ() });
+	}
+	
+	/**
+	 * Checks whether the data seen so far is already decisive, i.e., whether one candidate (among the
+	 * gestures for the hands that have sent data so far) leads every other candidate by at least the
+	 * probability threshold that is used to pick between their gesture genres, and meets its own
+	 * minimum requirements for recognition.
+	 * @param usingLeftHand Whether the left glove is part of the gesture in progress.
+	 * @param usingRightHand Whether the right glove is part of the gesture in progress.
+	 * @return The leading gesture type if it is decisive, null if not.
+	 */
+	public GestureType getEarlyCommitCandidate(boolean usingLeftHand, boolean usingRightHand) {
+		TrackGroup group = null;
+		if (usingLeftHand && usingRightHand) {
+			group = this.twoHandedTracks;
+		}
+		else if (usingLeftHand) {
+			group = this.leftHandedTracks;
+		}
+		else if (usingRightHand) {
+			group = this.rightHandedTracks;
+		}
+		
+		if (group == null || group.tracks.isEmpty()) {
+			return null;
+		}
+		
+		ForwardTrack leader = null;
+		for (ForwardTrack track : group.tracks) {
+			if (track.hmm == null) {
+				continue;
+			}
+			if (leader == null || track.getLnProbability() > leader.getLnProbability()) {
+				leader = track;
+			}
+		}
+		if (leader == null) {
+			return null;
+		}
+		
+		GestureType leaderType = leader.recognizer.getGestureType();
+		if (group.numDataPts < leaderType.getNumHmmNodes() || group.numDataPts < leaderType.getMinNumDataPts()) {
+			return null;
+		}
+		if (leader.getLnProbability() < leader.recognizer.getLowestAcceptableLnProbability()) {
+			return null;
+		}
+		
+		for (ForwardTrack track : group.tracks) {
+			if (track == leader || track.hmm == null) {
+				continue;
+			}
+			double threshold = RecognizerManager.getProbComparisonThreshold(leaderType.getGenre(),
+					track.recognizer.getGestureType().getGenre());
+			if (leader.getLnProbability() - track.getLnProbability() < threshold) {
+				return null;
+			}
+		}
+		
+		return leaderType;
+	}
+	
+	/**
+	 * Gets the ln probability of the given candidate gesture for the data it has been fed since the session was
+	 * last reset, i.e., what the full recognizer would score a gesture instance made up of that data with.
+	 * @param gestureType The candidate gesture.
+	 * @return The ln probability, NaN if the gesture isn't a candidate of this session or its HMM couldn't be compiled.
+	 */
+	public double getLnProbability(GestureType gestureType) {
+		ForwardTrack track = this.trackMap.get(gestureType);
+		if (track == null || track.hmm == null || !this.groupForGestureType(gestureType).tracks.contains(track)) {
+			return Double.NaN;
+		}
+		return track.getLnProbability();
+	}
+	
+	/**
+	 * Recognizes the given gesture instance, which must be made up of the data that was fed to this session
+	 * since it was last reset, using the ln probabilities that have already been computed. The result is
+	 * exactly what the full recognizer would produce for the instance.
+	 * @param inst The finished gesture instance.
+	 * @return The gesture type that was recognized, null on no recognized gesture.
+	 */
+	public GestureType finish(GestureInstance inst) {
+		TrackGroup group = null;
+		if (inst.hasLeftGloveData() && inst.hasRightGloveData()) {
+			group = this.twoHandedTracks;
+		}
+		else if (inst.hasLeftGloveData()) {
+			group = this.leftHandedTracks;
+		}
+		else if (inst.hasRightGloveData()) {
+			group = this.rightHandedTracks;
+		}
+		
+		if (group == null || group.numDataPts != inst.getNumDataPts()) {
+			// The instance doesn't line up with what the session has seen, fall back to doing all the work now
+			logger.warn("Gesture instance doesn't match the streamed data, recognizing it from scratch.");
+			return this.recognizerMgr.recognize(inst, this.isRingmasterGesture);
+		}
+		
+		// Gestures whose HMMs couldn't be compiled never got tracked, leave them out so they're scored the usual way
+		Map<Recognizer, Double> lnProbabilities = new HashMap<Recognizer, Double>(group.tracks.size());
+		for (ForwardTrack track : group.tracks) {
+			if (track.hmm == null) {
+				continue;
+			}
+			lnProbabilities.put(track.recognizer, track.recognizer.failsBasicTestBeforeProbabilityCheck(inst) ?
+					0.0 : track.getLnProbability());
+		}
+		
+		return this.recognizerMgr.recognize(inst, this.isRingmasterGesture, lnProbabilities);
+	}
+	
+	private TrackGroup groupForGestureType(GestureType gestureType) {
+		if (gestureType.getUsesLeftHand() && gestureType.getUsesRightHand()) {
+			return this.twoHandedTracks;
+		}
+		else if (gestureType.getUsesLeftHand()) {
+			return this.leftHandedTracks;
+		}
+		return this.rightHandedTracks;
+	}
+
+}
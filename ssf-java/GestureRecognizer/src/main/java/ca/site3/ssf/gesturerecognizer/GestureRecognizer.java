@@ -1,5 +1,7 @@
 package ca.site3.ssf.gesturerecognizer;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -7,6 +9,8 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,7 +40,8 @@ public class GestureRecognizer {
 	public final static double MINIMUM_GESTURE_RECOGNITION_TIME_IN_SECS  = 0.011;
 	public final static double MAXIMUM_GESTURE_RECOGNITION_TIME_IN_SECS  = 4.0;
 	
-	private RecognizerManager recognizerMgr = null;
+	// Swapped out in one go when a new engine is loaded, so every call reads this exactly once
+	private volatile RecognizerManager recognizerMgr = null;
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	public GestureRecognizer() {
@@ -54,10 +59,51 @@ public class GestureRecognizer {
 	public boolean trainGesture(GestureType gestureType, GestureDataSet gestureDataSet) {
 		return this.recognizerMgr.train(gestureType, gestureDataSet);
 	}
+	
+	/**
+	 * Trains each of the given gestures with its data set, training as many gestures at once as there are processors.
+	 * @param gestureDataSets The data set to train each gesture with.
+	 * @return Whether each gesture was trained successfully.
+	 * @throws InterruptedException If the calling thread was interrupted before every gesture was trained.
+	 */
+	public Map<GestureType, Boolean> trainAll(Map<GestureType, GestureDataSet> gestureDataSets) throws InterruptedException {
+		return this.trainAll(gestureDataSets, Runtime.getRuntime().availableProcessors(), null);
+	}
+	
+	/**
+	 * Trains each of the given gestures with its data set, several at a time on a pool of training threads.
+	 * Each gesture ends up trained exactly as trainGesture would train it. No other training should be done while
+	 * this is running. To cancel, interrupt the calling thread: the gestures that haven't started training yet are
+	 * skipped and the ones already being trained are finished before this returns.
+	 * @param gestureDataSets The data set to train each gesture with.
+	 * @param maxThreads The most gestures to train at once.
+	 * @param listener Told as each gesture starts and finishes training (on the training threads), may be null.
+	 * @return Whether each gesture was trained successfully.
+	 * @throws InterruptedException If the calling thread was interrupted before every gesture was trained.
+	 */
+	public Map<GestureType, Boolean> trainAll(Map<GestureType, GestureDataSet> gestureDataSets, int maxThreads,
+			ITrainingProgressListener listener) throws InterruptedException {
+		return this.recognizerMgr.trainAll(gestureDataSets, maxThreads, listener);
+	}
+	
 	public void untrainAndClearGesture(GestureType gestureType) {
 		this.recognizerMgr.untrain(gestureType);
 	}
 	
+	/**
+	 * Sets whether the given gesture's recognizer has full or diagonal covariance matrices for its emissions.
+	 * This takes effect the next time the gesture is trained (training an already trained recognizer with a
+	 * different covariance type converts it). Saved engines record each gesture's covariance type.
+	 * @param gestureType The gesture type.
+	 * @param covarianceType The kind of covariance matrices (full by default).
+	 */
+	public void setCovarianceType(GestureType gestureType, CovarianceType covarianceType) {
+		this.recognizerMgr.setCovarianceType(gestureType, covarianceType);
+	}
+	public CovarianceType getCovarianceType(GestureType gestureType) {
+		return this.recognizerMgr.getCovarianceType(gestureType);
+	}
+	
 	// GESTURE VALIDITY FUNCTIONALITY ***********************************************************************
 	public static boolean isAcceptableGesture(GestureInstance gestureInstance) {
 		return RecognizerManager.isAcceptableGesture(gestureInstance);
@@ -88,6 +134,42 @@ public class GestureRecognizer {
 		return this.recognizerMgr.readRecognizers(reader);
 	}
 	
+	/**
+	 * Loads the entire gesture recognition 'engine' from the given file, which may be either a text
+	 * engine file (as written by saveRecognizerEngine) or a binary one (as written by saveBinaryRecognizerEngine).
+	 * @param file The engine file to load from.
+	 * @return true on success false on failure.
+	 */
+	public boolean loadRecognizerEngine(File file) {
+		try {
+			if (BinaryEngineFormat.isBinaryEngineFile(file)) {
+				return this.recognizerMgr.readBinaryRecognizers(file);
+			}
+			
+			Reader reader = new BufferedReader(new FileReader(file));
+			try {
+				return this.recognizerMgr.readRecognizers(reader);
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (IOException ex) {
+			this.logger.warn("Failed to read gesture recognizer engine file " + file.getAbsolutePath(), ex);
+			return false;
+		}
+	}
+	
+	/**
+	 * Saves the entire gesture recognition 'engine' to the given file in the binary engine format, which
+	 * loads much faster than the text format (see BinaryEngineFormat).
+	 * @param file The file to save to.
+	 * @return true on success false on failure.
+	 */
+	public boolean saveBinaryRecognizerEngine(File file) {
+		return this.recognizerMgr.writeBinaryRecognizers(file);
+	}
+	
 	/**
 	 * Clears all of the currently loaded training data.
 	 */
@@ -95,8 +177,95 @@ public class GestureRecognizer {
 		this.recognizerMgr.clearRecognizers();
 	}
 	
+	/**
+	 * Switches this recognizer over to the engine loaded into the given recognizer (e.g., a retrained engine
+	 * that was loaded on another thread while this one was in use). The switch is atomic: recognitions that are
+	 * already under way, including gestures being streamed to sessions, finish with the old engine and everything
+	 * after uses the new one (sessions pick it up the next time they're reset). This recognizer's scoring settings are kept.
+	 * @param loadedRecognizer The recognizer holding the new engine, the two share it from then on.
+	 */
+	public void swapEngine(GestureRecognizer loadedRecognizer) {
+		RecognizerManager oldMgr = this.recognizerMgr;
+		RecognizerManager newMgr = loadedRecognizer.recognizerMgr;
+		newMgr.setParallelScoring(oldMgr.getParallelScoring());
+		newMgr.setPrunedScoring(oldMgr.getPrunedScoring());
+		newMgr.setCandidateCascade(oldMgr.getCandidateCascade());
+		this.recognizerMgr = newMgr;
+	}
+	
+	/**
+	 * @return The engine currently in use, read once by anything that needs to stick with one engine for a while.
+	 */
+	RecognizerManager getRecognizerManager() {
+		return this.recognizerMgr;
+	}
+	
+	/**
+	 * @return true if the loaded engine has a trained recognizer for the given gesture, false if it can't recognize it.
+	 */
+	public boolean isGestureTrained(GestureType gestureType) {
+		return this.recognizerMgr.isTrained(gestureType);
+	}
+	
 	// REAL-TIME GESTURE RECOGNITION FUNCTIONALITY **********************************************************
 	
+	/**
+	 * Sets whether each gesture's candidate recognizers are scored in parallel (on a pool shared by all
+	 * gesture recognizers) or one after the other. The recognized gestures are the same either way.
+	 * By default they're scored in parallel on machines with enough processors.
+	 * @param parallelScoring true to score in parallel, false to score serially.
+	 */
+	public void setParallelScoring(boolean parallelScoring) {
+		this.recognizerMgr.setParallelScoring(parallelScoring);
+	}
+	
+	public boolean getParallelScoring() {
+		return this.recognizerMgr.getParallelScoring();
+	}
+	
+	/**
+	 * Sets whether candidate recognizers are scored with beam-pruned forward passes that are abandoned as soon
+	 * as they can no longer affect which gesture is recognized. This is faster than scoring every candidate in
+	 * full but can give a different result in close cases. Off by default.
+	 * @param prunedScoring true to prune, false to score every candidate in full.
+	 */
+	public void setPrunedScoring(boolean prunedScoring) {
+		this.recognizerMgr.setPrunedScoring(prunedScoring);
+	}
+	
+	public boolean getPrunedScoring() {
+		return this.recognizerMgr.getPrunedScoring();
+	}
+	
+	/**
+	 * Sets a cascade of cheap checks on each gesture's statistics (duration, number of data points, fierceness,
+	 * dominant axis and energy) that rules out gestures before they are scored, see CandidateCascade.
+	 * This is faster but, unlike full scoring, can recognize the next best gesture when the most probable one
+	 * is ruled out.
+	 * @param cascade The cascade, null to score every gesture with the right hands (the default).
+	 */
+	public void setCandidateCascade(CandidateCascade cascade) {
+		this.recognizerMgr.setCandidateCascade(cascade);
+	}
+	
+	public CandidateCascade getCandidateCascade() {
+		return this.recognizerMgr.getCandidateCascade();
+	}
+	
+	/**
+	 * Sets whether gestures are scored with a kernel that evaluates the emissions of all of a recognizer's states
+	 * against each data point at once, which the JVM can vectorize. Either way the recognized gestures are exactly
+	 * the same, this only changes how fast they're found. This applies to every GestureRecognizer.
+	 * @param batchEmissions true to use the batch kernel, false to evaluate one state at a time (the default).
+	 */
+	public static void setBatchEmissions(boolean batchEmissions) {
+		CompiledHmm.setBatchEmissions(batchEmissions);
+	}
+	
+	public static boolean getBatchEmissions() {
+		return CompiledHmm.getBatchEmissions();
+	}
+	
 	/**
 	 * Use the gesture recognizer to recognize the given player gesture as it would if the game were
 	 * being played.
@@ -116,6 +285,18 @@ public class GestureRecognizer {
 		return this.recognizerMgr.recognize(gestureInstance, true);
 	}
 	
+	/**
+	 * Recognizes each of the given gesture instances as the game would (e.g., to check a newly trained engine
+	 * against a corpus of recorded gestures). When parallel scoring is on, the instances are recognized in parallel.
+	 * @param gestureInstances The gesture instances to recognize.
+	 * @param isRingmasterGesture Whether the instances are ringmaster gestures or player gestures.
+	 * @return The recognized gesture, the ln probability of each gesture type that was scored and the time taken
+	 * for each instance.
+	 */
+	public BatchRecognitionResult recognizeBatch(List<GestureInstance> gestureInstances, boolean isRingmasterGesture) {
+		return this.recognizerMgr.recognizeBatch(gestureInstances, isRingmasterGesture);
+	}
+	
 	/**
 	 * Use the gesture recognizer to recognize a given gesture instance executed by the given player.
 	 * This function will both recognize the gesture and, if the gesture is identified, it will build
@@ -131,6 +312,18 @@ public class GestureRecognizer {
 
 		// Attempt to recognize the gesture as one of the archetypal SSF gestures...
 		GestureType result = this.recognizePlayerGestureAsGameWould(gestureInstance);
+		return this.buildPlayerAction(actionFactory, playerNum, result);
+	}
+	
+	/**
+	 * Builds the appropriate Action for the gamemodel to consume for a gesture that has already been recognized
+	 * (e.g., by a GestureRecognitionSession) for the given player.
+	 * @param actionFactory The game model's action factory, used to construct the gesture action.
+	 * @param playerNum The player who executed the gesture.
+	 * @param result The recognized gesture, null if no gesture was recognized.
+	 * @return The Action for the game model to consume if a gesture was recognized, if not then null is returned.
+	 */
+	public Action buildPlayerAction(ActionFactory actionFactory, int playerNum, GestureType result) {
 		if (result == null) {
 			// No gesture was recognized
 			this.logger.info("Failed to recognize player gesture.");
@@ -153,6 +346,17 @@ public class GestureRecognizer {
 	public Action recognizeRingmasterGesture(ActionFactory actionFactory, GestureInstance gestureInstance) {
 		// Attempt to recognize the gesture as one of the archetypal SSF gestures...
 		GestureType result = this.recognizeRingmasterGestureAsGameWould(gestureInstance);
+		return this.buildRingmasterAction(actionFactory, result);
+	}
+	
+	/**
+	 * Builds the appropriate Action for the gamemodel to consume for a ringmaster gesture that has already been
+	 * recognized (e.g., by a GestureRecognitionSession).
+	 * @param actionFactory The game model's action factory, used to construct the gesture action.
+	 * @param result The recognized gesture, null if no gesture was recognized.
+	 * @return The Action for the game model to consume if a gesture was recognized, if not then null is returned.
+	 */
+	public Action buildRingmasterAction(ActionFactory actionFactory, GestureType result) {
 		if (result == null) {
 			// No gesture was recognized
 			this.logger.info("Failed to recognize ringmaster gesture.");
@@ -165,6 +369,23 @@ public class GestureRecognizer {
 				result.getUsesLeftHand(), result.getUsesRightHand());
 	}
 	
+	/**
+	 * Begins a streaming recognition session for a player gesture that is still being performed. Data fed to
+	 * the session is scored as it arrives so that the gesture can be recognized as soon as it's finished.
+	 * @return A new session, only to be used by a single thread.
+	 */
+	public GestureRecognitionSession beginPlayerGestureSession() {
+		return new GestureRecognitionSession(this, false);
+	}
+	
+	/**
+	 * Begins a streaming recognition session for a ringmaster gesture that is still being performed.
+	 * @return A new session, only to be used by a single thread.
+	 */
+	public GestureRecognitionSession beginRingmasterGestureSession() {
+		return new GestureRecognitionSession(this, true);
+	}
+	
 	/**
 	 * Use the gesture recognizer to recognize the given gesture and produce a full gesture recognition
 	 * result for every gesture that was tested.
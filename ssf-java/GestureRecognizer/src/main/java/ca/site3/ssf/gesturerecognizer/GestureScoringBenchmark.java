@@ -0,0 +1,186 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times how long the gesture recognizer takes to recognize a corpus of recorded gestures with each of its
+ * scoring modes and checks that the modes agree with full scoring. The candidate cascade is fitted to the
+ * corpus itself, so its fitted stages only reject gestures that are unlike every recording of them.
+ * 
+ * Usage: GestureScoringBenchmark engine_file corpus_dir [max_instances_per_dir] [num_repetitions]
+ * (e.g., data/gesture/gesture_recognizer_engine.eng data/gesture/ssf_gestures_2013 50 5).
+ * The recognizer logs every gesture at INFO level, so run this with the logging level turned down for
+ * meaningful timings.
+ */
+class GestureScoringBenchmark {
+	
+	private static final int NUM_WARM_UP_REPETITIONS = 2;
+	
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: GestureScoringBenchmark engine_file corpus_dir [max_instances_per_dir] [num_repetitions]");
+			return;
+		}
+		
+		int maxInstancesPerDir = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		int numRepetitions     = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		
+		GestureRecognizer recognizer = new GestureRecognizer();
+		try {
+			if (!recognizer.loadRecognizerEngine(new FileReader(args[0]))) {
+				System.out.println("Failed to load gesture recognizer engine: " + args[0]);
+				return;
+			}
+		}
+		catch (FileNotFoundException e) {
+			System.out.println("Failed to find gesture recognizer engine: " + args[0]);
+			return;
+		}
+		recognizer.setParallelScoring(false);
+		
+		GestureCorpus corpus = GestureCorpus.load(new File(args[1]), maxInstancesPerDir);
+		System.out.println("Loaded " + corpus.size() + " gesture instances.");
+		if (corpus.size() == 0) {
+			return;
+		}
+		
+		// Full scoring is the reference
+		GestureType[] fullResults = new GestureType[corpus.size()];
+		recognizer.setPrunedScoring(false);
+		double fullTime = GestureScoringBenchmark.time(recognizer, corpus, fullResults, numRepetitions);
+		System.out.println(String.format("Full scoring:   %10.1f us/gesture", fullTime * 1e6));
+		
+		GestureType[] prunedResults = new GestureType[corpus.size()];
+		recognizer.setPrunedScoring(true);
+		PrunedCandidateScorer.resetStatistics();
+		double prunedTime = GestureScoringBenchmark.time(recognizer, corpus, prunedResults, numRepetitions);
+		System.out.println(String.format("Pruned scoring: %10.1f us/gesture (%.2fx), %.1f%% of observations scored, %s",
+				prunedTime * 1e6, fullTime / prunedTime, 100.0 * PrunedCandidateScorer.getScoredObservationFraction(),
+				GestureScoringBenchmark.describeAgreement(fullResults, prunedResults)));
+		recognizer.setPrunedScoring(false);
+		
+		GestureType[] batchResults = new GestureType[corpus.size()];
+		GestureRecognizer.setBatchEmissions(true);
+		double batchTime = GestureScoringBenchmark.time(recognizer, corpus, batchResults, numRepetitions);
+		GestureRecognizer.setBatchEmissions(false);
+		System.out.println(String.format("Batch emissions:%10.1f us/gesture (%.2fx), %s",
+				batchTime * 1e6, fullTime / batchTime, GestureScoringBenchmark.describeAgreement(fullResults, batchResults)));
+		
+		GestureType[] cascadeResults = new GestureType[corpus.size()];
+		CandidateCascade cascade = GestureScoringBenchmark.fitCascade(corpus);
+		recognizer.setCandidateCascade(cascade);
+		double cascadeTime = GestureScoringBenchmark.time(recognizer, corpus, cascadeResults, numRepetitions);
+		recognizer.setCandidateCascade(null);
+		System.out.println(String.format("Cascade:        %10.1f us/gesture (%.2fx), %.1f%% of candidates rejected, %s",
+				cascadeTime * 1e6, fullTime / cascadeTime, 100.0 * cascade.getNumRejected() / Math.max(1, cascade.getNumCandidates()),
+				GestureScoringBenchmark.describeAgreement(fullResults, cascadeResults)));
+		System.out.println("  " + cascade);
+		
+		GestureType[] parallelBatchResults = new GestureType[corpus.size()];
+		recognizer.setParallelScoring(true);
+		double parallelBatchTime = GestureScoringBenchmark.timeBatches(recognizer, corpus, parallelBatchResults, numRepetitions);
+		recognizer.setParallelScoring(false);
+		System.out.println(String.format("Parallel batch: %10.1f us/gesture (%.2fx), %s",
+				parallelBatchTime * 1e6, fullTime / parallelBatchTime,
+				GestureScoringBenchmark.describeAgreement(fullResults, parallelBatchResults)));
+	}
+	
+	/**
+	 * Recognizes the whole corpus the given number of times (after warming up) with recognizeBatch, one batch
+	 * for the player gestures and one for the ringmaster gestures.
+	 * @return The average time to recognize a gesture, in seconds.
+	 */
+	static double timeBatches(GestureRecognizer recognizer, GestureCorpus corpus, GestureType[] results, int numRepetitions) {
+		List<GestureInstance> playerInstances = new ArrayList<GestureInstance>();
+		List<Integer> playerIndices = new ArrayList<Integer>();
+		List<GestureInstance> ringmasterInstances = new ArrayList<GestureInstance>();
+		List<Integer> ringmasterIndices = new ArrayList<Integer>();
+		for (int i = 0; i < corpus.size(); i++) {
+			if (corpus.getGestureType(i).getIsRingmasterGesture()) {
+				ringmasterInstances.add(corpus.getInstance(i));
+				ringmasterIndices.add(i);
+			}
+			else {
+				playerInstances.add(corpus.getInstance(i));
+				playerIndices.add(i);
+			}
+		}
+		
+		long startTime = 0;
+		for (int i = 0; i < NUM_WARM_UP_REPETITIONS + numRepetitions; i++) {
+			if (i == NUM_WARM_UP_REPETITIONS) {
+				startTime = System.nanoTime();
+			}
+			BatchRecognitionResult playerResult = recognizer.recognizeBatch(playerInstances, false);
+			BatchRecognitionResult ringmasterResult = recognizer.recognizeBatch(ringmasterInstances, true);
+			for (int j = 0; j < playerIndices.size(); j++) {
+				results[playerIndices.get(j)] = playerResult.getRecognizedGesture(j);
+			}
+			for (int j = 0; j < ringmasterIndices.size(); j++) {
+				results[ringmasterIndices.get(j)] = ringmasterResult.getRecognizedGesture(j);
+			}
+		}
+		return (System.nanoTime() - startTime) / 1e9 / numRepetitions / corpus.size();
+	}
+	
+	static CandidateCascade fitCascade(GestureCorpus corpus) {
+		Map<GestureType, GestureDataSet> dataSets = new EnumMap<GestureType, GestureDataSet>(GestureType.class);
+		for (int i = 0; i < corpus.size(); i++) {
+			GestureDataSet dataSet = dataSets.get(corpus.getGestureType(i));
+			if (dataSet == null) {
+				dataSet = new GestureDataSet();
+				dataSets.put(corpus.getGestureType(i), dataSet);
+			}
+			dataSet.addGestureInstance(corpus.getInstance(i));
+		}
+		
+		CandidateCascade cascade = new CandidateCascade();
+		for (Map.Entry<GestureType, GestureDataSet> entry : dataSets.entrySet()) {
+			cascade.fit(entry.getKey(), entry.getValue());
+		}
+		return cascade;
+	}
+	
+	/**
+	 * Recognizes the whole corpus the given number of times (after warming up).
+	 * @return The average time to recognize a gesture, in seconds.
+	 */
+	static double time(GestureRecognizer recognizer, GestureCorpus corpus, GestureType[] results, int numRepetitions) {
+		for (int i = 0; i < NUM_WARM_UP_REPETITIONS; i++) {
+			GestureScoringBenchmark.recognizeAll(recognizer, corpus, results);
+		}
+		
+		long startTime = System.nanoTime();
+		for (int i = 0; i < numRepetitions; i++) {
+			GestureScoringBenchmark.recognizeAll(recognizer, corpus, results);
+		}
+		return (System.nanoTime() - startTime) / 1e9 / numRepetitions / corpus.size();
+	}
+	
+	static String describeAgreement(GestureType[] expected, GestureType[] actual) {
+		int numSame = 0;
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] == actual[i]) {
+				numSame++;
+			}
+		}
+		return numSame + "/" + expected.length + " results same as full scoring";
+	}
+	
+	private static void recognizeAll(GestureRecognizer recognizer, GestureCorpus corpus, GestureType[] results) {
+		for (int i = 0; i < corpus.size(); i++) {
+			if (corpus.getGestureType(i).getIsRingmasterGesture()) {
+				results[i] = recognizer.recognizeRingmasterGestureAsGameWould(corpus.getInstance(i));
+			}
+			else {
+				results[i] = recognizer.recognizePlayerGestureAsGameWould(corpus.getInstance(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package ca.site3.ssf.gesturerecognizer;
+
+/**
+ * An immutable summary of the scalar statistics of a gesture instance: its number of data points,
+ * its duration, the extremes of its acceleration (across both gloves, these make up the gesture's
+ * 'fierceness') and the energy (sum of squares) of its acceleration along each axis.
+ * 
+ * The statistics can be built up one sample at a time with an Accumulator as the gesture's data
+ * arrives (e.g., while the gesture is being coalesced from glove events), so that nothing has to go
+ * back over the gesture's data to check whether it's acceptable (see GestureInstance.getStatistics).
+ * 
+ * Like the GestureInstance's original accessors, the maximum and minimum accelerations are measured
+ * from zero: the maximum is never below 0 and the minimum is never above 0.
+ */
+public final class GestureStatistics {
+	
+	public static final int NUM_AXES = 3;
+	
+	/**
+	 * Accumulates the statistics of a gesture (or of one glove's part in one) a data point at a time.
+	 * Not thread safe.
+	 */
+	public static final class Accumulator {
+		private int numDataPts;
+		private double firstTime;
+		private double lastTime;
+		private double maxAccel;
+		private double minAccel;
+		private double maxAbsAccel;
+		private double minAbsAccel;
+		private final double[] accelEnergy = new double[NUM_AXES];
+		
+		public Accumulator() {
+			this.reset();
+		}
+		
+		public void reset() {
+			this.numDataPts  = 0;
+			this.firstTime   = 0.0;
+			this.lastTime    = 0.0;
+			this.maxAccel    = 0.0;
+			this.minAccel    = 0.0;
+			this.maxAbsAccel = 0.0;
+			this.minAbsAccel = 0.0;
+			for (int i = 0; i < NUM_AXES; i++) {
+				this.accelEnergy[i] = 0.0;
+			}
+		}
+		
+		/**
+		 * Adds the time of the gesture's next data point.
+		 * @param time The time of the data point in seconds.
+		 */
+		public void addTime(double time) {
+			if (this.numDataPts == 0) {
+				this.firstTime = time;
+			}
+			this.lastTime = time;
+			this.numDataPts++;
+		}
+		
+		/**
+		 * Adds the acceleration of one glove at a data point.
+		 */
+		public void addAccel(double x, double y, double z) {
+			this.addAccel(0, x);
+			this.addAccel(1, y);
+			this.addAccel(2, z);
+		}
+		
+		private void addAccel(int axis, double accel) {
+			this.maxAccel    = Math.max(this.maxAccel, accel);
+			this.minAccel    = Math.min(this.minAccel, accel);
+			this.maxAbsAccel = Math.max(this.maxAbsAccel, Math.abs(accel));
+			this.minAbsAccel = Math.min(this.minAbsAccel, Math.abs(accel));
+			this.accelEnergy[axis] += accel * accel;
+		}
+		
+		public int getNumDataPts() {
+			return this.numDataPts;
+		}
+		
+		/**
+		 * @return The statistics of everything accumulated so far.
+		 */
+		public GestureStatistics toStatistics() {
+			return new GestureStatistics(this.numDataPts, this.lastTime - this.firstTime,
+					this.maxAccel, this.minAccel, this.maxAbsAccel, this.minAbsAccel, this.accelEnergy.clone());
+		}
+	}
+	
+	private final int numDataPts;
+	private final double duration;
+	private final double maxAccel;
+	private final double minAccel;
+	private final double maxAbsAccel;
+	private final double minAbsAccel;
+	private final double[] accelEnergy;  // [axis]
+	
+	private GestureStatistics(int numDataPts, double duration, double maxAccel, double minAccel,
+			double maxAbsAccel, double minAbsAccel, double[] accelEnergy) {
+		this.numDataPts  = numDataPts;
+		this.duration    = duration;
+		this.maxAccel    = maxAccel;
+		this.minAccel    = minAccel;
+		this.maxAbsAccel = maxAbsAccel;
+		this.minAbsAccel = minAbsAccel;
+		this.accelEnergy = accelEnergy;
+	}
+	
+	/**
+	 * Works out the statistics of the given packed gesture data in a single pass.
+	 * @param accelData The packed acceleration data of every glove (see GestureInstance.getObservations).
+	 * @param timePts The time of each data point.
+	 */
+	static GestureStatistics compute(double[] accelData, double[] timePts) {
+		Accumulator accumulator = new Accumulator();
+		for (int i = 0; i < timePts.length; i++) {
+			accumulator.addTime(timePts[i]);
+		}
+		for (int i = 0; i + 2 < accelData.length; i += NUM_AXES) {
+			accumulator.addAccel(accelData[i], accelData[i + 1], accelData[i + 2]);
+		}
+		return accumulator.toStatistics();
+	}
+	
+	/**
+	 * Combines these statistics of one glove's part in a two-handed gesture with those of the other
+	 * glove's part, taken over the same data points.
+	 * @param otherGlove The statistics of the other glove.
+	 * @return The statistics of the two-handed gesture, with this glove's number of data points and duration.
+	 */
+	public GestureStatistics combinedWith(GestureStatistics otherGlove) {
+		double[] combinedEnergy = new double[NUM_AXES];
+		for (int i = 0; i < NUM_AXES; i++) {
+			combinedEnergy[i] = this.accelEnergy[i] + otherGlove.accelEnergy[i];
+		}
+		return new GestureStatistics(this.numDataPts, this.duration,
+				Math.max(this.maxAccel, otherGlove.maxAccel), Math.min(this.minAccel, otherGlove.minAccel),
+				Math.max(this.maxAbsAccel, otherGlove.maxAbsAccel), Math.min(this.minAbsAccel, otherGlove.minAbsAccel),
+				combinedEnergy);
+	}
+	
+	public int getNumDataPts() {
+		return this.numDataPts;
+	}
+	
+	/**
+	 * @return The time between the first and last data points in seconds.
+	 */
+	public double getDuration() {
+		return this.duration;
+	}
+	
+	public double getMaxAccel() {
+		return this.maxAccel;
+	}
+	
+	public double getMinAccel() {
+		return this.minAccel;
+	}
+	
+	public double getMaxAbsAccel() {
+		return this.maxAbsAccel;
+	}
+	
+	public double getMinAbsAccel() {
+		return this.minAbsAccel;
+	}
+	
+	/**
+	 * @return The difference between the highest and lowest acceleration values (see GestureInstance.getTotalFierceness).
+	 */
+	public double getTotalFierceness() {
+		return this.maxAccel - this.minAccel;
+	}
+	
+	/**
+	 * Gets the energy of the acceleration along the given axis: the sum of the squares of every glove's
+	 * acceleration along that axis over every data point.
+	 * @param axis 0, 1 or 2 for x, y or z.
+	 */
+	public double getAccelEnergy(int axis) {
+		return this.accelEnergy[axis];
+	}
+	
+	/**
+	 * @return The energy of the acceleration along all of the axes.
+	 */
+	public double getTotalAccelEnergy() {
+		return this.accelEnergy[0] + this.accelEnergy[1] + this.accelEnergy[2];
+	}
+	
+	/**
+	 * @return The axis with the most acceleration energy (0, 1 or 2 for x, y or z), the first of them on a tie.
+	 */
+	public int getDominantAxis() {
+		int dominantAxis = 0;
+		for (int i = 1; i < NUM_AXES; i++) {
+			if (this.accelEnergy[i] > this.accelEnergy[dominantAxis]) {
+				dominantAxis = i;
+			}
+		}
+		return dominantAxis;
+	}
+	
+	public String toString() {
+		return "GestureStatistics { Data Pts: " + this.numDataPts + ", Duration: " + this.duration +
+				", Fierceness: " + this.getTotalFierceness() + ", Accel Energy: (" + this.accelEnergy[0] + ", " +
+				this.accelEnergy[1] + ", " + this.accelEnergy[2] + ") }";
+	}
+}
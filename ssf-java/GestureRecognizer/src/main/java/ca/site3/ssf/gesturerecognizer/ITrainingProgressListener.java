@@ -0,0 +1,25 @@
+package ca.site3.ssf.gesturerecognizer;
+
+/**
+ * If you want to know how training is going when several gestures are trained at once, pass an
+ * ITrainingProgressListener to {@link GestureRecognizer#trainAll}. Its methods are called from the
+ * training threads, possibly from more than one of them at a time.
+ */
+public interface ITrainingProgressListener {
+	
+	/**
+	 * Called when the given gesture starts being trained.
+	 * @param gestureType The gesture.
+	 */
+	public void onGestureTrainingStarted(GestureType gestureType);
+	
+	/**
+	 * Called when the given gesture has finished being trained.
+	 * @param gestureType The gesture.
+	 * @param success Whether the gesture was trained successfully.
+	 * @param numFinished The number of gestures that have finished being trained so far, including this one.
+	 * @param numGestures The number of gestures being trained.
+	 */
+	public void onGestureTrainingFinished(GestureType gestureType, boolean success, int numFinished, int numGestures);
+
+}
@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 
 import be.ac.ulg.montefiore.run.jahmm.Hmm;
 import be.ac.ulg.montefiore.run.jahmm.ObservationVector;
+import be.ac.ulg.montefiore.run.jahmm.OpdfMultiGaussian;
 import be.ac.ulg.montefiore.run.jahmm.OpdfMultiGaussianFactory;
 import be.ac.ulg.montefiore.run.jahmm.learn.BaumWelchScaledLearner;
 import be.ac.ulg.montefiore.run.jahmm.learn.KMeansLearner;
@@ -23,9 +24,62 @@ public class JahmmConverter {
 
 	private static Logger logger = LoggerFactory.getLogger(JahmmConverter.class);
 	
+	// Baum-Welch learning stops once an iteration improves the ln probability of the training sequences
+	// by less than epsilon (relative to what it was), or after the maximum number of iterations. Gestures
+	// often level off for a few iterations before improving again, and on the 2013 gesture corpus any
+	// larger epsilon stopped early enough to cost some accuracy (e.g., 1e-4 trained in 70% of the time
+	// but recognized 0.3 percentage points fewer gestures), so the default only stops gestures that have
+	// really converged
+	public static final double DEFAULT_BAUM_WELCH_EPSILON = 1e-5;
+	public static final int DEFAULT_MAX_BAUM_WELCH_ITERATIONS = 15;
+	
+	private static volatile double baumWelchEpsilon = DEFAULT_BAUM_WELCH_EPSILON;
+	private static volatile int maxBaumWelchIterations = DEFAULT_MAX_BAUM_WELCH_ITERATIONS;
+	
+	// Whether Baum-Welch learning is done by the ParallelBaumWelchLearner rather than Jahmm's own learner
+	private static volatile boolean parallelBaumWelch = true;
+	
 	private JahmmConverter() {
 	}
 	
+	/**
+	 * Sets whether HMMs are trained with the ParallelBaumWelchLearner (the default), which spreads each
+	 * Baum-Welch iteration over the processors, or with Jahmm's BaumWelchScaledLearner. Both make the same
+	 * re-estimates, they only differ in the order the statistics get summed.
+	 */
+	public static void setParallelBaumWelch(boolean parallelBaumWelch) {
+		JahmmConverter.parallelBaumWelch = parallelBaumWelch;
+	}
+	
+	public static boolean getParallelBaumWelch() {
+		return JahmmConverter.parallelBaumWelch;
+	}
+	
+	/**
+	 * Sets the relative improvement in the ln probability of the training sequences below which Baum-Welch
+	 * learning has converged and stops. An epsilon of zero always does the maximum number of iterations.
+	 */
+	public static void setBaumWelchEpsilon(double epsilon) {
+		assert(epsilon >= 0.0);
+		JahmmConverter.baumWelchEpsilon = epsilon;
+	}
+	
+	public static double getBaumWelchEpsilon() {
+		return JahmmConverter.baumWelchEpsilon;
+	}
+	
+	/**
+	 * Sets the most iterations Baum-Welch learning does, whether or not it has converged.
+	 */
+	public static void setMaxBaumWelchIterations(int maxIterations) {
+		assert(maxIterations >= 1);
+		JahmmConverter.maxBaumWelchIterations = maxIterations;
+	}
+	
+	public static int getMaxBaumWelchIterations() {
+		return JahmmConverter.maxBaumWelchIterations;
+	}
+	
 	/**
 	 * Converts the given gesture instance into a sequence of observation vectors for the Jahmm library.
 	 * @param gestureInst The gesture instance to use in creating the observation sequence.
@@ -77,6 +131,19 @@ public class JahmmConverter {
 	 * @return The newly built HMM, null on failure to build (dataSet is invalid: linear or constant).
 	 */
 	public static Hmm<ObservationVector> buildKMeansHMMWithTraining(GestureDataSet dataSet, int numStates) {
+		return JahmmConverter.buildKMeansHMMWithTraining(dataSet, numStates, CovarianceType.FULL);
+	}
+	
+	/**
+	 * Builds a HMM using a K-Means seperation algorithm combined with Baum-Welch Learning.
+	 * @param dataSet The data set used to build the initial HMM.
+	 * @param numStates The number of states to use in the built HMM.
+	 * @param covarianceType The kind of covariance matrices the HMM's emissions will have.
+	 * @return The newly built HMM, null on failure to build (dataSet is invalid: linear or constant).
+	 */
+	public static Hmm<ObservationVector> buildKMeansHMMWithTraining(GestureDataSet dataSet, int numStates,
+			CovarianceType covarianceType) {
+		
 		List<List<ObservationVector>> sequences = JahmmConverter.gestureDataSetToObservationSequences(dataSet);
 		
 		int dimension = sequences.get(0).get(0).dimension();
@@ -85,9 +152,7 @@ public class JahmmConverter {
 						new OpdfMultiGaussianFactory(dimension), sequences);
 		try {
 			Hmm<ObservationVector> kMeansHmm = kMeansLearner.iterate();
-			BaumWelchScaledLearner bwl = new BaumWelchScaledLearner();
-			bwl.setNbIterations(15);
-			return bwl.learn(kMeansHmm, sequences);
+			return JahmmConverter.baumWelch(kMeansHmm, sequences, covarianceType);
 		}
 		catch (IllegalArgumentException e) {
 			logger.warn("Failed to learn from gesture data set: " + e.getMessage());
@@ -102,11 +167,22 @@ public class JahmmConverter {
 	 * @return The HMM, now smarter than ever before! (or not, if learning failed)
 	 */
 	public static Hmm<ObservationVector> trainHMM(Hmm<ObservationVector> hmm, GestureDataSet dataSet) {
+		return JahmmConverter.trainHMM(hmm, dataSet, CovarianceType.FULL);
+	}
+	
+	/**
+	 * Train an existing HMM with the given data set.
+	 * @param hmm The existing HMM to train.
+	 * @param dataSet The new data set used to add training/learning to the given HMM.
+	 * @param covarianceType The kind of covariance matrices the trained HMM's emissions will have.
+	 * @return The HMM, now smarter than ever before! (or not, if learning failed)
+	 */
+	public static Hmm<ObservationVector> trainHMM(Hmm<ObservationVector> hmm, GestureDataSet dataSet,
+			CovarianceType covarianceType) {
+		
 		List<List<ObservationVector>> sequences = JahmmConverter.gestureDataSetToObservationSequences(dataSet);
 		try {
-			BaumWelchScaledLearner bwl = new BaumWelchScaledLearner();
-			bwl.setNbIterations(15);
-			return bwl.learn(hmm, sequences);
+			return JahmmConverter.baumWelch(hmm, sequences, covarianceType);
 		}
 		catch (IllegalArgumentException e) {
 			logger.warn("Failed to learn from gesture data set: " + e.getMessage());
@@ -114,6 +190,84 @@ public class JahmmConverter {
 		return hmm;
 	}
 	
+	private static Hmm<ObservationVector> baumWelch(Hmm<ObservationVector> hmm, List<List<ObservationVector>> sequences,
+			CovarianceType covarianceType) {
+		
+		double epsilon = JahmmConverter.baumWelchEpsilon;
+		int maxIterations = JahmmConverter.maxBaumWelchIterations;
+		ParallelBaumWelchLearner learner = JahmmConverter.parallelBaumWelch ? new ParallelBaumWelchLearner(sequences) : null;
+		BaumWelchScaledLearner bwl = new BaumWelchScaledLearner();
+		
+		// Jahmm only fits full covariance matrices, with diagonal ones we keep the variances after every
+		// iteration (which, for Gaussians, is the maximum likelihood diagonal fit) and drop the rest.
+		// Each iteration builds a new HMM, so the given one is left alone.
+		Hmm<ObservationVector> result = hmm;
+		double prevLnProbability = Double.NaN;
+		int numIterations = 0;
+		boolean converged = false;
+		while (numIterations < maxIterations && !converged) {
+			
+			// Each iteration works out the ln probability of the HMM it starts from, so the improvement an
+			// iteration made is only known during the next one (which can only improve things further)
+			double lnProbability;
+			if (learner != null) {
+				result = learner.iterate(result);
+				lnProbability = learner.getLnProbability();
+			}
+			else {
+				lnProbability = JahmmConverter.lnProbability(result, sequences);
+				result = bwl.iterate(result, sequences);
+			}
+			if (covarianceType != CovarianceType.FULL) {
+				result = JahmmConverter.diagonalizeCovariances(result);
+			}
+			
+			double improvement = (lnProbability - prevLnProbability) / Math.abs(prevLnProbability);
+			converged = improvement < epsilon;
+			logger.info("Baum-Welch ln probability after " + numIterations + " iterations: " + lnProbability +
+					(numIterations == 0 ? "" : " (relative improvement " + improvement + ")"));
+			
+			prevLnProbability = lnProbability;
+			numIterations++;
+		}
+		
+		logger.info("Baum-Welch learning " + (converged ? "converged" : "stopped") + " after " + numIterations +
+				" iterations over " + sequences.size() + " sequences.");
+		return result;
+	}
+	
+	/**
+	 * @return The ln probability of all of the given sequences under the given HMM.
+	 */
+	private static double lnProbability(Hmm<ObservationVector> hmm, List<List<ObservationVector>> sequences) {
+		double result = 0.0;
+		for (List<ObservationVector> sequence : sequences) {
+			result += hmm.lnProbability(sequence);
+		}
+		return result;
+	}
+	
+	/**
+	 * Drops all of the off-diagonal entries of the covariance matrices of the given HMM's emissions.
+	 * @param hmm The HMM, its emissions are replaced (so it must not be in use elsewhere).
+	 * @return The given HMM.
+	 */
+	static Hmm<ObservationVector> diagonalizeCovariances(Hmm<ObservationVector> hmm) {
+		for (int i = 0; i < hmm.nbStates(); i++) {
+			OpdfMultiGaussian opdf = (OpdfMultiGaussian)hmm.getOpdf(i);
+			double[][] covariance = opdf.covariance();
+			for (int r = 0; r < covariance.length; r++) {
+				for (int c = 0; c < covariance.length; c++) {
+					if (r != c) {
+						covariance[r][c] = 0.0;
+					}
+				}
+			}
+			hmm.setOpdf(i, new OpdfMultiGaussian(opdf.mean(), covariance));
+		}
+		return hmm;
+	}
+	
 	public static void main(String[] args) {
 		
 		GestureInstance[] gestureInstances = new GestureInstance[20];
@@ -0,0 +1,315 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.ObservationVector;
+import be.ac.ulg.montefiore.run.jahmm.Opdf;
+
+/**
+ * Baum-Welch learning for HMMs with multivariate Gaussian emissions that does the same re-estimation as
+ * Jahmm's BaumWelchScaledLearner, but spreads each iteration over the processors:
+ * - The expectation step (scaled forward-backward over every training sequence) is split into fixed blocks of
+ *   sequences, each of which accumulates its own transition statistics, and the blocks are summed in order
+ *   afterwards. Since the blocks don't depend on the number of threads, neither does the trained HMM.
+ * - The maximization step fits each state's emissions on its own, so the states are fitted in parallel.
+ * The calling thread does its share of the work and is helped by a pool of threads shared by all learners.
+ * Each sequence's emission probabilities are also only evaluated once per iteration (Jahmm evaluates them
+ * again for every state when it estimates xi), which helps just as much on a single processor.
+ * 
+ * A learner holds on to the training sequences and the per-sequence state occupancies between iterations,
+ * so it should only be used by one thread at a time.
+ */
+final class ParallelBaumWelchLearner {
+	
+	// How many training sequences each expectation step task works through, small enough that hundreds
+	// of sequences are shared out evenly, big enough that the per-block statistics are cheap to sum
+	private static final int SEQUENCES_PER_BLOCK = 8;
+	
+	// Threads that help with learning, shared by all learners (the learning thread does its share
+	// too, so there's one less of these than there are processors)
+	private static ExecutorService learningPool = null;
+	
+	/**
+	 * The statistics the expectation step accumulates over a block of training sequences.
+	 */
+	private static final class BlockStatistics {
+		final double[][] aijNum;  // [i][j], sum of xi over every sequence and time
+		final double[] aijDen;    // [i], sum of gamma over every sequence and time but the last
+		double lnProbability = 0.0;
+		
+		BlockStatistics(int numStates) {
+			this.aijNum = new double[numStates][numStates];
+			this.aijDen = new double[numStates];
+		}
+	}
+	
+	private final List<? extends List<ObservationVector>> sequences;
+	private final List<ObservationVector> observations;  // Every sequence's observations, one after the other
+	private final double[][][] allGamma;                 // [sequence][t][state]
+	private double lnProbability = Double.NaN;
+	
+	/**
+	 * @param sequences The training sequences, each must have at least two observations.
+	 */
+	ParallelBaumWelchLearner(List<? extends List<ObservationVector>> sequences) {
+		assert(sequences != null && !sequences.isEmpty());
+		
+		this.sequences = sequences;
+		this.allGamma  = new double[sequences.size()][][];
+		
+		int numObservations = 0;
+		for (List<ObservationVector> sequence : sequences) {
+			if (sequence.size() <= 1) {
+				throw new IllegalArgumentException("Observation sequence too short");
+			}
+			numObservations += sequence.size();
+		}
+		this.observations = new ArrayList<ObservationVector>(numObservations);
+		for (List<ObservationVector> sequence : sequences) {
+			this.observations.addAll(sequence);
+		}
+	}
+	
+	/**
+	 * @return The ln probability of all of the training sequences under the HMM that was given to the last
+	 * call of iterate (i.e., before that iteration's re-estimation), NaN if iterate hasn't been called.
+	 */
+	double getLnProbability() {
+		return this.lnProbability;
+	}
+	
+	/**
+	 * Does one iteration of Baum-Welch learning.
+	 * @param hmm The HMM to re-estimate, it's left alone.
+	 * @return A new, re-estimated HMM.
+	 */
+	Hmm<ObservationVector> iterate(final Hmm<ObservationVector> hmm) {
+		final int numStates = hmm.nbStates();
+		
+		// Jahmm's Gaussians work out their Cholesky decompositions the first time they're used and don't
+		// publish them safely, make sure that happens here before the HMM is shared with other threads
+		for (int i = 0; i < numStates; i++) {
+			hmm.getOpdf(i).probability(this.observations.get(0));
+		}
+		
+		// Expectation step
+		int numBlocks = (this.sequences.size() + SEQUENCES_PER_BLOCK - 1) / SEQUENCES_PER_BLOCK;
+		final BlockStatistics[] blockStatistics = new BlockStatistics[numBlocks];
+		ParallelBaumWelchLearner.runInParallel(numBlocks, new IndexedTask() {
+			public void run(int block) {
+				blockStatistics[block] = ParallelBaumWelchLearner.this.expectation(hmm, block);
+			}
+		});
+		
+		double[][] aijNum = new double[numStates][numStates];
+		double[] aijDen = new double[numStates];
+		double lnProbability = 0.0;
+		for (BlockStatistics statistics : blockStatistics) {
+			for (int i = 0; i < numStates; i++) {
+				aijDen[i] += statistics.aijDen[i];
+				for (int j = 0; j < numStates; j++) {
+					aijNum[i][j] += statistics.aijNum[i][j];
+				}
+			}
+			lnProbability += statistics.lnProbability;
+		}
+		this.lnProbability = lnProbability;
+		
+		// Maximization step
+		final Hmm<ObservationVector> nhmm;
+		try {
+			nhmm = hmm.clone();
+		}
+		catch (CloneNotSupportedException e) {
+			throw new InternalError();
+		}
+		
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < numStates; j++) {
+				// A state that's never reached keeps its transitions
+				nhmm.setAij(i, j, aijDen[i] == 0.0 ? hmm.getAij(i, j) : aijNum[i][j] / aijDen[i]);
+			}
+		}
+		
+		for (int i = 0; i < numStates; i++) {
+			nhmm.setPi(i, 0.0);
+		}
+		for (int o = 0; o < this.allGamma.length; o++) {
+			for (int i = 0; i < numStates; i++) {
+				nhmm.setPi(i, nhmm.getPi(i) + this.allGamma[o][0][i] / this.allGamma.length);
+			}
+		}
+		
+		// Each state's emissions are a separate object in the cloned HMM, so they can be fitted at the same time
+		ParallelBaumWelchLearner.runInParallel(numStates, new IndexedTask() {
+			public void run(int state) {
+				ParallelBaumWelchLearner.this.fitOpdf(nhmm.getOpdf(state), state);
+			}
+		});
+		
+		return nhmm;
+	}
+	
+	/**
+	 * Runs scaled forward-backward over the given block of training sequences, filling in their state occupancies.
+	 */
+	private BlockStatistics expectation(Hmm<ObservationVector> hmm, int block) {
+		int numStates = hmm.nbStates();
+		BlockStatistics statistics = new BlockStatistics(numStates);
+		
+		int end = Math.min(this.sequences.size(), (block + 1) * SEQUENCES_PER_BLOCK);
+		for (int o = block * SEQUENCES_PER_BLOCK; o < end; o++) {
+			List<ObservationVector> sequence = this.sequences.get(o);
+			int length = sequence.size();
+			
+			double[][] emissions = new double[length][numStates];
+			for (int t = 0; t < length; t++) {
+				ObservationVector observation = sequence.get(t);
+				for (int j = 0; j < numStates; j++) {
+					emissions[t][j] = hmm.getOpdf(j).probability(observation);
+				}
+			}
+			
+			// Forward, scaled so that each time's alphas sum to one
+			double[][] alpha = new double[length][numStates];
+			double[] ctFactors = new double[length];
+			for (int i = 0; i < numStates; i++) {
+				alpha[0][i] = hmm.getPi(i) * emissions[0][i];
+			}
+			ParallelBaumWelchLearner.scale(alpha[0], ctFactors, 0);
+			for (int t = 1; t < length; t++) {
+				for (int j = 0; j < numStates; j++) {
+					double sum = 0.0;
+					for (int i = 0; i < numStates; i++) {
+						sum += alpha[t-1][i] * hmm.getAij(i, j);
+					}
+					alpha[t][j] = sum * emissions[t][j];
+				}
+				ParallelBaumWelchLearner.scale(alpha[t], ctFactors, t);
+			}
+			
+			// Backward, with the same scaling factors
+			double[][] beta = new double[length][numStates];
+			for (int i = 0; i < numStates; i++) {
+				beta[length-1][i] = 1.0 / ctFactors[length-1];
+			}
+			for (int t = length - 2; t >= 0; t--) {
+				for (int i = 0; i < numStates; i++) {
+					double sum = 0.0;
+					for (int j = 0; j < numStates; j++) {
+						sum += hmm.getAij(i, j) * emissions[t+1][j] * beta[t+1][j];
+					}
+					beta[t][i] = sum / ctFactors[t];
+				}
+			}
+			
+			// Xi only ever gets summed, so rather than keeping it, gamma and the transition statistics are
+			// accumulated straight from it
+			double[][] gamma = new double[length][numStates];
+			for (int t = 0; t < length - 1; t++) {
+				for (int i = 0; i < numStates; i++) {
+					for (int j = 0; j < numStates; j++) {
+						double xi = alpha[t][i] * hmm.getAij(i, j) * emissions[t+1][j] * beta[t+1][j];
+						gamma[t][i] += xi;
+						statistics.aijNum[i][j] += xi;
+						if (t == length - 2) {
+							gamma[length-1][j] += xi;
+						}
+					}
+					statistics.aijDen[i] += gamma[t][i];
+				}
+			}
+			this.allGamma[o] = gamma;
+			
+			for (int t = 0; t < length; t++) {
+				statistics.lnProbability += Math.log(ctFactors[t]);
+			}
+		}
+		
+		return statistics;
+	}
+	
+	private static void scale(double[] alpha, double[] ctFactors, int t) {
+		double sum = 0.0;
+		for (int i = 0; i < alpha.length; i++) {
+			sum += alpha[i];
+		}
+		ctFactors[t] = sum;
+		for (int i = 0; i < alpha.length; i++) {
+			alpha[i] /= sum;
+		}
+	}
+	
+	/**
+	 * Fits the given state's emissions to every training observation, weighted by how likely each one is to be in that state.
+	 */
+	private void fitOpdf(Opdf<ObservationVector> opdf, int state) {
+		double[] weights = new double[this.observations.size()];
+		double sum = 0.0;
+		int j = 0;
+		for (double[][] gamma : this.allGamma) {
+			for (int t = 0; t < gamma.length; t++, j++) {
+				sum += weights[j] = gamma[t][state];
+			}
+		}
+		for (j--; j >= 0; j--) {
+			weights[j] /= sum;
+		}
+		opdf.fit(this.observations, weights);
+	}
+	
+	private interface IndexedTask {
+		void run(int index);
+	}
+	
+	/**
+	 * Runs the given task for every index from 0 to numTasks - 1, sharing the indices out among the learning
+	 * pool's threads and this one, and waits for all of them to finish.
+	 */
+	private static void runInParallel(final int numTasks, final IndexedTask task) {
+		final AtomicInteger nextIndex = new AtomicInteger(0);
+		Runnable worker = new Runnable() {
+			public void run() {
+				for (int i = nextIndex.getAndIncrement(); i < numTasks; i = nextIndex.getAndIncrement()) {
+					task.run(i);
+				}
+			}
+		};
+		
+		ExecutorService pool = numTasks > 1 ? ParallelBaumWelchLearner.getLearningPool() : null;
+		int numWorkers = pool == null ? 1 : Math.min(numTasks, Runtime.getRuntime().availableProcessors());
+		List<Future<?>> futures = new ArrayList<Future<?>>(Math.max(0, numWorkers - 1));
+		for (int i = 1; i < numWorkers; i++) {
+			futures.add(pool.submit(worker));
+		}
+		worker.run();
+		
+		// Future.get guarantees everything the pool's threads wrote is visible here
+		RecognizerManager.awaitAll(futures);
+	}
+	
+	private static synchronized ExecutorService getLearningPool() {
+		if (ParallelBaumWelchLearner.learningPool == null) {
+			int numThreads = Runtime.getRuntime().availableProcessors() - 1;
+			if (numThreads < 1) {
+				return null;
+			}
+			ParallelBaumWelchLearner.learningPool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				private int threadCount = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Baum-Welch learning thread " + (++this.threadCount));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return ParallelBaumWelchLearner.learningPool;
+	}
+}
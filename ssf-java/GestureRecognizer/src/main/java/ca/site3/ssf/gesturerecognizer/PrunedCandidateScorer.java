@@ -0,0 +1,240 @@
+package ca.site3.ssf.gesturerecognizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scores a gesture instance against its candidate recognizers without running every candidate's forward
+ * pass to the end. Each forward pass is beam-pruned (see CompiledHmm.prunedForwardStep) and a candidate is
+ * abandoned as soon as even the best possible emissions for the rest of the gesture (see CompiledHmm.getMaxLnEmission)
+ * couldn't make it matter to the RecognizerManager's decision - i.e., it couldn't reach its own lowest acceptable
+ * ln probability, couldn't overtake the best finished candidate of its genre, or couldn't beat the best finished
+ * candidates of the genres that are favoured over its own by the required margin.
+ * 
+ * To get a good leader early, every candidate is first run over the start of the gesture and the candidates are
+ * then finished off in order of how well they were doing.
+ * 
+ * Abandoned candidates get a ln probability of negative infinity. Since the pruned scores are slight underestimates,
+ * and a candidate that can't reach its own floor is dropped even if it would have been its genre's best (which,
+ * with full scoring, means no gesture is recognized), the result can differ from full scoring in close cases.
+ * 
+ * A scorer keeps scratch space between uses and must only be used by one thread, use forCurrentThread().
+ */
+final class PrunedCandidateScorer {
+	
+	// States with less than this fraction of the most likely state's mass are pruned
+	static final double DEFAULT_BEAM = 1e-6;
+	// The fraction of the gesture every candidate is scored over before they're ordered
+	static final double PREFIX_FRACTION = 0.25;
+	
+	private static final AtomicLong numObservationsScored = new AtomicLong(0);
+	private static final AtomicLong numObservationsTotal  = new AtomicLong(0);
+	
+	private static final ThreadLocal<PrunedCandidateScorer> scorers = new ThreadLocal<PrunedCandidateScorer>() {
+		@Override
+		protected PrunedCandidateScorer initialValue() {
+			return new PrunedCandidateScorer(DEFAULT_BEAM);
+		}
+	};
+	
+	/**
+	 * A candidate's forward pass, which can be advanced a few observations at a time.
+	 */
+	private static class Candidate {
+		Recognizer recognizer;
+		CompiledHmm hmm;
+		int resultIndex;
+		
+		double[] alpha       = new double[0];
+		double[] nextAlpha   = new double[0];
+		double[] lnEmissions = new double[0];
+		double lnProbability;
+		int numObservations;
+		boolean abandoned;
+		
+		void reset(Recognizer recognizer, CompiledHmm hmm, int resultIndex) {
+			this.recognizer  = recognizer;
+			this.hmm         = hmm;
+			this.resultIndex = resultIndex;
+			
+			if (this.alpha.length < hmm.getNumStates()) {
+				this.alpha       = new double[hmm.getNumStates()];
+				this.nextAlpha   = new double[hmm.getNumStates()];
+				this.lnEmissions = new double[hmm.getNumStates()];
+			}
+			this.lnProbability   = 0.0;
+			this.numObservations = 0;
+			this.abandoned       = false;
+		}
+	}
+	
+	private static final Comparator<Candidate> MOST_PROBABLE_FIRST = new Comparator<Candidate>() {
+		public int compare(Candidate c1, Candidate c2) {
+			return Double.compare(c2.lnProbability, c1.lnProbability);
+		}
+	};
+	
+	private final double beam;
+	
+	// Candidates are reused between gestures, the ones in use for the current gesture are also in candidates
+	private final List<Candidate> candidatePool = new ArrayList<Candidate>();
+	private final List<Candidate> candidates    = new ArrayList<Candidate>();
+	
+	// The best finished ln probability of each genre for the gesture being scored
+	private final double[] bestLnProbabilities = new double[GestureGenre.values().length];
+	
+	PrunedCandidateScorer(double beam) {
+		assert(beam >= 0.0 && beam < 1.0);
+		this.beam = beam;
+	}
+	
+	static PrunedCandidateScorer forCurrentThread() {
+		return scorers.get();
+	}
+	
+	/**
+	 * Gets the fraction of the candidates' observations that actually had to be scored (over all the
+	 * gestures scored so far, on any thread) - the rest were skipped by abandoning the candidates.
+	 */
+	static double getScoredObservationFraction() {
+		long total = numObservationsTotal.get();
+		return total == 0 ? 1.0 : numObservationsScored.get() / (double)total;
+	}
+	
+	static void resetStatistics() {
+		numObservationsScored.set(0);
+		numObservationsTotal.set(0);
+	}
+	
+	/**
+	 * Scores the given instance against some of the given recognizers.
+	 * @param inst The gesture instance.
+	 * @param recognizers The candidate recognizers.
+	 * @param toScore The indices of the recognizers to score.
+	 * @param result Filled with the ln probabilities at the recognizers' indices (negative infinity for
+	 * abandoned candidates). Indices that aren't in toScore must already hold their ln probabilities.
+	 */
+	void lnProbabilities(GestureInstance inst, List<Recognizer> recognizers,
+			List<Integer> toScore, double[] result) {
+		
+		for (int i = 0; i < this.bestLnProbabilities.length; i++) {
+			this.bestLnProbabilities[i] = Double.NEGATIVE_INFINITY;
+		}
+		for (int i = 0; i < recognizers.size(); i++) {
+			if (toScore.contains(i) == false) {
+				this.finished(recognizers.get(i), result[i]);
+			}
+		}
+		
+		// Anything that won't go through a compiled forward pass is scored right away
+		this.candidates.clear();
+		for (int index : toScore) {
+			Recognizer recognizer = recognizers.get(index);
+			CompiledHmm hmm = recognizer.getCompiledHmm();
+			if (hmm == null || recognizer.failsBasicTestBeforeProbabilityCheck(inst)) {
+				result[index] = recognizer.lnProbability(inst);
+				this.finished(recognizer, result[index]);
+				continue;
+			}
+			
+			if (this.candidatePool.size() <= this.candidates.size()) {
+				this.candidatePool.add(new Candidate());
+			}
+			Candidate candidate = this.candidatePool.get(this.candidates.size());
+			candidate.reset(recognizer, hmm, index);
+			this.candidates.add(candidate);
+		}
+		if (this.candidates.isEmpty()) {
+			return;
+		}
+		
+		// Every candidate takes the instance's training sequence, read in place
+		double[] observations = inst.getObservations();
+		int sequenceLength = inst.getNumDataPts();
+		int prefixLength = Math.max(1, (int)(sequenceLength * PREFIX_FRACTION));
+		
+		for (Candidate candidate : this.candidates) {
+			this.advance(candidate, observations, sequenceLength, prefixLength);
+		}
+		Collections.sort(this.candidates, MOST_PROBABLE_FIRST);
+		
+		long numScored = 0;
+		for (Candidate candidate : this.candidates) {
+			this.advance(candidate, observations, sequenceLength, sequenceLength);
+			numScored += candidate.numObservations;
+			
+			if (candidate.abandoned) {
+				result[candidate.resultIndex] = Double.NEGATIVE_INFINITY;
+			}
+			else {
+				result[candidate.resultIndex] = candidate.lnProbability;
+				this.finished(candidate.recognizer, candidate.lnProbability);
+			}
+		}
+		
+		numObservationsScored.addAndGet(numScored);
+		numObservationsTotal.addAndGet((long)sequenceLength * this.candidates.size());
+	}
+	
+	/**
+	 * Runs the given candidate's forward pass up to the given observation, unless it's abandoned along the way.
+	 */
+	private void advance(Candidate candidate, double[] observations, int sequenceLength, int endObservation) {
+		double maxLnEmission = candidate.hmm.getMaxLnEmission();
+		double requiredLnProbability = this.getRequiredLnProbability(candidate.recognizer);
+		
+		while (candidate.abandoned == false && candidate.numObservations < endObservation) {
+			candidate.lnProbability += candidate.hmm.prunedForwardStep(candidate.alpha, candidate.nextAlpha,
+					candidate.lnEmissions, observations, candidate.numObservations * candidate.hmm.getDimension(),
+					candidate.numObservations == 0, this.beam);
+			
+			double[] temp = candidate.alpha;
+			candidate.alpha = candidate.nextAlpha;
+			candidate.nextAlpha = temp;
+			candidate.numObservations++;
+			
+			double upperBound = candidate.lnProbability + (sequenceLength - candidate.numObservations) * maxLnEmission;
+			if (!(upperBound >= requiredLnProbability)) {
+				candidate.abandoned = true;
+			}
+		}
+	}
+	
+	private void finished(Recognizer recognizer, double lnProbability) {
+		int genreIndex = recognizer.getGestureType().getGenre().ordinal();
+		if (lnProbability > this.bestLnProbabilities[genreIndex]) {
+			this.bestLnProbabilities[genreIndex] = lnProbability;
+		}
+	}
+	
+	/**
+	 * Gets the ln probability the given candidate has to reach to have any bearing on which gesture is
+	 * recognized, given the candidates that have finished so far (this only ever goes up as more finish).
+	 */
+	private double getRequiredLnProbability(Recognizer recognizer) {
+		GestureGenre genre = recognizer.getGestureType().getGenre();
+		double bestBasic   = this.bestLnProbabilities[GestureGenre.BASIC.ordinal()];
+		double bestSpecial = this.bestLnProbabilities[GestureGenre.SPECIAL.ordinal()];
+		
+		double required = Math.max(recognizer.getLowestAcceptableLnProbability(), this.bestLnProbabilities[genre.ordinal()]);
+		switch (genre) {
+			case SPECIAL:
+				// Special gestures are only chosen over basic ones by a margin
+				required = Math.max(required,
+						bestBasic + RecognizerManager.getProbComparisonThreshold(GestureGenre.SPECIAL, GestureGenre.BASIC));
+				break;
+			case EASTER_EGG:
+				// Easter egg gestures have to beat whichever of the basic and special gestures is chosen by a margin
+				required = Math.max(required, Math.max(bestBasic, bestSpecial) + Math.min(
+						RecognizerManager.getProbComparisonThreshold(GestureGenre.EASTER_EGG, GestureGenre.BASIC),
+						RecognizerManager.getProbComparisonThreshold(GestureGenre.EASTER_EGG, GestureGenre.SPECIAL)));
+				break;
+			default:
+				break;
+		}
+		return required;
+	}
+}
@@ -1,8 +1,10 @@
 package ca.site3.ssf.gesturerecognizer;
 
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -29,6 +31,9 @@ class Recognizer {
 	private static Logger logger = LoggerFactory.getLogger(JahmmConverter.class);
 	private GestureType gestureType;
 	private Hmm<ObservationVector> recognizer;
+	private volatile CompiledHmm compiledRecognizer = null; // Built from the recognizer the first time it's needed
+	private volatile boolean compileFailed = false;         // Whether the recognizer couldn't be compiled (it's scored with Jahmm)
+	private CovarianceType covarianceType = CovarianceType.FULL;
 	
 	private double lowestLnProbability  = -Double.MAX_VALUE;
 	private double highestLnProbability = -Double.MAX_VALUE;
@@ -56,6 +61,54 @@ class Recognizer {
 		return this.gestureType;
 	}
 	
+	Hmm<ObservationVector> getHmm() {
+		return this.recognizer;
+	}
+	
+	CovarianceType getCovarianceType() {
+		return this.covarianceType;
+	}
+	
+	/**
+	 * Sets the kind of covariance matrices this recognizer's emissions have from the next time it's trained onward.
+	 * @param covarianceType The kind of covariance matrices.
+	 */
+	void setCovarianceType(CovarianceType covarianceType) {
+		assert(covarianceType != null);
+		this.covarianceType = covarianceType;
+	}
+	
+	/**
+	 * Gets the flattened copy of this recognizer's HMM that gestures are actually scored with,
+	 * building it if it hasn't been already (it's built as soon as a recognizer is loaded). A failed compile is only
+	 * tried (and warned about) once, until the recognizer is trained or loaded again.
+	 * @return The compiled HMM, null if there is no HMM or it can't be compiled.
+	 */
+	CompiledHmm getCompiledHmm() {
+		CompiledHmm result = this.compiledRecognizer;
+		Hmm<ObservationVector> hmm = this.recognizer;
+		if (result == null && hmm != null && !this.compileFailed) {
+			try {
+				result = CompiledHmm.compile(hmm);
+			}
+			catch (RuntimeException ex) {
+				this.compileFailed = true;
+				logger.warn("Failed to compile the HMM for gesture " + this.gestureType + ", falling back to Jahmm.", ex);
+				return null;
+			}
+			this.compiledRecognizer = result;
+		}
+		return result;
+	}
+	
+	/**
+	 * Throws away the compiled HMM (and any failure to compile it), for when the recognizer's HMM changes.
+	 */
+	private void clearCompiledHmm() {
+		this.compiledRecognizer = null;
+		this.compileFailed = false;
+	}
+	
 	double getLowestAcceptableLnProbability() {
 		return this.lowestLnProbability + ((this.highestLnProbability - this.lowestLnProbability) / 10.0);
 	}
@@ -80,7 +133,8 @@ class Recognizer {
 			this.trainMore(dataSet);
 		}
 		else {
-			this.recognizer = JahmmConverter.buildKMeansHMMWithTraining(dataSet, this.gestureType.getNumHmmNodes());
+			this.recognizer = JahmmConverter.buildKMeansHMMWithTraining(dataSet, this.gestureType.getNumHmmNodes(), this.covarianceType);
+			this.clearCompiledHmm();
 			if (this.recognizer == null) {
 				return false;
 			}
@@ -91,6 +145,7 @@ class Recognizer {
 					for (int j = 0; j < mean.length; j++) {
 						if (Double.isNaN(mean[j]) || Double.isInfinite(mean[j])) {
 							this.recognizer = null;
+							this.clearCompiledHmm();
 							return false;
 						}
 					}
@@ -120,7 +175,7 @@ class Recognizer {
 		return true;
 	}
 	
-	private boolean failsBasicTestBeforeProbabilityCheck(GestureInstance inst) {
+	boolean failsBasicTestBeforeProbabilityCheck(GestureInstance inst) {
 		assert(inst != null);
 		
 		if (this.recognizer == null) {
@@ -144,16 +199,31 @@ class Recognizer {
 			return 0.0;
 		}
 
+		CompiledHmm compiledHmm = this.getCompiledHmm();
+		if (compiledHmm != null) {
+			return Math.exp(compiledHmm.viterbiLnProbability(inst.getObservations()));
+		}
+		
 		List<ObservationVector> sequence = JahmmConverter.gestureInstanceToObservationSequence(inst);
 		return this.recognizer.probability(sequence, this.recognizer.mostLikelyStateSequence(sequence));
 	}
 	
+	/**
+	 * Calculates the ln probability of the given gesture instance.
+	 * @param inst The gesture instance.
+	 * @return The ln probability of the instance, 0 if the instance can't possibly be this recognizer's gesture.
+	 */
 	double lnProbability(GestureInstance inst) {
 		assert(inst != null);
 		
 		if (this.failsBasicTestBeforeProbabilityCheck(inst)) {
 			return 0.0;
 		}
+		
+		CompiledHmm compiledHmm = this.getCompiledHmm();
+		if (compiledHmm != null) {
+			return compiledHmm.lnProbability(inst.getObservations());
+		}
 
 		List<ObservationVector> sequence = JahmmConverter.gestureInstanceToObservationSequence(inst);
 		return this.recognizer.lnProbability(sequence);
@@ -170,7 +240,9 @@ class Recognizer {
 		writer.write(this.gestureType.name());
 		
 		if (this.recognizer != null) {
-			writer.write(" " + this.lowestLnProbability + " " + this.highestLnProbability + " 1 \n");
+			// Full covariance is left implicit so that those engine files can still be read by older versions
+			String covarianceTypeStr = this.covarianceType == CovarianceType.FULL ? "" : this.covarianceType.name() + " ";
+			writer.write(" " + this.lowestLnProbability + " " + this.highestLnProbability + " 1 " + covarianceTypeStr + "\n");
 			HmmWriter.write(writer, new OpdfMultiGaussianWriter(), this.recognizer);
 		}
 		else {
@@ -271,10 +343,28 @@ class Recognizer {
 			}
 		}
 		
+		this.clearCompiledHmm();
+		this.covarianceType = CovarianceType.FULL;
 		if (charArray[0] == '0') {
 			this.recognizer = null;
 		}
 		else {
+			// The rest of the line may name the kind of covariance matrices the HMM has (full if it doesn't)
+			temp = "";
+			while (charArray[0] != '\n' && reader.read(charArray) != -1) {
+				if (!Character.isWhitespace(charArray[0])) {
+					temp += charArray[0];
+				}
+			}
+			if (temp.length() > 0) {
+				try {
+					this.covarianceType = CovarianceType.valueOf(temp);
+				}
+				catch (IllegalArgumentException ex) {
+					throw new SSFEngFileFormatException("Unknown covariance type: " + temp);
+				}
+			}
+			
 			// Attempt to read the recognizer...
 			try {
 				this.recognizer = HmmReader.read(reader, new OpdfMultiGaussianReader());
@@ -283,16 +373,99 @@ class Recognizer {
 				this.recognizer = null;
 				throw ex;
 			}
+			
+			// Get everything that scoring needs worked out now rather than on the first gesture
+			this.getCompiledHmm();
 		}	
 	}
 	
+	/**
+	 * Saves this recognizer, along with its compiled HMM, to the given output (see BinaryEngineFormat).
+	 * @param out The output to save this to.
+	 * @throws IOException Occurs when there's an error while writing or the HMM can't be compiled.
+	 */
+	void saveBinary(DataOutput out) throws IOException {
+		assert(this.gestureType != null);
+		
+		BinaryEngineFormat.writeString(out, this.gestureType.name());
+		out.writeDouble(this.lowestLnProbability);
+		out.writeDouble(this.highestLnProbability);
+		
+		if (this.recognizer == null) {
+			out.writeBoolean(false);
+			return;
+		}
+		CompiledHmm compiledHmm = this.getCompiledHmm();
+		if (compiledHmm == null) {
+			throw new IOException("The HMM for gesture " + this.gestureType + " can't be compiled, it can only be saved as text.");
+		}
+		
+		out.writeBoolean(true);
+		BinaryEngineFormat.writeString(out, this.covarianceType.name());
+		compiledHmm.write(out);
+		
+		// The covariance matrices themselves are only needed to rebuild the Jahmm HMM
+		for (int i = 0; i < this.recognizer.nbStates(); i++) {
+			double[][] covariance = ((OpdfMultiGaussian)this.recognizer.getOpdf(i)).covariance();
+			for (int r = 0; r < covariance.length; r++) {
+				BinaryEngineFormat.writeDoubles(out, covariance[r]);
+			}
+		}
+	}
+	
+	/**
+	 * Loads a recognizer saved by saveBinary from the given buffer.
+	 * @param buffer The buffer holding the recognizer.
+	 * @throws SSFEngFileFormatException Occurs when the gesture type isn't known or the recognizer's sizes don't make sense.
+	 */
+	void loadBinary(ByteBuffer buffer) throws SSFEngFileFormatException {
+		String typeName = BinaryEngineFormat.readString(buffer);
+		try {
+			this.gestureType = GestureType.valueOf(typeName);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new SSFEngFileFormatException("Failed to read gesture type: " + typeName);
+		}
+		this.lowestLnProbability  = buffer.getDouble();
+		this.highestLnProbability = buffer.getDouble();
+		
+		this.recognizer = null;
+		this.clearCompiledHmm();
+		this.covarianceType = CovarianceType.FULL;
+		if (buffer.get() == 0) {
+			return;
+		}
+		
+		String covarianceTypeStr = BinaryEngineFormat.readString(buffer);
+		try {
+			this.covarianceType = CovarianceType.valueOf(covarianceTypeStr);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new SSFEngFileFormatException("Unknown covariance type: " + covarianceTypeStr);
+		}
+		
+		CompiledHmm compiledHmm = CompiledHmm.read(buffer);
+		int dimension = compiledHmm.getDimension();
+		long numCovarianceDoubles = (long)compiledHmm.getNumStates() * dimension * dimension;
+		if (numCovarianceDoubles * 8 != buffer.remaining()) {
+			throw new SSFEngFileFormatException("Recognizer for gesture " + this.gestureType + " has the wrong size.");
+		}
+		double[] covariances = new double[(int)numCovarianceDoubles];
+		BinaryEngineFormat.readDoubles(buffer, covariances);
+		
+		this.recognizer = compiledHmm.toHmm(covariances);
+		this.compiledRecognizer = compiledHmm;
+		this.compileFailed = false;
+	}
+	
 	/**
 	 * Allows the existing recognizer for the gesture to learn more from another data set.
 	 * @param dataSet The data set to learn more from.
 	 */
 	private void trainMore(GestureDataSet dataSet) {
 		assert(this.recognizer != null);
-		this.recognizer = JahmmConverter.trainHMM(this.recognizer, dataSet);
+		this.recognizer = JahmmConverter.trainHMM(this.recognizer, dataSet, this.covarianceType);
+		this.clearCompiledHmm();
 		assert(this.recognizer != null);
 	}
 }
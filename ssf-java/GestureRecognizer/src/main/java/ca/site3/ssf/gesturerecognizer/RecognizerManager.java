@@ -1,12 +1,25 @@
 package ca.site3.ssf.gesturerecognizer;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,12 +46,26 @@ class RecognizerManager {
 	private final static double SPECIAL_EASTEREGG_PROB_COMPARISON_THRESHOLD = 10;
 	private final static double BASIC_SPECIAL_PROB_COMPARISON_THRESHOLD     = 10;
 	private final static double BASIC_EASTEREGG_PROB_COMPARISON_THRESHOLD   = 20;
+	// Only used to decide whether a gesture that's still in progress is already decisive
+	private final static double SAME_GENRE_PROB_COMPARISON_THRESHOLD        = 10;
+	
+	// Machines with fewer cores than this score recognizers one after the other by default
+	static final int MIN_PROCESSORS_FOR_PARALLEL_SCORING = 4;
 	
 	private static Logger logger = LoggerFactory.getLogger(RecognizerManager.class);
 	
+	// Threads that help score recognizers in parallel, shared by all managers (the recognizing thread
+	// does its share of the scoring too, so there's one less of these than there are processors)
+	private static ExecutorService scoringPool = null;
+	
 	private Map<GestureType, Recognizer> recognizerMap =
 			new HashMap<GestureType, Recognizer>(GestureType.values().length);
 	
+	private volatile boolean parallelScoring =
+			Runtime.getRuntime().availableProcessors() >= MIN_PROCESSORS_FOR_PARALLEL_SCORING;
+	private volatile boolean prunedScoring = false;
+	private volatile CandidateCascade cascade = null;
+	
 	RecognizerManager() {
 		// Initialize the map of gesture recognizers
 		for (GestureType gesture : GestureType.values()) {
@@ -46,6 +73,73 @@ class RecognizerManager {
 		}
 	}
 	
+	/**
+	 * Gets all of the recognizers currently in this manager.
+	 * @return The recognizers, in the order they are evaluated during recognition.
+	 */
+	Collection<Recognizer> getRecognizers() {
+		return this.recognizerMap.values();
+	}
+	
+	/**
+	 * Sets whether the recognizers are scored in parallel when recognizing a gesture. Either way the recognized
+	 * gesture is exactly the same, this only changes how fast it's found.
+	 * @param parallelScoring true to score in parallel, false to score one recognizer after the other.
+	 */
+	void setParallelScoring(boolean parallelScoring) {
+		this.parallelScoring = parallelScoring;
+	}
+	
+	boolean getParallelScoring() {
+		return this.parallelScoring;
+	}
+	
+	/**
+	 * Sets whether candidates are scored with beam-pruned forward passes that are abandoned as soon as they can't
+	 * affect the recognized gesture (see PrunedCandidateScorer). This is faster but can differ from full scoring
+	 * in close cases. Pruned scoring is always done on the recognizing thread, regardless of parallel scoring.
+	 * @param prunedScoring true to prune, false to score every candidate in full.
+	 */
+	void setPrunedScoring(boolean prunedScoring) {
+		this.prunedScoring = prunedScoring;
+	}
+	
+	boolean getPrunedScoring() {
+		return this.prunedScoring;
+	}
+	
+	/**
+	 * Sets the cascade of cheap checks that candidates have to pass before they're scored.
+	 * @param cascade The cascade, null to score every candidate with the right hands.
+	 */
+	void setCandidateCascade(CandidateCascade cascade) {
+		this.cascade = cascade;
+	}
+	
+	CandidateCascade getCandidateCascade() {
+		return this.cascade;
+	}
+	
+	/**
+	 * Gets how much more probable (in ln terms) the best gesture of one genre has to be than the best gesture
+	 * of another genre for it to be chosen over that other gesture.
+	 * @param genre The genre of the more probable gesture.
+	 * @param otherGenre The genre of the less probable gesture.
+	 * @return The ln probability threshold.
+	 */
+	static double getProbComparisonThreshold(GestureGenre genre, GestureGenre otherGenre) {
+		if (genre == otherGenre) {
+			return SAME_GENRE_PROB_COMPARISON_THRESHOLD;
+		}
+		if (genre == GestureGenre.EASTER_EGG || otherGenre == GestureGenre.EASTER_EGG) {
+			if (genre == GestureGenre.BASIC || otherGenre == GestureGenre.BASIC) {
+				return BASIC_EASTEREGG_PROB_COMPARISON_THRESHOLD;
+			}
+			return SPECIAL_EASTEREGG_PROB_COMPARISON_THRESHOLD;
+		}
+		return BASIC_SPECIAL_PROB_COMPARISON_THRESHOLD;
+	}
+	
 	/**
 	 * Train the given gesture's recognizer with the given data set.
 	 * @param gesture The gesture whose recognizer will be trained.
@@ -58,12 +152,121 @@ class RecognizerManager {
 		return gestureRecog.train(dataSet);
 	}
 	
+	/**
+	 * Trains each of the given gestures' recognizers with its data set, several at a time. The recognizers are
+	 * independent of each other, so each one ends up the same as it would if it were trained on its own.
+	 * If the calling thread is interrupted, the gestures that haven't started training yet are skipped and
+	 * the ones already being trained are finished before this returns.
+	 * @param dataSets The data set to train each gesture's recognizer with.
+	 * @param maxThreads The most gestures to train at once.
+	 * @param listener Told as each gesture starts and finishes training, may be null.
+	 * @return Whether each gesture was trained successfully.
+	 * @throws InterruptedException If the calling thread was interrupted before every gesture was trained.
+	 */
+	Map<GestureType, Boolean> trainAll(Map<GestureType, GestureDataSet> dataSets, int maxThreads,
+			final ITrainingProgressListener listener) throws InterruptedException {
+		
+		final int numGestures = dataSets.size();
+		final AtomicInteger numFinished = new AtomicInteger(0);
+		Map<GestureType, Boolean> results = new EnumMap<GestureType, Boolean>(GestureType.class);
+		if (numGestures == 0) {
+			return results;
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(maxThreads, numGestures)), new ThreadFactory() {
+			private int threadCount = 0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Gesture training thread " + (++this.threadCount));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		Map<GestureType, Future<Boolean>> futures = new EnumMap<GestureType, Future<Boolean>>(GestureType.class);
+		try {
+			for (Entry<GestureType, GestureDataSet> entry : dataSets.entrySet()) {
+				final GestureType gestureType = entry.getKey();
+				final GestureDataSet dataSet  = entry.getValue();
+				futures.put(gestureType, pool.submit(new Callable<Boolean>() {
+					public Boolean call() {
+						if (listener != null) {
+							listener.onGestureTrainingStarted(gestureType);
+						}
+						boolean success = RecognizerManager.this.train(gestureType, dataSet);
+						if (listener != null) {
+							listener.onGestureTrainingFinished(gestureType, success, numFinished.incrementAndGet(), numGestures);
+						}
+						return success;
+					}
+				}));
+			}
+			
+			for (Entry<GestureType, Future<Boolean>> entry : futures.entrySet()) {
+				try {
+					results.put(entry.getKey(), entry.getValue().get());
+				}
+				catch (ExecutionException ex) {
+					if (ex.getCause() instanceof RuntimeException) {
+						throw (RuntimeException)ex.getCause();
+					}
+					throw new RuntimeException(ex.getCause());
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			for (Future<Boolean> future : futures.values()) {
+				future.cancel(false);
+			}
+			throw ex;
+		}
+		finally {
+			// Nothing can still be training once this returns
+			pool.shutdown();
+			boolean interrupted = false;
+			for (;;) {
+				try {
+					if (pool.awaitTermination(1, TimeUnit.SECONDS)) {
+						break;
+					}
+				}
+				catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		return results;
+	}
+	
 	/**
 	 * Untrain the given gesture's recognizer to a blank state.
 	 * @param gesture The gesture whose recognizer will be untrained / cleared.
 	 */
 	void untrain(GestureType gesture) {
-		this.recognizerMap.put(gesture, new Recognizer(gesture));
+		Recognizer recognizer = new Recognizer(gesture);
+		recognizer.setCovarianceType(this.recognizerMap.get(gesture).getCovarianceType());
+		this.recognizerMap.put(gesture, recognizer);
+	}
+	
+	/**
+	 * Sets the kind of covariance matrices the given gesture's recognizer will have from the next time it's trained onward.
+	 * @param gesture The gesture.
+	 * @param covarianceType The kind of covariance matrices.
+	 */
+	void setCovarianceType(GestureType gesture, CovarianceType covarianceType) {
+		this.recognizerMap.get(gesture).setCovarianceType(covarianceType);
+	}
+	
+	CovarianceType getCovarianceType(GestureType gesture) {
+		return this.recognizerMap.get(gesture).getCovarianceType();
+	}
+	
+	boolean isTrained(GestureType gesture) {
+		Recognizer recognizer = this.recognizerMap.get(gesture);
+		return recognizer != null && recognizer.getHmm() != null;
 	}
 	
 	/**
@@ -77,10 +280,11 @@ class RecognizerManager {
 		}
 		
 		// The gesture shouldn't be too too short...
-		if (gestureInstance.getMaxTimeDiff() < GestureRecognizer.MINIMUM_GESTURE_RECOGNITION_TIME_IN_SECS) {
+		double duration = gestureInstance.getStatistics().getDuration();
+		if (duration < GestureRecognizer.MINIMUM_GESTURE_RECOGNITION_TIME_IN_SECS) {
 			return false;
 		}
-		else if (gestureInstance.getMaxTimeDiff() > GestureRecognizer.MAXIMUM_GESTURE_RECOGNITION_TIME_IN_SECS) {
+		else if (duration > GestureRecognizer.MAXIMUM_GESTURE_RECOGNITION_TIME_IN_SECS) {
 			return false;
 		}
 		
@@ -106,19 +310,20 @@ class RecognizerManager {
 		}
 		
 		// Check the fierceness of the gesture to ensure it's meeting it's minimum threshold...
-		if (gestureInstance.getTotalFierceness() < expectedType.getMinFierceDiffThreshold()) {
+		GestureStatistics statistics = gestureInstance.getStatistics();
+		if (statistics.getTotalFierceness() < expectedType.getMinFierceDiffThreshold()) {
 			RecognizerManager.logger.info("Fireceness was not great enough to recognize gesture (" + expectedType.toString() + "): " +
 				"Required fierceness: " + expectedType.getMinFierceDiffThreshold() +
-				", fierceness found: " + gestureInstance.getTotalFierceness());
+				", fierceness found: " + statistics.getTotalFierceness());
 			return false;
 		}
 		
 		// Check the number of required data points for the gesture type, if the instance doesn't have enough
 		// data points for the gesture then we don't count it
-		if (gestureInstance.getNumDataPts() < expectedType.getMinNumDataPts()) {
+		if (statistics.getNumDataPts() < expectedType.getMinNumDataPts()) {
 			RecognizerManager.logger.info("Number of data points was not great enough to recognize gesture (" + expectedType.toString() + "): " +
 					"Required data pts: " + expectedType.getMinNumDataPts() +
-					", data points found: " + gestureInstance.getNumDataPts());
+					", data points found: " + statistics.getNumDataPts());
 			return false;
 		}
 		
@@ -133,6 +338,74 @@ class RecognizerManager {
 	 * @return The gesture type that was recognized, null on no recognized gesture.
 	 */
 	GestureType recognize(GestureInstance inst, boolean isRingmasterGesture) {
+		return this.recognize(inst, isRingmasterGesture, null);
+	}
+	
+	/**
+	 * Attempts to recognize the given, novel gesture instance among all of the gesture
+	 * recognizers in this manager.
+	 * @param inst The novel gesture instance to identify/recognize.
+	 * @param isRingmasterGesture Whether the provided gesture instance is supposed to be a ringmaster gesture or not.
+	 * @param precomputedLnProbabilities The ln probabilities of the instance that have already been calculated
+	 * for some or all of the recognizers (e.g., by a GestureRecognitionSession), may be null.
+	 * @return The gesture type that was recognized, null on no recognized gesture.
+	 */
+	GestureType recognize(GestureInstance inst, boolean isRingmasterGesture, Map<Recognizer, Double> precomputedLnProbabilities) {
+		return this.recognize(inst, isRingmasterGesture, precomputedLnProbabilities, null, 0, this.parallelScoring);
+	}
+	
+	/**
+	 * Attempts to recognize each of the given gesture instances among all of the gesture recognizers in
+	 * this manager. When parallel scoring is on, the instances are shared out among the scoring threads (and
+	 * this one) and each instance's candidates are scored on the thread that took it, so every thread keeps
+	 * reusing its own scratch space (see CompiledHmm and PrunedCandidateScorer).
+	 * @param instances The novel gesture instances to identify/recognize.
+	 * @param isRingmasterGesture Whether the provided gesture instances are supposed to be ringmaster gestures or not.
+	 * @return The gesture recognized for each instance, along with the ln probabilities and timings.
+	 */
+	BatchRecognitionResult recognizeBatch(final List<GestureInstance> instances, final boolean isRingmasterGesture) {
+		final BatchRecognitionResult result = new BatchRecognitionResult(instances.size());
+		final AtomicInteger nextIndex = new AtomicInteger(0);
+		long startTime = System.nanoTime();
+		
+		ExecutorService pool = this.parallelScoring ? RecognizerManager.getScoringPool() : null;
+		int numWorkers = pool == null ? 1 : Math.min(instances.size(), Runtime.getRuntime().availableProcessors());
+		List<Future<?>> futures = new ArrayList<Future<?>>(Math.max(0, numWorkers - 1));
+		for (int i = 1; i < numWorkers; i++) {
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					RecognizerManager.this.recognizeBatchWorker(instances, isRingmasterGesture, nextIndex, result);
+				}
+			}));
+		}
+		this.recognizeBatchWorker(instances, isRingmasterGesture, nextIndex, result);
+		RecognizerManager.awaitAll(futures);
+		
+		result.setElapsedNanos(System.nanoTime() - startTime);
+		return result;
+	}
+	
+	private void recognizeBatchWorker(List<GestureInstance> instances, boolean isRingmasterGesture,
+			AtomicInteger nextIndex, BatchRecognitionResult result) {
+		
+		for (int i = nextIndex.getAndIncrement(); i < instances.size(); i = nextIndex.getAndIncrement()) {
+			long startTime = System.nanoTime();
+			GestureType recognized = this.recognize(instances.get(i), isRingmasterGesture, null,
+					result.getLnProbabilities(), result.getLnProbabilityOffset(i), false);
+			result.setRecognized(i, recognized, System.nanoTime() - startTime);
+		}
+	}
+	
+	/**
+	 * Attempts to recognize the given, novel gesture instance among all of the gesture recognizers in this manager.
+	 * @param lnProbabilitiesOut Filled with the ln probability of each candidate that was scored at its gesture type's
+	 * ordinal (from the given offset on), may be null.
+	 * @param parallelScoring Whether the candidates may be scored in parallel.
+	 * @return The gesture type that was recognized, null on no recognized gesture.
+	 */
+	private GestureType recognize(GestureInstance inst, boolean isRingmasterGesture, Map<Recognizer, Double> precomputedLnProbabilities,
+			double[] lnProbabilitiesOut, int outOffset, boolean parallelScoring) {
+		
 		// Weed out strange and anomalous data
 		if (!RecognizerManager.isAcceptableGesture(inst)) {
 			logger.info("Ignoring gesture - too short from beginning to end!");
@@ -156,6 +429,9 @@ class RecognizerManager {
 		// as is being provided by the gesture instance being recognized. We split the recognition 'bests'
 		// into categories based on the genre of the gesture (i.e., "basic", "special", "easter-egg" gestures)
 		// Later on, we favour basic gestures over special gestures and special gestures over easter-egg gestures.
+		CandidateCascade cascade = this.cascade;
+		GestureStatistics statistics = inst.getStatistics();
+		List<Recognizer> candidates = new ArrayList<Recognizer>(this.recognizerMap.size());
 		for (Recognizer recognizer : this.recognizerMap.values()) {
 			GestureType gestureType = recognizer.getGestureType();
 			
@@ -168,8 +444,29 @@ class RecognizerManager {
 				continue;
 			}
 			
+			// Drop gestures that the instance's statistics already rule out before going to the trouble of scoring them
+			if (cascade != null && !cascade.accepts(statistics, gestureType)) {
+				continue;
+			}
+			
+			candidates.add(recognizer);
+		}
+		
+		// Score all of the candidates up front (possibly in parallel), they're still compared in the same order below
+		// so the result doesn't depend on how the scoring was done
+		double[] candidateLnProbabilities = this.lnProbabilities(inst, candidates, precomputedLnProbabilities, parallelScoring);
+		if (lnProbabilitiesOut != null) {
+			for (int i = 0; i < candidates.size(); i++) {
+				lnProbabilitiesOut[outOffset + candidates.get(i).getGestureType().ordinal()] = candidateLnProbabilities[i];
+			}
+		}
+		
+		for (int i = 0; i < candidates.size(); i++) {
+			Recognizer recognizer = candidates.get(i);
+			GestureType gestureType = recognizer.getGestureType();
+			
 			// Find the highest probability gestures for each 'genre' of gesture...
-			currProbability = recognizer.lnProbability(inst);
+			currProbability = candidateLnProbabilities[i];
 			Double bestProbability = bestProbabilityMap.get(gestureType.getGenre());
 			if (currProbability > bestProbability) {
 				bestProbabilityMap.put(gestureType.getGenre(), currProbability);
@@ -334,15 +631,126 @@ class RecognizerManager {
 		return new GestureRecognitionResult(inst, resultMapping);
 	}
 	
+	/**
+	 * Calculates the ln probability of the given instance for each of the given recognizers.
+	 * @param inst The gesture instance.
+	 * @param recognizers The recognizers to score the instance with.
+	 * @param precomputedLnProbabilities Ln probabilities that have already been calculated, may be null.
+	 * @param parallelScoring Whether the recognizers may be scored in parallel.
+	 * @return The ln probabilities, in the same order as the given recognizers.
+	 */
+	private double[] lnProbabilities(final GestureInstance inst, final List<Recognizer> recognizers,
+			Map<Recognizer, Double> precomputedLnProbabilities, boolean parallelScoring) {
+		
+		final double[] result = new double[recognizers.size()];
+		final List<Integer> toScore = new ArrayList<Integer>(recognizers.size());
+		for (int i = 0; i < recognizers.size(); i++) {
+			Recognizer recognizer = recognizers.get(i);
+			if (precomputedLnProbabilities != null && precomputedLnProbabilities.containsKey(recognizer)) {
+				result[i] = precomputedLnProbabilities.get(recognizer);
+			}
+			else {
+				toScore.add(i);
+			}
+		}
+		if (toScore.isEmpty()) {
+			return result;
+		}
+		
+		if (this.prunedScoring) {
+			PrunedCandidateScorer.forCurrentThread().lnProbabilities(inst, recognizers, toScore, result);
+			return result;
+		}
+		
+		ExecutorService pool = parallelScoring ? RecognizerManager.getScoringPool() : null;
+		int numStrides = pool == null ? 1 : Math.min(toScore.size(), Runtime.getRuntime().availableProcessors());
+		if (numStrides <= 1) {
+			RecognizerManager.lnProbabilityStride(inst, recognizers, toScore, 0, 1, result);
+			return result;
+		}
+		
+		// Hand every stride but the first to the pool and do the first one on this thread
+		final int strideLength = numStrides;
+		List<Future<?>> futures = new ArrayList<Future<?>>(numStrides - 1);
+		for (int i = 1; i < numStrides; i++) {
+			final int start = i;
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					RecognizerManager.lnProbabilityStride(inst, recognizers, toScore, start, strideLength, result);
+				}
+			}));
+		}
+		RecognizerManager.lnProbabilityStride(inst, recognizers, toScore, 0, strideLength, result);
+		RecognizerManager.awaitAll(futures);
+		
+		// Future.get guarantees the results written by the pool's threads are visible here
+		return result;
+	}
+	
+	/**
+	 * Waits for all of the given tasks to finish, rethrowing anything they threw.
+	 */
+	static void awaitAll(List<Future<?>> futures) {
+		boolean interrupted = false;
+		for (int i = 0; i < futures.size(); i++) {
+			Future<?> future = futures.get(i);
+			for (;;) {
+				try {
+					future.get();
+					break;
+				}
+				catch (InterruptedException ex) {
+					// We need the results regardless, hold on to the interrupt until we're done
+					interrupted = true;
+				}
+				catch (ExecutionException ex) {
+					if (ex.getCause() instanceof RuntimeException) {
+						throw (RuntimeException)ex.getCause();
+					}
+					throw new RuntimeException(ex.getCause());
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static void lnProbabilityStride(GestureInstance inst, List<Recognizer> recognizers,
+			List<Integer> toScore, int start, int strideLength, double[] result) {
+		
+		for (int i = start; i < toScore.size(); i += strideLength) {
+			int index = toScore.get(i);
+			result[index] = recognizers.get(index).lnProbability(inst);
+		}
+	}
+	
+	private static synchronized ExecutorService getScoringPool() {
+		if (RecognizerManager.scoringPool == null) {
+			int numThreads = Runtime.getRuntime().availableProcessors() - 1;
+			if (numThreads < 1) {
+				return null;
+			}
+			RecognizerManager.scoringPool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				private int threadCount = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Gesture scoring thread " + (++this.threadCount));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return RecognizerManager.scoringPool;
+	}
+	
 	/**
 	 * Clears all of the currently loaded recognizers to blank states.
 	 * WARNING: Clears all loaded training data.
 	 */
 	void clearRecognizers() {
-		this.recognizerMap.clear();
-		// Initialize the map of gesture recognizers
+		// Initialize the map of gesture recognizers (they keep their covariance types)
 		for (GestureType gesture : GestureType.values()) {
-			this.recognizerMap.put(gesture, new Recognizer(gesture));
+			this.untrain(gesture);
 		}
 	}
 	
@@ -423,4 +831,47 @@ class RecognizerManager {
 		return true;
 	}
 	
+	/**
+	 * Writes/Saves all of the recognizers in this manager to a binary engine file (see BinaryEngineFormat).
+	 * @param file The file to write the recognizers to.
+	 * @return true on success, false on failure.
+	 */
+	boolean writeBinaryRecognizers(File file) {
+		try {
+			BinaryEngineFormat.write(this.recognizerMap.values(), file);
+		}
+		catch (IOException ex) {
+			System.err.println(ex.toString());
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Reads/Loads all of the recognizers in this manager from a binary engine file (see BinaryEngineFormat).
+	 * None of the recognizers are replaced unless the whole file can be read.
+	 * @param file The file to read the recognizers from.
+	 * @return true on success, false on failure.
+	 */
+	boolean readBinaryRecognizers(File file) {
+		List<Recognizer> recognizers = null;
+		try {
+			recognizers = BinaryEngineFormat.read(file);
+		}
+		catch (IOException ex) {
+			System.err.println(ex.toString());
+			return false;
+		}
+		catch (FileFormatException ex) {
+			System.err.println(ex.toString());
+			return false;
+		}
+		
+		for (Recognizer recognizer : recognizers) {
+			this.recognizerMap.put(recognizer.getGestureType(), recognizer);
+		}
+		return true;
+	}
+	
 }
@@ -37,8 +37,9 @@ import ca.site3.ssf.gesturerecognizer.GloveData;
  */
 class FileInfoPanel extends JPanel implements ActionListener, ItemListener {
 	
-	public static final String GESTURE_INSTANCE_FILE_EXT = "ins";
-	public static final String GESTURE_ENGINE_FILE_EXT   = "eng";
+	public static final String GESTURE_INSTANCE_FILE_EXT      = "ins";
+	public static final String GESTURE_ENGINE_FILE_EXT        = "eng";
+	public static final String BINARY_GESTURE_ENGINE_FILE_EXT = "engb";
 	
 	private static final long serialVersionUID = 1L;
 	
@@ -32,6 +32,7 @@ import ca.site3.ssf.ioserver.DeviceNetworkListener;
 import ca.site3.ssf.ioserver.DeviceStatus;
 import ca.site3.ssf.ioserver.GloveEvent;
 import ca.site3.ssf.ioserver.GloveEventCoalescer;
+import ca.site3.ssf.ioserver.GloveSampleLanes;
 import ca.site3.ssf.ioserver.HeartbeatListener;
 import ca.site3.ssf.ioserver.EntityGestureInstance;
 
@@ -56,10 +57,11 @@ public class GestureRecorderGUIMainWindow extends JFrame {
 	// Pieces of the IOServer that are required to capture glove data and aggregate that data into gesture instances
 	private BlockingQueue<EntityGestureInstance> gestureQueue = new LinkedBlockingQueue<EntityGestureInstance>();
 	private BlockingQueue<DeviceEvent> eventQueue = new LinkedBlockingQueue<DeviceEvent>();
+	private GloveSampleLanes gloveSampleLanes = new GloveSampleLanes();
 	private DeviceStatus deviceStatus = new DeviceStatus();
 	private HeartbeatListener heartbeatListener  = new HeartbeatListener(DEFAULT_GLOVE_NETWORK_INTERFACE_IP, 55555, deviceStatus);
 	private DeviceNetworkListener gloveListener  = new DeviceNetworkListener(DEFAULT_GLOVE_NETWORK_INTERFACE_IP,
-			new CommandLineArgs().devicePort, new DeviceDataParser(deviceStatus), eventQueue);
+			new CommandLineArgs().devicePort, new DeviceDataParser(deviceStatus), gloveSampleLanes);
 	private GloveEventCoalescer eventAggregator  = null;
 	
 	private Thread consumerThread;
@@ -95,7 +97,7 @@ public class GestureRecorderGUIMainWindow extends JFrame {
 		Thread producerThread = new Thread(gloveListener, "Glove listener Thread");
 		producerThread.start();
 		
-		this.eventAggregator = new GloveEventCoalescer(System.currentTimeMillis(), eventQueue, gestureQueue);
+		this.eventAggregator = new GloveEventCoalescer(System.currentTimeMillis(), gloveSampleLanes, eventQueue, gestureQueue);
 		Thread eventAggregatorThread = new Thread(this.eventAggregator, "Event aggregator thread");
 		eventAggregatorThread.start();
 		
@@ -6,8 +6,6 @@ import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.prefs.Preferences;
 
 import javax.swing.BorderFactory;
@@ -65,7 +63,8 @@ class TestingPanel extends JPanel implements ActionListener {
 		wrapperPanel.setLayout(layout);
 		
 		this.fileChooser = new JFileChooser();
-		this.fileChooser.setFileFilter(new FileNameExtensionFilter("recognition engine files (*.eng)", "eng"));
+		this.fileChooser.setFileFilter(new FileNameExtensionFilter("recognition engine files (*.eng, *.engb)",
+				FileInfoPanel.GESTURE_ENGINE_FILE_EXT, FileInfoPanel.BINARY_GESTURE_ENGINE_FILE_EXT));
 		this.fileName = new JTextField(50);
 		this.fileName.setEditable(false);
 		
@@ -129,26 +128,22 @@ class TestingPanel extends JPanel implements ActionListener {
 	public void loadRecognizerEngineFile(String fileName)
 	{
 		File file = new File(fileName);
-		FileReader reader = null;
 		GestureRecognizer gestureRecognizer = new GestureRecognizer();
 		
-		try 
-		{
-			reader = new FileReader(file);
-			boolean success = gestureRecognizer.loadRecognizerEngine(reader);
-			if (success) {
-				this.gestureRecognizer = gestureRecognizer;
-				this.isEngineLoaded = true;
-				this.loggerPanel.appendLogTextLine("Engine '" + file.getName() + "' loaded successfully!");
-			}
-			else {
-				this.loggerPanel.appendLogTextLine("Engine '" + file.getName() + "' failed to load.");
-			}
-		} 
-		catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		if (!file.exists()) {
 			this.loggerPanel.appendLogTextLine("Attempted to load invalid engine.");
+			return;
+		}
+		
+		// Either a text or a binary engine file
+		boolean success = gestureRecognizer.loadRecognizerEngine(file);
+		if (success) {
+			this.gestureRecognizer = gestureRecognizer;
+			this.isEngineLoaded = true;
+			this.loggerPanel.appendLogTextLine("Engine '" + file.getName() + "' loaded successfully!");
+		}
+		else {
+			this.loggerPanel.appendLogTextLine("Engine '" + file.getName() + "' failed to load.");
 		}
 	}
 	
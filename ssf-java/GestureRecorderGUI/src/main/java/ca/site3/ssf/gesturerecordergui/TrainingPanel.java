@@ -11,17 +11,18 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
 
 import javax.swing.BorderFactory;
@@ -37,6 +38,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
 import javax.swing.border.TitledBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
@@ -44,6 +46,7 @@ import ca.site3.ssf.gesturerecognizer.GestureDataSet;
 import ca.site3.ssf.gesturerecognizer.GestureInstance;
 import ca.site3.ssf.gesturerecognizer.GestureRecognizer;
 import ca.site3.ssf.gesturerecognizer.GestureType;
+import ca.site3.ssf.gesturerecognizer.ITrainingProgressListener;
 
 /**
  * A class to transform gesture instance files into a gesture recognition engine and save them to file
@@ -64,6 +67,7 @@ class TrainingPanel extends JPanel implements ActionListener {
 	private JButton trainFilesButton;
 	private JButton trainMoreButton;
 	private JButton untrainGestureButton;
+	private JButton cancelTrainingButton;
 
 	private DefaultListModel gestureListModel = new DefaultListModel();
 	private DefaultListModel toTrainListModel = new DefaultListModel();
@@ -88,6 +92,7 @@ class TrainingPanel extends JPanel implements ActionListener {
 	private JFileChooser moreTrainingFileChooser;
 	
 	private GestureRecognizer gestureRecognizer;
+	private TrainingWorker trainingWorker = null;
 	
 	TrainingPanel() {
 		super();
@@ -120,7 +125,8 @@ class TrainingPanel extends JPanel implements ActionListener {
 		
 		this.engineFileLoader = new JFileChooser();
 		this.engineFileLoader.setMultiSelectionEnabled(false);
-		this.engineFileLoader.setFileFilter(new FileNameExtensionFilter("Recognizer Engine Files", FileInfoPanel.GESTURE_ENGINE_FILE_EXT));
+		this.engineFileLoader.setFileFilter(new FileNameExtensionFilter("Recognizer Engine Files",
+				FileInfoPanel.GESTURE_ENGINE_FILE_EXT, FileInfoPanel.BINARY_GESTURE_ENGINE_FILE_EXT));
 		
 		Preferences userPreferences = Preferences.userRoot();
 		
@@ -149,6 +155,9 @@ class TrainingPanel extends JPanel implements ActionListener {
 		this.trainMoreButton = new JButton("Train More...");
 		this.trainMoreButton.addActionListener(this);
 		
+		this.cancelTrainingButton = new JButton("Cancel Training");
+		this.cancelTrainingButton.addActionListener(this);
+		
 		// Allow the user to edit the file list
 		this.loggingPanel = new LoggerPanel("Log");
 		this.loggingPanel.setTextAreaSize(5, 100);
@@ -227,6 +236,7 @@ class TrainingPanel extends JPanel implements ActionListener {
 		gestureButtonPanel.add(this.trainFilesButton);
 		gestureButtonPanel.add(this.untrainGestureButton);
 		gestureButtonPanel.add(this.trainMoreButton);
+		gestureButtonPanel.add(this.cancelTrainingButton);
 		
 		JPanel gestureControlsPanel = new JPanel();
 		gestureControlsPanel.setLayout(new GridLayout(2, 1));
@@ -273,6 +283,7 @@ class TrainingPanel extends JPanel implements ActionListener {
 		this.trainFilesButton.setEnabled(false);
 		this.untrainGestureButton.setEnabled(false);
 		this.trainMoreButton.setEnabled(false);
+		this.cancelTrainingButton.setEnabled(false);
 		this.saveGestureEngineButton.setEnabled(true);
 	}
 	
@@ -285,6 +296,7 @@ class TrainingPanel extends JPanel implements ActionListener {
 		else if (e.getSource() == this.trainFilesButton) {
 			
 			// Get a list of the gestures that need to be trained...
+			Map<GestureType, List<File>> gestureFilesMap = new EnumMap<GestureType, List<File>>(GestureType.class);
 			for (int i = 0; i < this.toTrainListModel.size(); i++) {
 				
 				GestureType gesture = (GestureType)this.toTrainListModel.get(i);
@@ -295,11 +307,9 @@ class TrainingPanel extends JPanel implements ActionListener {
 					continue;
 				}
 				
-				this.trainGestureRecognitionEngineFromFileList(gesture, gestureFiles);
-			}
-			if (!this.toTrainListModel.isEmpty()) {
-				this.loggingPanel.appendLogTextLine("Done.");
+				gestureFilesMap.put(gesture, gestureFiles);
 			}
+			this.startTraining(gestureFilesMap);
 		}
 		else if (e.getSource() == this.untrainGestureButton) {
 
@@ -318,6 +328,11 @@ class TrainingPanel extends JPanel implements ActionListener {
 			
 			// Get a list of the gestures that need to be trained...
 			File moreTrainingParentDir = this.handleMoreTrainingDirChooserDialog();
+			if (moreTrainingParentDir == null) {
+				return;
+			}
+			
+			Map<GestureType, List<File>> gestureFilesMap = new EnumMap<GestureType, List<File>>(GestureType.class);
 			for (int i = 0; i < this.toTrainListModel.size(); i++) {
 				
 				GestureType gesture = (GestureType)this.toTrainListModel.get(i);
@@ -328,13 +343,18 @@ class TrainingPanel extends JPanel implements ActionListener {
 					continue;
 				}
 				
-				this.trainGestureRecognitionEngineFromFileList(gesture, gestureFiles);
-			}
-			if (!this.toTrainListModel.isEmpty()) {
-				this.loggingPanel.appendLogTextLine("Done.");
+				gestureFilesMap.put(gesture, gestureFiles);
 			}
+			this.startTraining(gestureFilesMap);
 			
 		}
+		else if (e.getSource() == this.cancelTrainingButton) {
+			if (this.trainingWorker != null) {
+				this.loggingPanel.appendLogTextLine("Cancelling training, gestures that are already being trained will finish first...");
+				this.trainingWorker.cancelTraining();
+				this.cancelTrainingButton.setEnabled(false);
+			}
+		}
 		else if (e.getSource() == this.loadGestureEngineButton) {
 			this.handleEngineLoadDialog();
 		}
@@ -392,6 +412,35 @@ class TrainingPanel extends JPanel implements ActionListener {
 
 	}
 	
+	// Trains the given gestures in the background, several at a time, so that the GUI stays responsive
+	private void startTraining(Map<GestureType, List<File>> gestureFilesMap) {
+		if (gestureFilesMap.isEmpty()) {
+			if (!this.toTrainListModel.isEmpty()) {
+				this.loggingPanel.appendLogTextLine("Done.");
+			}
+			return;
+		}
+		
+		this.trainingWorker = new TrainingWorker(gestureFilesMap, this.saveGestureEngineButton.isEnabled());
+		this.setTrainingControlsEnabled(false);
+		this.trainingWorker.execute();
+	}
+	
+	// Nothing that uses or changes the gesture recognizer may be done while training is running in the background
+	private void setTrainingControlsEnabled(boolean enabled) {
+		boolean canTrain = enabled && !this.toTrainListModel.isEmpty();
+		this.trainFilesButton.setEnabled(canTrain);
+		this.trainMoreButton.setEnabled(canTrain);
+		this.untrainGestureButton.setEnabled(canTrain);
+		this.toTrainListButton.setEnabled(enabled);
+		this.fromTrainListButton.setEnabled(enabled);
+		this.selectDirButton.setEnabled(enabled);
+		this.loadGestureEngineButton.setEnabled(enabled);
+		this.saveGestureEngineButton.setEnabled(enabled && this.saveGestureEngineButton.isEnabled());
+		this.clearGestureEngineButton.setEnabled(enabled);
+		this.cancelTrainingButton.setEnabled(!enabled);
+	}
+	
 	private List<File> findTrainingFilesInGestureDir(GestureType gesture)  {
 		return this.findTrainingFilesInGestureDir(gesture, this.selectedBaseGestureDir);
 	}
@@ -492,16 +541,14 @@ class TrainingPanel extends JPanel implements ActionListener {
 				return;
 			}
 			
-			boolean success = false;
-			try {
-				success = this.gestureRecognizer.loadRecognizerEngine(new FileReader(selectedFile));
-			}
-			catch (FileNotFoundException e) {
-				e.printStackTrace();
+			if (!selectedFile.exists()) {
 				this.loggingPanel.appendLogTextLine("Failed to load gesture recognizer engine file, could not find file: " + selectedFile.getAbsolutePath());
 				return;
 			}
 			
+			// Either a text or a binary engine file
+			boolean success = this.gestureRecognizer.loadRecognizerEngine(selectedFile);
+			
 			if (success) {
 				this.loggingPanel.appendLogTextLine("Gesture recognizer engine loaded successfully!");
 				this.saveGestureEngineButton.setEnabled(false);
@@ -575,6 +622,30 @@ class TrainingPanel extends JPanel implements ActionListener {
 	// Trains the gesture recognizer using the data set from the selected files
 	public boolean trainGestureRecognitionEngineFromFileList(GestureType gestureToTrain, List<File> files) {
 		// Get a list of files from the log
+		List<String> logLines = new ArrayList<String>();
+		GestureDataSet gestureDataSet = TrainingPanel.readGestureDataSet(files, logLines);
+		for (String logLine : logLines) {
+			this.loggingPanel.appendLogTextLine(logLine);
+		}
+		
+		boolean success = this.gestureRecognizer.trainGesture(gestureToTrain, gestureDataSet);
+
+		if (success) {
+			this.loggingPanel.appendLogTextLine("Training succeeded for gesture " + gestureToTrain.toString() + "!");
+			this.loggingPanel.appendLogTextLine(files.size() + " Files used to train " + gestureToTrain.toString() + ":");
+			this.loggingPanel.appendLogTextLine(TrainingPanel.fileNameList(files));
+			
+			this.saveGestureEngineButton.setEnabled(true);
+		}
+		else {
+			this.loggingPanel.appendLogTextLine("The gesture instances selected cannot be trained!\n");
+		}
+		
+		return success;
+	}
+	
+	// Reads a gesture instance from each of the given files, adding a line to the given log lines for each file that can't be read
+	private static GestureDataSet readGestureDataSet(List<File> files, List<String> logLines) {
 		GestureDataSet gestureDataSet = new GestureDataSet();
 
 		// Iterate through each file and create a gesture instance
@@ -599,32 +670,126 @@ class TrainingPanel extends JPanel implements ActionListener {
 					gestureDataSet.addGestureInstance(instance);
 				}
 				else {
-					this.loggingPanel.appendLogTextLine("Failed to load gesture instance from file, bad file format: " + file.getAbsolutePath());
+					logLines.add("Failed to load gesture instance from file, bad file format: " + file.getAbsolutePath());
 				}
 			} 
 			catch (FileNotFoundException e) {
-				this.loggingPanel.appendLogTextLine("Failed to find file: " + file.getAbsolutePath());
+				logLines.add("Failed to find file: " + file.getAbsolutePath());
 			}	
 		}
 		
-		boolean success = this.gestureRecognizer.trainGesture(gestureToTrain, gestureDataSet);
-
-		if (success) {
-			this.loggingPanel.appendLogTextLine("Training succeeded for gesture " + gestureToTrain.toString() + "!");
-			this.loggingPanel.appendLogTextLine(files.size() + " Files used to train " + gestureToTrain.toString() + ":");
-			String gestureFiles = "";
-			for (File file : files) {
-				gestureFiles += file.getName() + ", ";
+		return gestureDataSet;
+	}
+	
+	private static String fileNameList(List<File> files) {
+		String gestureFiles = "";
+		for (File file : files) {
+			gestureFiles += file.getName() + ", ";
+		}
+		return gestureFiles.substring(0, gestureFiles.length() - 2);
+	}
+	
+	/**
+	 * Reads the training files and trains the gestures (see GestureRecognizer.trainAll) off of the Swing thread,
+	 * logging its progress as it goes.
+	 */
+	private class TrainingWorker extends SwingWorker<Map<GestureType, Boolean>, String> implements ITrainingProgressListener {
+		
+		private final Map<GestureType, List<File>> gestureFilesMap;
+		private final boolean saveWasEnabled;
+		
+		private volatile Thread trainingThread = null;
+		private volatile boolean cancelRequested = false;
+		private volatile boolean anySucceeded = false;
+		
+		TrainingWorker(Map<GestureType, List<File>> gestureFilesMap, boolean saveWasEnabled) {
+			this.gestureFilesMap = gestureFilesMap;
+			this.saveWasEnabled  = saveWasEnabled;
+		}
+		
+		// Gestures that haven't started training yet are skipped, the ones being trained are finished first
+		void cancelTraining() {
+			this.cancelRequested = true;
+			Thread thread = this.trainingThread;
+			if (thread != null) {
+				thread.interrupt();
 			}
-			this.loggingPanel.appendLogTextLine(gestureFiles.substring(0, gestureFiles.length() - 2));
-			
-			this.saveGestureEngineButton.setEnabled(true);
 		}
-		else {
-			this.loggingPanel.appendLogTextLine("The gesture instances selected cannot be trained!\n");
+		
+		@Override
+		protected Map<GestureType, Boolean> doInBackground() throws InterruptedException {
+			this.trainingThread = Thread.currentThread();
+			try {
+				Map<GestureType, GestureDataSet> gestureDataSets = new EnumMap<GestureType, GestureDataSet>(GestureType.class);
+				for (Entry<GestureType, List<File>> entry : this.gestureFilesMap.entrySet()) {
+					if (this.cancelRequested || Thread.interrupted()) {
+						throw new InterruptedException();
+					}
+					
+					List<String> logLines = new ArrayList<String>();
+					gestureDataSets.put(entry.getKey(), TrainingPanel.readGestureDataSet(entry.getValue(), logLines));
+					for (String logLine : logLines) {
+						this.publish(logLine);
+					}
+				}
+				
+				int numThreads = Runtime.getRuntime().availableProcessors();
+				this.publish("Training " + gestureDataSets.size() + " gestures, " + Math.min(numThreads, gestureDataSets.size()) + " at a time...");
+				return TrainingPanel.this.gestureRecognizer.trainAll(gestureDataSets, numThreads, this);
+			}
+			finally {
+				this.trainingThread = null;
+			}
 		}
 		
-		return success;
+		public void onGestureTrainingStarted(GestureType gestureType) {
+			this.publish("Training gesture " + gestureType.toString() + "...");
+		}
+		
+		public void onGestureTrainingFinished(GestureType gestureType, boolean success, int numFinished, int numGestures) {
+			if (success) {
+				List<File> files = this.gestureFilesMap.get(gestureType);
+				this.anySucceeded = true;
+				this.publish("Training succeeded for gesture " + gestureType.toString() + "! (" + numFinished + " of " + numGestures + ")");
+				this.publish(files.size() + " Files used to train " + gestureType.toString() + ":");
+				this.publish(TrainingPanel.fileNameList(files));
+			}
+			else {
+				this.publish("The gesture instances selected cannot be trained for gesture " + gestureType.toString() +
+						"! (" + numFinished + " of " + numGestures + ")\n");
+			}
+		}
+		
+		@Override
+		protected void process(List<String> logLines) {
+			for (String logLine : logLines) {
+				TrainingPanel.this.loggingPanel.appendLogTextLine(logLine);
+			}
+		}
+		
+		@Override
+		protected void done() {
+			try {
+				this.get();
+				TrainingPanel.this.loggingPanel.appendLogTextLine("Done.");
+			}
+			catch (InterruptedException e) {
+				// The worker is done, so getting its result doesn't wait
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof InterruptedException) {
+					TrainingPanel.this.loggingPanel.appendLogTextLine("Training cancelled.");
+				}
+				else {
+					e.getCause().printStackTrace();
+					TrainingPanel.this.loggingPanel.appendLogTextLine("Training failed: " + e.getCause().toString());
+				}
+			}
+			
+			TrainingPanel.this.trainingWorker = null;
+			TrainingPanel.this.saveGestureEngineButton.setEnabled(this.saveWasEnabled || this.anySucceeded);
+			TrainingPanel.this.setTrainingControlsEnabled(true);
+		}
 	}
 	
 }
@@ -37,6 +37,9 @@ public class CommandLineArgs {
 	@Parameter(names="-tickFreq", description="Tick frequency (Hz)")
 	public Integer tickFrequency = 50;
 	
+	@Parameter(names={"-spinWait"}, description="Spin (rather than sleep) for the last millisecond before each tick, for less tick jitter at the cost of CPU")
+	public Boolean spinWait = false;
+	
 	@Parameter(names={"-devicePort","-p"}, description="Port to listen on for peripherals")
 	public Integer devicePort = 3000;
 	
@@ -52,12 +55,39 @@ public class CommandLineArgs {
 	@Parameter(names={"-gloveInterfaceIP"}, description="The IP Network Interface of the IOServer for listening to glove data")
 	public String gloveInterfaceIP = "192.168.100.2";
 	
-	@Parameter(names={"-gestureEngine", "-ge"}, description="File path to the gesture recognition engine used for recongnizing game gestures")
+	@Parameter(names={"-gestureEngine", "-ge"}, description="File path to the gesture recognition engine used for recongnizing game gestures (text .eng or binary .engb)")
 	public String gestureEngineFilepath = new File(System.getProperty("user.dir"), "../../data/gesture/gesture_recognizer_engine.eng").toString();
 	
 	@Parameter(names={"-encrypt", "-e"}, description="Use SSL to encrypt wifi communications")
 	public Boolean useSSL = false;
 	
+	@Parameter(names={"-nioDeviceListener"}, description="Receive peripheral data with a NIO channel and parse it straight out of a reused buffer")
+	public Boolean useNioDeviceListener = false;
+	
+	@Parameter(names={"-gloveRingSize"}, description="Number of glove samples buffered (per player) between the peripheral listener and the gesture coalescer")
+	public Integer gloveRingCapacity = GloveSampleRing.DEFAULT_CAPACITY;
+	
+	@Parameter(names={"-gloveRingOverflow"}, description="What to do with glove samples when that buffer is full: DROP_OLDEST or DROP_NEWEST")
+	public String gloveRingOverflowPolicy = GloveSampleRing.OverflowPolicy.DROP_OLDEST.name();
+	
+	@Parameter(names={"-buttonUpTimeout"}, description="Time (in ms) to wait for a glove's button up event before ending its gesture anyway")
+	public Long buttonUpTimeoutMs = GloveEventCoalescer.DEFAULT_BUTTON_UP_TIMEOUT_MS;
+	
+	@Parameter(names={"-gloveButtonUpTimeouts"}, description="Per-glove overrides of the button up timeout, e.g. RM_LEFT_GLOVE=800,RM_RIGHT_GLOVE=800")
+	public String gloveButtonUpTimeouts = "";
+	
+	@Parameter(names={"-streamingRecognition"}, description="Score gestures while the glove button is held so they're recognized as soon as it's released")
+	public Boolean useStreamingRecognition = false;
+	
+	@Parameter(names={"-earlyCommit"}, description="With streaming recognition, end a gesture as soon as one candidate clearly leads all the others (less accurate: on recorded gestures about 1 in 7 early commits picks a different gesture than waiting for the release would)")
+	public Boolean earlyCommitGestures = false;
+	
+	@Parameter(names={"-serialScoring"}, description="Score each gesture's candidates one after the other rather than in parallel (for machines with few cores)")
+	public Boolean serialScoring = false;
+	
+	@Parameter(names={"-prunedScoring"}, description="Abandon gesture candidates as soon as they can't be recognized (faster, may differ from full scoring in close cases)")
+	public Boolean prunedScoring = false;
+	
 	
 	public CommandLineArgs() {
 		try {
@@ -78,8 +108,20 @@ public class CommandLineArgs {
 		buf.append("\nAction gap: "+ minTimeBetweenPlayerActionsInSecs +"s");
 		buf.append("\nRound length: "+ roundTimeInSecs+ "s");
 		buf.append("\nNumber of rounds: "+ numRoundsPerMatch +"s");
-		buf.append("\nTick frequency: "+ tickFrequency + " Hz");
+		buf.append("\nTick frequency: "+ tickFrequency + " Hz" + (spinWait ? " (spin wait)" : ""));
 		buf.append("\nPeripheral port: "+ devicePort);
+		buf.append("\nNIO peripheral listener: "+ useNioDeviceListener);
+		buf.append("\nGlove sample buffer: "+ gloveRingCapacity + " (" + gloveRingOverflowPolicy + ")");
+		buf.append("\nButton up timeout: "+ buttonUpTimeoutMs + "ms");
+		if (gloveButtonUpTimeouts.length() > 0) {
+			buf.append(" (" + gloveButtonUpTimeouts + ")");
+		}
+		buf.append("\nStreaming recognition: "+ useStreamingRecognition);
+		if (useStreamingRecognition) {
+			buf.append(" (early commit: " + earlyCommitGestures + ")");
+		}
+		buf.append("\nSerial gesture scoring: "+ serialScoring);
+		buf.append("\nPruned gesture scoring: "+ prunedScoring);
 		buf.append("\nHeartbeat port: "+ heartbeatPort);
 		buf.append("\nGUI port: "+ guiPort);
 		buf.append("\nUsing SSL: "+ useSSL);
@@ -17,22 +17,42 @@ import ca.site3.ssf.guiprotocol.SystemCommand;
  */
 public class CommunicationsManager {
 
+	// Raised whenever there's new work for the main loop (commands or recognized gestures)
+	private final WorkSignal mainLoopSignal = new WorkSignal();
+	
 	private BlockingQueue<IGameModelEvent> commOutQueue = new LinkedBlockingQueue<IGameModelEvent>();
 	
 	private BlockingQueue<DeviceEvent> commInQueue = new LinkedBlockingQueue<DeviceEvent>();
 	
+	private final GloveSampleLanes gloveSampleLanes;
+	
 	private BlockingQueue<IGameModelEvent> guiOutQueue = new LinkedBlockingQueue<IGameModelEvent>();
 	
-	private BlockingQueue<AbstractGameModelCommand> gameCommandQueue = new LinkedBlockingQueue<AbstractGameModelCommand>();
+	private BlockingQueue<AbstractGameModelCommand> gameCommandQueue = new SignallingBlockingQueue<AbstractGameModelCommand>(mainLoopSignal);
 	
-	private BlockingQueue<SystemCommand> systemCommandQueue = new LinkedBlockingQueue<SystemCommand>();
+	private BlockingQueue<SystemCommand> systemCommandQueue = new SignallingBlockingQueue<SystemCommand>(mainLoopSignal);
 	
 	private BlockingQueue<EntityGestureInstance> gestureQueue = new LinkedBlockingQueue<EntityGestureInstance>();
 	
+	private BlockingQueue<EntityGestureInstance> recognizedGestureQueue = new SignallingBlockingQueue<EntityGestureInstance>(mainLoopSignal);
+	
+	
+	public CommunicationsManager() {
+		this(GloveSampleRing.DEFAULT_CAPACITY, GloveSampleRing.OverflowPolicy.DROP_OLDEST);
+	}
+	
+	/**
+	 * @param gloveSampleCapacity number of slots in each entity's glove sample ring
+	 * @param gloveSampleOverflowPolicy what to do with glove samples when a ring is full
+	 */
+	public CommunicationsManager(int gloveSampleCapacity, GloveSampleRing.OverflowPolicy gloveSampleOverflowPolicy) {
+		this.gloveSampleLanes = new GloveSampleLanes(gloveSampleCapacity, gloveSampleOverflowPolicy);
+	}
+	
 	
 	@SuppressWarnings("unchecked")
 	public void shutdown() {
-		for (BlockingQueue<?> q : Arrays.asList(commOutQueue,commInQueue,guiOutQueue,gameCommandQueue)) {
+		for (BlockingQueue<?> q : Arrays.asList(commOutQueue,commInQueue,guiOutQueue,gameCommandQueue,recognizedGestureQueue)) {
 			q.clear();
 		}
 	}
@@ -43,15 +63,25 @@ public class CommunicationsManager {
 
 
 	/**
-	 * Queue for events received from peripherals.
+	 * Queue for events received from peripherals other than the gloves (see {@link #getGloveSampleLanes()}).
 	 * 
-	 * Populated by the {@link DeviceNetworkListener} / {@link IDeviceDataParser}.
 	 * Consumed by {@link GloveEventCoalescer} which creates {@link GestureInstance}s
 	 * and places them onto the queue returned by {@link #getGestureQueue()}.
 	 */
 	BlockingQueue<DeviceEvent> getCommInQueue() {
 		return commInQueue;
 	}
+	
+	/**
+	 * Rings of samples received from the gloves, one per entity.
+	 * 
+	 * Populated by the {@link DeviceNetworkListener} / {@link IDeviceDataParser} (the single producer).
+	 * Consumed by {@link GloveEventCoalescer} (one consumer thread per entity) which creates
+	 * {@link GestureInstance}s and places them onto the queue returned by {@link #getGestureQueue()}.
+	 */
+	GloveSampleLanes getGloveSampleLanes() {
+		return gloveSampleLanes;
+	}
 
 
 	BlockingQueue<IGameModelEvent> getGuiOutQueue() {
@@ -76,10 +106,30 @@ public class CommunicationsManager {
 	
 	
 	/**
+	 * Queue of the gestures built by the {@link GloveEventCoalescer}.
+	 * 
+	 * Consumed by the {@link GestureRecognitionPool}, which recognizes them off of the main loop's thread.
 	 * 
-	 * @return
+	 * @return the queue of gestures waiting to be recognized
 	 */
 	BlockingQueue<EntityGestureInstance> getGestureQueue() {
 		return gestureQueue;
 	}
+	
+	/**
+	 * Queue of gestures that have been recognized and are ready to be executed on the game.
+	 * 
+	 * Populated by the {@link GestureRecognitionPool}. Consumed by the main loop.
+	 */
+	BlockingQueue<EntityGestureInstance> getRecognizedGestureQueue() {
+		return recognizedGestureQueue;
+	}
+	
+	/**
+	 * Raised whenever a command or recognized gesture is added to one of the queues the main loop consumes,
+	 * so that the loop can act on it right away rather than at its next tick.
+	 */
+	WorkSignal getMainLoopSignal() {
+		return mainLoopSignal;
+	}
 }
@@ -1,7 +1,7 @@
 package ca.site3.ssf.ioserver;
 
-import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -31,20 +31,30 @@ public class DeviceDataParser implements IDeviceDataParser {
 			//Pattern.compile("^gX:([^,]+),gY:([^,]+),gZ:([^,]+),aX:([^,]+),aY:([^,]+),aZ:([^,]+),RLL:([^,]+),PCH:([^|]+)\\|$");
 			// aX:-265.64,aY:239.84,aZ:4228.79,YAW:21.9,PCH:-2.46,RLL:0.69|
 			Pattern.compile("^aX:([^,]+),aY:([^,]+),aZ:([^,]+),YAW:([^,]+),PCH:([^,]+),RLL:([^|]+)\\|$");
-			
+	
+	private static final byte[] DATA_PREFIX = GloveDataScanner.asciiBytes("aX");
+	
+	/*
+	 * Scratch space so that a datagram never gets turned into Strings. The line buffer and
+	 * matcher are only used when a frame has to go through the regex fallback. A parser is
+	 * only ever driven by a single listener thread, so these don't need guarding.
+	 */
+	private final GloveSample sample = new GloveSample();
+	private final StringBuilder lineBuffer = new StringBuilder(128);
+	private final Matcher lineMatcher = pattern.matcher(lineBuffer);
+	
 	public DeviceDataParser(DeviceStatus deviceStatus) {
 		this.deviceStatus = deviceStatus;
 	}
 	
 	public List<DeviceEvent> parseDeviceData(byte[] data, int dataLength, InetAddress srcIP) throws Exception {
+		return parseDeviceData(ByteBuffer.wrap(data, 0, dataLength), srcIP);
+	}
+	
+	public List<DeviceEvent> parseDeviceData(ByteBuffer data, InetAddress srcIP) throws Exception {
 		
-		Device d = deviceStatus.getDeviceAtAddress(srcIP);
+		Device d = getGloveAtAddress(data, srcIP);
 		if (d == null) {
-			log.debug("No device at address: {}",srcIP);
-			return null;
-		}
-		
-		if (d.type == DeviceType.HEADSET) {
 			return null;
 		}
 		
@@ -52,74 +62,184 @@ public class DeviceDataParser implements IDeviceDataParser {
 		 *  XXX: currently assuming datagrams break cleanly at | boundaries
 		 *  (though could be multiple lines per datagram)
 		 */
-		String rawString = "";
-		try {
-			rawString = new String(data, 0, dataLength, "ASCII").trim();
-		}
-		catch (UnsupportedEncodingException e) {
-			log.error("Error while encoding string.", e);
-			return null;
-		}
-		
-		String[] strings = rawString.split("\n");
-		List<DeviceEvent> events = new ArrayList<DeviceEvent>(strings.length);
-		for (String dataStr : strings) {
-			GloveEvent gloveEvent = parseSingleLine(d, dataStr.trim());
-			if (gloveEvent != null) {
-				events.add(gloveEvent);
+		List<DeviceEvent> events = new ArrayList<DeviceEvent>(1);
+		int limit = data.limit();
+		int lineStart = data.position();
+		while (lineStart < limit) {
+			int lineEnd = nextLineEnd(data, lineStart, limit);
+			if (parseSingleLine(d, data, lineStart, lineEnd, sample)) {
+				events.add(createGloveEvent(sample));
 			}
+			lineStart = lineEnd + 1;
 		}
+		data.position(limit);
 		
 		return events;
 	}
-
 	
-	private GloveEvent parseSingleLine(Device d, String dataStr) {
-		if (dataStr.startsWith("start|")) {
-			double[] gyro = new double[] { 0, 0, 0 };
-			double[] accel = new double[] { 0, 0, 0 };
-			double[] heading = new double[] { 0, 0, 0 };
-			return new GloveEvent(d.entity, d.type, System.currentTimeMillis(), GloveEvent.EventType.BUTTON_DOWN_EVENT, gyro, accel, heading);
-		}
-		else if (dataStr.startsWith("end|")) {
-			double[] gyro = new double[] { 0, 0, 0 };
-			double[] accel = new double[] { 0, 0, 0 };
-			double[] heading = new double[] { 0, 0, 0 };
-			return new GloveEvent(d.entity, d.type, System.currentTimeMillis(), GloveEvent.EventType.BUTTON_UP_EVENT, gyro, accel, heading);
-		}
-		else {
-			if (dataStr.startsWith("aX") == false) {
-				log.warn("Ignoring data: '{}'",dataStr);
-				return null;
-			}
-			if (dataStr.endsWith("|") == false && dataStr.endsWith("|\r") == false) {
-				log.warn("Looks like an incomplete frame: '{}'", dataStr);
-				return null;
-			}
+	public int parseDeviceData(ByteBuffer data, InetAddress srcIP, GloveSampleLanes lanes) throws Exception {
+		
+		Device d = getGloveAtAddress(data, srcIP);
+		if (d == null) {
+			return -1;
+		}
+		
+		GloveSampleRing ring = lanes.getLane(d.entity);
+		
+		int count = 0;
+		int limit = data.limit();
+		int lineStart = data.position();
+		while (lineStart < limit) {
+			int lineEnd = nextLineEnd(data, lineStart, limit);
 			
-			Matcher m = pattern.matcher(dataStr);
-			if (m.matches() == false) {
-				log.warn("Input did not match regex: '{}'", dataStr);
-				return null;
+			// only claim a slot once the line turns out to be a sample: claiming from a full ring
+			// drops a sample (a queued one, or this one), which junk and blank lines mustn't do
+			if (parseSingleLine(d, data, lineStart, lineEnd, sample)) {
+				GloveSample slot = ring.claim();
+				if (slot != null) {
+					slot.copyFrom(sample);
+					ring.publish();
+				}
+				count++;
 			}
-			
-			double[] gyro = new double[] { 0, 0, 0 };
-			double[] accel = new double[] { 0, 0, 0 };
-			double[] heading = new double[] { 0, 0, 0 };
-			
-			for (int i=0; i<3; i++) {
-				try {
-					gyro[i]    = 0.0; // Not currently recording Gyro
-					accel[i]   = Double.parseDouble(m.group(i+1));
-					heading[i] = Double.parseDouble(m.group(i+4));
-				} catch (NumberFormatException ex) {
-					log.error("Failed parsing glove data",ex);
-					return null;
+			lineStart = lineEnd + 1;
+		}
+		data.position(limit);
+		
+		return count;
+	}
+	
+	/**
+	 * @return the glove that sent the data, or null (having consumed the buffer) if it didn't come from a glove
+	 */
+	private Device getGloveAtAddress(ByteBuffer data, InetAddress srcIP) {
+		Device d = deviceStatus.getDeviceAtAddress(srcIP);
+		if (d == null) {
+			log.debug("No device at address: {}",srcIP);
+			data.position(data.limit());
+			return null;
+		}
+		
+		if (d.type == DeviceType.HEADSET) {
+			data.position(data.limit());
+			return null;
+		}
+		return d;
+	}
+	
+	private static int nextLineEnd(ByteBuffer data, int lineStart, int limit) {
+		int lineEnd = lineStart;
+		while (lineEnd < limit && data.get(lineEnd) != '\n') {
+			lineEnd++;
+		}
+		return lineEnd;
+	}
+	
+	/**
+	 * Parses the line occupying [start, end) of the given buffer into the given sample. Well-formed
+	 * lines go through {@link GloveDataScanner}; anything it rejects gets a second chance with the regex.
+	 * 
+	 * @return true if the sample was filled in, false if the line was junk
+	 */
+	private boolean parseSingleLine(Device d, ByteBuffer data, int start, int end, GloveSample into) {
+		// trim
+		while (start < end && (data.get(start) & 0xff) <= ' ') {
+			start++;
+		}
+		while (end > start && (data.get(end-1) & 0xff) <= ' ') {
+			end--;
+		}
+		if (start == end) {
+			return false;
+		}
+		
+		double[] values = into.getValues();
+		switch (GloveDataScanner.scan(data, start, end, values, GloveSample.ACCEL_OFFSET)) {
+			case GloveDataScanner.BUTTON_DOWN:
+				into.set(d.entity, d.type, System.currentTimeMillis(), GloveEvent.EventType.BUTTON_DOWN_EVENT);
+				into.clearValues();
+				return true;
+			case GloveDataScanner.BUTTON_UP:
+				into.set(d.entity, d.type, System.currentTimeMillis(), GloveEvent.EventType.BUTTON_UP_EVENT);
+				into.clearValues();
+				return true;
+			case GloveDataScanner.DATA:
+				break;
+			default:
+				if (parseMalformedLine(data, start, end, values) == false) {
+					return false;
 				}
+				break;
+		}
+		
+		// Not currently recording Gyro
+		values[GloveSample.GYRO_OFFSET]   = 0.0;
+		values[GloveSample.GYRO_OFFSET+1] = 0.0;
+		values[GloveSample.GYRO_OFFSET+2] = 0.0;
+		into.set(d.entity, d.type, System.currentTimeMillis(), GloveEvent.EventType.DATA_EVENT);
+		return true;
+	}
+	
+	/**
+	 * Regex fallback for lines that the scanner couldn't handle (odd number formats, junk, etc.)
+	 * On success the accelerometer and heading values are written into the given sample values.
+	 */
+	private boolean parseMalformedLine(ByteBuffer data, int start, int end, double[] values) {
+		lineBuffer.setLength(0);
+		for (int i = start; i < end; i++) {
+			lineBuffer.append((char)(data.get(i) & 0xff));
+		}
+		
+		if (startsWith(data, start, end, DATA_PREFIX) == false) {
+			log.warn("Ignoring data: '{}'", lineBuffer);
+			return false;
+		}
+		if (data.get(end-1) != '|') {
+			log.warn("Looks like an incomplete frame: '{}'", lineBuffer);
+			return false;
+		}
+		
+		lineMatcher.reset(lineBuffer);
+		if (lineMatcher.matches() == false) {
+			log.warn("Input did not match regex: '{}'", lineBuffer);
+			return false;
+		}
+		
+		for (int i=0; i<3; i++) {
+			try {
+				values[GloveSample.ACCEL_OFFSET+i]        = Double.parseDouble(lineMatcher.group(i+1));
+				values[GloveSample.MAGNETOMETER_OFFSET+i] = Double.parseDouble(lineMatcher.group(i+4));
+			} catch (NumberFormatException ex) {
+				log.error("Failed parsing glove data",ex);
+				return false;
 			}
+		}
+		return true;
+	}
+	
+	private GloveEvent createGloveEvent(GloveSample s) {
+		// The gyro isn't currently being recorded, each event still gets its own (zero) array since
+		// GloveEvent hands out its arrays as they are
+		double[] gyro = new double[3];
+		double[] accel = new double[3];
+		double[] heading = new double[3];
+		System.arraycopy(s.getValues(), GloveSample.ACCEL_OFFSET, accel, 0, 3);
+		System.arraycopy(s.getValues(), GloveSample.MAGNETOMETER_OFFSET, heading, 0, 3);
+		
+		return new GloveEvent(s.getSource(), s.getDevice(), s.getTimestamp(), s.getEventType(), 
+				gyro, accel, heading);
+	}
+	
 	
-			return new GloveEvent(d.entity, d.type, System.currentTimeMillis(), GloveEvent.EventType.DATA_EVENT, 
-					gyro, accel, heading);
+	private static boolean startsWith(ByteBuffer data, int start, int end, byte[] prefix) {
+		if (end - start < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data.get(start + i) != prefix[i]) {
+				return false;
+			}
 		}
+		return true;
 	}
 }
@@ -8,6 +8,7 @@ import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Queue;
 
@@ -18,11 +19,12 @@ import org.slf4j.LoggerFactory;
  * The DeviceNetworkListener listens on a UDP socket for events from the game
  * peripherals (gloves, headsets). It passes the data to an {@link IDeviceDataParser}
  * which unpacks the data into {@link DeviceEvent}s. The events are then placed onto
- * a queue to be consumed.
+ * a queue to be consumed (or, given a {@link GloveSampleLanes}, the glove samples are
+ * parsed straight into their slots).
  * 
  * @author greg
  */
-public class DeviceNetworkListener implements Runnable {
+public class DeviceNetworkListener implements IDeviceNetworkListener {
 
 	private Logger log = LoggerFactory.getLogger(getClass());
 	
@@ -33,6 +35,7 @@ public class DeviceNetworkListener implements Runnable {
 	private DatagramSocket socket;
 	
 	private Queue<DeviceEvent> eventQueue;
+	private GloveSampleLanes gloveSampleLanes;
 	
 	private volatile boolean stop = false;
 	
@@ -47,6 +50,20 @@ public class DeviceNetworkListener implements Runnable {
 		this.port = port;
 		this.dataParser = dataParser;
 		this.eventQueue = q;
+		this.gloveSampleLanes = null;
+	}
+	
+	/**
+	 * @param port the port to listen on
+	 * @param dataParser an object that can translate raw data into glove samples
+	 * @param lanes per-entity rings the glove samples will be published to (this listener must be their only producer)
+	 */
+	public DeviceNetworkListener(String ipAddress, int port, IDeviceDataParser dataParser, GloveSampleLanes lanes) {
+		this.ipAddress = ipAddress;
+		this.port = port;
+		this.dataParser = dataParser;
+		this.eventQueue = null;
+		this.gloveSampleLanes = lanes;
 	}
 
 	
@@ -81,6 +98,7 @@ public class DeviceNetworkListener implements Runnable {
 		final int DATAGRAM_BUFFER_SIZE = 8192;
 		byte receivedData[] = new byte[DATAGRAM_BUFFER_SIZE];
 		DatagramPacket receivedPacket = new DatagramPacket(receivedData, receivedData.length);
+		ByteBuffer receivedBuffer = ByteBuffer.wrap(receivedData);
 		
 		while (!stop) {
 			// reset buffer size
@@ -101,6 +119,14 @@ public class DeviceNetworkListener implements Runnable {
 
 			try {
 				InetAddress address = receivedPacket.getAddress();
+				if (gloveSampleLanes != null) {
+					receivedBuffer.limit(receivedPacket.getLength()).position(0);
+					if (dataParser.parseDeviceData(receivedBuffer, address, gloveSampleLanes) < 0) {
+						log.warn("Could not parse data: " + new String(receivedPacket.getData(), 0, receivedPacket.getLength(), "ASCII").trim());
+					}
+					continue;
+				}
+				
 				List<? extends DeviceEvent> events = dataParser.parseDeviceData(receivedPacket.getData(), receivedPacket.getLength(), address);
 				if (events != null) {
 					for (DeviceEvent e : events) {
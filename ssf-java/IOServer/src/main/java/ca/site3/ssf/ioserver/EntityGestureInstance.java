@@ -4,6 +4,8 @@ import java.util.List;
 
 import ca.site3.ssf.gamemodel.IGameModel;
 import ca.site3.ssf.gesturerecognizer.GestureInstance;
+import ca.site3.ssf.gesturerecognizer.GestureStatistics;
+import ca.site3.ssf.gesturerecognizer.GestureType;
 import ca.site3.ssf.gesturerecognizer.GloveData;
 
 /**
@@ -16,6 +18,13 @@ public class EntityGestureInstance extends GestureInstance {
 
 	private final IGameModel.Entity entity;
 	
+	// When the gesture was built (in System.nanoTime() terms)
+	private final long creationTime = System.nanoTime();
+	
+	// Set when the gesture was already recognized while it was being coalesced (see GestureRecognitionSession)
+	private boolean hasRecognitionResult = false;
+	private GestureType recognizedGesture = null;
+	
 	// TODO: Gestures will need to be associated with headset values - these are the distilled headset values
 	// that occurred over the course of the player carrying out the gesture.
 	//private final double headsetAttention;
@@ -33,8 +42,45 @@ public class EntityGestureInstance extends GestureInstance {
 		super(leftGloveData, rightGloveData, timePts);
 		this.entity = entity;
 	}
+	
+	/**
+	 * @param statistics the statistics of the given glove data, as they were accumulated while the gesture was coalesced
+	 */
+	public EntityGestureInstance(IGameModel.Entity entity, List<GloveData> leftGloveData,
+								 List<GloveData> rightGloveData, List<Double> timePts, GestureStatistics statistics) {
+		
+		super(leftGloveData, rightGloveData, timePts, statistics);
+		this.entity = entity;
+	}
 
 	public IGameModel.Entity getEntity() {
 		return this.entity;
 	}
+	
+	/**
+	 * @return the System.nanoTime() at which this gesture was built (i.e., just after its button was released)
+	 */
+	public long getCreationTime() {
+		return this.creationTime;
+	}
+	
+	/**
+	 * @return true if this gesture has already been recognized, in which case {@link #getRecognizedGesture()}
+	 * is the result of recognizing it
+	 */
+	public boolean hasRecognitionResult() {
+		return this.hasRecognitionResult;
+	}
+	
+	/**
+	 * @return the gesture this was recognized as, null if it wasn't recognized as any gesture
+	 */
+	public GestureType getRecognizedGesture() {
+		return this.recognizedGesture;
+	}
+	
+	void setRecognizedGesture(GestureType recognizedGesture) {
+		this.hasRecognitionResult = true;
+		this.recognizedGesture = recognizedGesture;
+	}
 }
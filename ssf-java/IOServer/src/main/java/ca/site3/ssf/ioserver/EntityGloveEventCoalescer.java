@@ -0,0 +1,660 @@
+package ca.site3.ssf.ioserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.site3.ssf.common.LatencyHistogram;
+import ca.site3.ssf.gamemodel.IGameModel.Entity;
+import ca.site3.ssf.gesturerecognizer.GestureInstance;
+import ca.site3.ssf.gesturerecognizer.GestureRecognitionSession;
+import ca.site3.ssf.gesturerecognizer.GestureRecognizer;
+import ca.site3.ssf.gesturerecognizer.GestureStatistics;
+import ca.site3.ssf.gesturerecognizer.GestureType;
+import ca.site3.ssf.gesturerecognizer.GloveData;
+import ca.site3.ssf.ioserver.DeviceConstants.DeviceType;
+import ca.site3.ssf.ioserver.GloveEvent.EventType;
+
+/**
+ * Coalesces the glove (and headset) data for a single {@link Entity} into
+ * {@link EntityGestureInstance}s. Each entity gets its own instance, fed by its own
+ * {@link GloveSampleRing} lane and run on its own thread, so a burst of data from one
+ * player never holds up the gestures of another.
+ * 
+ * @see GloveEventCoalescer
+ */
+class EntityGloveEventCoalescer implements Runnable {
+	
+	private Logger log = LoggerFactory.getLogger(getClass());
+	
+	/**
+	 * The minimum allowed number of elements that it takes to turn a GloveEvent queue
+	 * into a proper gesture.
+	 */
+	private static final int MIN_GLOVE_EVENT_QUEUE_SIZE = 4;
+	/**
+	 * How many {@link GloveEvent}s to cache before aggregating into
+	 * a {@link GestureInstance}.
+	 */
+	private static final int GLOVE_DATA_CACHE_SIZE   = 200;
+	/**
+	 * How many {@link HeadsetEvent}s to cache before aggregating into
+	 * a {@link GestureInstance}.
+	 */
+	private static final int INTERNAL_HEADSET_DATA_CACHE_SIZE = GLOVE_DATA_CACHE_SIZE;
+	private static final int EXTERNAL_HEADSET_DATA_CACHE_SIZE = GLOVE_DATA_CACHE_SIZE;
+	
+	/**
+	 * The maximum wait time between button's down/up on both gloves to combine them into a single gesture.
+	 */
+	private static final double MAX_TIME_BETWEEN_TWO_HANDED_GESTURE_BUTTON_RELEASE_IN_SECS = 0.55;
+	
+	/**
+	 * How long to wait on the glove sample lane at a time when no gesture is in progress (other
+	 * (headset) events wake us up as soon as they arrive, so this only bounds each idle wait).
+	 */
+	private static final long MAX_IDLE_WAIT_MS = 1000;
+	
+	/**
+	 * Everything we keep track of for one of the entity's gloves.
+	 */
+	private static final class GloveState {
+		// Accumulated data that will make up a distinct gesture once coalesced
+		final Queue<GloveEvent> events = new LinkedList<GloveEvent>();
+		// Running statistics of the cached events, so the gesture never has to go back over them
+		final GestureStatistics.Accumulator statistics = new GestureStatistics.Accumulator();
+		boolean btnDown = false;
+		long lastPkgNanos = 0;
+		// Whether the gesture this glove is part of was already ended early (the rest of its data is ignored)
+		boolean committed = false;
+		
+		// How long to wait for the button up event after the last package before we make one up
+		volatile long buttonUpTimeoutNanos =
+				TimeUnit.MILLISECONDS.toNanos(GloveEventCoalescer.DEFAULT_BUTTON_UP_TIMEOUT_MS);
+		
+		long getButtonUpDeadline() {
+			return this.lastPkgNanos + this.buttonUpTimeoutNanos;
+		}
+	}
+	
+	private final Entity entity;
+	
+	// Input lane(s)
+	private final GloveSampleRing gloveSampleLane;
+	private final Queue<DeviceEvent> otherEventLane = new ConcurrentLinkedQueue<DeviceEvent>();
+	private final GloveSample currentSample = new GloveSample();
+	
+	// Output queue(s)
+	private final BlockingQueue<EntityGestureInstance> gestureInstanceQueue;
+	private final BlockingQueue<HeadsetEvent> externalHeadsetQueue;
+	
+	private final GloveState left  = new GloveState();
+	private final GloveState right = new GloveState();
+	
+	// Caches the headset information over the course of a gesture
+	private final Queue<HeadsetEvent> internalHeadsetQueue = new LinkedList<HeadsetEvent>();
+	
+	private final long startTime;
+	private final double bothButtonsDownThreshold; // In milliseconds
+	
+	// How late (past their deadline) the synthetic button up events fire
+	private final LatencyHistogram syntheticButtonUpLateness;
+	
+	// Scores the gesture in progress as its data arrives (null if gestures are only recognized once they're built)
+	private GestureRecognitionSession recognitionSession = null;
+	private boolean earlyCommit = false;
+	
+	
+	/**
+	 * @param entity the entity whose gestures are being coalesced
+	 * @param startTime the time the event loop for the game started
+	 * @param gloveSampleLane the entity's glove samples will be consumed from this ring (this must be its only consumer)
+	 * @param externalHeadsetQueue all of the entity's headset events are passed on to this queue (may be null)
+	 * @param gestureInstanceQueue this queue will be populated
+	 * @param syntheticButtonUpLateness records how late every made-up button up event fires
+	 */
+	EntityGloveEventCoalescer(Entity entity, long startTime,
+							  GloveSampleRing gloveSampleLane,
+							  BlockingQueue<HeadsetEvent> externalHeadsetQueue,
+							  BlockingQueue<EntityGestureInstance> gestureInstanceQueue,
+							  LatencyHistogram syntheticButtonUpLateness) {
+		
+		this.entity = entity;
+		this.gloveSampleLane = gloveSampleLane;
+		this.externalHeadsetQueue = externalHeadsetQueue;
+		this.gestureInstanceQueue = gestureInstanceQueue;
+		
+		this.startTime = startTime;
+		this.bothButtonsDownThreshold = MAX_TIME_BETWEEN_TWO_HANDED_GESTURE_BUTTON_RELEASE_IN_SECS * 1000.0;
+		this.syntheticButtonUpLateness = syntheticButtonUpLateness;
+	}
+	
+	Entity getEntity() {
+		return this.entity;
+	}
+	
+	/**
+	 * Sets the maximum time to wait for a button up event after any data has arrived for the given glove.
+	 * This is here as a preventative measure for when the glove forgets to send a button up event.
+	 * May be called from any thread; takes effect from the glove's next package.
+	 */
+	void setButtonUpTimeout(DeviceType glove, long timeoutMs) {
+		GloveState state = (glove == DeviceType.LEFT_GLOVE) ? this.left : (glove == DeviceType.RIGHT_GLOVE) ? this.right : null;
+		if (state == null) {
+			throw new IllegalArgumentException("Not a glove: " + glove);
+		}
+		state.buttonUpTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+	}
+	
+	/**
+	 * Turns on streaming recognition: every gesture is scored by the given recognizer while it is
+	 * being performed, and the resulting {@link EntityGestureInstance}s come out already recognized.
+	 * Must be called before this coalescer is started.
+	 * 
+	 * @param recognizer the recognizer to score gestures with
+	 * @param earlyCommit whether to end a gesture as soon as the data seen so far is decisive, rather
+	 * than waiting for the button to be released
+	 */
+	void setStreamingRecognition(GestureRecognizer recognizer, boolean earlyCommit) {
+		this.recognitionSession = this.entity.getIsPlayer() ?
+				recognizer.beginPlayerGestureSession() : recognizer.beginRingmasterGestureSession();
+		this.earlyCommit = earlyCommit;
+	}
+	
+	/**
+	 * Hands this coalescer a device event that didn't come through its glove sample lane
+	 * (i.e., headset data). May be called from any thread.
+	 */
+	void addDeviceEvent(DeviceEvent e) {
+		assert(e.getSource() == this.entity);
+		this.otherEventLane.add(e);
+		this.gloveSampleLane.wakeConsumer();
+	}
+	
+	public void run() {
+		
+		while (true) {
+			try {
+				
+				DeviceEvent e = null;
+				if (this.isGestureInProgress()) {
+					
+					// In the case where there's at least one glove with data cached, we wait no longer than
+					// the earliest button up deadline: past that, we know that the corresponding BUTTON_UP_EVENT
+					// for that glove is never going to arrive and we need to build the gesture and move on
+					long wait = this.nextButtonUpDeadline() - System.nanoTime();
+					if (wait > 0) {
+						e = this.pollDeviceEvent(wait);
+					}
+					
+					// Uh oh, if any deadline has passed then it means that no BUTTON_UP_EVENT was received in succession
+					// with the rest of a gesture's data. We need to inject an artificial BUTTON_UP_EVENT to end the gesture
+					// for those gestures that are in the progress of being created...
+					this.endOverdueGestures(System.nanoTime());
+					
+					if (e == null) {
+						continue;
+					}
+				}
+				else {
+					// In this case we aren't in the middle of building any gestures,
+					// we can safely block here, waiting for the next event to arrive
+					e = this.takeDeviceEvent();
+				}
+				
+				if (e.getDevice() == DeviceType.HEADSET) {
+					this.onHeadsetEvent((HeadsetEvent)e);
+				}
+				else {
+					// Only glove events should get here!
+					this.onGloveEvent((GloveEvent)e);
+				}
+			
+			} catch (InterruptedException ex) {
+				log.warn("Interrupted waiting for DeviceEvent",ex);
+			}
+		}
+	}
+	
+	private void onHeadsetEvent(HeadsetEvent headsetEvent) {
+		
+		// We only append the event to the internal queue if we're in the middle of a recording gesture...
+		if (this.left.btnDown || this.right.btnDown) {
+			this.internalHeadsetQueue.add(headsetEvent);
+			if (this.internalHeadsetQueue.size() > INTERNAL_HEADSET_DATA_CACHE_SIZE) {
+				log.info("Full HeadsetEvent queue. Aggregating internal headset data.");
+				this.aggregateHeadsetEventQueue(this.internalHeadsetQueue);
+			}
+		}
+		
+		// We ALWAYS append data to the external headset device queues (if the entity has one)
+		if (this.externalHeadsetQueue == null) {
+			return;
+		}
+		
+		this.externalHeadsetQueue.add(headsetEvent);
+		if (this.externalHeadsetQueue.size() > EXTERNAL_HEADSET_DATA_CACHE_SIZE) {
+			log.info("Full HeadsetEvent queue. Aggregating external headset data.");
+			this.aggregateHeadsetEventQueue(this.externalHeadsetQueue);
+		}
+	}
+	
+	private void onGloveEvent(GloveEvent ge) {
+		assert(ge != null);
+		
+		GloveState glove = this.gloveStateForDeviceEvent(ge);
+		
+		// The glove should never be null, but just to be robust we check anyway
+		if (glove == null) {
+			return;
+		}
+		
+		if (ge.getEventType() == EventType.DATA_EVENT) {
+			
+			if (glove.committed) {
+				// The gesture was already ended early, the rest of it is ignored until the button comes up
+				// (or until there's been a long enough gap that the button up must have been lost)
+				long now = System.nanoTime();
+				if ((now - glove.getButtonUpDeadline()) < 0) {
+					glove.lastPkgNanos = now;
+					return;
+				}
+				glove.committed = false;
+			}
+			
+			// Currently assume we only get these when the button is down...
+			
+			// If we're here and the button for the glove with the given data event is not down, then it should
+			// be forced into a down state, based on the established protocol
+			if (!glove.btnDown) {
+				glove.btnDown = true;
+				this.internalHeadsetQueue.clear();
+			}
+			
+			// Add the data to the event queue for the glove
+			if (this.recognitionSession != null) {
+				if (!this.isGestureInProgress()) {
+					this.recognitionSession.reset();
+				}
+				if (glove == this.left) {
+					this.recognitionSession.addLeftGloveData(createGloveData(ge));
+				}
+				else {
+					this.recognitionSession.addRightGloveData(createGloveData(ge));
+				}
+			}
+			if (glove.events.isEmpty()) {
+				glove.statistics.reset();
+			}
+			glove.events.add(ge);
+			glove.statistics.addTime(this.gestureTime(ge));
+			glove.statistics.addAccel(ge.getAcceleration()[0], ge.getAcceleration()[1], ge.getAcceleration()[2]);
+			
+			if (glove.events.size() > GLOVE_DATA_CACHE_SIZE) {
+				log.info("Full GloveEvent queue. Creating GestureInstance.");
+				this.aggregateAndAdd();
+			}
+			else if (this.earlyCommit) {
+				GestureType candidate = this.recognitionSession.getEarlyCommitCandidate(
+						!this.left.events.isEmpty(), !this.right.events.isEmpty());
+				if (candidate != null) {
+					log.info("Gesture is already decisive ({}), not waiting for the button to be released.", candidate);
+					this.left.committed  = this.left.btnDown;
+					this.right.committed = this.right.btnDown;
+					this.aggregateAndAdd();
+				}
+			}
+		}
+		else {
+			glove.btnDown = (ge.getEventType() == EventType.BUTTON_DOWN_EVENT);
+			boolean wasCommitted = glove.committed;
+			glove.committed = false;
+			
+			/*
+			 * This is where decisions get made about what to do after a change in button
+			 * down state: If a glove just had its button released then we check the other glove to
+			 * see if it doesn't have a button down. Thus, if both buttons are 'up' then we
+			 * attempt to create a gesture.
+			 */
+			if (ge.getEventType() == EventType.BUTTON_UP_EVENT && this.otherGlove(glove).btnDown == false) {
+				// button was released and other glove's button is not down.
+				// create one or more GestureInstances (unless they were already created early).
+				if (wasCommitted == false || this.isGestureInProgress()) {
+					this.aggregateAndAdd();
+				}
+			}
+			
+			// When we start a new gesture (i.e., the button is pressed down) we need to clear any previous
+			// headset data for the gestures.
+			if (ge.getEventType() == EventType.BUTTON_DOWN_EVENT) {
+				this.internalHeadsetQueue.clear();
+			}
+		}
+		
+		// Update the timestamp for the last package received for the glove
+		glove.lastPkgNanos = System.nanoTime();
+	}
+	
+	/**
+	 * @return the earliest button up deadline (in System.nanoTime() terms) of the gloves with cached data
+	 */
+	private long nextButtonUpDeadline() {
+		if (this.left.events.isEmpty()) {
+			return this.right.getButtonUpDeadline();
+		}
+		if (this.right.events.isEmpty()) {
+			return this.left.getButtonUpDeadline();
+		}
+		
+		long leftDeadline  = this.left.getButtonUpDeadline();
+		long rightDeadline = this.right.getButtonUpDeadline();
+		// (compare the difference, nanoTime can wrap)
+		return (leftDeadline - rightDeadline) <= 0 ? leftDeadline : rightDeadline;
+	}
+	
+	private void endOverdueGestures(long now) {
+		if (!this.left.events.isEmpty() && (now - this.left.getButtonUpDeadline()) >= 0) {
+			this.injectButtonUp(this.left, now);
+		}
+		if (!this.right.events.isEmpty() && (now - this.right.getButtonUpDeadline()) >= 0) {
+			this.injectButtonUp(this.right, now);
+		}
+	}
+	
+	/**
+	 * Ends the gesture on the given glove as if its button had been released.
+	 */
+	private void injectButtonUp(GloveState glove, long now) {
+		if (glove.btnDown) {
+			long lateness = now - glove.getButtonUpDeadline();
+			this.syntheticButtonUpLateness.record(lateness);
+			log.debug("No button up from {} glove of {}, making one up ({} ms late)",
+					new Object[] { glove == this.left ? "left" : "right", this.entity, lateness / 1e6 });
+		}
+		glove.btnDown = false;
+		
+		if (!this.otherGlove(glove).btnDown) {
+			this.aggregateAndAdd();
+		}
+		glove.lastPkgNanos = now;
+	}
+	
+	/**
+	 * Waits up to the given time (in nanoseconds) for the next device event, from either the glove sample lane
+	 * or the lane of other device events.
+	 * 
+	 * @return the event, or null if the time elapsed without one arriving
+	 */
+	private DeviceEvent pollDeviceEvent(long timeoutNanos) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (true) {
+			DeviceEvent e = this.otherEventLane.poll();
+			if (e != null) {
+				return e;
+			}
+			
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return null;
+			}
+			
+			// addDeviceEvent wakes this up early, so the other lane gets checked again
+			if (this.gloveSampleLane.poll(this.currentSample, remaining, TimeUnit.NANOSECONDS)) {
+				return this.currentSample.toGloveEvent();
+			}
+		}
+	}
+	
+	/**
+	 * Waits as long as it takes for the next device event.
+	 */
+	private DeviceEvent takeDeviceEvent() throws InterruptedException {
+		while (true) {
+			DeviceEvent e = this.pollDeviceEvent(TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_WAIT_MS));
+			if (e != null) {
+				return e;
+			}
+		}
+	}
+	
+	private boolean isGestureInProgress() {
+		return !this.left.events.isEmpty() || !this.right.events.isEmpty();
+	}
+	
+	private void aggregateAndAdd() {
+		List<EntityGestureInstance> gestures = this.aggregate();
+		if (this.recognitionSession != null) {
+			for (EntityGestureInstance gesture : gestures) {
+				gesture.setRecognizedGesture(this.recognitionSession.finish(gesture));
+			}
+		}
+		if (gestures != null && !gestures.isEmpty()) {
+			this.gestureInstanceQueue.addAll(gestures);
+		}
+	}
+	
+	/**
+	 * Create GestureInstances for the entity based on the current state of the GloveEvent caches.
+	 * 
+	 * @return the created {@link EntityGestureInstance}s
+	 */
+	List<EntityGestureInstance> aggregate() {
+		
+		List<EntityGestureInstance> gestures = new ArrayList<EntityGestureInstance>();
+		
+		Queue<GloveEvent> left  = this.left.events;
+		Queue<GloveEvent> right = this.right.events;
+		
+		// easy case: one-handed gestures
+		if (right.isEmpty() && left.isEmpty()) {
+			// no data -- this should never happen
+			log.warn("Trying to create GestureInstance without any glove data. What nonsense!");
+		}
+		else if (right.isEmpty() == false && left.isEmpty() == true) {
+			if (this.isAlmostEmptyGloveEventQueue(right)) {
+				log.info("Mostly empty right-handed gesture, discarding.");
+				right.clear();
+				return gestures;
+			}
+			
+			log.info("Building right-handed gesture.");
+			gestures.add(this.buildOneHandedGesture(right, false));
+		}
+		else if (left.isEmpty() == false && right.isEmpty() == true) {
+			if (this.isAlmostEmptyGloveEventQueue(left)) {
+				log.info("Mostly empty left-handed gesture, discarding.");
+				left.clear();
+				return gestures;
+			}
+			
+			log.info("Building left-handed gesture.");
+			gestures.add(this.buildOneHandedGesture(left, true));
+		}
+		else {
+			
+			/*
+			 * We have events in both left and right glove caches.
+			 * This gets mildly tricky. GestureInstances need to have an equal number of
+			 * left/right GloveEvents (unless one of the gloves has no data). Also need to provide a
+			 * single timestamp (as the # of seconds elapsed since game started, Double precision) for
+			 * each glove data pair.
+			 */
+			
+			// Get the times of the data points at the head of the queue to compare start times
+			long t_left = left.peek().getTimestamp();
+			long t_right = right.peek().getTimestamp();
+			
+			if (Math.abs(t_left - t_right) > bothButtonsDownThreshold) {
+				
+				log.info("Building two one-handed gestures: button threshold was exceeded.");
+				
+				// If the buttons were not both initially pressed at the same (close enough) time,
+				// split into two single handed gestures
+				
+				if (!this.isAlmostEmptyGloveEventQueue(left)) {
+					gestures.add(this.buildOneHandedGesture(left, true));
+				}
+				else {
+					log.info("Mostly empty left-handed gesture, discarding.");
+					left.clear();
+				}
+				
+				if (!this.isAlmostEmptyGloveEventQueue(right)) {
+					gestures.add(this.buildOneHandedGesture(right, false));
+				}
+				else {
+					log.info("Mostly empty right-handed gesture, discarding.");
+					right.clear();
+				}
+			
+			}
+			else {
+				
+				/*
+				 *  Two-handed gesture. Our approach here (for now at least) is to simply truncate the larger
+				 *  cache and grab the timestamps from the smaller.
+				 */
+				
+				// true if the 'main' (smaller) cache is for the left glove
+				boolean usingLeft = left.size() <= right.size();
+				Queue<GloveEvent> mainCache  = usingLeft ? left  : right;
+				Queue<GloveEvent> otherCache = usingLeft ? right : left;
+				GloveState mainState  = usingLeft ? this.left  : this.right;
+				GloveState otherState = usingLeft ? this.right : this.left;
+				
+				// Do nothing if the main cache is empty
+				if (this.isAlmostEmptyGloveEventQueue(mainCache)) {
+					log.info("Attempted to make a two-handed gesture but there's not enough data available.");
+					left.clear();
+					right.clear();
+					return gestures;
+				}
+				
+				List<Double> timePts           = new ArrayList<Double>(mainCache.size());
+				List<GloveData> leftGloveData  = new ArrayList<GloveData>(mainCache.size());
+				List<GloveData> rightGloveData = new ArrayList<GloveData>(mainCache.size());
+				
+				// The other glove's running statistics only hold if none of its data gets truncated
+				boolean isOtherTruncated = otherCache.size() != mainCache.size();
+				GestureStatistics.Accumulator otherStatistics =
+						isOtherTruncated ? new GestureStatistics.Accumulator() : otherState.statistics;
+				
+				log.info("Building two-handed gesture.");
+				while (!mainCache.isEmpty()) {
+					
+					GloveEvent mainEvent  = mainCache.remove();
+					GloveEvent otherGlove = otherCache.remove();
+					timePts.add(this.gestureTime(mainEvent));
+					if (isOtherTruncated) {
+						otherStatistics.addAccel(otherGlove.getAcceleration()[0], otherGlove.getAcceleration()[1], otherGlove.getAcceleration()[2]);
+					}
+					
+					if (usingLeft) {
+						leftGloveData.add(createGloveData(mainEvent));
+						rightGloveData.add(createGloveData(otherGlove));
+					}
+					else {
+						rightGloveData.add(createGloveData(mainEvent));
+						leftGloveData.add(createGloveData(otherGlove));
+					}
+				}
+				
+				GestureStatistics statistics = mainState.statistics.toStatistics().combinedWith(otherStatistics.toStatistics());
+				gestures.add(new EntityGestureInstance(this.entity, leftGloveData, rightGloveData, timePts, statistics));
+				left.clear();
+				right.clear();
+			}
+		}
+		
+		return gestures;
+	}
+	
+	/**
+	 * Drains the given cache into a one-handed gesture.
+	 */
+	private EntityGestureInstance buildOneHandedGesture(Queue<GloveEvent> cache, boolean isLeft) {
+		GestureStatistics statistics = (isLeft ? this.left : this.right).statistics.toStatistics();
+		assert(statistics.getNumDataPts() == cache.size());
+		
+		List<Double> timePts = new ArrayList<Double>(cache.size());
+		List<GloveData> gloveData = new ArrayList<GloveData>(cache.size());
+		List<GloveData> noGloveData = Collections.emptyList();
+		while ( ! cache.isEmpty()) {
+			GloveEvent ge = cache.remove();
+			gloveData.add(createGloveData(ge));
+			timePts.add(this.gestureTime(ge));
+		}
+		
+		if (isLeft) {
+			return new EntityGestureInstance(this.entity, gloveData, noGloveData, timePts, statistics);
+		}
+		return new EntityGestureInstance(this.entity, noGloveData, gloveData, timePts, statistics);
+	}
+	
+	/**
+	 * @return the time of the given event in seconds since the event loop started
+	 */
+	private double gestureTime(GloveEvent ge) {
+		return (ge.getTimestamp() - this.startTime) / 1000.0;
+	}
+	
+	/**
+	 * Averages all of the headset events in the given queue and then clears the queue and places
+	 * the resulting averaged event into the queue.
+	 * @param headsetEventQueue The queue to aggregate/average.
+	 */
+	private void aggregateHeadsetEventQueue(Queue<HeadsetEvent> headsetEventQueue) {
+		HeadsetEvent avgHeadsetEvent = HeadsetEvent.getAverage(headsetEventQueue);
+		if (avgHeadsetEvent == null) {
+			assert(false);
+			return;
+		}
+		
+		headsetEventQueue.clear();
+		headsetEventQueue.add(avgHeadsetEvent);
+	}
+	
+	private GloveData createGloveData(GloveEvent ge) {
+		GloveData gd = new GloveData(ge.getGyro()[0], ge.getGyro()[1], ge.getGyro()[2],
+									 ge.getAcceleration()[0], ge.getAcceleration()[1], ge.getAcceleration()[2],
+									 ge.getMagnetometer()[0], ge.getMagnetometer()[1], ge.getMagnetometer()[2]);
+		return gd;
+	}
+	
+	private GloveState gloveStateForDeviceEvent(DeviceEvent e) {
+		assert(e.getSource() == this.entity);
+		
+		if (e.getDevice() == DeviceType.LEFT_GLOVE) {
+			return this.left;
+		}
+		else if (e.getDevice() == DeviceType.RIGHT_GLOVE) {
+			return this.right;
+		}
+		
+		log.error("No queue for event with device type {}", e.getDevice());
+		return null;
+	}
+	
+	private GloveState otherGlove(GloveState glove) {
+		return glove == this.left ? this.right : this.left;
+	}
+	
+	/**
+	 * Used to determine whether a glove event queue has enough data to satisfy a gesture -
+	 * i.e., did the button just bounce? / is the player just spamming the button? In such cases
+	 * as where the gesture only has a couple of data points we tend to ignore it.
+	 * @param gloveEventQueue The queue to check
+	 * @return true if the queue is almost empty, false otherwise
+	 */
+	private boolean isAlmostEmptyGloveEventQueue(Queue<GloveEvent> gloveEventQueue) {
+		return (gloveEventQueue.size() < MIN_GLOVE_EVENT_QUEUE_SIZE);
+	}
+}
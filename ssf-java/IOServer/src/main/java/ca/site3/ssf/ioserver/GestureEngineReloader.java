@@ -0,0 +1,125 @@
+package ca.site3.ssf.ioserver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.site3.ssf.gesturerecognizer.GestureRecognizer;
+import ca.site3.ssf.gesturerecognizer.GestureType;
+
+/**
+ * Reloads the gesture recognition engine file while the server is running (e.g., after it has been
+ * retrained in the recorder tool), so that tuning doesn't take a restart. The file is loaded and validated
+ * on a background thread, then the main loop swaps the new engine into the {@link GestureRecognizer} between
+ * ticks (see {@link #swapIfLoaded()}). Gestures that are already being recognized finish with the old engine.
+ * 
+ * A new engine is rejected if it fails to load or if it can't recognize a gesture that the current engine can.
+ */
+class GestureEngineReloader {
+	
+	private Logger log = LoggerFactory.getLogger(getClass());
+	
+	private final GestureRecognizer gestureRecognizer;
+	private final File engineFile;
+	private final WorkSignal mainLoopSignal;
+	
+	private final AtomicBoolean isLoading = new AtomicBoolean(false);
+	private final AtomicReference<GestureRecognizer> loadedEngine = new AtomicReference<GestureRecognizer>();
+	
+	
+	/**
+	 * @param gestureRecognizer the recognizer the reloaded engines are swapped into
+	 * @param engineFile the (text or binary) engine file to reload
+	 * @param mainLoopSignal raised once an engine is ready to be swapped in
+	 */
+	GestureEngineReloader(GestureRecognizer gestureRecognizer, File engineFile, WorkSignal mainLoopSignal) {
+		this.gestureRecognizer = gestureRecognizer;
+		this.engineFile = engineFile;
+		this.mainLoopSignal = mainLoopSignal;
+	}
+	
+	/**
+	 * Starts reloading the engine file on a background thread. May be called from any thread.
+	 * 
+	 * @return false if a reload was already in progress (in which case that one carries on), true otherwise
+	 */
+	boolean requestReload() {
+		if (this.isLoading.compareAndSet(false, true) == false) {
+			log.info("Already reloading the gesture recognition engine");
+			return false;
+		}
+		
+		Thread loaderThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					load();
+				}
+				finally {
+					isLoading.set(false);
+				}
+			}
+		}, "Gesture engine loader thread");
+		loaderThread.setDaemon(true);
+		loaderThread.start();
+		return true;
+	}
+	
+	/**
+	 * @return true while an engine is being loaded
+	 */
+	boolean isLoading() {
+		return this.isLoading.get();
+	}
+	
+	/**
+	 * Swaps the most recently loaded engine (if there is one that hasn't been swapped in yet) into the
+	 * gesture recognizer. Meant to be called by the main loop in between ticks.
+	 * 
+	 * @return true if a new engine was swapped in
+	 */
+	boolean swapIfLoaded() {
+		GestureRecognizer loaded = this.loadedEngine.getAndSet(null);
+		if (loaded == null) {
+			return false;
+		}
+		
+		this.gestureRecognizer.swapEngine(loaded);
+		log.info("Swapped in the gesture recognition engine from " + this.engineFile);
+		return true;
+	}
+	
+	private void load() {
+		long startTime = System.nanoTime();
+		
+		GestureRecognizer loaded = new GestureRecognizer();
+		if (this.engineFile.exists() == false || loaded.loadRecognizerEngine(this.engineFile) == false) {
+			log.warn("Failed to reload gesture recognition engine from " + this.engineFile);
+			return;
+		}
+		
+		List<GestureType> missingGestures = new ArrayList<GestureType>();
+		boolean hasTrainedGesture = false;
+		for (GestureType gestureType : GestureType.values()) {
+			if (loaded.isGestureTrained(gestureType)) {
+				hasTrainedGesture = true;
+			}
+			else if (this.gestureRecognizer.isGestureTrained(gestureType)) {
+				missingGestures.add(gestureType);
+			}
+		}
+		if (hasTrainedGesture == false || missingGestures.isEmpty() == false) {
+			log.warn("Rejected gesture recognition engine from " + this.engineFile + ", it can't recognize " +
+					(hasTrainedGesture ? missingGestures.toString() : "any gestures"));
+			return;
+		}
+		
+		log.info("Loaded gesture recognition engine from {} in {} ms", this.engineFile, (System.nanoTime() - startTime) / 1000000);
+		this.loadedEngine.set(loaded);
+		this.mainLoopSignal.signal();
+	}
+}
@@ -0,0 +1,140 @@
+package ca.site3.ssf.ioserver;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.site3.ssf.common.LatencyHistogram;
+import ca.site3.ssf.gamemodel.IGameModel.Entity;
+import ca.site3.ssf.gesturerecognizer.GestureRecognizer;
+
+/**
+ * Recognizes the {@link EntityGestureInstance}s coming out of the {@link GloveEventCoalescer}
+ * so that the main loop doesn't have to. Each entity's gestures are recognized on that entity's
+ * own worker thread, so they come out in the order they went in, while different entities'
+ * gestures are recognized in parallel.
+ * 
+ * Recognized gestures (see {@link EntityGestureInstance#hasRecognitionResult()}) are put on
+ * the queue returned by {@link #getRecognizedGestureQueue()} for the main loop to execute. Building
+ * the resulting Action is left to the main loop since it reads the state of the game.
+ */
+class GestureRecognitionPool implements Runnable {
+	
+	private Logger log = LoggerFactory.getLogger(getClass());
+	
+	private final GestureRecognizer gestureRecognizer;
+	
+	// Input queue(s)
+	private final BlockingQueue<EntityGestureInstance> gestureQueue;
+	
+	// Output queue(s)
+	private final BlockingQueue<EntityGestureInstance> recognizedGestureQueue;
+	
+	private final Map<Entity, ExecutorService> entityWorkers = new EnumMap<Entity, ExecutorService>(Entity.class);
+	
+	private final LatencyHistogram recognitionTime = new LatencyHistogram("Gesture recognition time");
+	
+	
+	/**
+	 * @param gestureRecognizer the recognizer to recognize gestures with (it's used by several threads at once)
+	 * @param gestureQueue gestures will be consumed from this queue
+	 */
+	GestureRecognitionPool(GestureRecognizer gestureRecognizer, BlockingQueue<EntityGestureInstance> gestureQueue) {
+		this(gestureRecognizer, gestureQueue, new LinkedBlockingQueue<EntityGestureInstance>());
+	}
+	
+	/**
+	 * @param gestureRecognizer the recognizer to recognize gestures with (it's used by several threads at once)
+	 * @param gestureQueue gestures will be consumed from this queue
+	 * @param recognizedGestureQueue this queue will be populated
+	 */
+	GestureRecognitionPool(GestureRecognizer gestureRecognizer, BlockingQueue<EntityGestureInstance> gestureQueue,
+						   BlockingQueue<EntityGestureInstance> recognizedGestureQueue) {
+		this.gestureRecognizer = gestureRecognizer;
+		this.gestureQueue = gestureQueue;
+		this.recognizedGestureQueue = recognizedGestureQueue;
+		
+		for (final Entity entity : Entity.values()) {
+			this.entityWorkers.put(entity, Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Gesture recognition thread (" + entity + ")");
+					t.setDaemon(true);
+					return t;
+				}
+			}));
+		}
+	}
+	
+	/**
+	 * @return the queue recognized gestures are put on, in the order each entity performed them
+	 */
+	BlockingQueue<EntityGestureInstance> getRecognizedGestureQueue() {
+		return this.recognizedGestureQueue;
+	}
+	
+	/**
+	 * How long each gesture took to recognize (not counting the time spent waiting for its worker).
+	 */
+	LatencyHistogram getRecognitionTime() {
+		return this.recognitionTime;
+	}
+	
+	/**
+	 * Hands the gesture to its entity's worker to be recognized. May be called from any thread.
+	 */
+	void submit(final EntityGestureInstance gesture) {
+		ExecutorService worker = this.entityWorkers.get(gesture.getEntity());
+		worker.execute(new Runnable() {
+			public void run() {
+				recognize(gesture);
+			}
+		});
+	}
+	
+	void shutdown() {
+		for (ExecutorService worker : this.entityWorkers.values()) {
+			worker.shutdownNow();
+		}
+	}
+	
+	public void run() {
+		while (true) {
+			try {
+				this.submit(this.gestureQueue.take());
+			}
+			catch (InterruptedException ex) {
+				log.warn("Interrupted waiting for EntityGestureInstance", ex);
+				return;
+			}
+		}
+	}
+	
+	private void recognize(EntityGestureInstance gesture) {
+		// Gestures that were already recognized while they were being performed just pass through
+		if (gesture.hasRecognitionResult() == false) {
+			long startTime = System.nanoTime();
+			try {
+				if (gesture.getEntity().getIsPlayer()) {
+					gesture.setRecognizedGesture(this.gestureRecognizer.recognizePlayerGestureAsGameWould(gesture));
+				}
+				else {
+					gesture.setRecognizedGesture(this.gestureRecognizer.recognizeRingmasterGestureAsGameWould(gesture));
+				}
+			}
+			catch (RuntimeException ex) {
+				log.error("Exception while recognizing gesture", ex);
+				gesture.setRecognizedGesture(null);
+			}
+			this.recognitionTime.record(System.nanoTime() - startTime);
+		}
+		
+		this.recognizedGestureQueue.add(gesture);
+	}
+}
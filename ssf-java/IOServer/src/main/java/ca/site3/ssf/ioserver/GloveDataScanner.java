@@ -0,0 +1,157 @@
+package ca.site3.ssf.ioserver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hand-written scanner for a single line of glove data, i.e.
+ * <code>aX:-265.64,aY:239.84,aZ:4228.79,YAW:21.9,PCH:-2.46,RLL:0.69|</code>
+ * or one of the <code>start|</code>/<code>end|</code> button markers.
+ * 
+ * Numbers are parsed straight out of the bytes into a caller-supplied buffer,
+ * so scanning a line allocates nothing. Only plain decimal numbers (optional sign,
+ * digits, optional fraction) whose value can be computed exactly are handled; anything
+ * else (exponents, NaN, very long mantissas, stray whitespace) is reported as
+ * {@link #MALFORMED} so the caller can fall back on the regex/{@link Double#parseDouble(String)}
+ * path. Within what it does handle the result is identical to {@link Double#parseDouble(String)}.
+ */
+final class GloveDataScanner {
+
+	/** Line was a sensor sample; the six values have been written to the output buffer. */
+	static final int DATA        = 0;
+	/** Line was the <code>start|</code> (button down) marker. */
+	static final int BUTTON_DOWN = 1;
+	/** Line was the <code>end|</code> (button up) marker. */
+	static final int BUTTON_UP   = 2;
+	/** Line could not be scanned; the output buffer may have been partially written. */
+	static final int MALFORMED   = 3;
+	
+	/** Number of values written for a {@link #DATA} line. */
+	static final int NUM_VALUES = 6;
+	
+	/** Index of aX in the output buffer, followed by aY and aZ. */
+	static final int ACCEL_OFFSET   = 0;
+	/** Index of YAW in the output buffer, followed by PCH and RLL. */
+	static final int HEADING_OFFSET = 3;
+	
+	private static final byte[] START_MARKER = asciiBytes("start|");
+	private static final byte[] END_MARKER   = asciiBytes("end|");
+	
+	private static final byte[][] KEYS = new byte[][] {
+		asciiBytes("aX:"), asciiBytes(",aY:"), asciiBytes(",aZ:"),
+		asciiBytes(",YAW:"), asciiBytes(",PCH:"), asciiBytes(",RLL:")
+	};
+	
+	/** Largest mantissa that converts to a double exactly (2^53). */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	
+	/** Powers of ten that are exactly representable as doubles. */
+	private static final double[] POWERS_OF_TEN = new double[] {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	private GloveDataScanner() {
+	}
+	
+	/**
+	 * Scans the (already trimmed) line occupying [start, end) of the given buffer.
+	 * The buffer's position and limit are left untouched.
+	 * 
+	 * @param values receives aX, aY, aZ, YAW, PCH, RLL (in that order) starting at offset
+	 * @return one of {@link #DATA}, {@link #BUTTON_DOWN}, {@link #BUTTON_UP} or {@link #MALFORMED}
+	 */
+	static int scan(ByteBuffer data, int start, int end, double[] values, int offset) {
+		if (matches(data, start, end, START_MARKER)) {
+			return BUTTON_DOWN;
+		}
+		if (matches(data, start, end, END_MARKER)) {
+			return BUTTON_UP;
+		}
+		
+		int pos = start;
+		for (int i = 0; i < KEYS.length; i++) {
+			byte[] key = KEYS[i];
+			if (end - pos < key.length) {
+				return MALFORMED;
+			}
+			for (int k = 0; k < key.length; k++) {
+				if (data.get(pos + k) != key[k]) {
+					return MALFORMED;
+				}
+			}
+			pos += key.length;
+			
+			// the number
+			boolean negative = false;
+			if (pos < end) {
+				byte b = data.get(pos);
+				if (b == '-') {
+					negative = true;
+					pos++;
+				}
+				else if (b == '+') {
+					pos++;
+				}
+			}
+			
+			long mantissa = 0;
+			int numDigits = 0;
+			int fractionDigits = -1;
+			while (pos < end) {
+				byte b = data.get(pos);
+				if (b >= '0' && b <= '9') {
+					if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+						return MALFORMED;
+					}
+					mantissa = mantissa * 10 + (b - '0');
+					numDigits++;
+					if (fractionDigits >= 0) {
+						fractionDigits++;
+					}
+				}
+				else if (b == '.' && fractionDigits < 0) {
+					fractionDigits = 0;
+				}
+				else {
+					break;
+				}
+				pos++;
+			}
+			if (numDigits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+				return MALFORMED;
+			}
+			
+			// both operands are exact, so the one division is correctly rounded (same as parseDouble)
+			double value = (double)mantissa;
+			if (fractionDigits > 0) {
+				value /= POWERS_OF_TEN[fractionDigits];
+			}
+			values[offset + i] = negative ? -value : value;
+		}
+		
+		if (pos != end - 1 || data.get(pos) != '|') {
+			return MALFORMED;
+		}
+		return DATA;
+	}
+	
+	private static boolean matches(ByteBuffer data, int start, int end, byte[] marker) {
+		if (end - start < marker.length) {
+			return false;
+		}
+		for (int i = 0; i < marker.length; i++) {
+			if (data.get(start + i) != marker[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	static byte[] asciiBytes(String str) {
+		byte[] bytes = new byte[str.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte)str.charAt(i);
+		}
+		return bytes;
+	}
+}
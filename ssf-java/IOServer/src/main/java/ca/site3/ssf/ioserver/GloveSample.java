@@ -0,0 +1,103 @@
+package ca.site3.ssf.ioserver;
+
+import ca.site3.ssf.gamemodel.IGameModel.Entity;
+import ca.site3.ssf.ioserver.DeviceConstants.DeviceType;
+import ca.site3.ssf.ioserver.GloveEvent.EventType;
+
+/**
+ * Mutable, reusable holder for a single glove sample. These are the slots of a
+ * {@link GloveSampleRing}: the device listener writes into them in place and the
+ * {@link GloveEventCoalescer} copies them out, so nothing gets allocated per sample
+ * on the way from the network to the coalescer.
+ * 
+ * The sensor values live in a single array laid out as gyro (x,y,z), acceleration (x,y,z)
+ * then magnetometer/heading (x,y,z); see the *_OFFSET constants.
+ */
+public final class GloveSample {
+
+	public static final int GYRO_OFFSET         = 0;
+	public static final int ACCEL_OFFSET        = 3;
+	public static final int MAGNETOMETER_OFFSET = 6;
+	public static final int NUM_VALUES          = 9;
+	
+	private Entity source;
+	private DeviceType device;
+	private long timestamp;
+	private EventType eventType;
+	private final double[] values = new double[NUM_VALUES];
+	
+	
+	public GloveSample() {
+	}
+	
+	/**
+	 * Sets the header fields of this sample. The sensor values are written directly
+	 * into {@link #getValues()}.
+	 */
+	public void set(Entity source, DeviceType device, long timestamp, EventType eventType) {
+		this.source = source;
+		this.device = device;
+		this.timestamp = timestamp;
+		this.eventType = eventType;
+	}
+	
+	/**
+	 * Sets this sample from the given event.
+	 */
+	public void set(GloveEvent e) {
+		this.set(e.getSource(), e.getDevice(), e.getTimestamp(), e.getEventType());
+		System.arraycopy(e.getGyro(), 0, this.values, GYRO_OFFSET, 3);
+		System.arraycopy(e.getAcceleration(), 0, this.values, ACCEL_OFFSET, 3);
+		System.arraycopy(e.getMagnetometer(), 0, this.values, MAGNETOMETER_OFFSET, 3);
+	}
+	
+	/**
+	 * Zeroes all of the sensor values (e.g. for button up/down samples).
+	 */
+	public void clearValues() {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			this.values[i] = 0.0;
+		}
+	}
+	
+	public void copyFrom(GloveSample other) {
+		this.set(other.source, other.device, other.timestamp, other.eventType);
+		System.arraycopy(other.values, 0, this.values, 0, NUM_VALUES);
+	}
+	
+	/**
+	 * @return a new (immutable) {@link GloveEvent} with the contents of this sample
+	 */
+	public GloveEvent toGloveEvent() {
+		double[] gyro  = new double[3];
+		double[] accel = new double[3];
+		double[] mag   = new double[3];
+		System.arraycopy(this.values, GYRO_OFFSET, gyro, 0, 3);
+		System.arraycopy(this.values, ACCEL_OFFSET, accel, 0, 3);
+		System.arraycopy(this.values, MAGNETOMETER_OFFSET, mag, 0, 3);
+		return new GloveEvent(this.source, this.device, this.timestamp, this.eventType, gyro, accel, mag);
+	}
+	
+	public Entity getSource() {
+		return this.source;
+	}
+	
+	public DeviceType getDevice() {
+		return this.device;
+	}
+	
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+	
+	public EventType getEventType() {
+		return this.eventType;
+	}
+	
+	/**
+	 * @return the backing array of sensor values (not a copy)
+	 */
+	public double[] getValues() {
+		return this.values;
+	}
+}
@@ -0,0 +1,60 @@
+package ca.site3.ssf.ioserver;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import ca.site3.ssf.gamemodel.IGameModel.Entity;
+
+/**
+ * One {@link GloveSampleRing} per {@link Entity}, so that the glove data for each
+ * player (and the ringmaster) can be coalesced independently of everybody else's.
+ * 
+ * The device listener is the single producer for every lane; each lane has its own
+ * single consumer (see {@link GloveEventCoalescer}).
+ */
+public final class GloveSampleLanes {
+
+	private final Map<Entity, GloveSampleRing> lanes = new EnumMap<Entity, GloveSampleRing>(Entity.class);
+	
+	
+	public GloveSampleLanes() {
+		this(GloveSampleRing.DEFAULT_CAPACITY, GloveSampleRing.OverflowPolicy.DROP_OLDEST);
+	}
+	
+	/**
+	 * @param capacity number of slots in each lane
+	 * @param overflowPolicy what to do when a lane is full
+	 */
+	public GloveSampleLanes(int capacity, GloveSampleRing.OverflowPolicy overflowPolicy) {
+		for (Entity entity : Entity.values()) {
+			this.lanes.put(entity, new GloveSampleRing(capacity, overflowPolicy));
+		}
+	}
+	
+	/**
+	 * @return the lane for the given entity's gloves
+	 */
+	public GloveSampleRing getLane(Entity entity) {
+		return this.lanes.get(entity);
+	}
+	
+	/**
+	 * @return the entities that have a lane
+	 */
+	public Set<Entity> getEntities() {
+		return Collections.unmodifiableSet(this.lanes.keySet());
+	}
+	
+	/**
+	 * @return the total number of samples lost to overflow across all lanes
+	 */
+	public long getDroppedCount() {
+		long dropped = 0;
+		for (GloveSampleRing lane : this.lanes.values()) {
+			dropped += lane.getDroppedCount();
+		}
+		return dropped;
+	}
+}
@@ -0,0 +1,234 @@
+package ca.site3.ssf.ioserver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated, lock-free ring of {@link GloveSample} slots for handing glove data
+ * from exactly one producer thread (the device listener) to exactly one consumer thread
+ * (the {@link GloveEventCoalescer}).
+ * 
+ * The producer {@link #claim()}s the next free slot, fills it in place, then {@link #publish()}es it.
+ * The consumer copies published samples out with {@link #poll(GloveSample)}. When the ring is full
+ * the configured {@link OverflowPolicy} decides which sample is lost, and {@link #getDroppedCount()}
+ * keeps track of how many have been.
+ */
+public final class GloveSampleRing {
+
+	/**
+	 * What to do when the producer catches up with the consumer.
+	 */
+	public enum OverflowPolicy {
+		/** Overwrite the oldest unconsumed sample (the consumer always sees the freshest data). */
+		DROP_OLDEST,
+		/** Throw away the incoming sample (the consumer sees an uninterrupted prefix of the data). */
+		DROP_NEWEST
+	};
+	
+	public static final int DEFAULT_CAPACITY = 1024;
+	
+	private final GloveSample[] slots;
+	private final int mask;
+	private final OverflowPolicy overflowPolicy;
+	
+	// Index of the next slot to be read. Only advanced by the consumer, except when the producer drops the oldest sample.
+	private final AtomicLong head = new AtomicLong(0);
+	// Index of the next slot to be written. Only ever written by the producer.
+	private final AtomicLong tail = new AtomicLong(0);
+	
+	private final AtomicLong droppedCount = new AtomicLong(0);
+	
+	// Consumer thread parked in poll(GloveSample, long, TimeUnit), if any
+	private volatile Thread waitingConsumer = null;
+	// Set by wakeConsumer, makes the consumer's current (or next) timed poll return early
+	private volatile boolean wakeRequested = false;
+	
+	
+	public GloveSampleRing() {
+		this(DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+	}
+	
+	/**
+	 * @param capacity number of slots; rounded up to the next power of two
+	 * @param overflowPolicy what to do when the ring is full
+	 */
+	public GloveSampleRing(int capacity, OverflowPolicy overflowPolicy) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		if (overflowPolicy == null) {
+			throw new NullPointerException("overflowPolicy");
+		}
+		
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		
+		this.slots = new GloveSample[size];
+		for (int i = 0; i < size; i++) {
+			this.slots[i] = new GloveSample();
+		}
+		this.mask = size - 1;
+		this.overflowPolicy = overflowPolicy;
+	}
+	
+	/**
+	 * Producer only. Returns the slot to fill in for the next sample; it becomes visible to the
+	 * consumer once {@link #publish()} is called. Claiming again without publishing hands back the
+	 * same slot, but when the ring is full claiming drops a sample to make room, so only claim once
+	 * there's a sample to publish.
+	 * 
+	 * @return the slot to write into, or null if the ring is full and the policy is
+	 * {@link OverflowPolicy#DROP_NEWEST} (in which case the sample counts as dropped)
+	 */
+	public GloveSample claim() {
+		long t = this.tail.get();
+		while (true) {
+			long h = this.head.get();
+			if (t - h < this.slots.length) {
+				return this.slots[(int)(t & this.mask)];
+			}
+			
+			if (this.overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+				this.droppedCount.incrementAndGet();
+				return null;
+			}
+			
+			// DROP_OLDEST: take the oldest sample away from the consumer. If the consumer
+			// got to it first then there's room now and we go around again.
+			if (this.head.compareAndSet(h, h + 1)) {
+				this.droppedCount.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Producer only. Makes the most recently claimed slot visible to the consumer.
+	 */
+	public void publish() {
+		// This has to be a full volatile write (not a lazySet) so that it can't be reordered after the read of
+		// waitingConsumer below, otherwise a consumer that's about to park could miss both the sample and the wakeup
+		this.tail.set(this.tail.get() + 1);
+		
+		Thread waiting = this.waitingConsumer;
+		if (waiting != null) {
+			LockSupport.unpark(waiting);
+		}
+	}
+	
+	/**
+	 * Producer only. Claims a slot, copies the given event into it and publishes it.
+	 * @return false if the sample was dropped
+	 */
+	public boolean offer(GloveEvent e) {
+		GloveSample slot = this.claim();
+		if (slot == null) {
+			return false;
+		}
+		slot.set(e);
+		this.publish();
+		return true;
+	}
+	
+	/**
+	 * Consumer only. Copies the oldest published sample into the given holder and releases its slot.
+	 * @return false if the ring was empty
+	 */
+	public boolean poll(GloveSample into) {
+		while (true) {
+			long h = this.head.get();
+			if (h >= this.tail.get()) {
+				return false;
+			}
+			
+			into.copyFrom(this.slots[(int)(h & this.mask)]);
+			
+			// If this fails the producer overwrote the slot while we were copying it (DROP_OLDEST),
+			// so the copy can't be trusted: go on to the next one
+			if (this.head.compareAndSet(h, h + 1)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Consumer only. Like {@link #poll(GloveSample)} but waits up to the given amount of time
+	 * for a sample to be published.
+	 * 
+	 * @return false if the timeout elapsed with the ring still empty, or {@link #wakeConsumer()} was called
+	 * @throws InterruptedException if the consumer thread is interrupted while waiting
+	 */
+	public boolean poll(GloveSample into, long timeout, TimeUnit unit) throws InterruptedException {
+		if (this.poll(into)) {
+			return true;
+		}
+		
+		long remaining = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + remaining;
+		this.waitingConsumer = Thread.currentThread();
+		try {
+			while (true) {
+				// re-check after advertising ourselves: both this and publish write one volatile and then read the
+				// other, so either this sees the new tail or publish sees us waiting and unparks us
+				if (this.poll(into)) {
+					return true;
+				}
+				if (this.wakeRequested) {
+					this.wakeRequested = false;
+					return false;
+				}
+				if (remaining <= 0) {
+					return false;
+				}
+				LockSupport.parkNanos(this, remaining);
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				remaining = deadline - System.nanoTime();
+			}
+		}
+		finally {
+			this.waitingConsumer = null;
+		}
+	}
+	
+	/**
+	 * May be called from any thread. Makes the consumer's timed {@link #poll(GloveSample, long, TimeUnit)} return
+	 * (false, if there's no sample) right away, or the next one if it isn't waiting, so that it can go and check
+	 * on something other than this ring.
+	 */
+	public void wakeConsumer() {
+		// Same ordering as publish: write the flag, then look for a waiting consumer
+		this.wakeRequested = true;
+		
+		Thread waiting = this.waitingConsumer;
+		if (waiting != null) {
+			LockSupport.unpark(waiting);
+		}
+	}
+	
+	/**
+	 * @return the number of samples currently waiting to be consumed (approximate if read concurrently)
+	 */
+	public int size() {
+		long size = this.tail.get() - this.head.get();
+		return (int)Math.max(0, Math.min(size, this.slots.length));
+	}
+	
+	public int getCapacity() {
+		return this.slots.length;
+	}
+	
+	public OverflowPolicy getOverflowPolicy() {
+		return this.overflowPolicy;
+	}
+	
+	/**
+	 * @return the total number of samples lost to overflow since the ring was created
+	 */
+	public long getDroppedCount() {
+		return this.droppedCount.get();
+	}
+}
@@ -1,6 +1,7 @@
 package ca.site3.ssf.ioserver;
 
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -18,4 +19,28 @@ public interface IDeviceDataParser {
 	 * @return a DeviceEvent representing the data from the peripheral
 	 */
 	List<? extends DeviceEvent> parseDeviceData(byte[] data, int dataLength, InetAddress src) throws Exception;
+
+	/**
+	 * Translates raw data from a device into a DeviceEvent without copying it out of
+	 * the given buffer. The bytes between the buffer's position and limit are parsed
+	 * and the position is advanced to the limit.
+	 * 
+	 * @param data raw data from a device (typically a reused, direct buffer owned by the listener)
+	 * @param src IP address the data came from
+	 * @return a DeviceEvent representing the data from the peripheral
+	 */
+	List<? extends DeviceEvent> parseDeviceData(ByteBuffer data, InetAddress src) throws Exception;
+	
+	/**
+	 * Translates raw data from a glove straight into the slots of the lane for the glove's
+	 * entity, without creating any DeviceEvents. The bytes between the buffer's position and
+	 * limit are parsed and the position is advanced to the limit.
+	 * 
+	 * @param data raw data from a device (typically a reused, direct buffer owned by the listener)
+	 * @param src IP address the data came from
+	 * @param lanes the rings to publish glove samples to (the caller is their only producer)
+	 * @return the number of samples that were parsed (including any the ring dropped), or -1 if
+	 * the data could not be parsed as glove data
+	 */
+	int parseDeviceData(ByteBuffer data, InetAddress src, GloveSampleLanes lanes) throws Exception;
 }
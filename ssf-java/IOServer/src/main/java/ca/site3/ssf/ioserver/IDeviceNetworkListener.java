@@ -0,0 +1,13 @@
+package ca.site3.ssf.ioserver;
+
+/**
+ * Something that listens on the network for data from the game peripherals
+ * (gloves, headsets) and hands it off to an {@link IDeviceDataParser}.
+ */
+public interface IDeviceNetworkListener extends Runnable {
+
+	/**
+	 * Stops listening and releases the underlying socket/channel. Safe to call from any thread.
+	 */
+	void stop();
+}
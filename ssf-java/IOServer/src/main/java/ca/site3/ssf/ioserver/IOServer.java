@@ -6,8 +6,7 @@ import gnu.io.PortInUseException;
 import gnu.io.SerialPort;
 import gnu.io.UnsupportedCommOperationException;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -17,6 +16,7 @@ import java.util.concurrent.BlockingQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ca.site3.ssf.common.LatencyHistogram;
 import ca.site3.ssf.gamemodel.AbstractGameModelCommand;
 import ca.site3.ssf.gamemodel.Action;
 import ca.site3.ssf.gamemodel.GameConfig;
@@ -29,6 +29,7 @@ import ca.site3.ssf.gesturerecognizer.GestureRecognizer;
 import ca.site3.ssf.guiprotocol.StreetFireServer;
 import ca.site3.ssf.guiprotocol.SystemCommand;
 import ca.site3.ssf.guiprotocol.SystemCommand.SystemCommandType;
+import ca.site3.ssf.ioserver.DeviceConstants.Device;
 
 import com.beust.jcommander.JCommander;
 
@@ -56,20 +57,28 @@ public class IOServer {
 	/** Time the event loop started (millis since epoch) */
 	private long startTime;
 	
-	/** Amount of time a tick should take (used as a limiting factor) */
-	private int frameLengthInMillis;
+	/** Decides when the game gets ticked and by how much */
+	private TickScheduler tickScheduler;
 	
 	/** Flag to indicate whether the server should be stopped */
 	private volatile boolean isStopped = false;
 	
-	private CommunicationsManager commManager = new CommunicationsManager();
+	private CommunicationsManager commManager;
 	
 	private DeviceStatus deviceStatus = new DeviceStatus();
 	
-	private DeviceNetworkListener deviceListener;
+	private IDeviceNetworkListener deviceListener;
 	
 	private GloveEventCoalescer eventAggregator;
 	
+	private GestureRecognitionPool gestureRecognitionPool;
+	
+	/** Reloads the gesture recognition engine on request, without restarting the server */
+	private GestureEngineReloader gestureEngineReloader;
+	
+	/** Time from a gesture being built to it being executed on the game */
+	private final LatencyHistogram gestureExecutionLatency = new LatencyHistogram("Gesture execution latency");
+	
 	private HeartbeatListener heartbeatListener;
 	
 	private SerialCommunicator serialComm;
@@ -82,6 +91,15 @@ public class IOServer {
 											   args.roundTimeInSecs, args.numRoundsPerMatch, args.chipDamagePercentage,
 											   args.actionPointRegenRate));
 		game = new GameModel();
+		
+		GloveSampleRing.OverflowPolicy overflowPolicy = GloveSampleRing.OverflowPolicy.DROP_OLDEST;
+		try {
+			overflowPolicy = GloveSampleRing.OverflowPolicy.valueOf(args.gloveRingOverflowPolicy.toUpperCase());
+		}
+		catch (IllegalArgumentException ex) {
+			log.warn("Unknown glove sample overflow policy '{}', using {}", args.gloveRingOverflowPolicy, overflowPolicy);
+		}
+		commManager = new CommunicationsManager(args.gloveRingCapacity, overflowPolicy);
 	}
 	
 	/**
@@ -95,7 +113,7 @@ public class IOServer {
 				 "\n~~~~~~~~~~~~~~~~~~~");
 		
 		startTime = System.currentTimeMillis();
-		frameLengthInMillis = (int)Math.round(1000.0 / args.tickFrequency);
+		tickScheduler = new TickScheduler(args.tickFrequency, args.spinWait);
 		
 		heartbeatListener = new HeartbeatListener(args.gloveInterfaceIP, args.heartbeatPort, deviceStatus);
 		Thread heartbeatListenerThread = new Thread(heartbeatListener, "Glove heartbeat listener thread");
@@ -136,30 +154,56 @@ public class IOServer {
 		gameEventRouter = new GameEventRouter(guiServer, serialComm);
 		game.addGameModelListener(gameEventRouter);
 		
-		eventAggregator = new GloveEventCoalescer(startTime, commManager.getCommInQueue(), commManager.getGestureQueue());
+		eventAggregator = new GloveEventCoalescer(startTime, commManager.getGloveSampleLanes(), commManager.getCommInQueue(), commManager.getGestureQueue());
+		configureButtonUpTimeouts();
+		if (args.useStreamingRecognition) {
+			eventAggregator.setStreamingRecognition(gestureRecognizer, args.earlyCommitGestures);
+		}
 
 		Thread eventAggregatorThread = new Thread(eventAggregator, "Event aggregator thread");
 		eventAggregatorThread.start();
 		
-		deviceListener = new DeviceNetworkListener(args.gloveInterfaceIP, args.devicePort, new DeviceDataParser(deviceStatus), commManager.getCommInQueue());
+		if (args.serialScoring) {
+			gestureRecognizer.setParallelScoring(false);
+		}
+		if (args.prunedScoring) {
+			gestureRecognizer.setPrunedScoring(true);
+		}
+		gestureRecognitionPool = new GestureRecognitionPool(gestureRecognizer, commManager.getGestureQueue(), commManager.getRecognizedGestureQueue());
+		Thread gestureRecognitionThread = new Thread(gestureRecognitionPool, "Gesture recognition dispatch thread");
+		gestureRecognitionThread.setDaemon(true);
+		gestureRecognitionThread.start();
+		
+		if (args.useNioDeviceListener) {
+			deviceListener = new NioDeviceNetworkListener(args.gloveInterfaceIP, args.devicePort, new DeviceDataParser(deviceStatus), commManager.getGloveSampleLanes());
+		}
+		else {
+			deviceListener = new DeviceNetworkListener(args.gloveInterfaceIP, args.devicePort, new DeviceDataParser(deviceStatus), commManager.getGloveSampleLanes());
+		}
 		Thread deviceListenerThread = new Thread(deviceListener, "DeviceListener Thread");
 		deviceListenerThread.start();
 		
 		
-		// Attempt to setup the gesture recognizer
-		try {
-			boolean success = this.gestureRecognizer.loadRecognizerEngine(new FileReader(args.gestureEngineFilepath));
-			if (!success) {
-				log.warn("Failed to read gesture recognition engine from " + args.gestureEngineFilepath);
-			}
-		}
-		catch (FileNotFoundException e) {
+		// Attempt to setup the gesture recognizer (from either a text or a binary engine file)
+		File engineFile = new File(args.gestureEngineFilepath);
+		if (!engineFile.exists()) {
 			log.warn("Could not load file gesture recognition engine from " + args.gestureEngineFilepath);
 		}
+		else if (!this.gestureRecognizer.loadRecognizerEngine(engineFile)) {
+			log.warn("Failed to read gesture recognition engine from " + args.gestureEngineFilepath);
+		}
+		gestureEngineReloader = new GestureEngineReloader(gestureRecognizer, engineFile, commManager.getMainLoopSignal());
 		
 		isStopped = false;
 		runLoop();
 		log.info("I/O server terminating");
+		log.info("Glove samples dropped: {}", commManager.getGloveSampleLanes().getDroppedCount());
+		log.info(eventAggregator.getSyntheticButtonUpLateness().toString());
+		log.info(gestureRecognitionPool.getRecognitionTime().toString());
+		log.info(gestureExecutionLatency.toString());
+		log.info(tickScheduler.getJitter().toString());
+		log.info(tickScheduler.getOverrun().toString());
+		gestureRecognitionPool.shutdown();
 		commManager.shutdown();
 		serialComm.stop();
 		
@@ -187,27 +231,61 @@ public class IOServer {
 		return commManager.getCommInQueue();
 	}
 	
+	public GloveSampleLanes getGloveSampleLanes() {
+		return commManager.getGloveSampleLanes();
+	}
+	
+	public GloveEventCoalescer getGloveEventCoalescer() {
+		return this.eventAggregator;
+	}
+	
 	public SerialCommunicator getSerialCommunicator() {
 		return this.serialComm;
 	}
 	
 	/**
-	 * Maintains timing information and ticks the game engine
+	 * How far from their deadlines the main loop's ticks woke up.
+	 */
+	public LatencyHistogram getTickJitter() {
+		return this.tickScheduler.getJitter();
+	}
+	
+	/**
+	 * How late the main loop's ticks were when the previous tick's work ran past their deadline.
+	 */
+	public LatencyHistogram getTickOverrun() {
+		return this.tickScheduler.getOverrun();
+	}
+	
+	/**
+	 * Time from each gesture being built (just after its button was released) to it being executed on the game.
+	 */
+	public LatencyHistogram getGestureExecutionLatency() {
+		return this.gestureExecutionLatency;
+	}
+	
+	/**
+	 * Maintains timing information and ticks the game engine. The game is ticked at a fixed rate (see
+	 * {@link TickScheduler}), but whenever a command or recognized gesture arrives in between ticks the
+	 * loop wakes up right away and executes it with a sub-tick (for however much time has elapsed so far).
 	 */
 	private void runLoop() {
 		
 		startTime = System.currentTimeMillis();
-		
-		long deltaFrameTime = 0; // current frame's delta time (millis)
-		long currentTime = System.currentTimeMillis(); // Temporary variable for the current absolute time
-		long lastFrameTime = currentTime; // Holds the absolute time of the last frame
-		//long millisSinceStart = 0; // Milliseconds since the start of the simulation
+		tickScheduler.start();
 		
 		while (isStopped == false) {
-			currentTime      = System.currentTimeMillis();
-			deltaFrameTime   = currentTime - lastFrameTime;
-			lastFrameTime    = currentTime;
-			//millisSinceStart = currentTime - startTime;
+			
+			// Wait for the next tick, or until there are new commands/gestures to act on
+			try {
+				tickScheduler.awaitTick(commManager.getMainLoopSignal());
+			} catch (InterruptedException ex) {
+				// not much to be done about this
+				log.warn("IOServer interrupted during runLoop",ex);
+			}
+			
+			// A reloaded gesture engine is only ever swapped in here, in between ticks
+			gestureEngineReloader.swapIfLoaded();
 			
 			// Go through our various queues of data that has been aggregated and concentrated from
 			// the various clients of the IOServer, execute that data on the system and GameModel
@@ -217,24 +295,30 @@ public class IOServer {
 				if (cmd.getType() == SystemCommandType.QUERY_SYSTEM_INFO) {
 					serialComm.querySystemStatus();
 				}
+				else if (cmd.getType() == SystemCommandType.RELOAD_GESTURE_ENGINE) {
+					gestureEngineReloader.requestReload();
+				}
 			}
 			while (!commManager.getGameCommandQueue().isEmpty() ) {
 				game.executeCommand(commManager.getGameCommandQueue().remove());
 			}
 			
 			
-			// Recognize gestures and execute any recognized gestures on the GameModel
-			while (!commManager.getGestureQueue().isEmpty()) {
-				EntityGestureInstance gesture = commManager.getGestureQueue().remove();
+			// Execute any gestures the recognition pool has recognized on the GameModel
+			while (!commManager.getRecognizedGestureQueue().isEmpty()) {
+				EntityGestureInstance gesture = commManager.getRecognizedGestureQueue().remove();
 				
+				// The gesture has already been recognized, we just need to build the action (which depends
+				// on the current state of the game, so it has to happen here)
 				Action recognizedAction = null;
 				if (gesture.getEntity().getIsPlayer()) {
 					// TODO: Forwarding of headset data with the Action to the GameModel as well?
-					recognizedAction = gestureRecognizer.recognizePlayerGesture(getGameModel().getActionFactory(),
-							gesture.getEntity().getPlayerNum(), gesture);
+					recognizedAction = gestureRecognizer.buildPlayerAction(getGameModel().getActionFactory(),
+							gesture.getEntity().getPlayerNum(), gesture.getRecognizedGesture());
 				}
 				else {
-					recognizedAction = gestureRecognizer.recognizeRingmasterGesture(getGameModel().getActionFactory(), gesture);
+					recognizedAction = gestureRecognizer.buildRingmasterAction(getGameModel().getActionFactory(),
+							gesture.getRecognizedGesture());
 				}
 				
 				if (recognizedAction != null) {
@@ -245,6 +329,7 @@ public class IOServer {
 					// a particular player, this will raise an event that allows feedback to be had
 					getGameModel().raiseUnrecognizedGestureEvent(gesture.getEntity());
 				}
+				gestureExecutionLatency.record(System.nanoTime() - gesture.getCreationTime());
 			}
 			
 			// Forward the general stream of headset events to the game model - this provides information for affecting
@@ -258,19 +343,12 @@ public class IOServer {
 				getGameModel().updatePlayerHeadsetData(2, new HeadsetData(p2HeadsetEvent.getAttention(), p2HeadsetEvent.getMeditation())); 
 			}
 			
-			try {
-				game.tick(deltaFrameTime / 1000.0);
-			} catch (Exception ex) {
-				log.error("Exception while ticking game", ex);
-			}
-			
-			
-			if (deltaFrameTime < frameLengthInMillis) {
+			double deltaFrameTime; // seconds
+			while ((deltaFrameTime = tickScheduler.nextStep()) > 0) {
 				try {
-					Thread.sleep(frameLengthInMillis - deltaFrameTime);
-				} catch (InterruptedException ex) {
-					// not much to be done about this
-					log.warn("IOServer interrupted during runLoop",ex);
+					game.tick(deltaFrameTime);
+				} catch (Exception ex) {
+					log.error("Exception while ticking game", ex);
 				}
 			}
 		}
@@ -379,6 +457,31 @@ public class IOServer {
 		}
 	}
 	
+	/**
+	 * Applies the button up timeout from the command line to all gloves, then any per-glove overrides
+	 * (given as a comma-separated list of DEVICE=milliseconds).
+	 */
+	private void configureButtonUpTimeouts() {
+		eventAggregator.setButtonUpTimeout(args.buttonUpTimeoutMs);
+		
+		for (String override : args.gloveButtonUpTimeouts.split(",")) {
+			if (override.trim().length() == 0) {
+				continue;
+			}
+			String[] parts = override.split("=");
+			try {
+				if (parts.length != 2) {
+					throw new IllegalArgumentException("Expected DEVICE=milliseconds");
+				}
+				Device glove = Device.valueOf(parts[0].trim().toUpperCase());
+				eventAggregator.setButtonUpTimeout(glove, Long.parseLong(parts[1].trim()));
+			}
+			catch (IllegalArgumentException ex) {
+				log.warn("Ignoring button up timeout '" + override + "': " + ex.getMessage());
+			}
+		}
+	}
+	
 	private void closeSerialDevice() {
 		if (serialPort != null) {
 			log.info("Closing serial port");
@@ -1,6 +1,7 @@
 package ca.site3.ssf.ioserver;
 
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -67,4 +68,26 @@ public class LegacyGloveDataParser implements IDeviceDataParser {
 		GloveEvent event = new GloveEvent(d.entity, d.type, System.currentTimeMillis(), GloveEvent.EventType.DATA_EVENT, parsedData[2], parsedData[1], parsedData[0]);
 		return Arrays.asList(event);
 	}
+	
+	
+	/**
+	 * The legacy format isn't worth a byte-level parser, so this just copies the data out
+	 * and defers to {@link #parseDeviceData(byte[], int, InetAddress)}.
+	 */
+	public List<? extends DeviceEvent> parseDeviceData(ByteBuffer data, InetAddress src) throws Exception {
+		byte[] bytes = new byte[data.remaining()];
+		data.get(bytes);
+		return parseDeviceData(bytes, bytes.length, src);
+	}
+	
+	public int parseDeviceData(ByteBuffer data, InetAddress src, GloveSampleLanes lanes) throws Exception {
+		List<? extends DeviceEvent> events = parseDeviceData(data, src);
+		if (events == null) {
+			return -1;
+		}
+		for (DeviceEvent e : events) {
+			lanes.getLane(e.getSource()).offer((GloveEvent)e);
+		}
+		return events.size();
+	}
 }
@@ -0,0 +1,186 @@
+package ca.site3.ssf.ioserver;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.Queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Alternative to {@link DeviceNetworkListener} built on a {@link DatagramChannel}.
+ * Each datagram is received into a single reused direct {@link ByteBuffer} which is
+ * handed straight to the {@link IDeviceDataParser}, so no intermediate byte arrays or
+ * Strings get created per packet on the way in. When given a {@link GloveSampleLanes}
+ * the samples are parsed directly into its slots.
+ */
+public class NioDeviceNetworkListener implements IDeviceNetworkListener {
+
+	private Logger log = LoggerFactory.getLogger(getClass());
+	
+	private static final int DATAGRAM_BUFFER_SIZE = 8192;
+	
+	private IDeviceDataParser dataParser;
+	
+	private final String ipAddress;
+	private final int port;
+	private volatile DatagramChannel channel;
+	
+	private Queue<DeviceEvent> eventQueue;
+	private GloveSampleLanes gloveSampleLanes;
+	
+	private volatile boolean stop = false;
+	
+	
+	/**
+	 * @param port the port to listen on
+	 * @param dataParser an object that can translate raw data into higher-level {@link DeviceEvent}s
+	 * @param q queue the {@link DeviceEvent}s will be placed on 
+	 */
+	public NioDeviceNetworkListener(String ipAddress, int port, IDeviceDataParser dataParser, Queue<DeviceEvent> q) {
+		this.ipAddress = ipAddress;
+		this.port = port;
+		this.dataParser = dataParser;
+		this.eventQueue = q;
+		this.gloveSampleLanes = null;
+	}
+	
+	/**
+	 * @param port the port to listen on
+	 * @param dataParser an object that can translate raw data into glove samples
+	 * @param lanes per-entity rings the glove samples will be published to (this listener must be their only producer)
+	 */
+	public NioDeviceNetworkListener(String ipAddress, int port, IDeviceDataParser dataParser, GloveSampleLanes lanes) {
+		this.ipAddress = ipAddress;
+		this.port = port;
+		this.dataParser = dataParser;
+		this.eventQueue = null;
+		this.gloveSampleLanes = lanes;
+	}
+
+	
+	public void run() {
+		stop = false;
+		
+		InetAddress localInterface = null;
+		try {
+			localInterface = InetAddress.getByName(this.ipAddress);
+		}
+		catch (UnknownHostException ex) {
+			log.error("Could not find local network interface for device network listener", ex);
+			
+			try {
+				localInterface = InetAddress.getByName("0.0.0.0");
+			}
+			catch (UnknownHostException e) {
+				log.error("This should never ever happen.", e);
+				return;
+			}
+		}
+		
+		try {
+			channel = DatagramChannel.open();
+			channel.socket().bind(new InetSocketAddress(localInterface, port));
+			log.info("Listening for devices on Network Interface {} (IP) port {} (UDP, NIO)", localInterface, port);
+		}
+		catch (IOException ex) {
+			log.error("Unable to open UDP channel for listening on port "+port, ex);
+			return;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocateDirect(DATAGRAM_BUFFER_SIZE);
+		
+		while (!stop) {
+			SocketAddress source = null;
+			buffer.clear();
+			try {
+				source = channel.receive(buffer);
+			}
+			catch (ClosedChannelException ex) {
+				log.info("Device listener channel closed.");
+				break;
+			}
+			catch (IOException ex) {
+				log.warn("Exception receiving packet",ex);
+				continue;
+			}
+			if (source == null) {
+				continue;
+			}
+			buffer.flip();
+			
+			InetAddress address = ((InetSocketAddress)source).getAddress();
+			try {
+				if (gloveSampleLanes != null) {
+					if (dataParser.parseDeviceData(buffer, address, gloveSampleLanes) < 0 && log.isDebugEnabled()) {
+						buffer.rewind();
+						log.debug("Could not parse data from {}: {}", address, describe(buffer));
+					}
+					continue;
+				}
+				
+				List<? extends DeviceEvent> events = dataParser.parseDeviceData(buffer, address);
+				if (events != null) {
+					for (DeviceEvent e : events) {
+						if (e != null) {
+							eventQueue.add(e);
+						}
+					}
+				}
+				else if (log.isDebugEnabled()) {
+					buffer.rewind();
+					log.debug("Could not parse data from {}: {}", address, describe(buffer));
+				}
+			}
+			catch (Exception ex) {
+				buffer.rewind();
+				log.warn("Could not parse packet data: " + describe(buffer), ex);
+			}
+		}
+		
+		if (channel.isOpen()) {
+			try {
+				channel.close();
+			}
+			catch (IOException ex) {
+				log.warn("Error closing device listener channel", ex);
+			}
+		}
+		
+		log.info("device network listener exiting");
+	}
+	
+	public void stop() {
+		log.info("Stopping device network listener");
+		this.stop = true;
+		
+		DatagramChannel c = this.channel;
+		if (c != null) {
+			try {
+				// unblocks the receive call with an AsynchronousCloseException
+				c.close();
+			}
+			catch (IOException ex) {
+				log.warn("Error closing device listener channel", ex);
+			}
+		}
+	}
+	
+	/**
+	 * Only used when something goes wrong, so allocating here is fine.
+	 */
+	private static String describe(ByteBuffer buffer) {
+		StringBuilder buf = new StringBuilder(buffer.remaining());
+		while (buffer.hasRemaining()) {
+			buf.append((char)(buffer.get() & 0xff));
+		}
+		return buf.toString().trim();
+	}
+}
@@ -0,0 +1,43 @@
+package ca.site3.ssf.ioserver;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A LinkedBlockingQueue that raises a {@link WorkSignal} whenever something is put on it, so
+ * that whoever consumes it can wait on the signal instead of polling the queue.
+ */
+class SignallingBlockingQueue<E> extends LinkedBlockingQueue<E> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final WorkSignal signal;
+	
+	SignallingBlockingQueue(WorkSignal signal) {
+		this.signal = signal;
+	}
+	
+	@Override
+	public boolean offer(E e) {
+		boolean added = super.offer(e);
+		if (added) {
+			this.signal.signal();
+		}
+		return added;
+	}
+	
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		boolean added = super.offer(e, timeout, unit);
+		if (added) {
+			this.signal.signal();
+		}
+		return added;
+	}
+	
+	@Override
+	public void put(E e) throws InterruptedException {
+		super.put(e);
+		this.signal.signal();
+	}
+}
@@ -0,0 +1,199 @@
+package ca.site3.ssf.ioserver;
+
+import java.util.concurrent.TimeUnit;
+
+import ca.site3.ssf.common.LatencyHistogram;
+
+/**
+ * Decides when the main loop ticks and how far the game is stepped each time, using a
+ * fixed timestep: real time accumulates between ticks and the game is stepped in whole ticks'
+ * worth of it, with any remainder carried over to the next tick. Tick deadlines are laid out on a
+ * fixed grid (start time + n ticks) rather than relative to when the last tick happened, so small
+ * delays never accumulate into drift.
+ * 
+ * If the loop is woken up early by its {@link WorkSignal} it gets a sub-tick, which steps the game
+ * by however much time has elapsed so far; the next regular tick then steps the rest of the way to the
+ * grid so that the game stays in line with real time.
+ * 
+ * Typical usage:
+ * <pre>
+ * scheduler.start();
+ * while (running) {
+ *     scheduler.awaitTick(signal);
+ *     // ... execute commands ...
+ *     double dT;
+ *     while ((dT = scheduler.nextStep()) > 0) {
+ *         game.tick(dT);
+ *     }
+ * }
+ * </pre>
+ */
+public class TickScheduler {
+	
+	/** With spin-waiting on, how long before a tick's deadline to stop sleeping and start spinning */
+	static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(1000);
+	
+	/** The most ticks' worth of time we'll step the game by at once after falling behind (the rest is dropped) */
+	static final int MAX_STEPS_PER_TICK = 5;
+	
+	private final long tickLengthNanos;
+	private final double tickLengthSecs;
+	private final boolean spinWait;
+	
+	private long nextTickTime;
+	private long lastTime;
+	private long accumulator = 0;       // Real time (nanos) that the game hasn't been stepped through yet
+	
+	private boolean isRegularTick = false;
+	private boolean isSplitTick   = false; // A sub-tick has already stepped through part of the current tick
+	private boolean completeSplitTick = false;
+	private int numStepsThisTick  = 0;
+	
+	// How far from their deadlines the regular ticks actually woke up
+	private final LatencyHistogram jitter  = new LatencyHistogram("Tick jitter");
+	// How late the regular ticks that we didn't get to wait for at all were (the previous tick's work overran)
+	private final LatencyHistogram overrun = new LatencyHistogram("Tick overrun");
+	
+	
+	/**
+	 * @param tickFrequency how many regular ticks per second
+	 * @param spinWait whether to spin for the last {@link #SPIN_THRESHOLD_NANOS} before each deadline,
+	 * rather than count on the scheduler waking us up on time (costs CPU, lowers jitter)
+	 */
+	public TickScheduler(double tickFrequency, boolean spinWait) {
+		this.tickLengthNanos = Math.round(1e9 / tickFrequency);
+		this.tickLengthSecs  = this.tickLengthNanos / 1e9;
+		this.spinWait = spinWait;
+	}
+	
+	/**
+	 * Lays out the tick deadlines starting from now.
+	 */
+	public void start() {
+		long now = System.nanoTime();
+		this.lastTime = now;
+		this.nextTickTime = now + this.tickLengthNanos;
+		this.accumulator = 0;
+		this.isSplitTick = false;
+	}
+	
+	/**
+	 * Waits for the next regular tick or, if the given signal is raised before then, a sub-tick.
+	 * 
+	 * @param signal raised when there's work to do before the next tick (may be null)
+	 * @return true for a regular tick, false for a sub-tick
+	 */
+	public boolean awaitTick(WorkSignal signal) throws InterruptedException {
+		long now = System.nanoTime();
+		if (now - this.nextTickTime >= 0) {
+			this.overrun.record(now - this.nextTickTime);
+		}
+		else {
+			long wait = this.nextTickTime - now - (this.spinWait ? SPIN_THRESHOLD_NANOS : 0);
+			if (wait > 0) {
+				if (signal != null) {
+					if (signal.await(wait)) {
+						this.accumulate(System.nanoTime());
+						this.isRegularTick = false;
+						return false;
+					}
+				}
+				else {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+			}
+			
+			if (this.spinWait) {
+				while (this.nextTickTime - System.nanoTime() > 0) {
+					Thread.yield();
+				}
+			}
+			
+			now = System.nanoTime();
+			this.jitter.record(Math.abs(now - this.nextTickTime));
+		}
+		
+		this.accumulate(now);
+		
+		// Move on to the next deadline on the grid, skipping any we've missed entirely
+		this.nextTickTime += this.tickLengthNanos;
+		if (now - this.nextTickTime >= 0) {
+			long numMissed = (now - this.nextTickTime) / this.tickLengthNanos + 1;
+			this.nextTickTime += numMissed * this.tickLengthNanos;
+		}
+		
+		this.isRegularTick = true;
+		this.completeSplitTick = this.isSplitTick;
+		this.isSplitTick = false;
+		this.numStepsThisTick = 0;
+		return true;
+	}
+	
+	/**
+	 * Gets the next step to advance the game by for the current (sub-)tick.
+	 * 
+	 * @return the step (dT) in seconds, or 0 if there are no more steps to take until the next tick
+	 */
+	public double nextStep() {
+		if (this.isRegularTick == false) {
+			// Sub-tick: step through everything that's elapsed so far, the rest of the tick comes later
+			if (this.accumulator <= 0) {
+				return 0;
+			}
+			double step = this.accumulator / 1e9;
+			this.accumulator = 0;
+			this.isSplitTick = true;
+			return step;
+		}
+		
+		if (this.numStepsThisTick >= MAX_STEPS_PER_TICK) {
+			// Too far behind to catch up, forget about the whole ticks we haven't stepped through
+			this.accumulator %= this.tickLengthNanos;
+			return 0;
+		}
+		
+		if (this.accumulator >= this.tickLengthNanos) {
+			this.accumulator -= this.tickLengthNanos;
+			this.numStepsThisTick++;
+			return this.tickLengthSecs;
+		}
+		
+		if (this.completeSplitTick && this.accumulator > 0) {
+			// Part of this tick was already stepped by a sub-tick, step the rest of the way to the grid
+			double step = this.accumulator / 1e9;
+			this.accumulator = 0;
+			this.completeSplitTick = false;
+			this.numStepsThisTick++;
+			return step;
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * @return the length of a regular tick (the fixed step), in seconds
+	 */
+	public double getTickLength() {
+		return this.tickLengthSecs;
+	}
+	
+	/**
+	 * How far from their deadlines the regular ticks woke up. May be read from any thread.
+	 */
+	public LatencyHistogram getJitter() {
+		return this.jitter;
+	}
+	
+	/**
+	 * How late the ticks were whose deadline had already passed by the time the previous tick's work was done.
+	 * May be read from any thread.
+	 */
+	public LatencyHistogram getOverrun() {
+		return this.overrun;
+	}
+	
+	private void accumulate(long now) {
+		this.accumulator += now - this.lastTime;
+		this.lastTime = now;
+	}
+}
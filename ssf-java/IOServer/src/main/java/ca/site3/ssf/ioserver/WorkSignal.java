@@ -0,0 +1,40 @@
+package ca.site3.ssf.ioserver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets threads that hand work to the main loop wake it up (rather than have the work sit there
+ * until the loop's next tick comes around). Signals don't stack: any number of signals raised
+ * while the loop is busy wake it up just once.
+ */
+class WorkSignal {
+	
+	private boolean isSignalled = false;
+	
+	/**
+	 * Raises the signal, waking up the thread waiting on it (if any). May be called from any thread.
+	 */
+	synchronized void signal() {
+		this.isSignalled = true;
+		this.notifyAll();
+	}
+	
+	/**
+	 * Waits for the signal to be raised, then lowers it again.
+	 * 
+	 * @param timeoutNanos the longest time to wait, in nanoseconds
+	 * @return true if the signal was raised, false if the time elapsed first
+	 */
+	synchronized boolean await(long timeoutNanos) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (this.isSignalled == false) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		this.isSignalled = false;
+		return true;
+	}
+}
@@ -0,0 +1,135 @@
+package ca.site3.ssf.ioserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ca.site3.ssf.gesturerecognizer.GestureDataSet;
+import ca.site3.ssf.gesturerecognizer.GestureInstance;
+import ca.site3.ssf.gesturerecognizer.GestureRecognitionSession;
+import ca.site3.ssf.gesturerecognizer.GestureRecognizer;
+import ca.site3.ssf.gesturerecognizer.GestureType;
+import ca.site3.ssf.gesturerecognizer.GloveData;
+
+public class TestGestureEngineReloader {
+	
+	private static GestureDataSet buildDataSet(Random random, boolean leftHand) {
+		GestureDataSet dataSet = new GestureDataSet();
+		for (int n=0; n<10; n++) {
+			List<GloveData> gloveData = new ArrayList<GloveData>();
+			List<Double> timePts = new ArrayList<Double>();
+			for (int i=0; i<40; i++) {
+				double x = Math.sin(i * 0.15);
+				gloveData.add(new GloveData(0, 0, 0, x + random.nextGaussian() * 0.1, -x + random.nextGaussian() * 0.1,
+						random.nextGaussian() * 0.1, 0, 0, 0));
+				timePts.add(i * 0.02);
+			}
+			List<GloveData> noGloveData = Collections.emptyList();
+			dataSet.addGestureInstance(leftHand ? new GestureInstance(gloveData, noGloveData, timePts) :
+				new GestureInstance(noGloveData, gloveData, timePts));
+		}
+		return dataSet;
+	}
+	
+	private static File saveEngine(GestureRecognizer recognizer) throws IOException {
+		File file = File.createTempFile("test_gesture_engine", ".eng");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		assertTrue(recognizer.saveRecognizerEngine(writer));
+		writer.close();
+		return file;
+	}
+	
+	private static void awaitLoaded(GestureEngineReloader reloader) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (reloader.isLoading() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertFalse(reloader.isLoading());
+	}
+	
+	@Test
+	public void testReloadSwapsInNewEngine() throws Exception {
+		GestureRecognizer retrained = new GestureRecognizer();
+		assertTrue(retrained.trainGesture(GestureType.LEFT_JAB, buildDataSet(new Random(1), true)));
+		File engineFile = saveEngine(retrained);
+		
+		GestureRecognizer recognizer = new GestureRecognizer();
+		WorkSignal signal = new WorkSignal();
+		GestureEngineReloader reloader = new GestureEngineReloader(recognizer, engineFile, signal);
+		assertTrue(reloader.requestReload());
+		
+		// The main loop is woken up once the engine is ready, but nothing changes until it swaps it in
+		assertTrue(signal.await(TimeUnit.SECONDS.toNanos(10)));
+		assertFalse(recognizer.isGestureTrained(GestureType.LEFT_JAB));
+		
+		assertTrue(reloader.swapIfLoaded());
+		assertTrue(recognizer.isGestureTrained(GestureType.LEFT_JAB));
+		assertFalse(reloader.swapIfLoaded());
+	}
+	
+	@Test
+	public void testSessionStreamsWithSwappedInEngine() throws Exception {
+		GestureDataSet dataSet = buildDataSet(new Random(4), true);
+		GestureRecognizer retrained = new GestureRecognizer();
+		assertTrue(retrained.trainGesture(GestureType.LEFT_JAB, dataSet));
+		File engineFile = saveEngine(retrained);
+		
+		// Sessions are begun once, before the new engine is loaded (as the glove event coalescers do)
+		GestureRecognizer recognizer = new GestureRecognizer();
+		GestureRecognitionSession session = recognizer.beginPlayerGestureSession();
+		GestureEngineReloader reloader = new GestureEngineReloader(recognizer, engineFile, new WorkSignal());
+		assertTrue(reloader.requestReload());
+		awaitLoaded(reloader);
+		assertTrue(reloader.swapIfLoaded());
+		
+		// The next gesture streamed to the session is scored with the new engine
+		GestureInstance inst = dataSet.getGestureInstanceAt(0);
+		GestureType expected = recognizer.recognizePlayerGestureAsGameWould(inst);
+		assertEquals(GestureType.LEFT_JAB, expected);
+		
+		session.reset();
+		for (int i = 0; i < inst.getNumDataPts(); i++) {
+			session.addLeftGloveData(inst.getLeftGloveDataAt(i));
+		}
+		assertEquals(expected, session.finish(inst));
+	}
+	
+	@Test
+	public void testRejectsEngineMissingGestures() throws Exception {
+		GestureRecognizer retrained = new GestureRecognizer();
+		assertTrue(retrained.trainGesture(GestureType.RIGHT_JAB, buildDataSet(new Random(2), false)));
+		File engineFile = saveEngine(retrained);
+		
+		GestureRecognizer recognizer = new GestureRecognizer();
+		assertTrue(recognizer.trainGesture(GestureType.LEFT_JAB, buildDataSet(new Random(3), true)));
+		GestureEngineReloader reloader = new GestureEngineReloader(recognizer, engineFile, new WorkSignal());
+		assertTrue(reloader.requestReload());
+		awaitLoaded(reloader);
+		
+		assertFalse(reloader.swapIfLoaded());
+		assertTrue(recognizer.isGestureTrained(GestureType.LEFT_JAB));
+		assertFalse(recognizer.isGestureTrained(GestureType.RIGHT_JAB));
+	}
+	
+	@Test
+	public void testMissingEngineFileNotSwapped() throws Exception {
+		GestureRecognizer recognizer = new GestureRecognizer();
+		GestureEngineReloader reloader = new GestureEngineReloader(recognizer, new File("no_such_gesture_engine.eng"), new WorkSignal());
+		assertTrue(reloader.requestReload());
+		awaitLoaded(reloader);
+		
+		assertFalse(reloader.swapIfLoaded());
+	}
+}
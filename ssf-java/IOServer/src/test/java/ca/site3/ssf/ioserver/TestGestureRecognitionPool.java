@@ -0,0 +1,73 @@
+package ca.site3.ssf.ioserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ca.site3.ssf.gamemodel.IGameModel.Entity;
+import ca.site3.ssf.gesturerecognizer.GestureRecognizer;
+import ca.site3.ssf.gesturerecognizer.GloveData;
+
+public class TestGestureRecognitionPool {
+
+	private static EntityGestureInstance buildGesture(Entity entity, int numDataPts) {
+		List<GloveData> gloveData = new ArrayList<GloveData>();
+		List<Double> timePts = new ArrayList<Double>();
+		for (int i=0; i<numDataPts; i++) {
+			gloveData.add(new GloveData(0, 0, 0, i, i, i, 0, 0, 0));
+			timePts.add(i * 0.02);
+		}
+		List<GloveData> noGloveData = Collections.emptyList();
+		return new EntityGestureInstance(entity, gloveData, noGloveData, timePts);
+	}
+	
+	@Test
+	public void testPerEntityOrderPreserved() throws Exception {
+		BlockingQueue<EntityGestureInstance> gestures = new LinkedBlockingQueue<EntityGestureInstance>();
+		GestureRecognitionPool pool = new GestureRecognitionPool(new GestureRecognizer(), gestures);
+		Thread poolThread = new Thread(pool, "Test recognition pool");
+		poolThread.setDaemon(true);
+		poolThread.start();
+		
+		Map<Entity, List<EntityGestureInstance>> submitted = new EnumMap<Entity, List<EntityGestureInstance>>(Entity.class);
+		for (Entity entity : Entity.values()) {
+			submitted.put(entity, new ArrayList<EntityGestureInstance>());
+		}
+		for (int i=0; i<30; i++) {
+			Entity entity = Entity.values()[i % Entity.values().length];
+			EntityGestureInstance gesture = buildGesture(entity, 5 + i);
+			submitted.get(entity).add(gesture);
+			gestures.add(gesture);
+		}
+		
+		Map<Entity, List<EntityGestureInstance>> recognized = new EnumMap<Entity, List<EntityGestureInstance>>(Entity.class);
+		for (Entity entity : Entity.values()) {
+			recognized.put(entity, new ArrayList<EntityGestureInstance>());
+		}
+		for (int i=0; i<30; i++) {
+			EntityGestureInstance gesture = pool.getRecognizedGestureQueue().poll(2, TimeUnit.SECONDS);
+			assertNotNull(gesture);
+			assertTrue(gesture.hasRecognitionResult());
+			recognized.get(gesture.getEntity()).add(gesture);
+		}
+		assertNull(pool.getRecognizedGestureQueue().poll(50, TimeUnit.MILLISECONDS));
+		
+		for (Entity entity : Entity.values()) {
+			assertEquals(submitted.get(entity), recognized.get(entity));
+		}
+		assertEquals(30, pool.getRecognitionTime().getCount());
+		pool.shutdown();
+	}
+}
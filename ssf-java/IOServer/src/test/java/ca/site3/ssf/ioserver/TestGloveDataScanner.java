@@ -0,0 +1,159 @@
+package ca.site3.ssf.ioserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.site3.ssf.gamemodel.IGameModel.Entity;
+import ca.site3.ssf.ioserver.DeviceConstants.Device;
+
+public class TestGloveDataScanner {
+
+	private static ByteBuffer bytes(String line) throws Exception {
+		return ByteBuffer.wrap(line.getBytes("ASCII"));
+	}
+	
+	private static int scan(String line, double[] values) throws Exception {
+		ByteBuffer buf = bytes(line);
+		return GloveDataScanner.scan(buf, 0, buf.limit(), values, 0);
+	}
+	
+	@Test
+	public void testMarkers() throws Exception {
+		double[] values = new double[GloveDataScanner.NUM_VALUES];
+		assertEquals(GloveDataScanner.BUTTON_DOWN, scan("start|", values));
+		assertEquals(GloveDataScanner.BUTTON_UP, scan("end|", values));
+		assertEquals(GloveDataScanner.MALFORMED, scan("star", values));
+	}
+	
+	@Test
+	public void testDataLine() throws Exception {
+		double[] values = new double[GloveDataScanner.NUM_VALUES];
+		assertEquals(GloveDataScanner.DATA, scan("aX:-265.64,aY:239.84,aZ:4228.79,YAW:21.9,PCH:-2.46,RLL:0.69|", values));
+		double[] expected = new double[] { -265.64, 239.84, 4228.79, 21.9, -2.46, 0.69 };
+		for (int i=0; i<expected.length; i++) {
+			assertEquals(expected[i], values[i], 0.0);
+		}
+	}
+	
+	@Test
+	public void testMatchesParseDouble() throws Exception {
+		Random rand = new Random(1234);
+		double[] values = new double[GloveDataScanner.NUM_VALUES];
+		for (int n=0; n<10000; n++) {
+			String[] nums = new String[GloveDataScanner.NUM_VALUES];
+			for (int i=0; i<nums.length; i++) {
+				long whole = rand.nextInt(100000) * (rand.nextBoolean() ? 1 : -1);
+				int fracDigits = rand.nextInt(7);
+				StringBuilder num = new StringBuilder().append(whole);
+				if (fracDigits > 0) {
+					num.append('.');
+					for (int k=0; k<fracDigits; k++) {
+						num.append(rand.nextInt(10));
+					}
+				}
+				nums[i] = num.toString();
+			}
+			String line = "aX:" + nums[0] + ",aY:" + nums[1] + ",aZ:" + nums[2] +
+					",YAW:" + nums[3] + ",PCH:" + nums[4] + ",RLL:" + nums[5] + "|";
+			assertEquals(line, GloveDataScanner.DATA, scan(line, values));
+			for (int i=0; i<nums.length; i++) {
+				assertEquals(line, Double.doubleToLongBits(Double.parseDouble(nums[i])), Double.doubleToLongBits(values[i]));
+			}
+		}
+	}
+	
+	@Test
+	public void testMalformed() throws Exception {
+		double[] values = new double[GloveDataScanner.NUM_VALUES];
+		assertEquals(GloveDataScanner.MALFORMED, scan("aX:1,aY:2,aZ:3,YAW:4,PCH:5,RLL:6", values));
+		assertEquals(GloveDataScanner.MALFORMED, scan("aX:1,aY:2,aZ:3,YAW:4,PCH:5|", values));
+		assertEquals(GloveDataScanner.MALFORMED, scan("aX:1,aY:,aZ:3,YAW:4,PCH:5,RLL:6|", values));
+		assertEquals(GloveDataScanner.MALFORMED, scan("aX:1e2,aY:2,aZ:3,YAW:4,PCH:5,RLL:6|", values));
+		assertEquals(GloveDataScanner.MALFORMED, scan("aX:1.2.3,aY:2,aZ:3,YAW:4,PCH:5,RLL:6|", values));
+		assertEquals(GloveDataScanner.MALFORMED, scan("gX:1,aY:2,aZ:3,YAW:4,PCH:5,RLL:6|", values));
+	}
+	
+	@Test
+	public void testParserFallsBackToRegex() throws Exception {
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		DeviceStatus deviceStatus = new DeviceStatus();
+		deviceStatus.setDeviceInfo(Device.P1_LEFT_GLOVE, localhost, (byte)1, 1);
+		DeviceDataParser parser = new DeviceDataParser(deviceStatus);
+		
+		ByteBuffer data = bytes("start|\naX:1e2,aY:2,aZ:3,YAW:4,PCH:5,RLL:6|\n aX:-1.5,aY:2,aZ:3,YAW:4,PCH:5,RLL:6.25| \nend|\n");
+		List<DeviceEvent> events = parser.parseDeviceData(data, localhost);
+		assertNotNull(events);
+		assertEquals(4, events.size());
+		assertEquals(data.limit(), data.position());
+		
+		assertEquals(GloveEvent.EventType.BUTTON_DOWN_EVENT, ((GloveEvent)events.get(0)).getEventType());
+		GloveEvent fallback = (GloveEvent)events.get(1);
+		assertEquals(GloveEvent.EventType.DATA_EVENT, fallback.getEventType());
+		assertEquals(100.0, fallback.getAcceleration()[0], 0.0);
+		GloveEvent scanned = (GloveEvent)events.get(2);
+		assertEquals(-1.5, scanned.getAcceleration()[0], 0.0);
+		assertEquals(6.25, scanned.getMagnetometer()[2], 0.0);
+		assertEquals(GloveEvent.EventType.BUTTON_UP_EVENT, ((GloveEvent)events.get(3)).getEventType());
+	}
+	
+	@Test
+	public void testParserIntoRing() throws Exception {
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		DeviceStatus deviceStatus = new DeviceStatus();
+		deviceStatus.setDeviceInfo(Device.P1_RIGHT_GLOVE, localhost, (byte)1, 1);
+		DeviceDataParser parser = new DeviceDataParser(deviceStatus);
+		GloveSampleLanes lanes = new GloveSampleLanes(4, GloveSampleRing.OverflowPolicy.DROP_NEWEST);
+		GloveSampleRing ring = lanes.getLane(Entity.PLAYER1_ENTITY);
+		
+		ByteBuffer data = bytes("start|\ngarbage\naX:1e2,aY:2,aZ:3,YAW:4,PCH:5,RLL:6|\naX:-1.5,aY:2,aZ:3,YAW:4,PCH:5,RLL:6.25|\nend|\n");
+		assertEquals(4, parser.parseDeviceData(data, localhost, lanes));
+		assertEquals(data.limit(), data.position());
+		assertEquals(4, ring.size());
+		assertEquals(0, lanes.getLane(Entity.PLAYER2_ENTITY).size());
+		
+		GloveSample s = new GloveSample();
+		ring.poll(s);
+		assertEquals(GloveEvent.EventType.BUTTON_DOWN_EVENT, s.getEventType());
+		ring.poll(s);
+		assertEquals(100.0, s.getValues()[GloveSample.ACCEL_OFFSET], 0.0);
+		ring.poll(s);
+		assertEquals(GloveEvent.EventType.DATA_EVENT, s.getEventType());
+		assertEquals(-1.5, s.getValues()[GloveSample.ACCEL_OFFSET], 0.0);
+		assertEquals(6.25, s.getValues()[GloveSample.MAGNETOMETER_OFFSET+2], 0.0);
+		ring.poll(s);
+		assertEquals(GloveEvent.EventType.BUTTON_UP_EVENT, s.getEventType());
+		
+		assertEquals(-1, parser.parseDeviceData(bytes("start|"), InetAddress.getByName("10.1.2.3"), lanes));
+	}
+	
+	@Test
+	public void testJunkLinesDontDropFromFullRing() throws Exception {
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		DeviceStatus deviceStatus = new DeviceStatus();
+		deviceStatus.setDeviceInfo(Device.P1_LEFT_GLOVE, localhost, (byte)1, 1);
+		DeviceDataParser parser = new DeviceDataParser(deviceStatus);
+		
+		for (GloveSampleRing.OverflowPolicy policy : GloveSampleRing.OverflowPolicy.values()) {
+			GloveSampleLanes lanes = new GloveSampleLanes(2, policy);
+			GloveSampleRing ring = lanes.getLane(Entity.PLAYER1_ENTITY);
+			assertEquals(2, parser.parseDeviceData(bytes("start|\nend|\n"), localhost, lanes));
+			
+			assertEquals(0, parser.parseDeviceData(bytes("\n  \ngarbage\naX:1,aY:2|\n"), localhost, lanes));
+			assertEquals(policy.toString(), 0, ring.getDroppedCount());
+			assertEquals(2, ring.size());
+			
+			GloveSample s = new GloveSample();
+			ring.poll(s);
+			assertEquals(GloveEvent.EventType.BUTTON_DOWN_EVENT, s.getEventType());
+			ring.poll(s);
+			assertEquals(GloveEvent.EventType.BUTTON_UP_EVENT, s.getEventType());
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package ca.site3.ssf.ioserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ca.site3.ssf.gamemodel.IGameModel.Entity;
+import ca.site3.ssf.gesturerecognizer.GestureDataSet;
+import ca.site3.ssf.gesturerecognizer.GestureInstance;
+import ca.site3.ssf.gesturerecognizer.GestureProbabilities;
+import ca.site3.ssf.gesturerecognizer.GestureRecognitionResult;
+import ca.site3.ssf.gesturerecognizer.GestureRecognitionSession;
+import ca.site3.ssf.gesturerecognizer.GestureRecognizer;
+import ca.site3.ssf.gesturerecognizer.GestureStatistics;
+import ca.site3.ssf.gesturerecognizer.GestureType;
+import ca.site3.ssf.gesturerecognizer.GloveData;
+import ca.site3.ssf.ioserver.DeviceConstants.Device;
+import ca.site3.ssf.ioserver.DeviceConstants.DeviceType;
+import ca.site3.ssf.ioserver.GloveEvent.EventType;
+
+public class TestGloveEventCoalescer {
+
+	private static void publish(GloveSampleRing lane, DeviceType glove, EventType type, Entity entity) {
+		GloveSample slot = lane.claim();
+		slot.set(entity, glove, System.currentTimeMillis(), type);
+		slot.clearValues();
+		lane.publish();
+	}
+	
+	private static void publishAccel(GloveSampleRing lane, DeviceType glove, Entity entity, Random random) {
+		GloveSample slot = lane.claim();
+		slot.set(entity, glove, System.currentTimeMillis(), EventType.DATA_EVENT);
+		slot.clearValues();
+		for (int i=0; i<3; i++) {
+			slot.getValues()[GloveSample.ACCEL_OFFSET + i] = random.nextGaussian() * 5.0;
+		}
+		lane.publish();
+	}
+	
+	private static GestureRecognizer trainedRecognizer = null;
+	
+	/**
+	 * Builds a noisy recording of a made-up gesture: each gesture type swings every axis of
+	 * acceleration (of both gloves) with its own amplitude, rate and phase.
+	 */
+	private static GestureInstance buildGesture(Random random, GestureType gestureType) {
+		Random pattern = new Random(gestureType.ordinal());
+		double[][] swings = new double[6][3]; // {amplitude, rate, phase} per axis
+		for (double[] swing : swings) {
+			swing[0] = 4.0 * pattern.nextGaussian();
+			swing[1] = 0.05 + 0.3 * pattern.nextDouble();
+			swing[2] = 2.0 * Math.PI * pattern.nextDouble();
+		}
+		
+		List<GloveData> leftGloveData = new ArrayList<GloveData>();
+		List<GloveData> rightGloveData = new ArrayList<GloveData>();
+		List<Double> timePts = new ArrayList<Double>();
+		for (int i=0; i<50; i++) {
+			double[] accel = new double[6];
+			for (int j=0; j<6; j++) {
+				accel[j] = swings[j][0] * Math.sin(i * swings[j][1] + swings[j][2]) + random.nextGaussian() * 0.2;
+			}
+			if (gestureType.getUsesLeftHand()) {
+				leftGloveData.add(new GloveData(0, 0, 0, accel[0], accel[1], accel[2], 0, 0, 0));
+			}
+			if (gestureType.getUsesRightHand()) {
+				rightGloveData.add(new GloveData(0, 0, 0, accel[3], accel[4], accel[5], 0, 0, 0));
+			}
+			timePts.add(i * 0.02);
+		}
+		return new GestureInstance(leftGloveData, rightGloveData, timePts);
+	}
+	
+	/**
+	 * @return a recognizer with every player gesture trained on made-up recordings (see buildGesture)
+	 */
+	private static synchronized GestureRecognizer getTrainedRecognizer() {
+		if (trainedRecognizer == null) {
+			GestureRecognizer recognizer = new GestureRecognizer();
+			Random random = new Random(3);
+			for (GestureType gestureType : GestureType.values()) {
+				if (gestureType.getIsRingmasterGesture()) {
+					continue;
+				}
+				GestureDataSet dataSet = new GestureDataSet();
+				for (int n=0; n<20; n++) {
+					dataSet.addGestureInstance(buildGesture(random, gestureType));
+				}
+				assertTrue(gestureType.toString(), recognizer.trainGesture(gestureType, dataSet));
+			}
+			trainedRecognizer = recognizer;
+		}
+		return trainedRecognizer;
+	}
+	
+	/**
+	 * Publishes the given gesture to the lane as its gloves would send it, 20 ms apart (both gloves'
+	 * data interleaved, with the right glove lagging behind when unevenly is set).
+	 */
+	private static void publishGesture(GloveSampleRing lane, Entity entity, GestureInstance gesture, long startTime, boolean unevenly) {
+		if (gesture.hasLeftGloveData()) {
+			publish(lane, DeviceType.LEFT_GLOVE, EventType.BUTTON_DOWN_EVENT, entity, startTime, null);
+		}
+		if (gesture.hasRightGloveData()) {
+			publish(lane, DeviceType.RIGHT_GLOVE, EventType.BUTTON_DOWN_EVENT, entity, startTime, null);
+		}
+		int numRightPublished = 0;
+		for (int i=0; i<gesture.getNumDataPts(); i++) {
+			long timestamp = startTime + 20 * i;
+			if (gesture.hasLeftGloveData()) {
+				publish(lane, DeviceType.LEFT_GLOVE, EventType.DATA_EVENT, entity, timestamp, gesture.getLeftGloveDataAt(i));
+			}
+			if (gesture.hasRightGloveData() && (!unevenly || i % 3 != 0)) {
+				for (; numRightPublished <= i; numRightPublished++) {
+					publish(lane, DeviceType.RIGHT_GLOVE, EventType.DATA_EVENT, entity, timestamp, gesture.getRightGloveDataAt(numRightPublished));
+				}
+			}
+		}
+		long endTime = startTime + 20 * gesture.getNumDataPts();
+		for (; gesture.hasRightGloveData() && numRightPublished < gesture.getNumDataPts(); numRightPublished++) {
+			publish(lane, DeviceType.RIGHT_GLOVE, EventType.DATA_EVENT, entity, endTime, gesture.getRightGloveDataAt(numRightPublished));
+		}
+		if (gesture.hasLeftGloveData()) {
+			publish(lane, DeviceType.LEFT_GLOVE, EventType.BUTTON_UP_EVENT, entity, endTime, null);
+		}
+		if (gesture.hasRightGloveData()) {
+			publish(lane, DeviceType.RIGHT_GLOVE, EventType.BUTTON_UP_EVENT, entity, endTime, null);
+		}
+	}
+	
+	private static void publish(GloveSampleRing lane, DeviceType glove, EventType type, Entity entity, long timestamp, GloveData data) {
+		GloveSample slot = lane.claim();
+		slot.set(entity, glove, timestamp, type);
+		slot.clearValues();
+		if (data != null) {
+			slot.getValues()[GloveSample.ACCEL_OFFSET]     = data.getAccelData().getX();
+			slot.getValues()[GloveSample.ACCEL_OFFSET + 1] = data.getAccelData().getY();
+			slot.getValues()[GloveSample.ACCEL_OFFSET + 2] = data.getAccelData().getZ();
+		}
+		lane.publish();
+	}
+	
+	private static void assertStatisticsMatchData(EntityGestureInstance gesture) {
+		GestureStatistics statistics = gesture.getStatistics();
+		assertEquals(gesture.getNumDataPts(), statistics.getNumDataPts());
+		assertEquals(gesture.getTimeAt(gesture.getNumDataPts()-1) - gesture.getTimeAt(0), statistics.getDuration(), 0.0);
+		
+		double maxAccel = 0.0;
+		double minAccel = 0.0;
+		double[] energy = new double[3];
+		DoubleBuffer accelData = gesture.getAccelDataView();
+		for (int i=0; accelData.hasRemaining(); i++) {
+			double accel = accelData.get();
+			maxAccel = Math.max(maxAccel, accel);
+			minAccel = Math.min(minAccel, accel);
+			energy[i % 3] += accel * accel;
+		}
+		assertEquals(maxAccel, statistics.getMaxAccel(), 0.0);
+		assertEquals(minAccel, statistics.getMinAccel(), 0.0);
+		for (int i=0; i<3; i++) {
+			assertEquals(energy[i], statistics.getAccelEnergy(i), 1e-9);
+		}
+	}
+	
+	@Test
+	public void testEntitiesCoalescedIndependently() throws Exception {
+		GloveSampleLanes lanes = new GloveSampleLanes();
+		BlockingQueue<DeviceEvent> otherEvents = new LinkedBlockingQueue<DeviceEvent>();
+		BlockingQueue<EntityGestureInstance> gestures = new LinkedBlockingQueue<EntityGestureInstance>();
+		
+		GloveEventCoalescer coalescer = new GloveEventCoalescer(System.currentTimeMillis(), lanes, otherEvents, gestures);
+		Thread coalescerThread = new Thread(coalescer, "Test coalescer");
+		coalescerThread.setDaemon(true);
+		coalescerThread.start();
+		
+		// player 2 starts a gesture and never finishes it...
+		GloveSampleRing p2Lane = lanes.getLane(Entity.PLAYER2_ENTITY);
+		publish(p2Lane, DeviceType.LEFT_GLOVE, EventType.BUTTON_DOWN_EVENT, Entity.PLAYER2_ENTITY);
+		for (int i=0; i<5; i++) {
+			publish(p2Lane, DeviceType.LEFT_GLOVE, EventType.DATA_EVENT, Entity.PLAYER2_ENTITY);
+		}
+		
+		// ... which shouldn't get in the way of player 1's gesture
+		GloveSampleRing p1Lane = lanes.getLane(Entity.PLAYER1_ENTITY);
+		publish(p1Lane, DeviceType.RIGHT_GLOVE, EventType.BUTTON_DOWN_EVENT, Entity.PLAYER1_ENTITY);
+		for (int i=0; i<6; i++) {
+			publish(p1Lane, DeviceType.RIGHT_GLOVE, EventType.DATA_EVENT, Entity.PLAYER1_ENTITY);
+		}
+		publish(p1Lane, DeviceType.RIGHT_GLOVE, EventType.BUTTON_UP_EVENT, Entity.PLAYER1_ENTITY);
+		
+		EntityGestureInstance p1Gesture = gestures.poll(300, TimeUnit.MILLISECONDS);
+		assertNotNull("Player 1 gesture was held up", p1Gesture);
+		assertEquals(Entity.PLAYER1_ENTITY, p1Gesture.getEntity());
+		assertEquals(6, p1Gesture.getNumDataPts());
+		assertTrue(p1Gesture.hasRightGloveData() && p1Gesture.hasLeftGloveData() == false);
+		
+		// player 2's gesture gets ended by the button up timeout
+		EntityGestureInstance p2Gesture = gestures.poll(2, TimeUnit.SECONDS);
+		assertNotNull("Player 2 gesture was never timed out", p2Gesture);
+		assertEquals(Entity.PLAYER2_ENTITY, p2Gesture.getEntity());
+		assertEquals(5, p2Gesture.getNumDataPts());
+		assertTrue(p2Gesture.hasLeftGloveData() && p2Gesture.hasRightGloveData() == false);
+		
+		assertNull(gestures.poll(100, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	public void testPerGloveButtonUpDeadline() throws Exception {
+		GloveSampleLanes lanes = new GloveSampleLanes();
+		BlockingQueue<DeviceEvent> otherEvents = new LinkedBlockingQueue<DeviceEvent>();
+		BlockingQueue<EntityGestureInstance> gestures = new LinkedBlockingQueue<EntityGestureInstance>();
+		
+		GloveEventCoalescer coalescer = new GloveEventCoalescer(System.currentTimeMillis(), lanes, otherEvents, gestures);
+		coalescer.setButtonUpTimeout(Device.RM_RIGHT_GLOVE, 150);
+		Thread coalescerThread = new Thread(coalescer, "Test coalescer");
+		coalescerThread.setDaemon(true);
+		coalescerThread.start();
+		
+		GloveSampleRing rmLane = lanes.getLane(Entity.RINGMASTER_ENTITY);
+		long startTime = System.nanoTime();
+		publish(rmLane, DeviceType.RIGHT_GLOVE, EventType.BUTTON_DOWN_EVENT, Entity.RINGMASTER_ENTITY);
+		for (int i=0; i<5; i++) {
+			publish(rmLane, DeviceType.RIGHT_GLOVE, EventType.DATA_EVENT, Entity.RINGMASTER_ENTITY);
+		}
+		
+		EntityGestureInstance gesture = gestures.poll(2, TimeUnit.SECONDS);
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		assertNotNull("Ringmaster gesture was never timed out", gesture);
+		assertTrue("Timed out too early: " + elapsedMs, elapsedMs >= 150);
+		assertTrue("Timed out too late: " + elapsedMs, elapsedMs < 450);
+		
+		assertEquals(1, coalescer.getSyntheticButtonUpLateness().getCount());
+		assertTrue(coalescer.getSyntheticButtonUpLateness().getMax() >= 0);
+	}
+	
+	@Test
+	public void testStreamingRecognition() throws Exception {
+		GestureRecognizer recognizer = getTrainedRecognizer();
+		GloveSampleLanes lanes = new GloveSampleLanes();
+		BlockingQueue<DeviceEvent> otherEvents = new LinkedBlockingQueue<DeviceEvent>();
+		BlockingQueue<EntityGestureInstance> gestures = new LinkedBlockingQueue<EntityGestureInstance>();
+		
+		long startTime = System.currentTimeMillis();
+		GloveEventCoalescer coalescer = new GloveEventCoalescer(startTime, lanes, otherEvents, gestures);
+		coalescer.setStreamingRecognition(recognizer, false);
+		Thread coalescerThread = new Thread(coalescer, "Test coalescer");
+		coalescerThread.setDaemon(true);
+		coalescerThread.start();
+		
+		// a one-handed gesture, then a two-handed one with the gloves' data interleaved unevenly
+		GloveSampleRing p1Lane = lanes.getLane(Entity.PLAYER1_ENTITY);
+		Random random = new Random(11);
+		publishGesture(p1Lane, Entity.PLAYER1_ENTITY, buildGesture(random, GestureType.LEFT_HOOK), startTime, false);
+		publishGesture(p1Lane, Entity.PLAYER1_ENTITY, buildGesture(random, GestureType.HADOUKEN), startTime + 2000, true);
+		
+		GestureType[] expectedTypes = new GestureType[] { GestureType.LEFT_HOOK, GestureType.HADOUKEN };
+		GestureRecognitionSession session = recognizer.beginPlayerGestureSession();
+		for (GestureType expectedType : expectedTypes) {
+			EntityGestureInstance gesture = gestures.poll(2, TimeUnit.SECONDS);
+			assertNotNull(gesture);
+			assertTrue(gesture.hasRecognitionResult());
+			assertEquals(expectedType, gesture.getRecognizedGesture());
+			assertEquals(recognizer.recognizePlayerGestureAsGameWould(gesture), gesture.getRecognizedGesture());
+			
+			// Streaming the gesture's data gives the same ln probabilities as scoring the whole gesture
+			session.reset();
+			for (int i=0; i<gesture.getNumDataPts(); i++) {
+				if (gesture.hasLeftGloveData()) {
+					session.addLeftGloveData(gesture.getLeftGloveDataAt(i));
+				}
+				if (gesture.hasRightGloveData()) {
+					session.addRightGloveData(gesture.getRightGloveDataAt(i));
+				}
+			}
+			GestureRecognitionResult result = recognizer.recognizePlayerGesture(gesture);
+			int numCompared = 0;
+			for (GestureType gestureType : GestureType.values()) {
+				GestureProbabilities probabilities = result.getProbabilities(gestureType);
+				if (probabilities != null) {
+					assertEquals(gestureType.toString(), probabilities.getLnProbability(), session.getLnProbability(gestureType), 0.0);
+					numCompared++;
+				}
+			}
+			assertTrue(numCompared > 1);
+			assertEquals(gesture.getRecognizedGesture(), session.finish(gesture));
+		}
+	}
+	
+	@Test
+	public void testEarlyCommit() throws Exception {
+		GestureRecognizer recognizer = getTrainedRecognizer();
+		GloveSampleLanes lanes = new GloveSampleLanes();
+		BlockingQueue<DeviceEvent> otherEvents = new LinkedBlockingQueue<DeviceEvent>();
+		BlockingQueue<EntityGestureInstance> gestures = new LinkedBlockingQueue<EntityGestureInstance>();
+		
+		long startTime = System.currentTimeMillis();
+		GloveEventCoalescer coalescer = new GloveEventCoalescer(startTime, lanes, otherEvents, gestures);
+		coalescer.setStreamingRecognition(recognizer, true);
+		Thread coalescerThread = new Thread(coalescer, "Test coalescer");
+		coalescerThread.setDaemon(true);
+		coalescerThread.start();
+		
+		GloveSampleRing p1Lane = lanes.getLane(Entity.PLAYER1_ENTITY);
+		Random random = new Random(12);
+		GestureInstance jab = buildGesture(random, GestureType.LEFT_JAB);
+		publishGesture(p1Lane, Entity.PLAYER1_ENTITY, jab, startTime, false);
+		
+		// The gesture is ended as soon as it's decisive, well before the button comes up...
+		EntityGestureInstance gesture = gestures.poll(2, TimeUnit.SECONDS);
+		assertNotNull(gesture);
+		assertEquals(GestureType.LEFT_JAB, gesture.getRecognizedGesture());
+		assertTrue("Gesture wasn't committed early", gesture.getNumDataPts() < jab.getNumDataPts());
+		assertEquals(recognizer.recognizePlayerGestureAsGameWould(gesture), gesture.getRecognizedGesture());
+		
+		// ... and the rest of the press (including its button up) doesn't make another gesture
+		assertNull(gestures.poll(300, TimeUnit.MILLISECONDS));
+		
+		// The next press is a gesture of its own again
+		publishGesture(p1Lane, Entity.PLAYER1_ENTITY, buildGesture(random, GestureType.LEFT_HOOK), startTime + 2000, false);
+		gesture = gestures.poll(2, TimeUnit.SECONDS);
+		assertNotNull(gesture);
+		assertEquals(GestureType.LEFT_HOOK, gesture.getRecognizedGesture());
+		assertNull(gestures.poll(300, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	public void testGestureStatisticsAccumulated() throws Exception {
+		GloveSampleLanes lanes = new GloveSampleLanes();
+		BlockingQueue<DeviceEvent> otherEvents = new LinkedBlockingQueue<DeviceEvent>();
+		BlockingQueue<EntityGestureInstance> gestures = new LinkedBlockingQueue<EntityGestureInstance>();
+		
+		GloveEventCoalescer coalescer = new GloveEventCoalescer(System.currentTimeMillis(), lanes, otherEvents, gestures);
+		Thread coalescerThread = new Thread(coalescer, "Test coalescer");
+		coalescerThread.setDaemon(true);
+		coalescerThread.start();
+		Random random = new Random(7);
+		
+		// one-handed gesture
+		GloveSampleRing p1Lane = lanes.getLane(Entity.PLAYER1_ENTITY);
+		publish(p1Lane, DeviceType.LEFT_GLOVE, EventType.BUTTON_DOWN_EVENT, Entity.PLAYER1_ENTITY);
+		for (int i=0; i<7; i++) {
+			publishAccel(p1Lane, DeviceType.LEFT_GLOVE, Entity.PLAYER1_ENTITY, random);
+		}
+		publish(p1Lane, DeviceType.LEFT_GLOVE, EventType.BUTTON_UP_EVENT, Entity.PLAYER1_ENTITY);
+		
+		EntityGestureInstance gesture = gestures.poll(300, TimeUnit.MILLISECONDS);
+		assertNotNull(gesture);
+		assertEquals(7, gesture.getNumDataPts());
+		assertStatisticsMatchData(gesture);
+		
+		// two-handed gesture where the right glove's extra data gets truncated
+		publish(p1Lane, DeviceType.LEFT_GLOVE, EventType.BUTTON_DOWN_EVENT, Entity.PLAYER1_ENTITY);
+		publish(p1Lane, DeviceType.RIGHT_GLOVE, EventType.BUTTON_DOWN_EVENT, Entity.PLAYER1_ENTITY);
+		for (int i=0; i<8; i++) {
+			publishAccel(p1Lane, DeviceType.RIGHT_GLOVE, Entity.PLAYER1_ENTITY, random);
+			if (i % 3 != 0) {
+				publishAccel(p1Lane, DeviceType.LEFT_GLOVE, Entity.PLAYER1_ENTITY, random);
+			}
+		}
+		publish(p1Lane, DeviceType.LEFT_GLOVE, EventType.BUTTON_UP_EVENT, Entity.PLAYER1_ENTITY);
+		publish(p1Lane, DeviceType.RIGHT_GLOVE, EventType.BUTTON_UP_EVENT, Entity.PLAYER1_ENTITY);
+		
+		gesture = gestures.poll(300, TimeUnit.MILLISECONDS);
+		assertNotNull(gesture);
+		assertEquals(5, gesture.getNumDataPts());
+		assertTrue(gesture.hasLeftGloveData() && gesture.hasRightGloveData());
+		assertStatisticsMatchData(gesture);
+	}
+}
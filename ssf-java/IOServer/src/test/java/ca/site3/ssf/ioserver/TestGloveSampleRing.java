@@ -0,0 +1,199 @@
+package ca.site3.ssf.ioserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Test;
+
+import ca.site3.ssf.gamemodel.IGameModel.Entity;
+import ca.site3.ssf.ioserver.DeviceConstants.DeviceType;
+import ca.site3.ssf.ioserver.GloveEvent.EventType;
+
+public class TestGloveSampleRing {
+
+	private static void publish(GloveSampleRing ring, long timestamp) {
+		GloveSample slot = ring.claim();
+		if (slot != null) {
+			slot.set(Entity.PLAYER1_ENTITY, DeviceType.LEFT_GLOVE, timestamp, EventType.DATA_EVENT);
+			slot.getValues()[GloveSample.ACCEL_OFFSET] = timestamp;
+			ring.publish();
+		}
+	}
+	
+	@Test
+	public void testCapacityRoundedUp() {
+		assertEquals(8, new GloveSampleRing(5, GloveSampleRing.OverflowPolicy.DROP_OLDEST).getCapacity());
+		assertEquals(8, new GloveSampleRing(8, GloveSampleRing.OverflowPolicy.DROP_OLDEST).getCapacity());
+	}
+	
+	@Test
+	public void testFifo() {
+		GloveSampleRing ring = new GloveSampleRing(4, GloveSampleRing.OverflowPolicy.DROP_OLDEST);
+		GloveSample s = new GloveSample();
+		assertFalse(ring.poll(s));
+		
+		for (int round=0; round<3; round++) {
+			for (int i=0; i<3; i++) {
+				publish(ring, round*10 + i);
+			}
+			assertEquals(3, ring.size());
+			for (int i=0; i<3; i++) {
+				assertTrue(ring.poll(s));
+				assertEquals(round*10 + i, s.getTimestamp());
+				assertEquals(round*10 + i, s.getValues()[GloveSample.ACCEL_OFFSET], 0.0);
+				assertEquals(Entity.PLAYER1_ENTITY, s.getSource());
+			}
+			assertFalse(ring.poll(s));
+		}
+		assertEquals(0, ring.getDroppedCount());
+	}
+	
+	@Test
+	public void testDropNewest() {
+		GloveSampleRing ring = new GloveSampleRing(4, GloveSampleRing.OverflowPolicy.DROP_NEWEST);
+		for (int i=0; i<6; i++) {
+			publish(ring, i);
+		}
+		assertNull(ring.claim());
+		assertEquals(3, ring.getDroppedCount());
+		
+		GloveSample s = new GloveSample();
+		for (int i=0; i<4; i++) {
+			assertTrue(ring.poll(s));
+			assertEquals(i, s.getTimestamp());
+		}
+		assertFalse(ring.poll(s));
+	}
+	
+	@Test
+	public void testDropOldest() {
+		GloveSampleRing ring = new GloveSampleRing(4, GloveSampleRing.OverflowPolicy.DROP_OLDEST);
+		for (int i=0; i<6; i++) {
+			publish(ring, i);
+		}
+		assertEquals(2, ring.getDroppedCount());
+		
+		GloveSample s = new GloveSample();
+		for (int i=2; i<6; i++) {
+			assertTrue(ring.poll(s));
+			assertEquals(i, s.getTimestamp());
+		}
+		assertFalse(ring.poll(s));
+	}
+	
+	@Test
+	public void testConcurrentHandoff() throws Exception {
+		for (final GloveSampleRing.OverflowPolicy policy : GloveSampleRing.OverflowPolicy.values()) {
+			final GloveSampleRing ring = new GloveSampleRing(64, policy);
+			final int count = 200000;
+			
+			Thread producer = new Thread(new Runnable() {
+				public void run() {
+					for (int i=1; i<=count; i++) {
+						publish(ring, i);
+					}
+				}
+			});
+			producer.start();
+			
+			// Samples must come out in order, intact and without duplicates; anything missing must have been counted
+			GloveSample s = new GloveSample();
+			long last = 0;
+			long received = 0;
+			while (last < count) {
+				if (ring.poll(s, 1, TimeUnit.SECONDS) == false) {
+					break;
+				}
+				assertTrue(s.getTimestamp() > last);
+				assertEquals(s.getTimestamp(), s.getValues()[GloveSample.ACCEL_OFFSET], 0.0);
+				last = s.getTimestamp();
+				received++;
+			}
+			producer.join();
+			while (ring.poll(s)) {
+				received++;
+			}
+			
+			assertEquals(policy.toString(), count, received + ring.getDroppedCount());
+		}
+	}
+	
+	@Test
+	public void testParkedConsumerWokenPromptly() throws Exception {
+		final GloveSampleRing ring = new GloveSampleRing(4, GloveSampleRing.OverflowPolicy.DROP_OLDEST);
+		final int count = 2000;
+		
+		// Each sample is published while the consumer is parked, or is about to park, on a long timeout
+		Thread producer = new Thread(new Runnable() {
+			public void run() {
+				for (int i=1; i<=count; i++) {
+					while (ring.size() > 0) {
+						Thread.yield();
+					}
+					if ((i & 1) == 0) {
+						LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+					}
+					publish(ring, i);
+				}
+			}
+		});
+		producer.start();
+		
+		GloveSample s = new GloveSample();
+		long maxWaitNanos = 0;
+		for (int i=1; i<=count; i++) {
+			long start = System.nanoTime();
+			assertTrue(ring.poll(s, 10, TimeUnit.SECONDS));
+			maxWaitNanos = Math.max(maxWaitNanos, System.nanoTime() - start);
+			assertEquals(i, s.getTimestamp());
+		}
+		producer.join();
+		
+		// A lost wakeup would leave the consumer parked for the whole timeout
+		assertTrue("Longest wait " + maxWaitNanos + " ns", maxWaitNanos < TimeUnit.SECONDS.toNanos(2));
+	}
+	
+	@Test
+	public void testWakeConsumer() throws Exception {
+		final GloveSampleRing ring = new GloveSampleRing(4, GloveSampleRing.OverflowPolicy.DROP_OLDEST);
+		final GloveSample s = new GloveSample();
+		final long[] waitNanos = new long[1];
+		Thread consumer = new Thread(new Runnable() {
+			public void run() {
+				long start = System.nanoTime();
+				try {
+					assertFalse(ring.poll(s, 10, TimeUnit.SECONDS));
+				}
+				catch (InterruptedException ex) {
+					return;
+				}
+				waitNanos[0] = System.nanoTime() - start;
+			}
+		});
+		consumer.start();
+		while (consumer.getState() != Thread.State.TIMED_WAITING) {
+			Thread.yield();
+		}
+		ring.wakeConsumer();
+		consumer.join(TimeUnit.SECONDS.toMillis(2));
+		assertFalse("Consumer wasn't woken", consumer.isAlive());
+		assertTrue(waitNanos[0] > 0 && waitNanos[0] < TimeUnit.SECONDS.toNanos(2));
+		
+		// A wake up with no one waiting cuts the next wait short, but doesn't get in the way of samples
+		ring.wakeConsumer();
+		publish(ring, 1);
+		assertTrue(ring.poll(s, 10, TimeUnit.SECONDS));
+		assertEquals(1, s.getTimestamp());
+		long start = System.nanoTime();
+		assertFalse(ring.poll(s, 10, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		
+		// ... and only the next one
+		assertFalse(ring.poll(s, 50, TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,70 @@
+package ca.site3.ssf.ioserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestTickScheduler {
+
+	@Test
+	public void testFixedStepsKeepUpWithRealTime() throws Exception {
+		TickScheduler scheduler = new TickScheduler(100, false);
+		WorkSignal signal = new WorkSignal();
+		
+		long startTime = System.nanoTime();
+		scheduler.start();
+		double simulatedTime = 0.0;
+		for (int i=0; i<30; i++) {
+			assertTrue(scheduler.awaitTick(signal));
+			double dT;
+			while ((dT = scheduler.nextStep()) > 0) {
+				assertEquals(0.01, dT, 1e-12);
+				simulatedTime += dT;
+			}
+		}
+		double elapsedTime = (System.nanoTime() - startTime) / 1e9;
+		
+		assertTrue("Fell behind: " + simulatedTime + "s of " + elapsedTime + "s", elapsedTime - simulatedTime < 0.0105);
+		assertTrue(simulatedTime <= elapsedTime);
+		assertEquals(30, scheduler.getJitter().getCount() + scheduler.getOverrun().getCount());
+	}
+	
+	@Test
+	public void testSubTickSplitsTick() throws Exception {
+		TickScheduler scheduler = new TickScheduler(20, false);
+		WorkSignal signal = new WorkSignal();
+		
+		scheduler.start();
+		Thread.sleep(10);
+		signal.signal();
+		
+		assertFalse(scheduler.awaitTick(signal));
+		double subTickStep = scheduler.nextStep();
+		assertTrue(subTickStep >= 0.01 && subTickStep < 0.05);
+		assertEquals(0.0, scheduler.nextStep(), 0.0);
+		
+		// The next regular tick steps the rest of the way
+		assertTrue(scheduler.awaitTick(signal));
+		double restStep = scheduler.nextStep();
+		assertEquals(0.05, subTickStep + restStep, 0.005);
+		assertEquals(0.0, scheduler.nextStep(), 0.0);
+	}
+	
+	@Test
+	public void testOverrun() throws Exception {
+		TickScheduler scheduler = new TickScheduler(100, false);
+		
+		scheduler.start();
+		Thread.sleep(35);
+		assertTrue(scheduler.awaitTick(null));
+		assertEquals(1, scheduler.getOverrun().getCount());
+		
+		int numSteps = 0;
+		while (scheduler.nextStep() > 0) {
+			numSteps++;
+		}
+		assertTrue(numSteps >= 3 && numSteps <= TickScheduler.MAX_STEPS_PER_TICK);
+	}
+}
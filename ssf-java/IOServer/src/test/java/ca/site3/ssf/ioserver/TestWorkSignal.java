@@ -0,0 +1,50 @@
+package ca.site3.ssf.ioserver;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestWorkSignal {
+
+	@Test
+	public void testAwaitTimesOut() throws Exception {
+		WorkSignal signal = new WorkSignal();
+		long startTime = System.nanoTime();
+		assertFalse(signal.await(TimeUnit.MILLISECONDS.toNanos(50)));
+		assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+	
+	@Test
+	public void testSignalsDontStack() throws Exception {
+		WorkSignal signal = new WorkSignal();
+		signal.signal();
+		signal.signal();
+		assertTrue(signal.await(0));
+		assertFalse(signal.await(TimeUnit.MILLISECONDS.toNanos(10)));
+	}
+	
+	@Test
+	public void testQueueWakesWaiter() throws Exception {
+		WorkSignal signal = new WorkSignal();
+		final BlockingQueue<String> queue = new SignallingBlockingQueue<String>(signal);
+		
+		Thread producer = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException ex) { }
+				queue.add("work");
+			}
+		};
+		
+		long startTime = System.nanoTime();
+		producer.start();
+		assertTrue(signal.await(TimeUnit.SECONDS.toNanos(2)));
+		assertTrue("Woke up too late", System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(1));
+		assertTrue(queue.contains("work"));
+	}
+}
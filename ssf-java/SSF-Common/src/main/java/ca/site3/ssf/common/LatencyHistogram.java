@@ -0,0 +1,134 @@
+package ca.site3.ssf.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small, fixed-size histogram of durations (in nanoseconds). Buckets are spaced
+ * logarithmically with 8 sub-buckets per power of two, so any reported percentile
+ * is within 12.5% of the true value. Recording never allocates and is safe to do from
+ * any number of threads while others read the statistics.
+ */
+public class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS  = 3;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT     = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+	
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong(0);
+	private final AtomicLong total = new AtomicLong(0);
+	private final AtomicLong max   = new AtomicLong(0);
+	
+	
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+	
+	public String getName() {
+		return this.name;
+	}
+	
+	/**
+	 * Records a single duration. Negative durations are recorded as zero.
+	 * @param nanos the duration, in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		this.buckets.incrementAndGet(bucketIndex(nanos));
+		this.count.incrementAndGet();
+		this.total.addAndGet(nanos);
+		
+		long currMax = this.max.get();
+		while (nanos > currMax && this.max.compareAndSet(currMax, nanos) == false) {
+			currMax = this.max.get();
+		}
+	}
+	
+	public long getCount() {
+		return this.count.get();
+	}
+	
+	/**
+	 * @return the largest duration recorded, in nanoseconds
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+	
+	/**
+	 * @return the mean of the recorded durations, in nanoseconds (0 if there are none)
+	 */
+	public double getMean() {
+		long n = this.count.get();
+		return n == 0 ? 0.0 : (double)this.total.get() / (double)n;
+	}
+	
+	/**
+	 * @param percentile in [0, 100]
+	 * @return an upper bound on the given percentile of the recorded durations, in nanoseconds
+	 * (0 if there are none)
+	 */
+	public long getPercentile(double percentile) {
+		long n = this.count.get();
+		if (n == 0) {
+			return 0;
+		}
+		
+		long rank = (long)Math.ceil(n * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+		rank = Math.max(1, rank);
+		
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += this.buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), this.getMax());
+			}
+		}
+		return this.getMax();
+	}
+	
+	/**
+	 * Forgets everything recorded so far. Not atomic with respect to concurrent recording.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.buckets.set(i, 0);
+		}
+		this.count.set(0);
+		this.total.set(0);
+		this.max.set(0);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s: n=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+				this.name, this.getCount(), this.getMean() / 1e6,
+				this.getPercentile(50) / 1e6, this.getPercentile(90) / 1e6,
+				this.getPercentile(99) / 1e6, this.getMax() / 1e6);
+	}
+	
+	private static int bucketIndex(long nanos) {
+		if (nanos < SUB_BUCKET_COUNT) {
+			return (int)nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+	
+	private static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		if (exponent >= 62) {
+			return Long.MAX_VALUE;
+		}
+		long subBucket = index % SUB_BUCKET_COUNT;
+		return ((SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}